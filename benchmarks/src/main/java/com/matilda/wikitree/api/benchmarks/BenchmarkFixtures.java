@@ -0,0 +1,203 @@
+/*
+ * Copyright © 2017 Daniel Boulet
+ */
+
+package com.matilda.wikitree.api.benchmarks;
+
+import com.matilda.wikitree.api.json.JsonSimpleCodec;
+import com.matilda.wikitree.api.json.WikiTreeJsonWriter;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.ParseException;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+
+/**
+ The responses that the benchmarks work on.
+ <p/>Most of them are the recorded WikiTree API server responses in the API's {@code src/test/resources/fixtures} directory.
+ We only have a recording of a depth 3 {@code getAncestors} response so the deeper ones are synthesized by
+ {@link #ancestorsResponse(int)} from the recorded profiles.
+ */
+
+final class BenchmarkFixtures {
+
+    /**
+     The recorded responses which the parsing benchmarks run over.
+     */
+
+    static final String GET_PERSON = "getPerson-Churchill-4.json";
+
+    static final String GET_ANCESTORS = "getAncestors-Churchill-4-depth-3.json";
+
+    static final String GET_RELATIVES = "getRelatives-5589-Hozier-1.json";
+
+    static final String GET_WATCHLIST = "getWatchlist.json";
+
+    /**
+     Where the {@code Id}s of the people in synthesized ancestor trees start.
+     */
+
+    private static final long SYNTHETIC_ID_BASE = 1_000_000L;
+
+    private BenchmarkFixtures() {
+
+        super();
+
+    }
+
+    /**
+     Get the bytes of a response.
+
+     @param name the name of a recorded response or {@code getAncestors-depth-}<i>n</i> for a synthesized depth <i>n</i> {@code getAncestors} response.
+     */
+
+    static byte[] load( String name )
+            throws IOException, ParseException {
+
+        if ( name.startsWith( "getAncestors-depth-" ) ) {
+
+            return ancestorsResponse( Integer.parseInt( name.substring( "getAncestors-depth-".length() ) ) ).getBytes( StandardCharsets.UTF_8 );
+
+        }
+
+        try ( InputStream is = BenchmarkFixtures.class.getResourceAsStream( "/fixtures/" + name ) ) {
+
+            if ( is == null ) {
+
+                throw new IllegalArgumentException( "BenchmarkFixtures.load:  no fixture named \"" + name + "\"" );
+
+            }
+
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int count;
+            while ( ( count = is.read( buffer ) ) >= 0 ) {
+
+                baos.write( buffer, 0, count );
+
+            }
+
+            return baos.toByteArray();
+
+        }
+
+    }
+
+    /**
+     Get the single object inside a response (which is always a one element array).
+     */
+
+    static JSONObject loadResult( String name )
+            throws IOException, ParseException {
+
+        JSONArray response = (JSONArray)new JsonSimpleCodec().parse( new String( load( name ), StandardCharsets.UTF_8 ) );
+
+        return (JSONObject)response.get( 0 );
+
+    }
+
+    /**
+     Synthesize a {@code getAncestors} response for a complete tree of ancestors.
+     <p/>Every profile is a copy of the recorded Winston Churchill profile with its own {@code Id}, {@code Name},
+     {@code Gender}, {@code Father} and {@code Mother}. The base person is {@code Ancestor-1}.
+     Person <i>n</i>'s parents are persons <i>2n</i> and <i>2n+1</i> (if they are within the tree).
+
+     @param depth how many generations above the base person the tree has (there are {@code 2^(depth+1) - 1} profiles).
+     @return the response's JSON text.
+     */
+
+    @SuppressWarnings("unchecked")
+    static String ancestorsResponse( int depth )
+            throws IOException, ParseException {
+
+        if ( depth < 0 ) {
+
+            throw new IllegalArgumentException( "BenchmarkFixtures.ancestorsResponse:  depth must not be negative (it is " + depth + ")" );
+
+        }
+
+        JSONObject template = (JSONObject)( (JSONArray)loadResult( GET_ANCESTORS ).get( "ancestors" ) ).get( 0 );
+
+        int count = ( 1 << ( depth + 1 ) ) - 1;
+        JSONArray ancestors = new JSONArray();
+        for ( int n = 1; n <= count; n += 1 ) {
+
+            JSONObject profile = new JSONObject( template );
+            profile.put( "Id", SYNTHETIC_ID_BASE + n );
+            profile.put( "Name", "Ancestor-" + n );
+            profile.put( "Gender", n % 2 == 0 ? "Male" : "Female" );
+            profile.put( "Father", 2 * n <= count ? SYNTHETIC_ID_BASE + 2 * n : 0L );
+            profile.put( "Mother", 2 * n + 1 <= count ? SYNTHETIC_ID_BASE + 2 * n + 1 : 0L );
+            ancestors.add( profile );
+
+        }
+
+        JSONObject result = new JSONObject();
+        result.put( "user_name", "Ancestor-1" );
+        result.put( "ancestors", ancestors );
+        result.put( "status", 0L );
+
+        JSONArray response = new JSONArray();
+        response.add( result );
+
+        return WikiTreeJsonWriter.toJsonString( response );
+
+    }
+
+    /**
+     A connection which 'receives' a canned response without going anywhere near the network.
+     */
+
+    static class CannedConnection extends HttpURLConnection {
+
+        private final byte[] _body;
+
+        CannedConnection( byte[] body )
+                throws IOException {
+
+            super( new URL( "http://localhost/api.php" ) );
+
+            _body = body;
+
+        }
+
+        @Override
+        public int getResponseCode() {
+
+            return HTTP_OK;
+
+        }
+
+        @Override
+        public InputStream getInputStream() {
+
+            return new ByteArrayInputStream( _body );
+
+        }
+
+        @Override
+        public void connect() {
+
+        }
+
+        @Override
+        public void disconnect() {
+
+        }
+
+        @Override
+        public boolean usingProxy() {
+
+            return false;
+
+        }
+
+    }
+
+}
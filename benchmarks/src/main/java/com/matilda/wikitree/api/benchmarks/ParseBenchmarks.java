@@ -0,0 +1,118 @@
+/*
+ * Copyright © 2017 Daniel Boulet
+ */
+
+package com.matilda.wikitree.api.benchmarks;
+
+import com.matilda.wikitree.api.json.FastJsonCodec;
+import com.matilda.wikitree.api.json.JsonSimpleCodec;
+import com.matilda.wikitree.api.json.WikiTreeJsonCodec;
+import com.matilda.wikitree.api.json.WikiTreeJsonWriter;
+import com.matilda.wikitree.api.util.WikiTreeApiUtilities;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.ParseException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ Reading and parsing responses with each of the codecs.
+ */
+
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.Throughput )
+@OutputTimeUnit( TimeUnit.SECONDS )
+@Warmup( iterations = 5, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+public class ParseBenchmarks {
+
+    @Param( {
+            BenchmarkFixtures.GET_PERSON,
+            BenchmarkFixtures.GET_ANCESTORS,
+            "getAncestors-depth-10",
+            BenchmarkFixtures.GET_RELATIVES,
+            BenchmarkFixtures.GET_WATCHLIST
+    } )
+    public String fixture;
+
+    @Param( { JsonSimpleCodec.NAME, FastJsonCodec.NAME, FastJsonCodec.LAZY_NAME } )
+    public String codec;
+
+    private byte[] _response;
+
+    private String _resultText;
+
+    private WikiTreeJsonCodec _oldCodec;
+
+    @Setup
+    public void setUp()
+            throws IOException, ParseException {
+
+        _response = BenchmarkFixtures.load( fixture );
+        _resultText = WikiTreeJsonWriter.toJsonString( BenchmarkFixtures.loadResult( fixture ) );
+
+        WikiTreeJsonCodec jsonCodec;
+        switch ( codec ) {
+
+            case JsonSimpleCodec.NAME:
+                jsonCodec = new JsonSimpleCodec();
+                break;
+
+            case FastJsonCodec.NAME:
+                jsonCodec = new FastJsonCodec();
+                break;
+
+            case FastJsonCodec.LAZY_NAME:
+                jsonCodec = new FastJsonCodec( true );
+                break;
+
+            default:
+                throw new IllegalArgumentException( "ParseBenchmarks:  unknown codec \"" + codec + "\"" );
+
+        }
+
+        _oldCodec = WikiTreeApiUtilities.setJsonCodec( jsonCodec );
+
+    }
+
+    @TearDown
+    public void tearDown() {
+
+        WikiTreeApiUtilities.setJsonCodec( _oldCodec );
+
+    }
+
+    /**
+     Everything that happens to a response once it has arrived (short of wrapping it).
+     */
+
+    @Benchmark
+    public Object readResponse()
+            throws IOException, ParseException {
+
+        return WikiTreeApiUtilities.readResponse( new BenchmarkFixtures.CannedConnection( _response ), true );
+
+    }
+
+    @Benchmark
+    public JSONObject parseJsonObject()
+            throws ParseException {
+
+        return WikiTreeApiUtilities.parseJsonObject( _resultText );
+
+    }
+
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright © 2017 Daniel Boulet
+ */
+
+package com.matilda.wikitree.api.benchmarks;
+
+import com.matilda.wikitree.api.jsonclient.WikiTreeRequest;
+import com.matilda.wikitree.api.wrappers.WikiTreeId;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ The work done before a request is sent - validating keys and formatting the request URL.
+ */
+
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.Throughput )
+@OutputTimeUnit( TimeUnit.SECONDS )
+@Warmup( iterations = 5, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+public class RequestBenchmarks {
+
+    private static final String BASE_URL = "https://apps.wikitree.com/api.php";
+
+    private static final String BASIC_FIELDS = "Id,Name,Derived.ShortName,LastNameAtBirth,Gender,BirthDate,DeathDate,BirthDateDecade,DeathDateDecade";
+
+    /**
+     Create a request and build its URL (the query string is worked out when the request is created).
+     */
+
+    @Benchmark
+    public String formatGetPersonRequest() {
+
+        return BASE_URL + new WikiTreeRequest.GetPerson( "Churchill-4", BASIC_FIELDS ).getQueryString();
+
+    }
+
+    @Benchmark
+    public String formatGetRelativesRequest() {
+
+        return BASE_URL + new WikiTreeRequest.GetRelatives( "5589,Hozier-1,Space:Allied_POW_camps", true, true, true, true ).getQueryString();
+
+    }
+
+    @Benchmark
+    public WikiTreeId personWikiTreeId() {
+
+        return new WikiTreeId( "Churchill-4" );
+
+    }
+
+    @Benchmark
+    public WikiTreeId spaceWikiTreeId() {
+
+        return new WikiTreeId( "Space:Allied_POW_camps" );
+
+    }
+
+    @Benchmark
+    public boolean numericId() {
+
+        return WikiTreeId.isValidNumericIdString( "5589" );
+
+    }
+
+}
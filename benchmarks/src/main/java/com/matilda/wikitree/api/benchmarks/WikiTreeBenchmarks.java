@@ -0,0 +1,38 @@
+/*
+ * Copyright © 2017 Daniel Boulet
+ */
+
+package com.matilda.wikitree.api.benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ Run the benchmarks.
+ <p/>Takes the same arguments as JMH's own {@code org.openjdk.jmh.Main}. The one difference is that the GC profiler is turned on
+ unless some other profiler is asked for, so that every run reports allocation rates (the {@code gc.alloc.rate.norm} lines give
+ bytes allocated per operation) as well as throughput. For example,
+ <blockquote>{@code java -jar target/benchmarks.jar WrapperBenchmarks.ancestors -p depth=10}</blockquote>
+ */
+
+public class WikiTreeBenchmarks {
+
+    public static void main( String[] args )
+            throws Exception {
+
+        CommandLineOptions commandLineOptions = new CommandLineOptions( args );
+        ChainedOptionsBuilder options = new OptionsBuilder().parent( commandLineOptions );
+        if ( commandLineOptions.getProfilers().isEmpty() ) {
+
+            options.addProfiler( GCProfiler.class );
+
+        }
+
+        new Runner( options.build() ).run();
+
+    }
+
+}
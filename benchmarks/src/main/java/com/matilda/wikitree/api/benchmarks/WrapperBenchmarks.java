@@ -0,0 +1,119 @@
+/*
+ * Copyright © 2017 Daniel Boulet
+ */
+
+package com.matilda.wikitree.api.benchmarks;
+
+import com.matilda.wikitree.api.exceptions.WikiTreeRequestFailedException;
+import com.matilda.wikitree.api.wrappers.WikiTreeAncestors;
+import com.matilda.wikitree.api.wrappers.WikiTreeId;
+import com.matilda.wikitree.api.wrappers.WikiTreePersonProfile;
+import com.matilda.wikitree.api.wrappers.WikiTreeRelatives;
+import com.matilda.wikitree.api.wrappers.WikiTreeWatchlist;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.ParseException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ Turning parsed responses into wrappers.
+ <p/>The responses are parsed once up front by the default codec. Each benchmark only measures the wrapper's constructor.
+ */
+
+@BenchmarkMode( Mode.Throughput )
+@OutputTimeUnit( TimeUnit.SECONDS )
+@Warmup( iterations = 5, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+public class WrapperBenchmarks {
+
+    @State( Scope.Benchmark )
+    public static class Responses {
+
+        private JSONObject _person;
+
+        private JSONObject _relatives;
+
+        private JSONObject _watchlist;
+
+        @Setup
+        public void setUp()
+                throws IOException, ParseException {
+
+            _person = BenchmarkFixtures.loadResult( BenchmarkFixtures.GET_PERSON );
+            _relatives = BenchmarkFixtures.loadResult( BenchmarkFixtures.GET_RELATIVES );
+            _watchlist = BenchmarkFixtures.loadResult( BenchmarkFixtures.GET_WATCHLIST );
+
+        }
+
+    }
+
+    /**
+     A (synthesized) {@code getAncestors} response for each depth that the WikiTree API supports.
+     */
+
+    @State( Scope.Benchmark )
+    public static class Ancestors {
+
+        @Param( { "1", "2", "3", "4", "5", "6", "7", "8", "9", "10" } )
+        public int depth;
+
+        private final WikiTreeId _key = new WikiTreeId( "Ancestor-1" );
+
+        private JSONObject _ancestors;
+
+        @Setup
+        public void setUp()
+                throws IOException, ParseException {
+
+            _ancestors = BenchmarkFixtures.loadResult( "getAncestors-depth-" + depth );
+
+        }
+
+    }
+
+    @Benchmark
+    public WikiTreePersonProfile personProfile( Responses responses )
+            throws WikiTreeRequestFailedException {
+
+        return new WikiTreePersonProfile( null, responses._person, "person" );
+
+    }
+
+    @Benchmark
+    public WikiTreeRelatives relatives( Responses responses )
+            throws WikiTreeRequestFailedException {
+
+        return new WikiTreeRelatives( "5589,Hozier-1", true, true, true, true, responses._relatives );
+
+    }
+
+    @Benchmark
+    public WikiTreeWatchlist watchlist( Responses responses )
+            throws WikiTreeRequestFailedException {
+
+        return new WikiTreeWatchlist( true, true, false, false, "*", null, null, null, responses._watchlist );
+
+    }
+
+    @Benchmark
+    public WikiTreeAncestors ancestors( Ancestors ancestors )
+            throws WikiTreeRequestFailedException {
+
+        return new WikiTreeAncestors( ancestors._key, ancestors.depth, ancestors._ancestors );
+
+    }
+
+}
@@ -126,7 +126,7 @@ public class WrappersApiTestDrive {
             );
 
             System.out.println(
-                    "timing stats for actual calls to remote WikiTree API server:  " +
+                    "timing stats for actual calls to remote WikiTree API server:" + WikiTreeApiUtilities.JAVA_NEWLINE +
                     WikiTreeApiWrappersSession.getTimingStats()
             );
 
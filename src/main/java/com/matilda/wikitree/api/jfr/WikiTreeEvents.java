@@ -0,0 +1,138 @@
+/*
+ * Copyright © 2017 Daniel Boulet
+ */
+
+package com.matilda.wikitree.api.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ The Flight Recorder event types behind {@link WikiTreeFlightRecorder}.
+ <p/>Nothing outside of {@link WikiTreeFlightRecorder#begin(WikiTreeFlightRecorder.Operation, String, String)} may refer to this class
+ since loading it fails on JVMs which don't have the {@code jdk.jfr} package.
+ */
+
+final class WikiTreeEvents {
+
+    private WikiTreeEvents() {
+
+        super();
+
+    }
+
+    /**
+     Create and start an event if anybody is recording events of its type.
+
+     @return the started event or {@code null} if it would not be recorded.
+     */
+
+    static WikiTreeFlightRecorder.Span begin( WikiTreeFlightRecorder.Operation operation, String action, String key ) {
+
+        WikiTreeEvent event;
+        switch ( operation ) {
+
+            case REQUEST:
+                event = new RequestEvent();
+                break;
+
+            case READ_RESPONSE:
+                event = new ReadResponseEvent();
+                break;
+
+            case PARSE:
+                event = new ParseEvent();
+                break;
+
+            case BUILD_ANCESTORS:
+                event = new BuildAncestorsEvent();
+                break;
+
+            default:
+                throw new IllegalArgumentException( "WikiTreeEvents.begin:  unknown operation " + operation );
+
+        }
+
+        if ( !event.isEnabled() ) {
+
+            return null;
+
+        }
+
+        event.action = action;
+        event.key = key;
+        event.begin();
+
+        return event;
+
+    }
+
+    @Category( "WikiTree API" )
+    @StackTrace( false )
+    abstract static class WikiTreeEvent extends Event implements WikiTreeFlightRecorder.Span {
+
+        @Label( "Action" )
+        String action;
+
+        @Label( "Key" )
+        String key;
+
+        @Label( "Bytes" )
+        @DataAmount
+        long bytes = -1;
+
+        @Label( "Profile Count" )
+        int profileCount = -1;
+
+        @Override
+        public boolean isRecording() {
+
+            return true;
+
+        }
+
+        @Override
+        public void end( long bytes, int profileCount ) {
+
+            this.bytes = bytes;
+            this.profileCount = profileCount;
+            commit();
+
+        }
+
+    }
+
+    @Name( "com.matilda.wikitree.Request" )
+    @Label( "WikiTree Request" )
+    @Description( "A complete request to a WikiTree API server" )
+    static final class RequestEvent extends WikiTreeEvent {
+
+    }
+
+    @Name( "com.matilda.wikitree.ReadResponse" )
+    @Label( "WikiTree Read Response" )
+    @Description( "Waiting for, reading and parsing a response from a WikiTree API server" )
+    static final class ReadResponseEvent extends WikiTreeEvent {
+
+    }
+
+    @Name( "com.matilda.wikitree.Parse" )
+    @Label( "WikiTree Parse" )
+    @Description( "Parsing the JSON in a response from a WikiTree API server" )
+    static final class ParseEvent extends WikiTreeEvent {
+
+    }
+
+    @Name( "com.matilda.wikitree.BuildAncestors" )
+    @Label( "WikiTree Build Ancestors" )
+    @Description( "Building a WikiTreeAncestors tree from a getAncestors response" )
+    static final class BuildAncestorsEvent extends WikiTreeEvent {
+
+    }
+
+}
@@ -0,0 +1,191 @@
+/*
+ * Copyright © 2017 Daniel Boulet
+ */
+
+package com.matilda.wikitree.api.jfr;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+
+/**
+ Reports what this API is up to as JDK Flight Recorder events.
+ <p/>There are four event types (all in the {@code WikiTree API} category):
+ <ul>
+ <li>{@code com.matilda.wikitree.Request} - a complete request to a WikiTree API server.</li>
+ <li>{@code com.matilda.wikitree.ReadResponse} - reading and parsing a response.</li>
+ <li>{@code com.matilda.wikitree.Parse} - just the parsing part.</li>
+ <li>{@code com.matilda.wikitree.BuildAncestors} - building a {@link com.matilda.wikitree.api.wrappers.WikiTreeAncestors} tree.</li>
+ </ul>
+ Each event carries the request's action, its key, the size of the response in bytes and the number of profiles involved
+ (sizes and counts which don't apply or aren't known are {@code -1}).
+ <p/>This API still runs on Java 8 runtimes which don't have the {@code jdk.jfr} package. On those, and whenever nobody is recording a
+ particular event type, {@link #begin(Operation, String, String)} returns a span which does nothing and the event classes are never loaded.
+ <p/>Typical use:
+ <blockquote><pre>
+ WikiTreeFlightRecorder.Span span = WikiTreeFlightRecorder.begin( Operation.PARSE, action, key );
+ Object parsed = ...;
+ span.end( byteCount, span.isRecording() ? WikiTreeFlightRecorder.countProfiles( parsed ) : -1 );
+ </pre></blockquote>
+ */
+
+public final class WikiTreeFlightRecorder {
+
+    /**
+     The things that we report.
+     */
+
+    public enum Operation {
+
+        REQUEST,
+        READ_RESPONSE,
+        PARSE,
+        BUILD_ANCESTORS
+
+    }
+
+    /**
+     One operation which is underway.
+     */
+
+    public interface Span {
+
+        /**
+         Determine if anybody is going to see this span (handy for skipping the work of figuring out what to pass to {@link #end(long, int)}).
+         */
+
+        boolean isRecording();
+
+        /**
+         The operation is over.
+
+         @param bytes        the number of bytes involved ({@code -1} if unknown).
+         @param profileCount the number of profiles involved ({@code -1} if unknown).
+         */
+
+        void end( long bytes, int profileCount );
+
+    }
+
+    private static final Span NOT_RECORDING = new Span() {
+
+        @Override
+        public boolean isRecording() {
+
+            return false;
+
+        }
+
+        @Override
+        public void end( long bytes, int profileCount ) {
+
+        }
+
+    };
+
+    private static final boolean s_available = isJfrAvailable();
+
+    private WikiTreeFlightRecorder() {
+
+        super();
+
+    }
+
+    private static boolean isJfrAvailable() {
+
+        try {
+
+            Class.forName( "jdk.jfr.Event", false, WikiTreeFlightRecorder.class.getClassLoader() );
+
+            return true;
+
+        } catch ( ClassNotFoundException | LinkageError e ) {
+
+            return false;
+
+        }
+
+    }
+
+    /**
+     Determine if this JVM has Flight Recorder support.
+     */
+
+    public static boolean isAvailable() {
+
+        return s_available;
+
+    }
+
+    /**
+     Start an operation.
+
+     @param operation what kind of operation.
+     @param action    the WikiTree API action that it is part of ({@code getPerson}, {@code getAncestors}, etc).
+     @param key       what it is about (a WikiTree ID, a Person.Id, etc).
+     @return the operation's span (the caller must call its {@link Span#end(long, int)} method when the operation is over).
+     */
+
+    @NotNull
+    public static Span begin( @NotNull Operation operation, @Nullable String action, @Nullable String key ) {
+
+        if ( !s_available ) {
+
+            return NOT_RECORDING;
+
+        }
+
+        Span span = WikiTreeEvents.begin( operation, action, key );
+
+        return span == null ? NOT_RECORDING : span;
+
+    }
+
+    /**
+     Count the profiles in a response from a WikiTree API server (or something parsed out of one).
+     <p/>A {@code getPerson}, {@code getProfile} or {@code getBio} result counts as one profile. A {@code getAncestors}, {@code getRelatives} or
+     {@code getWatchlist} result counts as however many profiles it lists. Arrays of results count as the sum of their results.
+
+     @param response the response.
+     @return how many profiles it contains.
+     */
+
+    public static int countProfiles( @Nullable Object response ) {
+
+        if ( response instanceof JSONArray ) {
+
+            int count = 0;
+            for ( Object item : (JSONArray)response ) {
+
+                count += countProfiles( item );
+
+            }
+
+            return count;
+
+        } else if ( response instanceof JSONObject ) {
+
+            JSONObject object = (JSONObject)response;
+            for ( String listKey : new String[]{ "ancestors", "items", "watchlist" } ) {
+
+                Object list = object.get( listKey );
+                if ( list instanceof JSONArray ) {
+
+                    return ( (JSONArray)list ).size();
+
+                }
+
+            }
+
+            return object.containsKey( "person" ) || object.containsKey( "profile" ) || object.containsKey( "bio" ) ? 1 : 0;
+
+        } else {
+
+            return 0;
+
+        }
+
+    }
+
+}
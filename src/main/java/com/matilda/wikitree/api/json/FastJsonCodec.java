@@ -0,0 +1,133 @@
+/*
+ * Copyright © 2017 Daniel Boulet
+ */
+
+package com.matilda.wikitree.api.json;
+
+import org.jetbrains.annotations.NotNull;
+import org.json.simple.parser.ParseException;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ The default codec - a considerably faster alternative to json-simple's parser which yields the same results for valid JSON.
+ <p/>See {@link WikiTreeJsonCodec} for what "the same results" means and {@link JsonSimpleCodec} if you need the old parser back.
+ <p/>The two parsers differ on invalid JSON. json-simple tolerates some of it (extra commas like {@code [1,,2]} and unknown escapes like {@code \q})
+ whereas this codec rejects it with a {@link ParseException}.
+ A byte order mark at the very start of the text is skipped by all three {@code parse} methods (json-simple rejects it).
+ */
+
+public class FastJsonCodec implements WikiTreeJsonCodec {
+
+    public static final String NAME = "fast";
+
+    public static final String LAZY_NAME = "fast-lazy";
+
+    /**
+     One parser (and, more importantly, one set of buffers) per thread.
+     */
+
+    private static final ThreadLocal<FastJsonParser> s_parsers = ThreadLocal.withInitial( FastJsonParser::new );
+
+    /**
+     Ditto for the parser which works directly on UTF-8 bytes.
+     */
+
+    private static final ThreadLocal<Utf8JsonParser> s_utf8Parsers = ThreadLocal.withInitial( Utf8JsonParser::new );
+
+    private final boolean _lazy;
+
+    /**
+     Create a codec which decodes everything up front.
+     */
+
+    public FastJsonCodec() {
+
+        this( false );
+
+    }
+
+    /**
+     Create a codec which optionally leaves string and number values in objects undecoded until they are first fetched.
+     <p/>A {@code getPerson} request for {@code fields=*} yields dozens of fields per profile and most callers look at a handful of them.
+     In lazy mode, each string or number value in an object is checked but is only decoded (unescaped, boxed, etc) if somebody asks for it.
+     Objects are then {@link LazyJSONObject}s which behave exactly like fully decoded {@link org.json.simple.JSONObject}s to their users.
+     <p/>The price is that the undecoded values refer to a private copy of the whole response text which stays reachable until
+     every value which refers to it has been decoded or discarded. Arrays, booleans and nulls are never lazy.
+
+     @param lazy {@code true} if string and number values in objects should be decoded lazily.
+     */
+
+    public FastJsonCodec( boolean lazy ) {
+
+        super();
+
+        _lazy = lazy;
+
+    }
+
+    public boolean isLazy() {
+
+        return _lazy;
+
+    }
+
+    @NotNull
+    @Override
+    public String getName() {
+
+        return _lazy ? LAZY_NAME : NAME;
+
+    }
+
+    @Override
+    public Object parse( @NotNull String jsonString )
+            throws ParseException {
+
+        return s_parsers.get().parse( jsonString, _lazy );
+
+    }
+
+    @Override
+    public Object parse( @NotNull Reader reader )
+            throws IOException, ParseException {
+
+        return s_parsers.get().parse( reader, _lazy );
+
+    }
+
+    /**
+     Parse UTF-8 encoded bytes without decoding them into characters first (see {@link Utf8JsonParser}).
+     <p/>Malformed UTF-8 is rejected rather than being replaced with U+FFFD.
+     In lazy mode, the bytes are decoded into a private {@code char[]} and parsed from there since the lazy values need something to refer to
+     (malformed UTF-8 is replaced with U+FFFD in that case).
+     */
+
+    @Override
+    public Object parse( @NotNull ByteBuffer utf8Json )
+            throws ParseException {
+
+        if ( _lazy ) {
+
+            CharBuffer chars = StandardCharsets.UTF_8.decode( utf8Json.duplicate() );
+            int start = chars.arrayOffset() + chars.position();
+
+            return s_parsers.get().parse( chars.array(), start, start + chars.remaining(), true );
+
+        }
+
+        return s_utf8Parsers.get().parse( utf8Json );
+
+    }
+
+    public String toString() {
+
+        return "FastJsonCodec( lazy=" + _lazy + " )";
+
+    }
+
+}
@@ -0,0 +1,824 @@
+/*
+ * Copyright © 2017 Daniel Boulet
+ */
+
+package com.matilda.wikitree.api.json;
+
+import org.jetbrains.annotations.NotNull;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.ParseException;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+
+/**
+ A hand-written JSON parser which works directly on a {@code char[]}.
+ <p/>This is the engine behind {@link FastJsonCodec}. It yields the same kinds of things that json-simple's parser yields for valid JSON
+ (see {@link WikiTreeJsonCodec} for the details and {@link FastJsonCodec} for how the two differ on invalid JSON) but it gets there without a generated lexer, without a token object per token,
+ without a {@link StringBuffer} and without creating a substring for every number.
+ <p/>Instances are not thread safe but they are meant to be reused.
+ {@link FastJsonCodec} keeps one per thread so that the read buffer and the scratch {@link StringBuilder} used to decode escaped strings
+ are allocated once per thread rather than once per response.
+ The same goes for the member stack which lets objects be created with exactly sized tables
+ and which keeps track of open containers so that nesting depth isn't limited by the thread's stack (see {@link MemberStack}).
+ Known WikiTree keys are resolved to their canonical instances (see {@link WikiTreeJsonKeys}) without being copied out of the buffer.
+ <p/>When asked to, the parser leaves string and number values in objects undecoded (see {@link LazyJSONObject}).
+ The result then refers to the buffer that it was parsed from so that buffer is never the reusable read buffer.
+ <p/>Any of these buffers is dropped after use if an unusually large response has made it bigger than its maximum retained size.
+ */
+
+final class FastJsonParser {
+
+    static final int INITIAL_BUFFER_SIZE = 16 * 1024;
+
+    static final int MAX_RETAINED_BUFFER_SIZE = 1024 * 1024;
+
+    private StringBuilder _sb = new StringBuilder();
+
+    private char[] _readBuffer = new char[INITIAL_BUFFER_SIZE];
+
+    private char[] _buf;
+
+    private int _pos;
+
+    private int _end;
+
+    private boolean _lazy;
+
+    private final MemberStack _members = new MemberStack();
+
+    /**
+     Parse a string by copying it into this instance's read buffer.
+
+     @param jsonString the string to be parsed.
+     @param lazy       {@code true} if string and number values in objects should be left undecoded (see {@link FastJsonCodec#FastJsonCodec(boolean)}).
+     @return the parsed value.
+     @throws ParseException if the string does not contain exactly one valid JSON value.
+     */
+
+    Object parse( @NotNull String jsonString, boolean lazy )
+            throws ParseException {
+
+        if ( lazy ) {
+
+            // The result refers to the buffer so it can't be our reusable one.
+
+            char[] buf = jsonString.toCharArray();
+            return parse( buf, 0, buf.length, true );
+
+        }
+
+        int length = jsonString.length();
+        if ( _readBuffer.length < length ) {
+
+            _readBuffer = new char[length];
+
+        }
+
+        jsonString.getChars( 0, length, _readBuffer, 0 );
+
+        try {
+
+            return parse( _readBuffer, 0, length, false );
+
+        } finally {
+
+            recycleBuffers();
+
+        }
+
+    }
+
+    /**
+     Parse everything that a reader has to offer by reading it into this instance's read buffer.
+
+     @param reader where to get the JSON text (not closed by this method).
+     @param lazy   {@code true} if string and number values in objects should be left undecoded (see {@link FastJsonCodec#FastJsonCodec(boolean)}).
+     @return the parsed value.
+     @throws IOException    if something goes wrong reading from the reader.
+     @throws ParseException if the reader's content is not exactly one valid JSON value.
+     */
+
+    Object parse( @NotNull Reader reader, boolean lazy )
+            throws IOException, ParseException {
+
+        try {
+
+            int length = 0;
+            while ( true ) {
+
+                if ( length == _readBuffer.length ) {
+
+                    _readBuffer = Arrays.copyOf( _readBuffer, _readBuffer.length * 2 );
+
+                }
+
+                int count = reader.read( _readBuffer, length, _readBuffer.length - length );
+                if ( count < 0 ) {
+
+                    break;
+
+                }
+
+                length += count;
+
+            }
+
+            if ( lazy ) {
+
+                // The result refers to the buffer so give it a copy which is exactly the right size.
+
+                return parse( Arrays.copyOf( _readBuffer, length ), 0, length, true );
+
+            }
+
+            return parse( _readBuffer, 0, length, false );
+
+        } finally {
+
+            recycleBuffers();
+
+        }
+
+    }
+
+    /**
+     Don't let one huge response pin a huge buffer to this thread forever.
+     */
+
+    private void recycleBuffers() {
+
+        if ( _readBuffer.length > MAX_RETAINED_BUFFER_SIZE ) {
+
+            _readBuffer = new char[INITIAL_BUFFER_SIZE];
+
+        }
+
+        if ( _sb.capacity() > MAX_RETAINED_BUFFER_SIZE ) {
+
+            _sb = new StringBuilder();
+
+        }
+
+        _members.recycle();
+
+    }
+
+    /**
+     Parse a region of a character array as exactly one JSON value surrounded by optional white space.
+     <p/>A byte order mark at the start of the region is skipped (every other entry point ends up here so they all agree about that).
+
+     @param buf   where the JSON text lives.
+     @param start the offset of the first character of the JSON text.
+     @param end   the offset just past the last character of the JSON text.
+     @param lazy  {@code true} if string and number values in objects should be left undecoded.
+     The result then refers to {@code buf} so its content must not be changed afterwards.
+     @return the parsed value.
+     @throws ParseException if the region does not contain exactly one valid JSON value.
+     */
+
+    Object parse( @NotNull char[] buf, int start, int end, boolean lazy )
+            throws ParseException {
+
+        _lazy = lazy;
+        _buf = buf;
+        _pos = start;
+        _end = end;
+        _members.clear();
+
+        try {
+
+            if ( _pos < _end && _buf[_pos] == '\uFEFF' ) {
+
+                _pos += 1;
+
+            }
+
+            skipWhiteSpace();
+            Object rval = parseValue();
+            skipWhiteSpace();
+
+            if ( _pos != _end ) {
+
+                throw new ParseException( _pos, ParseException.ERROR_UNEXPECTED_CHAR, _buf[_pos] );
+
+            }
+
+            return rval;
+
+        } finally {
+
+            // Don't hang onto the caller's buffer (or whatever a failed parse left on the member stack).
+
+            _buf = null;
+            _members.clear();
+
+        }
+
+    }
+
+    private void skipWhiteSpace() {
+
+        while ( _pos < _end ) {
+
+            char c = _buf[_pos];
+            if ( c == ' ' || c == '\n' || c == '\r' || c == '\t' ) {
+
+                _pos += 1;
+
+            } else {
+
+                break;
+
+            }
+
+        }
+
+    }
+
+    /**
+     Parse a value, which might be a container nested to any depth.
+     <p/>Containers are parsed without recursion. Opening a container pushes it onto the member stack (see {@link MemberStack#open(boolean)})
+     and each value which is finished is handed to the innermost open container, closing containers as their closing brackets turn up.
+     Very deeply nested input therefore costs heap rather than thread stack.
+     */
+
+    private Object parseValue()
+            throws ParseException {
+
+        int depth = _members.depth();
+        while ( true ) {
+
+            Object value;
+            if ( _pos < _end && ( _buf[_pos] == '{' || _buf[_pos] == '[' ) ) {
+
+                boolean isObject = _buf[_pos] == '{';
+                _pos += 1;
+                skipWhiteSpace();
+                if ( _pos < _end && _buf[_pos] == ( isObject ? '}' : ']' ) ) {
+
+                    _pos += 1;
+                    value = isObject ? ( _lazy ? new LazyJSONObject() : new JSONObject() ) : new JSONArray();
+
+                } else {
+
+                    _members.open( isObject );
+                    if ( isObject ) {
+
+                        parseMemberName();
+
+                    }
+
+                    continue;
+
+                }
+
+            } else if ( _lazy && _members.depth() > depth && _members.isObjectOpen() ) {
+
+                value = parseMemberValueLazily();
+
+            } else {
+
+                value = parseScalar();
+
+            }
+
+            // Hand the value to the container that it's in (closing any containers which end after it).
+
+            while ( true ) {
+
+                if ( _members.depth() == depth ) {
+
+                    return value;
+
+                }
+
+                _members.push( value );
+
+                skipWhiteSpace();
+                if ( _pos >= _end ) {
+
+                    throw unexpected();
+
+                }
+
+                boolean isObject = _members.isObjectOpen();
+                char c = _buf[_pos++];
+                if ( c == ',' ) {
+
+                    skipWhiteSpace();
+                    if ( isObject ) {
+
+                        parseMemberName();
+
+                    }
+
+                    break;
+
+                } else if ( c == ( isObject ? '}' : ']' ) ) {
+
+                    value = _members.close( _lazy );
+
+                } else {
+
+                    _pos -= 1;
+                    throw unexpected();
+
+                }
+
+            }
+
+        }
+
+    }
+
+    private Object parseScalar()
+            throws ParseException {
+
+        if ( _pos >= _end ) {
+
+            throw new ParseException( _pos, ParseException.ERROR_UNEXPECTED_TOKEN, null );
+
+        }
+
+        char c = _buf[_pos];
+        switch ( c ) {
+
+            case '"':
+                return parseString();
+
+            case 't':
+                expectLiteral( "true" );
+                return Boolean.TRUE;
+
+            case 'f':
+                expectLiteral( "false" );
+                return Boolean.FALSE;
+
+            case 'n':
+                expectLiteral( "null" );
+                return null;
+
+            default:
+
+                if ( c == '-' || ( c >= '0' && c <= '9' ) ) {
+
+                    return parseNumber();
+
+                }
+
+                throw new ParseException( _pos, ParseException.ERROR_UNEXPECTED_CHAR, c );
+
+        }
+
+    }
+
+    /**
+     Parse an object member's name and the colon after it, pushing the name onto the member stack
+     (the members are only copied into an exactly sized {@link JSONObject} once the object is closed; see {@link MemberStack}).
+     */
+
+    private void parseMemberName()
+            throws ParseException {
+
+        if ( _pos >= _end || _buf[_pos] != '"' ) {
+
+            throw unexpected();
+
+        }
+
+        String key = parseKey();
+
+        skipWhiteSpace();
+        if ( _pos >= _end || _buf[_pos] != ':' ) {
+
+            throw unexpected();
+
+        }
+
+        _pos += 1;
+        skipWhiteSpace();
+
+        _members.push( key );
+
+    }
+
+    /**
+     Parse an object member's value without decoding it if it is a string or a number.
+     <p/>The value is still checked so that malformed JSON is rejected now rather than when the value is eventually looked at.
+     Integers which are too long to be sure that they fit in a {@code long} are decoded right away for the same reason.
+     */
+
+    private Object parseMemberValueLazily()
+            throws ParseException {
+
+        if ( _pos < _end ) {
+
+            int start = _pos;
+            char c = _buf[_pos];
+            if ( c == '"' ) {
+
+                boolean hasEscapes = scanString();
+                return new LazyJsonValue( _buf, start + 1, _pos - 1, true, hasEscapes );
+
+            } else if ( c == '-' || ( c >= '0' && c <= '9' ) ) {
+
+                if ( scanNumber() ) {
+
+                    _pos = start;
+                    return parseNumber();
+
+                }
+
+                return new LazyJsonValue( _buf, start, _pos, false, false );
+
+            }
+
+        }
+
+        return parseScalar();
+
+    }
+
+    /**
+     Parse an object member's name.
+     <p/>Names which don't contain escapes are looked up in {@link WikiTreeJsonKeys} while they are still in the buffer
+     so that the very common WikiTree keys don't even get copied out of the buffer.
+     */
+
+    private String parseKey()
+            throws ParseException {
+
+        int start = _pos + 1;
+        int ix = start;
+        while ( ix < _end ) {
+
+            char c = _buf[ix];
+            if ( c == '"' ) {
+
+                String key = WikiTreeJsonKeys.lookup( _buf, start, ix - start );
+                if ( key == null ) {
+
+                    key = new String( _buf, start, ix - start );
+
+                }
+
+                _pos = ix + 1;
+                return key;
+
+            } else if ( c == '\\' ) {
+
+                break;
+
+            }
+
+            ix += 1;
+
+        }
+
+        return WikiTreeJsonKeys.canonical( parseString() );
+
+    }
+
+    /**
+     Parse a string starting at the opening double quote.
+     <p/>Strings without escapes (which is almost all of them in a WikiTree response) are copied straight out of the buffer.
+     Only strings which contain a backslash go through the scratch {@link StringBuilder}.
+     */
+
+    private String parseString()
+            throws ParseException {
+
+        int start = _pos + 1;
+        boolean hasEscapes = scanString();
+
+        return hasEscapes
+                ? decodeEscapedString( _buf, start, _pos - 1, _sb )
+                : new String( _buf, start, _pos - 1 - start );
+
+    }
+
+    /**
+     Find the end of a string which starts at the opening double quote, checking that its escapes are valid along the way.
+     <p/>Leaves {@link #_pos} just past the closing double quote.
+
+     @return {@code true} if the string contains at least one escape.
+     */
+
+    private boolean scanString()
+            throws ParseException {
+
+        boolean hasEscapes = false;
+        int ix = _pos + 1;
+        while ( ix < _end ) {
+
+            char c = _buf[ix++];
+            if ( c == '"' ) {
+
+                _pos = ix;
+                return hasEscapes;
+
+            } else if ( c != '\\' ) {
+
+                continue;
+
+            }
+
+            hasEscapes = true;
+            if ( ix >= _end ) {
+
+                break;
+
+            }
+
+            char e = _buf[ix++];
+            switch ( e ) {
+
+                case '"':
+                case '\\':
+                case '/':
+                case 'b':
+                case 'f':
+                case 'n':
+                case 'r':
+                case 't':
+                    break;
+
+                case 'u':
+
+                    if ( ix + 4 > _end ) {
+
+                        throw new ParseException( ix, ParseException.ERROR_UNEXPECTED_TOKEN, null );
+
+                    }
+
+                    for ( int i = 0; i < 4; i += 1 ) {
+
+                        if ( Character.digit( _buf[ix + i], 16 ) < 0 ) {
+
+                            throw new ParseException( ix + i, ParseException.ERROR_UNEXPECTED_CHAR, _buf[ix + i] );
+
+                        }
+
+                    }
+
+                    ix += 4;
+                    break;
+
+                default:
+
+                    throw new ParseException( ix - 1, ParseException.ERROR_UNEXPECTED_CHAR, e );
+
+            }
+
+        }
+
+        throw new ParseException( _end, ParseException.ERROR_UNEXPECTED_TOKEN, null );
+
+    }
+
+    /**
+     Decode the content of a string which has already been checked by {@link #scanString()} and which contains at least one escape.
+
+     @param buf   where the string lives.
+     @param start just after the opening double quote.
+     @param end   at the closing double quote.
+     @param sb    scratch space (its current content is discarded).
+     @return the decoded string.
+     */
+
+    static String decodeEscapedString( char[] buf, int start, int end, StringBuilder sb ) {
+
+        sb.setLength( 0 );
+        int ix = start;
+        while ( ix < end ) {
+
+            char c = buf[ix++];
+            if ( c != '\\' ) {
+
+                sb.append( c );
+                continue;
+
+            }
+
+            char e = buf[ix++];
+            switch ( e ) {
+
+                case 'b':
+                    sb.append( '\b' );
+                    break;
+
+                case 'f':
+                    sb.append( '\f' );
+                    break;
+
+                case 'n':
+                    sb.append( '\n' );
+                    break;
+
+                case 'r':
+                    sb.append( '\r' );
+                    break;
+
+                case 't':
+                    sb.append( '\t' );
+                    break;
+
+                case 'u':
+                    sb.append( (char)Integer.parseInt( new String( buf, ix, 4 ), 16 ) );
+                    ix += 4;
+                    break;
+
+                default:
+                    sb.append( e );     // '"', '\\' or '/'
+                    break;
+
+            }
+
+        }
+
+        return sb.toString();
+
+    }
+
+    /**
+     Parse a number.
+     <p/>Integers become a {@link Long} and anything with a fraction or an exponent becomes a {@link Double} (exactly what json-simple does).
+     */
+
+    private Object parseNumber()
+            throws ParseException {
+
+        int start = _pos;
+        scanNumber();
+
+        try {
+
+            return decodeNumber( _buf, start, _pos );
+
+        } catch ( NumberFormatException e ) {
+
+            throw new ParseException( start, ParseException.ERROR_UNEXPECTED_EXCEPTION, e );
+
+        }
+
+    }
+
+    /**
+     Find the end of a number, checking its syntax along the way.
+     <p/>Leaves {@link #_pos} just past the number.
+
+     @return {@code true} if the number is an integer which might not fit in a {@code long}.
+     */
+
+    private boolean scanNumber()
+            throws ParseException {
+
+        int start = _pos;
+        if ( _buf[_pos] == '-' ) {
+
+            _pos += 1;
+
+        }
+
+        int digitsStart = _pos;
+        while ( _pos < _end && _buf[_pos] >= '0' && _buf[_pos] <= '9' ) {
+
+            _pos += 1;
+
+        }
+
+        int digitCount = _pos - digitsStart;
+        if ( digitCount == 0 ) {
+
+            throw new ParseException( start, ParseException.ERROR_UNEXPECTED_CHAR, _buf[start] );
+
+        }
+
+        boolean isDouble = false;
+        if ( _pos < _end && _buf[_pos] == '.' ) {
+
+            isDouble = true;
+            _pos += 1;
+            skipDigits();
+
+        }
+
+        if ( _pos < _end && ( _buf[_pos] == 'e' || _buf[_pos] == 'E' ) ) {
+
+            isDouble = true;
+            _pos += 1;
+            if ( _pos < _end && ( _buf[_pos] == '+' || _buf[_pos] == '-' ) ) {
+
+                _pos += 1;
+
+            }
+
+            skipDigits();
+
+        }
+
+        return !isDouble && digitCount >= 19;
+
+    }
+
+    /**
+     Decode a number which has already been checked by {@link #scanNumber()}.
+
+     @param buf   where the number lives.
+     @param start where the number starts.
+     @param end   just past the end of the number.
+     @return a {@link Long} if the number has neither a fraction nor an exponent; a {@link Double} otherwise.
+     @throws NumberFormatException if the number is an integer which does not fit in a {@code long}.
+     */
+
+    static Object decodeNumber( char[] buf, int start, int end ) {
+
+        boolean negative = buf[start] == '-';
+        int ix = negative ? start + 1 : start;
+        long value = 0;
+        while ( ix < end ) {
+
+            char c = buf[ix];
+            if ( c < '0' || c > '9' ) {
+
+                return Double.valueOf( new String( buf, start, end - start ) );
+
+            }
+
+            value = value * 10 + ( c - '0' );
+            ix += 1;
+
+        }
+
+        if ( end - start < ( negative ? 20 : 19 ) ) {
+
+            // Can't possibly have overflowed.
+
+            return Long.valueOf( negative ? -value : value );
+
+        }
+
+        return Long.valueOf( new String( buf, start, end - start ) );
+
+    }
+
+    private void skipDigits()
+            throws ParseException {
+
+        int digitsStart = _pos;
+        while ( _pos < _end && _buf[_pos] >= '0' && _buf[_pos] <= '9' ) {
+
+            _pos += 1;
+
+        }
+
+        if ( _pos == digitsStart ) {
+
+            throw unexpected();
+
+        }
+
+    }
+
+    private void expectLiteral( String literal )
+            throws ParseException {
+
+        int length = literal.length();
+        if ( _pos + length > _end ) {
+
+            throw new ParseException( _pos, ParseException.ERROR_UNEXPECTED_TOKEN, null );
+
+        }
+
+        for ( int i = 0; i < length; i += 1 ) {
+
+            if ( _buf[_pos + i] != literal.charAt( i ) ) {
+
+                throw new ParseException( _pos + i, ParseException.ERROR_UNEXPECTED_CHAR, _buf[_pos + i] );
+
+            }
+
+        }
+
+        _pos += length;
+
+    }
+
+    private ParseException unexpected() {
+
+        if ( _pos >= _end ) {
+
+            return new ParseException( _pos, ParseException.ERROR_UNEXPECTED_TOKEN, null );
+
+        } else {
+
+            return new ParseException( _pos, ParseException.ERROR_UNEXPECTED_CHAR, _buf[_pos] );
+
+        }
+
+    }
+
+}
@@ -0,0 +1,61 @@
+/*
+ * Copyright © 2017 Daniel Boulet
+ */
+
+package com.matilda.wikitree.api.json;
+
+import org.jetbrains.annotations.NotNull;
+import org.json.simple.parser.JSONParser;
+import org.json.simple.parser.ParseException;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ The compatibility codec - parses things exactly the way that this API always has (using json-simple's {@link JSONParser}).
+ <p/>Each thread gets its own {@link JSONParser} which is reset and reused for every parse on that thread.
+ This avoids allocating a new lexer (with its own 16K {@code char[]} buffer and {@code StringBuffer}) for every response.
+ <p/>Objects are created by a {@link WikiTreeContainerFactory} so that known WikiTree keys are shared rather than duplicated in every profile.
+ <p/>Use this codec if you suspect that {@link FastJsonCodec} is getting something wrong
+ (and please tell danny@matilda.com about it if you find that it is).
+ */
+
+public class JsonSimpleCodec implements WikiTreeJsonCodec {
+
+    public static final String NAME = "json-simple";
+
+    private static final ThreadLocal<JSONParser> s_parsers = ThreadLocal.withInitial( JSONParser::new );
+
+    private static final WikiTreeContainerFactory s_containerFactory = new WikiTreeContainerFactory();
+
+    @NotNull
+    @Override
+    public String getName() {
+
+        return NAME;
+
+    }
+
+    @Override
+    public Object parse( @NotNull String jsonString )
+            throws ParseException {
+
+        return s_parsers.get().parse( jsonString, s_containerFactory );
+
+    }
+
+    @Override
+    public Object parse( @NotNull Reader reader )
+            throws IOException, ParseException {
+
+        return s_parsers.get().parse( reader, s_containerFactory );
+
+    }
+
+    public String toString() {
+
+        return "JsonSimpleCodec()";
+
+    }
+
+}
@@ -0,0 +1,300 @@
+/*
+ * Copyright © 2017 Daniel Boulet
+ */
+
+package com.matilda.wikitree.api.json;
+
+import org.jetbrains.annotations.NotNull;
+import org.json.simple.JSONObject;
+
+import java.util.AbstractMap;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+/**
+ A {@link JSONObject} whose string and number values may not have been decoded yet.
+ <p/>These are created by {@link FastJsonCodec} when it is asked to decode scalars lazily (see {@link FastJsonCodec#FastJsonCodec(boolean)}).
+ A value is decoded the first time that it is fetched via {@link #get(Object)} (or {@link #getOrDefault(Object, Object)})
+ and the decoded value replaces the undecoded one so that the work is only ever done once.
+ Everything else which could expose a value (iteration, {@link #values()}, {@link #equals(Object)}, {@link #toJSONString()}, etc)
+ decodes all the values first.
+ In other words, a {@code LazyJSONObject} looks exactly like a {@link JSONObject} with fully decoded values to anyone using it.
+ <p/>Copying a {@code LazyJSONObject} into another one via {@link #LazyJSONObject(Map)} keeps the values undecoded.
+ This is why {@link com.matilda.wikitree.api.wrappers.WikiTreeWrapper} extends this class - wrapping a lazily parsed profile does not force
+ every field to be decoded.
+ <p/>Instances are no more thread safe than any other {@link JSONObject}. Note in particular that {@link #get(Object)} may update the map.
+ */
+
+public class LazyJSONObject extends JSONObject {
+
+    private boolean _mayHaveLazyValues;
+
+    public LazyJSONObject() {
+
+        super();
+
+    }
+
+    /**
+     Create a copy of a map.
+     <p/>If the map is a {@code LazyJSONObject} then the copy gets its undecoded values.
+
+     @param map the map to be copied.
+     */
+
+    public LazyJSONObject( @NotNull Map map ) {
+
+        super( map instanceof LazyJSONObject ? ( (LazyJSONObject)map ).undecodedView() : map );
+
+        for ( Object value : super.values() ) {
+
+            if ( value instanceof LazyJsonValue ) {
+
+                _mayHaveLazyValues = true;
+                break;
+
+            }
+
+        }
+
+    }
+
+    /**
+     Get a view of this map which does not decode anything (for the copy constructor).
+     */
+
+    private Map undecodedView() {
+
+        return new AbstractMap<Object, Object>() {
+
+            @SuppressWarnings("unchecked")
+            @NotNull
+            @Override
+            public Set<Entry<Object, Object>> entrySet() {
+
+                return LazyJSONObject.super.entrySet();
+
+            }
+
+            @Override
+            public int size() {
+
+                return LazyJSONObject.this.size();
+
+            }
+
+        };
+
+    }
+
+    /**
+     Get this map's entries without decoding anything (for {@link WikiTreeJsonWriter}).
+     <p/>The values may include {@link LazyJsonValue}s.
+     */
+
+    @SuppressWarnings("unchecked")
+    Set<Map.Entry<Object, Object>> undecodedEntries() {
+
+        return super.entrySet();
+
+    }
+
+    /**
+     Decode everything that hasn't been decoded yet.
+     */
+
+    @SuppressWarnings("unchecked")
+    private void decodeAll() {
+
+        if ( _mayHaveLazyValues ) {
+
+            for ( Map.Entry<Object, Object> entry : (Set<Map.Entry<Object, Object>>)super.entrySet() ) {
+
+                if ( entry.getValue() instanceof LazyJsonValue ) {
+
+                    entry.setValue( ( (LazyJsonValue)entry.getValue() ).decode() );
+
+                }
+
+            }
+
+            _mayHaveLazyValues = false;
+
+        }
+
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public Object get( Object key ) {
+
+        Object value = super.get( key );
+        if ( value instanceof LazyJsonValue ) {
+
+            // Replacing the value of an existing key is not a structural modification so this is safe even during an iteration over the keys.
+
+            value = ( (LazyJsonValue)value ).decode();
+            super.put( key, value );
+
+        }
+
+        return value;
+
+    }
+
+    @Override
+    public Object getOrDefault( Object key, Object defaultValue ) {
+
+        return containsKey( key ) ? get( key ) : defaultValue;
+
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public Object put( Object key, Object value ) {
+
+        if ( value instanceof LazyJsonValue ) {
+
+            _mayHaveLazyValues = true;
+
+        }
+
+        return LazyJsonValue.resolve( super.put( key, value ) );
+
+    }
+
+    @Override
+    public Object remove( Object key ) {
+
+        return LazyJsonValue.resolve( super.remove( key ) );
+
+    }
+
+    @Override
+    public boolean remove( Object key, Object value ) {
+
+        decodeAll();
+        return super.remove( key, value );
+
+    }
+
+    @Override
+    public boolean containsValue( Object value ) {
+
+        decodeAll();
+        return super.containsValue( value );
+
+    }
+
+    @NotNull
+    @Override
+    public Collection values() {
+
+        decodeAll();
+        return super.values();
+
+    }
+
+    @NotNull
+    @Override
+    public Set entrySet() {
+
+        decodeAll();
+        return super.entrySet();
+
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public void forEach( BiConsumer action ) {
+
+        decodeAll();
+        super.forEach( action );
+
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public void replaceAll( BiFunction function ) {
+
+        decodeAll();
+        super.replaceAll( function );
+
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public Object putIfAbsent( Object key, Object value ) {
+
+        decodeAll();
+        return super.putIfAbsent( key, value );
+
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public boolean replace( Object key, Object oldValue, Object newValue ) {
+
+        decodeAll();
+        return super.replace( key, oldValue, newValue );
+
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public Object replace( Object key, Object value ) {
+
+        decodeAll();
+        return super.replace( key, value );
+
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public Object computeIfAbsent( Object key, Function mappingFunction ) {
+
+        decodeAll();
+        return super.computeIfAbsent( key, mappingFunction );
+
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public Object computeIfPresent( Object key, BiFunction remappingFunction ) {
+
+        decodeAll();
+        return super.computeIfPresent( key, remappingFunction );
+
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public Object compute( Object key, BiFunction remappingFunction ) {
+
+        decodeAll();
+        return super.compute( key, remappingFunction );
+
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public Object merge( Object key, Object value, BiFunction remappingFunction ) {
+
+        decodeAll();
+        return super.merge( key, value, remappingFunction );
+
+    }
+
+    @Override
+    public Object clone() {
+
+        decodeAll();
+        return super.clone();
+
+    }
+
+}
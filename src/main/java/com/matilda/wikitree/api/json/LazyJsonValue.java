@@ -0,0 +1,164 @@
+/*
+ * Copyright © 2017 Daniel Boulet
+ */
+
+package com.matilda.wikitree.api.json;
+
+import org.json.simple.JSONAware;
+
+import java.io.Serializable;
+
+/**
+ A JSON string or number which has been found by {@link FastJsonParser} but which has not been decoded yet.
+ <p/>Instances only ever live inside a {@link LazyJSONObject} which replaces them with their decoded value the first time that they are
+ looked at. They hold onto the (shared) character buffer that the response was parsed from until then.
+ <p/>The parser has already checked that the slice is valid so decoding it cannot fail.
+ */
+
+final class LazyJsonValue implements JSONAware, Serializable {
+
+    private final char[] _buf;
+
+    private final int _start;
+
+    private final int _end;
+
+    private final boolean _isString;
+
+    private final boolean _hasEscapes;
+
+    private Object _decoded;
+
+    /**
+     Describe a string or a number.
+
+     @param buf        the buffer that the value lives in.
+     @param start      where the value starts (just after the opening double quote for a string).
+     @param end        just past the end of the value (at the closing double quote for a string).
+     @param isString   {@code true} if this is a string; {@code false} if it is a number.
+     @param hasEscapes {@code true} if this is a string which contains at least one escape.
+     */
+
+    LazyJsonValue( char[] buf, int start, int end, boolean isString, boolean hasEscapes ) {
+
+        super();
+
+        _buf = buf;
+        _start = start;
+        _end = end;
+        _isString = isString;
+        _hasEscapes = hasEscapes;
+
+    }
+
+    /**
+     Decode this value.
+     <p/>There is no locking here. Two threads which decode the same value at the same time just do the work twice.
+
+     @return the {@link String}, {@link Long} or {@link Double} that this value stands for.
+     */
+
+    Object decode() {
+
+        Object rval = _decoded;
+        if ( rval == null ) {
+
+            if ( !_isString ) {
+
+                rval = FastJsonParser.decodeNumber( _buf, _start, _end );
+
+            } else if ( _hasEscapes ) {
+
+                rval = FastJsonParser.decodeEscapedString( _buf, _start, _end, new StringBuilder( _end - _start ) );
+
+            } else {
+
+                rval = new String( _buf, _start, _end - _start );
+
+            }
+
+            _decoded = rval;
+
+        }
+
+        return rval;
+
+    }
+
+    char[] getBuffer() {
+
+        return _buf;
+
+    }
+
+    int getStart() {
+
+        return _start;
+
+    }
+
+    int getEnd() {
+
+        return _end;
+
+    }
+
+    boolean isString() {
+
+        return _isString;
+
+    }
+
+    /**
+     Get the decoded value of something if it is a lazy value.
+
+     @param value the something.
+     @return the decoded value if {@code value} is a {@code LazyJsonValue}; otherwise, {@code value} itself.
+     */
+
+    static Object resolve( Object value ) {
+
+        return value instanceof LazyJsonValue ? ( (LazyJsonValue)value ).decode() : value;
+
+    }
+
+    /**
+     Render this value as JSON by copying it straight out of the buffer.
+     */
+
+    @Override
+    public String toJSONString() {
+
+        return _isString ? new String( _buf, _start - 1, _end - _start + 2 ) : new String( _buf, _start, _end - _start );
+
+    }
+
+    /**
+     Serialize the decoded value rather than the token (and its buffer).
+     */
+
+    private Object writeReplace() {
+
+        return decode();
+
+    }
+
+    public boolean equals( Object rhs ) {
+
+        return rhs instanceof LazyJsonValue ? decode().equals( ( (LazyJsonValue)rhs ).decode() ) : decode().equals( rhs );
+
+    }
+
+    public int hashCode() {
+
+        return decode().hashCode();
+
+    }
+
+    public String toString() {
+
+        return String.valueOf( decode() );
+
+    }
+
+}
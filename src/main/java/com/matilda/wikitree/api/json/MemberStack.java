@@ -0,0 +1,323 @@
+/*
+ * Copyright © 2017 Daniel Boulet
+ */
+
+package com.matilda.wikitree.api.json;
+
+import org.jetbrains.annotations.NotNull;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ Where our parsers collect the members of the objects and arrays which they are in the middle of parsing
+ (key, value, key, value, ... for objects).
+ <p/>Collecting the members first means that we know how many there are before we create the container.
+ {@code JSONObject} has no constructor which takes an initial capacity but {@code JSONObject(Map)} sizes its table to fit the map
+ that it is given so we hand it a view of the members and get an exactly sized table instead of a default sized one which may have to be rehashed.
+ Arrays are sized via {@link JSONArray#ensureCapacity(int)}.
+ <p/>Nested containers are always finished (and popped) before the container that they're in so one stack and one view serve any depth of nesting.
+ The stack also keeps track of the containers which are still open (see {@link #open(boolean)}) so that our parsers can handle
+ deeply nested input without recursing (and running out of thread stack).
+ Instances are not thread safe. Each parser instance has its own.
+ */
+
+final class MemberStack {
+
+    static final int INITIAL_STACK_SIZE = 256;
+
+    static final int MAX_RETAINED_STACK_SIZE = 64 * 1024;
+
+    static final int INITIAL_DEPTH = 64;
+
+    static final int MAX_RETAINED_DEPTH = 64 * 1024;
+
+    private Object[] _stack = new Object[INITIAL_STACK_SIZE];
+
+    private int _top;
+
+    /**
+     The open containers, innermost last. Each one is where its first member is on the stack times two plus one if it is an object.
+     */
+
+    private int[] _containers = new int[INITIAL_DEPTH];
+
+    private int _depth;
+
+    private final MembersView _membersView = new MembersView();
+
+    /**
+     Where the next member will go (pass this to {@link #popObject(int, boolean)} or {@link #popArray(int)} when the container is done).
+     */
+
+    int top() {
+
+        return _top;
+
+    }
+
+    void push( Object thing ) {
+
+        if ( _top == _stack.length ) {
+
+            _stack = Arrays.copyOf( _stack, _stack.length * 2 );
+
+        }
+
+        _stack[_top++] = thing;
+
+    }
+
+    /**
+     Turn the key, value pairs from {@code base} to the top of the stack into an object and pop them.
+
+     @param base where the object's first key is.
+     @param lazy {@code true} if the object should be a {@link LazyJSONObject}.
+     @return the object.
+     */
+
+    JSONObject popObject( int base, boolean lazy ) {
+
+        _membersView.set( base, _top );
+        JSONObject rval = lazy ? new LazyJSONObject( _membersView ) : new JSONObject( _membersView );
+        pop( base );
+
+        return rval;
+
+    }
+
+    /**
+     Turn the values from {@code base} to the top of the stack into an array and pop them.
+
+     @param base where the array's first value is.
+     @return the array.
+     */
+
+    @SuppressWarnings("unchecked")
+    JSONArray popArray( int base ) {
+
+        JSONArray rval = new JSONArray();
+        rval.ensureCapacity( _top - base );
+        for ( int i = base; i < _top; i += 1 ) {
+
+            rval.add( _stack[i] );
+
+        }
+
+        pop( base );
+
+        return rval;
+
+    }
+
+    /**
+     Note that a container has been opened. Its members are whatever gets pushed until it is {@link #close(boolean)}d.
+
+     @param isObject {@code true} if the container is an object (in which case its members are pushed as key, value pairs).
+     */
+
+    void open( boolean isObject ) {
+
+        if ( _depth == _containers.length ) {
+
+            _containers = Arrays.copyOf( _containers, _containers.length * 2 );
+
+        }
+
+        _containers[_depth++] = _top << 1 | ( isObject ? 1 : 0 );
+
+    }
+
+    /**
+     Get the number of containers which are open.
+     */
+
+    int depth() {
+
+        return _depth;
+
+    }
+
+    /**
+     Determine if the innermost open container is an object.
+     */
+
+    boolean isObjectOpen() {
+
+        return ( _containers[_depth - 1] & 1 ) != 0;
+
+    }
+
+    /**
+     Turn the innermost open container's members into an object or an array and pop them.
+
+     @param lazy {@code true} if an object should be a {@link LazyJSONObject}.
+     @return the {@link JSONObject} or {@link JSONArray}.
+     */
+
+    Object close( boolean lazy ) {
+
+        int container = _containers[--_depth];
+        int base = container >>> 1;
+
+        return ( container & 1 ) != 0 ? popObject( base, lazy ) : popArray( base );
+
+    }
+
+    /**
+     Empty the stack (after a failed parse, for example).
+     */
+
+    void clear() {
+
+        if ( _top > 0 ) {
+
+            pop( 0 );
+
+        }
+
+        _depth = 0;
+
+    }
+
+    /**
+     Don't let one huge response pin a huge stack to its thread forever.
+     */
+
+    void recycle() {
+
+        if ( _stack.length > MAX_RETAINED_STACK_SIZE ) {
+
+            _stack = new Object[INITIAL_STACK_SIZE];
+
+        }
+
+        if ( _containers.length > MAX_RETAINED_DEPTH ) {
+
+            _containers = new int[INITIAL_DEPTH];
+
+        }
+
+    }
+
+    private void pop( int base ) {
+
+        // Don't keep the values reachable from this thread after they've been handed over.
+
+        Arrays.fill( _stack, base, _top, null );
+        _top = base;
+
+    }
+
+    /**
+     A read-only {@link java.util.Map} view of a run of key, value pairs on the member stack.
+     <p/>This exists purely so that {@code new JSONObject( view )} can see how many members there are before it allocates its table.
+     The entry that the iterator yields is reused which is fine for {@link java.util.HashMap}'s copy constructor
+     (it only looks at each entry once) but would not be fine for much else - don't let this thing escape.
+     */
+
+    private final class MembersView extends AbstractMap<Object, Object> {
+
+        private int _from;
+
+        private int _to;
+
+        private final Set<Map.Entry<Object, Object>> _entrySet = new AbstractSet<Map.Entry<Object, Object>>() {
+
+            @Override
+            public Iterator<Map.Entry<Object, Object>> iterator() {
+
+                return new MembersIterator();
+
+            }
+
+            @Override
+            public int size() {
+
+                return MembersView.this.size();
+
+            }
+
+        };
+
+        private void set( int from, int to ) {
+
+            _from = from;
+            _to = to;
+
+        }
+
+        @Override
+        public int size() {
+
+            return ( _to - _from ) / 2;
+
+        }
+
+        @NotNull
+        @Override
+        public Set<Map.Entry<Object, Object>> entrySet() {
+
+            return _entrySet;
+
+        }
+
+        private final class MembersIterator implements Iterator<Map.Entry<Object, Object>>, Map.Entry<Object, Object> {
+
+            private int _ix = _from - 2;
+
+            @Override
+            public boolean hasNext() {
+
+                return _ix + 2 < _to;
+
+            }
+
+            @Override
+            public Map.Entry<Object, Object> next() {
+
+                if ( !hasNext() ) {
+
+                    throw new NoSuchElementException();
+
+                }
+
+                _ix += 2;
+
+                return this;
+
+            }
+
+            @Override
+            public Object getKey() {
+
+                return _stack[_ix];
+
+            }
+
+            @Override
+            public Object getValue() {
+
+                return _stack[_ix + 1];
+
+            }
+
+            @Override
+            public Object setValue( Object value ) {
+
+                throw new UnsupportedOperationException( "MemberStack.MembersView is read-only" );
+
+            }
+
+        }
+
+    }
+
+}
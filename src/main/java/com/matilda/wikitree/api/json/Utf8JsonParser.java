@@ -0,0 +1,667 @@
+/*
+ * Copyright © 2017 Daniel Boulet
+ */
+
+package com.matilda.wikitree.api.json;
+
+import org.jetbrains.annotations.NotNull;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.ParseException;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ A hand-written JSON parser which works directly on UTF-8 encoded bytes in a {@link ByteBuffer}.
+ <p/>This is {@link FastJsonParser}'s byte-level twin. It yields exactly the same results but skips the charset decoder,
+ the {@code char[]} copy of the response and everything in between.
+ Only the content of strings is ever turned into {@code char}s and only the content of strings which are actually kept.
+ Known WikiTree keys are resolved to their canonical instances (see {@link WikiTreeJsonKeys}) without creating a {@link String}.
+ <p/>The buffer is only ever read via absolute {@code get}s so heap, direct and memory-mapped buffers all work
+ and the buffer's position, limit and mark are never changed.
+ <p/>Malformed UTF-8 is rejected with a {@link ParseException} rather than being quietly replaced.
+ A leading byte order mark is skipped.
+ <p/>Instances are not thread safe but they are meant to be reused. {@link FastJsonCodec} keeps one per thread.
+ */
+
+final class Utf8JsonParser {
+
+    static final int INITIAL_CHARS_SIZE = 1024;
+
+    static final int MAX_RETAINED_CHARS_SIZE = 1024 * 1024;
+
+    private final MemberStack _members = new MemberStack();
+
+    /**
+     Where the content of strings is decoded (and numbers with fractions or exponents are copied) before they become {@link String}s.
+     */
+
+    private char[] _chars = new char[INITIAL_CHARS_SIZE];
+
+    private ByteBuffer _buf;
+
+    private int _pos;
+
+    private int _end;
+
+    /**
+     Parse the bytes between a buffer's position and its limit as exactly one JSON value surrounded by optional white space.
+
+     @param buf the buffer (its position, limit and mark are not changed).
+     @return the parsed value.
+     @throws ParseException if the bytes are not exactly one valid UTF-8 encoded JSON value.
+     */
+
+    Object parse( @NotNull ByteBuffer buf )
+            throws ParseException {
+
+        _buf = buf;
+        _pos = buf.position();
+        _end = buf.limit();
+        _members.clear();
+
+        try {
+
+            if (
+                    _end - _pos >= 3 &&
+                    buf.get( _pos ) == (byte)0xEF && buf.get( _pos + 1 ) == (byte)0xBB && buf.get( _pos + 2 ) == (byte)0xBF
+                    ) {
+
+                _pos += 3;
+
+            }
+
+            skipWhiteSpace();
+            Object rval = parseValue();
+            skipWhiteSpace();
+
+            if ( _pos != _end ) {
+
+                throw unexpected();
+
+            }
+
+            return rval;
+
+        } finally {
+
+            // Don't hang onto the caller's buffer (or whatever a failed parse left on the member stack).
+
+            _buf = null;
+            _members.clear();
+            _members.recycle();
+            if ( _chars.length > MAX_RETAINED_CHARS_SIZE ) {
+
+                _chars = new char[INITIAL_CHARS_SIZE];
+
+            }
+
+        }
+
+    }
+
+    private void skipWhiteSpace() {
+
+        while ( _pos < _end ) {
+
+            byte b = _buf.get( _pos );
+            if ( b == ' ' || b == '\n' || b == '\r' || b == '\t' ) {
+
+                _pos += 1;
+
+            } else {
+
+                break;
+
+            }
+
+        }
+
+    }
+
+    /**
+     Parse a value, which might be a container nested to any depth.
+     <p/>Containers are parsed without recursion (see {@link MemberStack#open(boolean)}) so very deeply nested input costs heap rather than thread stack.
+     */
+
+    private Object parseValue()
+            throws ParseException {
+
+        int depth = _members.depth();
+        while ( true ) {
+
+            Object value;
+            byte b = _pos < _end ? _buf.get( _pos ) : 0;
+            if ( b == '{' || b == '[' ) {
+
+                boolean isObject = b == '{';
+                _pos += 1;
+                skipWhiteSpace();
+                if ( _pos < _end && _buf.get( _pos ) == ( isObject ? '}' : ']' ) ) {
+
+                    _pos += 1;
+                    value = isObject ? new JSONObject() : new JSONArray();
+
+                } else {
+
+                    _members.open( isObject );
+                    if ( isObject ) {
+
+                        parseMemberName();
+
+                    }
+
+                    continue;
+
+                }
+
+            } else {
+
+                value = parseScalar();
+
+            }
+
+            // Hand the value to the container that it's in (closing any containers which end after it).
+
+            while ( true ) {
+
+                if ( _members.depth() == depth ) {
+
+                    return value;
+
+                }
+
+                _members.push( value );
+
+                skipWhiteSpace();
+                if ( _pos >= _end ) {
+
+                    throw unexpected();
+
+                }
+
+                boolean isObject = _members.isObjectOpen();
+                b = _buf.get( _pos++ );
+                if ( b == ',' ) {
+
+                    skipWhiteSpace();
+                    if ( isObject ) {
+
+                        parseMemberName();
+
+                    }
+
+                    break;
+
+                } else if ( b == ( isObject ? '}' : ']' ) ) {
+
+                    value = _members.close( false );
+
+                } else {
+
+                    _pos -= 1;
+                    throw unexpected();
+
+                }
+
+            }
+
+        }
+
+    }
+
+    private Object parseScalar()
+            throws ParseException {
+
+        if ( _pos >= _end ) {
+
+            throw new ParseException( _pos, ParseException.ERROR_UNEXPECTED_TOKEN, null );
+
+        }
+
+        byte b = _buf.get( _pos );
+        switch ( b ) {
+
+            case '"':
+                return parseString( false );
+
+            case 't':
+                expectLiteral( "true" );
+                return Boolean.TRUE;
+
+            case 'f':
+                expectLiteral( "false" );
+                return Boolean.FALSE;
+
+            case 'n':
+                expectLiteral( "null" );
+                return null;
+
+            default:
+
+                if ( b == '-' || ( b >= '0' && b <= '9' ) ) {
+
+                    return parseNumber();
+
+                }
+
+                throw unexpected();
+
+        }
+
+    }
+
+    /**
+     Parse an object member's name and the colon after it, pushing the name onto the member stack.
+     */
+
+    private void parseMemberName()
+            throws ParseException {
+
+        if ( _pos >= _end || _buf.get( _pos ) != '"' ) {
+
+            throw unexpected();
+
+        }
+
+        String key = parseString( true );
+
+        skipWhiteSpace();
+        if ( _pos >= _end || _buf.get( _pos ) != ':' ) {
+
+            throw unexpected();
+
+        }
+
+        _pos += 1;
+        skipWhiteSpace();
+
+        _members.push( key );
+
+    }
+
+    /**
+     Parse a string starting at the opening double quote.
+     <p/>Plain ASCII strings (which is almost all of them in a WikiTree response) are widened straight into the scratch {@code char[]}.
+     Escapes and multi-byte UTF-8 sequences are decoded along the way.
+
+     @param isKey {@code true} if this is an object member's name (the canonical instance is returned if it is a known WikiTree key).
+     */
+
+    private String parseString( boolean isKey )
+            throws ParseException {
+
+        int ix = _pos + 1;
+        int length = 0;
+        boolean plainAscii = true;
+        while ( true ) {
+
+            if ( ix >= _end ) {
+
+                throw new ParseException( _end, ParseException.ERROR_UNEXPECTED_TOKEN, null );
+
+            }
+
+            if ( length + 2 > _chars.length ) {
+
+                _chars = Arrays.copyOf( _chars, _chars.length * 2 );
+
+            }
+
+            int b = _buf.get( ix++ );
+            if ( b == '"' ) {
+
+                break;
+
+            } else if ( b == '\\' ) {
+
+                plainAscii = false;
+                ix = decodeEscape( ix, length );
+                length += 1;
+
+            } else if ( b >= 0 ) {
+
+                _chars[length++] = (char)b;
+
+            } else {
+
+                plainAscii = false;
+                ix = decodeMultiByte( b, ix, length );
+                length += Character.isHighSurrogate( _chars[length] ) ? 2 : 1;
+
+            }
+
+        }
+
+        _pos = ix;
+
+        if ( isKey && plainAscii ) {
+
+            String key = WikiTreeJsonKeys.lookup( _chars, 0, length );
+            if ( key != null ) {
+
+                return key;
+
+            }
+
+        }
+
+        String rval = new String( _chars, 0, length );
+        return isKey ? WikiTreeJsonKeys.canonical( rval ) : rval;
+
+    }
+
+    /**
+     Decode the escape which starts just after a backslash at {@code ix} into {@code _chars[length]}.
+
+     @return the index of the first byte after the escape.
+     */
+
+    private int decodeEscape( int ix, int length )
+            throws ParseException {
+
+        if ( ix >= _end ) {
+
+            throw new ParseException( _end, ParseException.ERROR_UNEXPECTED_TOKEN, null );
+
+        }
+
+        byte e = _buf.get( ix++ );
+        char c;
+        switch ( e ) {
+
+            case '"':
+            case '\\':
+            case '/':
+                c = (char)e;
+                break;
+
+            case 'b':
+                c = '\b';
+                break;
+
+            case 'f':
+                c = '\f';
+                break;
+
+            case 'n':
+                c = '\n';
+                break;
+
+            case 'r':
+                c = '\r';
+                break;
+
+            case 't':
+                c = '\t';
+                break;
+
+            case 'u':
+
+                if ( ix + 4 > _end ) {
+
+                    throw new ParseException( ix, ParseException.ERROR_UNEXPECTED_TOKEN, null );
+
+                }
+
+                int value = 0;
+                for ( int i = 0; i < 4; i += 1 ) {
+
+                    int digit = Character.digit( _buf.get( ix + i ), 16 );
+                    if ( digit < 0 ) {
+
+                        throw new ParseException( ix + i, ParseException.ERROR_UNEXPECTED_CHAR, (char)_buf.get( ix + i ) );
+
+                    }
+
+                    value = ( value << 4 ) | digit;
+
+                }
+
+                c = (char)value;
+                ix += 4;
+                break;
+
+            default:
+
+                throw new ParseException( ix - 1, ParseException.ERROR_UNEXPECTED_CHAR, (char)e );
+
+        }
+
+        _chars[length] = c;
+
+        return ix;
+
+    }
+
+    /**
+     Decode the multi-byte UTF-8 sequence whose first byte is {@code lead} into {@code _chars[length]} (and {@code _chars[length + 1]}
+     if it is outside the Basic Multilingual Plane).
+
+     @return the index of the first byte after the sequence.
+     */
+
+    private int decodeMultiByte( int lead, int ix, int length )
+            throws ParseException {
+
+        int start = ix - 1;
+        int extra;
+        int codePoint;
+        int min;
+        if ( ( lead & 0xE0 ) == 0xC0 ) {
+
+            extra = 1;
+            codePoint = lead & 0x1F;
+            min = 0x80;
+
+        } else if ( ( lead & 0xF0 ) == 0xE0 ) {
+
+            extra = 2;
+            codePoint = lead & 0x0F;
+            min = 0x800;
+
+        } else if ( ( lead & 0xF8 ) == 0xF0 ) {
+
+            extra = 3;
+            codePoint = lead & 0x07;
+            min = 0x10000;
+
+        } else {
+
+            throw malformedUtf8( start );
+
+        }
+
+        if ( ix + extra > _end ) {
+
+            throw malformedUtf8( start );
+
+        }
+
+        for ( int i = 0; i < extra; i += 1 ) {
+
+            int b = _buf.get( ix++ );
+            if ( ( b & 0xC0 ) != 0x80 ) {
+
+                throw malformedUtf8( start );
+
+            }
+
+            codePoint = ( codePoint << 6 ) | ( b & 0x3F );
+
+        }
+
+        // Reject overlong encodings, encoded surrogates and anything beyond U+10FFFF (just like the JDK's decoder does).
+
+        if ( codePoint < min || codePoint > Character.MAX_CODE_POINT || ( codePoint >= 0xD800 && codePoint <= 0xDFFF ) ) {
+
+            throw malformedUtf8( start );
+
+        }
+
+        Character.toChars( codePoint, _chars, length );
+
+        return ix;
+
+    }
+
+    private ParseException malformedUtf8( int ix ) {
+
+        return new ParseException( ix, ParseException.ERROR_UNEXPECTED_EXCEPTION, "malformed UTF-8" );
+
+    }
+
+    /**
+     Parse a number.
+     <p/>Integers are accumulated directly into a {@code long}. Anything with a fraction or an exponent becomes a {@link Double}
+     (exactly what json-simple does).
+     */
+
+    private Object parseNumber()
+            throws ParseException {
+
+        int start = _pos;
+        boolean negative = false;
+        if ( _buf.get( _pos ) == '-' ) {
+
+            negative = true;
+            _pos += 1;
+
+        }
+
+        int digitsStart = _pos;
+        long value = 0;
+        while ( _pos < _end ) {
+
+            byte b = _buf.get( _pos );
+            if ( b < '0' || b > '9' ) {
+
+                break;
+
+            }
+
+            value = value * 10 + ( b - '0' );
+            _pos += 1;
+
+        }
+
+        int digitCount = _pos - digitsStart;
+        if ( digitCount == 0 ) {
+
+            _pos = start;
+            throw unexpected();
+
+        }
+
+        boolean isDouble = false;
+        if ( _pos < _end && _buf.get( _pos ) == '.' ) {
+
+            isDouble = true;
+            _pos += 1;
+            skipDigits();
+
+        }
+
+        if ( _pos < _end && ( _buf.get( _pos ) == 'e' || _buf.get( _pos ) == 'E' ) ) {
+
+            isDouble = true;
+            _pos += 1;
+            if ( _pos < _end && ( _buf.get( _pos ) == '+' || _buf.get( _pos ) == '-' ) ) {
+
+                _pos += 1;
+
+            }
+
+            skipDigits();
+
+        }
+
+        if ( !isDouble && digitCount < 19 ) {
+
+            // Can't possibly have overflowed.
+
+            return Long.valueOf( negative ? -value : value );
+
+        }
+
+        // Rare enough that going via a String is just fine. The number is all ASCII so widening each byte is all the decoding needed.
+
+        int length = _pos - start;
+        if ( _chars.length < length ) {
+
+            _chars = new char[length];
+
+        }
+
+        for ( int i = 0; i < length; i += 1 ) {
+
+            _chars[i] = (char)_buf.get( start + i );
+
+        }
+
+        String text = new String( _chars, 0, length );
+
+        try {
+
+            return isDouble ? Double.valueOf( text ) : Long.valueOf( text );
+
+        } catch ( NumberFormatException e ) {
+
+            throw new ParseException( start, ParseException.ERROR_UNEXPECTED_EXCEPTION, e );
+
+        }
+
+    }
+
+    private void skipDigits()
+            throws ParseException {
+
+        int digitsStart = _pos;
+        while ( _pos < _end && _buf.get( _pos ) >= '0' && _buf.get( _pos ) <= '9' ) {
+
+            _pos += 1;
+
+        }
+
+        if ( _pos == digitsStart ) {
+
+            throw unexpected();
+
+        }
+
+    }
+
+    private void expectLiteral( String literal )
+            throws ParseException {
+
+        int length = literal.length();
+        if ( _pos + length > _end ) {
+
+            throw new ParseException( _pos, ParseException.ERROR_UNEXPECTED_TOKEN, null );
+
+        }
+
+        for ( int i = 0; i < length; i += 1 ) {
+
+            if ( _buf.get( _pos + i ) != literal.charAt( i ) ) {
+
+                throw new ParseException( _pos + i, ParseException.ERROR_UNEXPECTED_CHAR, (char)_buf.get( _pos + i ) );
+
+            }
+
+        }
+
+        _pos += length;
+
+    }
+
+    private ParseException unexpected() {
+
+        return _pos >= _end
+                ? new ParseException( _pos, ParseException.ERROR_UNEXPECTED_TOKEN, null )
+                : new ParseException( _pos, ParseException.ERROR_UNEXPECTED_CHAR, (char)( _buf.get( _pos ) & 0xFF ) );
+
+    }
+
+}
@@ -0,0 +1,53 @@
+/*
+ * Copyright © 2017 Daniel Boulet
+ */
+
+package com.matilda.wikitree.api.json;
+
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.ContainerFactory;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ A json-simple {@link ContainerFactory} which creates {@link JSONObject}s that replace known WikiTree keys with their canonical instances.
+ <p/>json-simple creates each key {@link String} before we get to see it so this doesn't save the allocation of the key itself but
+ it does mean that the result of parsing a large response refers to one copy of each known key rather than one copy per profile.
+ See {@link WikiTreeJsonKeys} for more information.
+ */
+
+public class WikiTreeContainerFactory implements ContainerFactory {
+
+    /**
+     A {@link JSONObject} which canonicalizes its keys as they are added.
+     */
+
+    public static class InterningJSONObject extends JSONObject {
+
+        @SuppressWarnings("unchecked")
+        @Override
+        public Object put( Object key, Object value ) {
+
+            return super.put( key instanceof String ? WikiTreeJsonKeys.canonical( (String)key ) : key, value );
+
+        }
+
+    }
+
+    @Override
+    public Map createObjectContainer() {
+
+        return new InterningJSONObject();
+
+    }
+
+    @Override
+    public List creatArrayContainer() {
+
+        return new JSONArray();
+
+    }
+
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright © 2017 Daniel Boulet
+ */
+
+package com.matilda.wikitree.api.json;
+
+import com.matilda.wikitree.api.util.WikiTreeApiUtilities;
+import org.jetbrains.annotations.NotNull;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.ParseException;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ Describe something which is able to turn the text of a WikiTree API server response into Java objects.
+ <p/>The rest of this API (and the wrappers in particular) are written in terms of what json-simple's
+ {@link org.json.simple.parser.JSONParser} produces. Consequently, every implementation of this interface must yield
+ <ul>
+ <li>a {@link JSONObject} for every JSON object,</li>
+ <li>a {@link JSONArray} for every JSON array,</li>
+ <li>a {@link Long} for every JSON number which has neither a fraction nor an exponent,</li>
+ <li>a {@link Double} for every other JSON number, and</li>
+ <li>a {@link String}, a {@link Boolean} or {@code null} for JSON strings, {@code true}/{@code false} and {@code null} respectively.</li>
+ </ul>
+ <p/>Implementations must be safe to use from more than one thread at a time.
+ <p/>See {@link WikiTreeApiUtilities#setJsonCodec(WikiTreeJsonCodec)} to change which codec this API uses.
+ */
+
+public interface WikiTreeJsonCodec {
+
+    /**
+     Get this codec's name.
+
+     @return a short human readable name for this codec (used in benchmark reports and the like).
+     */
+
+    @NotNull
+    String getName();
+
+    /**
+     Parse a string containing exactly one JSON value (leading and trailing white space is permitted).
+
+     @param jsonString the string to be parsed.
+     @return the parsed value.
+     @throws ParseException if the string is not valid JSON.
+     */
+
+    Object parse( @NotNull String jsonString )
+            throws ParseException;
+
+    /**
+     Parse everything that a {@link Reader} has to offer as exactly one JSON value.
+     <p/>The reader is read until it reports end-of-file. It is not closed by this method.
+
+     @param reader where to get the JSON text.
+     @return the parsed value.
+     @throws IOException    if something goes wrong reading from the reader.
+     @throws ParseException if what the reader has to offer is not valid JSON.
+     */
+
+    Object parse( @NotNull Reader reader )
+            throws IOException, ParseException;
+
+    /**
+     Parse UTF-8 encoded bytes as exactly one JSON value.
+     <p/>The bytes between the buffer's position and its limit are parsed. The buffer's position, limit and mark are not changed.
+     The buffer can be a heap buffer, a direct buffer or a memory-mapped file.
+     <p/>This default implementation decodes the bytes into a {@link String} and parses that.
+     Implementations are encouraged to do better.
+
+     @param utf8Json the buffer.
+     @return the parsed value.
+     @throws ParseException if the bytes are not valid JSON.
+     */
+
+    default Object parse( @NotNull ByteBuffer utf8Json )
+            throws ParseException {
+
+        return parse( StandardCharsets.UTF_8.decode( utf8Json.duplicate() ).toString() );
+
+    }
+
+}
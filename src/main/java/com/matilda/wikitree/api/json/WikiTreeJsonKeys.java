@@ -0,0 +1,174 @@
+/*
+ * Copyright © 2017 Daniel Boulet
+ */
+
+package com.matilda.wikitree.api.json;
+
+import com.matilda.wikitree.api.util.WikiTreeApiUtilities;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Collections;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+/**
+ The canonical instances of the key strings which appear over and over again in WikiTree API server responses.
+ <p/>Every profile in a response repeats the same 30-odd keys ({@code "Id"}, {@code "Name"}, {@code "BirthDate"}, etc).
+ Mapping each parsed key onto the one canonical {@link String} instance kept here means that a large {@code getAncestors}
+ or {@code getWatchlist} response holds one copy of each key rather than one copy per profile.
+ {@link FastJsonParser} goes one better and looks keys up directly in its character buffer so that known keys never get copied at all.
+ <p/>The table is a fixed-size open-addressing hash table built once from {@link WikiTreeApiUtilities#S_ALL_GET_PERSON_FIELDS_SET}
+ (including the undecorated names of the {@code "Derived."} fields since that's how they appear in responses)
+ and the keys which make up the structure of the various responses.
+ */
+
+public final class WikiTreeJsonKeys {
+
+    /**
+     Keys which appear in responses but which are not {@code getPerson} fields.
+     */
+
+    private static final String[] S_RESPONSE_STRUCTURE_KEYS = {
+            "user_name", "user_id", "page_name", "person", "profile", "status", "key", "items",
+            "ancestors", "watchlist", "watchlistCount", "bio", "login", "result", "username", "userid", "token",
+            "IsPerson", "IsSpace", "PageId", "Title", "Touched", "HasChildren", "NoChildren", "DataStatus",
+            "marriage_location", "marriage_date", "marriage_end_date", "do_not_display"
+    };
+
+    /**
+     All the canonical keys.
+     */
+
+    public static final SortedSet<String> S_ALL_KEYS;
+
+    private static final String[] s_table;
+
+    private static final int s_mask;
+
+    static {
+
+        SortedSet<String> tmpSet = new TreeSet<>();
+        for ( String field : WikiTreeApiUtilities.S_ALL_GET_PERSON_FIELDS_SET ) {
+
+            tmpSet.add( field );
+            if ( field.startsWith( "Derived." ) ) {
+
+                tmpSet.add( field.substring( "Derived.".length() ) );
+
+            }
+
+        }
+
+        Collections.addAll( tmpSet, S_RESPONSE_STRUCTURE_KEYS );
+
+        S_ALL_KEYS = Collections.unmodifiableSortedSet( tmpSet );
+
+        // At most one quarter full keeps the probe sequences very short.
+
+        int size = Integer.highestOneBit( tmpSet.size() * 4 - 1 ) << 1;
+        s_table = new String[size];
+        s_mask = size - 1;
+        for ( String key : tmpSet ) {
+
+            int ix = key.hashCode() & s_mask;
+            while ( s_table[ix] != null ) {
+
+                ix = ( ix + 1 ) & s_mask;
+
+            }
+
+            s_table[ix] = key;
+
+        }
+
+    }
+
+    private WikiTreeJsonKeys() {
+
+        super();
+
+    }
+
+    /**
+     Get the canonical instance of a key.
+
+     @param key the key.
+     @return the canonical instance of the key if it is a known key; otherwise, the key itself.
+     */
+
+    @NotNull
+    public static String canonical( @NotNull String key ) {
+
+        int ix = key.hashCode() & s_mask;
+        String candidate;
+        while ( ( candidate = s_table[ix] ) != null ) {
+
+            if ( candidate.equals( key ) ) {
+
+                return candidate;
+
+            }
+
+            ix = ( ix + 1 ) & s_mask;
+
+        }
+
+        return key;
+
+    }
+
+    /**
+     Find the canonical instance of a key which is sitting in a character buffer without creating a {@link String}.
+
+     @param buf    the buffer.
+     @param offset where the key starts.
+     @param length how long the key is.
+     @return the canonical instance of the key if it is a known key; {@code null} otherwise.
+     */
+
+    static String lookup( char[] buf, int offset, int length ) {
+
+        // Same hash as String.hashCode() so that the table works for both lookup methods.
+
+        int hash = 0;
+        for ( int i = 0; i < length; i += 1 ) {
+
+            hash = 31 * hash + buf[offset + i];
+
+        }
+
+        int ix = hash & s_mask;
+        String candidate;
+        while ( ( candidate = s_table[ix] ) != null ) {
+
+            if ( candidate.length() == length && regionMatches( candidate, buf, offset ) ) {
+
+                return candidate;
+
+            }
+
+            ix = ( ix + 1 ) & s_mask;
+
+        }
+
+        return null;
+
+    }
+
+    private static boolean regionMatches( String candidate, char[] buf, int offset ) {
+
+        for ( int i = 0; i < candidate.length(); i += 1 ) {
+
+            if ( candidate.charAt( i ) != buf[offset + i] ) {
+
+                return false;
+
+            }
+
+        }
+
+        return true;
+
+    }
+
+}
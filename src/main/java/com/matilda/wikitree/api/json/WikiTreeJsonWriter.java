@@ -0,0 +1,637 @@
+/*
+ * Copyright © 2017 Daniel Boulet
+ */
+
+package com.matilda.wikitree.api.json;
+
+import org.jetbrains.annotations.NotNull;
+import org.json.simple.JSONAware;
+import org.json.simple.JSONStreamAware;
+
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.List;
+import java.util.Map;
+
+/**
+ Write JSON values (including wrappers and anything else that json-simple could write) to a {@link Writer} or an {@link OutputStream}.
+ <p/>This is the fast alternative to {@code JSONObject.toJSONString()} and {@code JSONValue.writeJSONString()} for exporting large results.
+ It writes into a private buffer using lookup-table driven escaping, encodes UTF-8 itself when writing to an {@link OutputStream},
+ formats {@link Long}s without creating a {@link String} and walks maps and lists directly (no intermediate {@link StringBuffer}s).
+ <p/>The output is what json-simple would produce for the same value (same escapes, same number formats) with two exceptions:
+ <ul>
+ <li>{@link LazyJSONObject}s (which includes every {@link com.matilda.wikitree.api.wrappers.WikiTreeWrapper}) are written without
+ decoding their undecoded values. Those values are copied to the output exactly as they appeared in the text they were parsed from.</li>
+ <li>things which are not JSON values (a {@link com.matilda.wikitree.api.wrappers.WikiTreeId}, for example) are written as JSON strings
+ containing their {@code toString()} value. json-simple writes the {@code toString()} value unquoted (which is not valid JSON).</li>
+ </ul>
+ Instances are not thread safe. Nothing reaches the underlying {@link Writer} or {@link OutputStream} until the buffer fills up or
+ {@link #flush()} is called.
+ */
+
+public class WikiTreeJsonWriter implements Flushable {
+
+    private static final int BUFFER_SIZE = 8 * 1024;
+
+    /**
+     Room for the longest thing that we ever put in the buffer without checking (a four byte UTF-8 sequence).
+     */
+
+    private static final int SLOP = 4;
+
+    private static final char[] HEX_DIGITS = "0123456789ABCDEF".toCharArray();
+
+    /**
+     The escape for each character below U+00A0 which json-simple escapes ({@code null} for those which it doesn't).
+     */
+
+    private static final char[][] ESCAPES = new char[0xA0][];
+
+    static {
+
+        for ( int c = 0; c < ESCAPES.length; c += 1 ) {
+
+            if ( c <= 0x1F || c >= 0x7F ) {
+
+                ESCAPES[c] = unicodeEscape( (char)c );
+
+            }
+
+        }
+
+        ESCAPES['"'] = "\\\"".toCharArray();
+        ESCAPES['\\'] = "\\\\".toCharArray();
+        ESCAPES['/'] = "\\/".toCharArray();
+        ESCAPES['\b'] = "\\b".toCharArray();
+        ESCAPES['\f'] = "\\f".toCharArray();
+        ESCAPES['\n'] = "\\n".toCharArray();
+        ESCAPES['\r'] = "\\r".toCharArray();
+        ESCAPES['\t'] = "\\t".toCharArray();
+
+    }
+
+    private final Writer _writer;
+
+    private final OutputStream _outputStream;
+
+    private final char[] _chars;
+
+    private final byte[] _bytes;
+
+    private int _count;
+
+    private final char[] _digits = new char[20];
+
+    /**
+     Create a JSON writer which writes characters to a {@link Writer}.
+
+     @param writer where the JSON goes.
+     */
+
+    public WikiTreeJsonWriter( @NotNull Writer writer ) {
+
+        super();
+
+        _writer = writer;
+        _outputStream = null;
+        _chars = new char[BUFFER_SIZE];
+        _bytes = null;
+
+    }
+
+    /**
+     Create a JSON writer which writes UTF-8 encoded bytes to an {@link OutputStream}.
+
+     @param outputStream where the JSON goes.
+     */
+
+    public WikiTreeJsonWriter( @NotNull OutputStream outputStream ) {
+
+        super();
+
+        _writer = null;
+        _outputStream = outputStream;
+        _chars = null;
+        _bytes = new byte[BUFFER_SIZE];
+
+    }
+
+    /**
+     Render a value as a JSON string.
+
+     @param value the value.
+     @return its JSON representation.
+     */
+
+    @NotNull
+    public static String toJsonString( Object value ) {
+
+        StringWriter sw = new StringWriter();
+        WikiTreeJsonWriter jsonWriter = new WikiTreeJsonWriter( sw );
+
+        try {
+
+            jsonWriter.write( value );
+            jsonWriter.flush();
+
+        } catch ( IOException e ) {
+
+            throw new IllegalStateException( "WikiTreeJsonWriter.toJsonString:  StringWriter threw an IOException", e );
+
+        }
+
+        return sw.toString();
+
+    }
+
+    /**
+     Write a value.
+     <p/>Call this more than once to write a stream of values. It's up to you to write something between them if that's what you need
+     (see {@link #writeRaw(String)}).
+
+     @param value the value.
+     @throws IOException if the underlying {@link Writer} or {@link OutputStream} throws one.
+     */
+
+    public void write( Object value )
+            throws IOException {
+
+        if ( value == null ) {
+
+            writeRaw( "null" );
+
+        } else if ( value instanceof String ) {
+
+            writeString( (String)value );
+
+        } else if ( value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte ) {
+
+            writeLong( ( (Number)value ).longValue() );
+
+        } else if ( value instanceof Double ) {
+
+            Double d = (Double)value;
+            writeRaw( d.isInfinite() || d.isNaN() ? "null" : d.toString() );
+
+        } else if ( value instanceof Float ) {
+
+            Float f = (Float)value;
+            writeRaw( f.isInfinite() || f.isNaN() ? "null" : f.toString() );
+
+        } else if ( value instanceof Number || value instanceof Boolean ) {
+
+            writeRaw( value.toString() );
+
+        } else if ( value instanceof LazyJsonValue ) {
+
+            writeLazyValue( (LazyJsonValue)value );
+
+        } else if ( value instanceof LazyJSONObject ) {
+
+            writeMap( ( (LazyJSONObject)value ).undecodedEntries() );
+
+        } else if ( value instanceof Map ) {
+
+            writeMap( ( (Map<?, ?>)value ).entrySet() );
+
+        } else if ( value instanceof List ) {
+
+            writeList( (List<?>)value );
+
+        } else if ( value instanceof JSONStreamAware || value instanceof JSONAware ) {
+
+            // Somebody else's idea of how to write JSON.
+
+            flushBuffer();
+            if ( _writer != null ) {
+
+                if ( value instanceof JSONStreamAware ) {
+
+                    ( (JSONStreamAware)value ).writeJSONString( _writer );
+
+                } else {
+
+                    _writer.write( ( (JSONAware)value ).toJSONString() );
+
+                }
+
+            } else {
+
+                writeRaw(
+                        value instanceof JSONAware
+                                ? ( (JSONAware)value ).toJSONString()
+                                : toJsonStringViaStream( (JSONStreamAware)value )
+                );
+
+            }
+
+        } else {
+
+            writeString( value.toString() );
+
+        }
+
+    }
+
+    private static String toJsonStringViaStream( JSONStreamAware value )
+            throws IOException {
+
+        StringWriter sw = new StringWriter();
+        value.writeJSONString( sw );
+
+        return sw.toString();
+
+    }
+
+    private void writeMap( Iterable<? extends Map.Entry<?, ?>> entries )
+            throws IOException {
+
+        writeAscii( '{' );
+        boolean first = true;
+        for ( Map.Entry<?, ?> entry : entries ) {
+
+            if ( !first ) {
+
+                writeAscii( ',' );
+
+            }
+
+            first = false;
+
+            writeString( String.valueOf( entry.getKey() ) );
+            writeAscii( ':' );
+            write( entry.getValue() );
+
+        }
+
+        writeAscii( '}' );
+
+    }
+
+    private void writeList( List<?> list )
+            throws IOException {
+
+        writeAscii( '[' );
+        boolean first = true;
+        for ( Object element : list ) {
+
+            if ( !first ) {
+
+                writeAscii( ',' );
+
+            }
+
+            first = false;
+
+            write( element );
+
+        }
+
+        writeAscii( ']' );
+
+    }
+
+    /**
+     Write a value which is still in the form that it was parsed from (it's already valid, escaped, JSON).
+     */
+
+    private void writeLazyValue( LazyJsonValue value )
+            throws IOException {
+
+        if ( value.isString() ) {
+
+            writeAscii( '"' );
+            writeVerbatim( value.getBuffer(), value.getStart(), value.getEnd() );
+            writeAscii( '"' );
+
+        } else {
+
+            writeVerbatim( value.getBuffer(), value.getStart(), value.getEnd() );
+
+        }
+
+    }
+
+    /**
+     Write something which is already JSON (or part of it) without escaping it.
+     <p/>This is how to put separators (newlines, commas, etc) between values written by {@link #write(Object)}.
+
+     @param json the text to write.
+     @throws IOException if the underlying {@link Writer} or {@link OutputStream} throws one.
+     */
+
+    public void writeRaw( @NotNull String json )
+            throws IOException {
+
+        int length = json.length();
+        for ( int i = 0; i < length; i += 1 ) {
+
+            char c = json.charAt( i );
+            if ( Character.isHighSurrogate( c ) && i + 1 < length ) {
+
+                i += writeSurrogates( c, json.charAt( i + 1 ) );
+
+            } else {
+
+                writeChar( c );
+
+            }
+
+        }
+
+    }
+
+    private void writeVerbatim( char[] buf, int start, int end )
+            throws IOException {
+
+        for ( int i = start; i < end; i += 1 ) {
+
+            char c = buf[i];
+            if ( Character.isHighSurrogate( c ) && i + 1 < end ) {
+
+                i += writeSurrogates( c, buf[i + 1] );
+
+            } else {
+
+                writeChar( c );
+
+            }
+
+        }
+
+    }
+
+    private void writeString( String s )
+            throws IOException {
+
+        writeAscii( '"' );
+
+        int length = s.length();
+        for ( int i = 0; i < length; i += 1 ) {
+
+            char c = s.charAt( i );
+            if ( c < ESCAPES.length ) {
+
+                char[] escape = ESCAPES[c];
+                if ( escape == null ) {
+
+                    writeChar( c );
+
+                } else {
+
+                    for ( char e : escape ) {
+
+                        writeAscii( e );
+
+                    }
+
+                }
+
+            } else if ( c >= 0x2000 && c <= 0x20FF ) {
+
+                // json-simple escapes these too.
+
+                for ( char e : unicodeEscape( c ) ) {
+
+                    writeAscii( e );
+
+                }
+
+            } else if ( Character.isHighSurrogate( c ) && i + 1 < length ) {
+
+                i += writeSurrogates( c, s.charAt( i + 1 ) );
+
+            } else {
+
+                writeChar( c );
+
+            }
+
+        }
+
+        writeAscii( '"' );
+
+    }
+
+    private void writeLong( long value )
+            throws IOException {
+
+        if ( value == Long.MIN_VALUE ) {
+
+            writeRaw( Long.toString( value ) );
+            return;
+
+        }
+
+        if ( value < 0 ) {
+
+            writeAscii( '-' );
+            value = -value;
+
+        }
+
+        // Fill in the digits from the right.
+
+        int ix = _digits.length;
+        do {
+
+            _digits[--ix] = (char)( '0' + value % 10 );
+            value /= 10;
+
+        } while ( value != 0 );
+
+        for ( ; ix < _digits.length; ix += 1 ) {
+
+            writeAscii( _digits[ix] );
+
+        }
+
+    }
+
+    /**
+     Write a character that we know to be ASCII.
+     */
+
+    private void writeAscii( char c )
+            throws IOException {
+
+        if ( _count == BUFFER_SIZE ) {
+
+            flushBuffer();
+
+        }
+
+        if ( _chars != null ) {
+
+            _chars[_count++] = c;
+
+        } else {
+
+            //noinspection ConstantConditions
+            _bytes[_count++] = (byte)c;
+
+        }
+
+    }
+
+    /**
+     Write any character (UTF-8 encoding it if we're writing bytes).
+     */
+
+    private void writeChar( char c )
+            throws IOException {
+
+        if ( _chars != null || c < 0x80 ) {
+
+            writeAscii( c );
+            return;
+
+        }
+
+        ensureRoom();
+        if ( c < 0x800 ) {
+
+            _bytes[_count++] = (byte)( 0xC0 | ( c >> 6 ) );
+            _bytes[_count++] = (byte)( 0x80 | ( c & 0x3F ) );
+
+        } else if ( Character.isSurrogate( c ) ) {
+
+            // An unpaired surrogate can't be encoded - do what the JDK's encoder does.
+
+            writeReplacementCharacter();
+
+        } else {
+
+            _bytes[_count++] = (byte)( 0xE0 | ( c >> 12 ) );
+            _bytes[_count++] = (byte)( 0x80 | ( ( c >> 6 ) & 0x3F ) );
+            _bytes[_count++] = (byte)( 0x80 | ( c & 0x3F ) );
+
+        }
+
+    }
+
+    /**
+     Write a high surrogate and (if it really is one) the low surrogate which follows it.
+
+     @return the number of extra characters consumed (1 if {@code low} was written, 0 otherwise).
+     */
+
+    private int writeSurrogates( char high, char low )
+            throws IOException {
+
+        if ( _chars != null ) {
+
+            writeAscii( high );
+            if ( Character.isLowSurrogate( low ) ) {
+
+                writeAscii( low );
+                return 1;
+
+            }
+
+            return 0;
+
+        }
+
+        ensureRoom();
+        if ( Character.isLowSurrogate( low ) ) {
+
+            int codePoint = Character.toCodePoint( high, low );
+            _bytes[_count++] = (byte)( 0xF0 | ( codePoint >> 18 ) );
+            _bytes[_count++] = (byte)( 0x80 | ( ( codePoint >> 12 ) & 0x3F ) );
+            _bytes[_count++] = (byte)( 0x80 | ( ( codePoint >> 6 ) & 0x3F ) );
+            _bytes[_count++] = (byte)( 0x80 | ( codePoint & 0x3F ) );
+
+            return 1;
+
+        }
+
+        writeReplacementCharacter();
+
+        return 0;
+
+    }
+
+    private void writeReplacementCharacter() {
+
+        _bytes[_count++] = (byte)0xEF;
+        _bytes[_count++] = (byte)0xBF;
+        _bytes[_count++] = (byte)0xBD;
+
+    }
+
+    private void ensureRoom()
+            throws IOException {
+
+        if ( _count > BUFFER_SIZE - SLOP ) {
+
+            flushBuffer();
+
+        }
+
+    }
+
+    private void flushBuffer()
+            throws IOException {
+
+        if ( _count > 0 ) {
+
+            if ( _writer != null ) {
+
+                _writer.write( _chars, 0, _count );
+
+            } else {
+
+                //noinspection ConstantConditions
+                _outputStream.write( _bytes, 0, _count );
+
+            }
+
+            _count = 0;
+
+        }
+
+    }
+
+    /**
+     Push everything written so far to the underlying {@link Writer} or {@link OutputStream} and flush it.
+     <p/>This does not close the underlying {@link Writer} or {@link OutputStream}.
+
+     @throws IOException if the underlying {@link Writer} or {@link OutputStream} throws one.
+     */
+
+    @Override
+    public void flush()
+            throws IOException {
+
+        flushBuffer();
+
+        if ( _writer != null ) {
+
+            _writer.flush();
+
+        } else {
+
+            //noinspection ConstantConditions
+            _outputStream.flush();
+
+        }
+
+    }
+
+    private static char[] unicodeEscape( char c ) {
+
+        return new char[]{ '\\', 'u', HEX_DIGITS[( c >> 12 ) & 0xF], HEX_DIGITS[( c >> 8 ) & 0xF], HEX_DIGITS[( c >> 4 ) & 0xF], HEX_DIGITS[c & 0xF] };
+
+    }
+
+    public String toString() {
+
+        return "WikiTreeJsonWriter( " + ( _writer != null ? "writer" : "UTF-8 output stream" ) + " )";
+
+    }
+
+}
@@ -0,0 +1,1026 @@
+/*
+ * Copyright © 2017 Daniel Boulet
+ */
+
+package com.matilda.wikitree.api.jsonclient;
+
+import com.matilda.wikitree.api.json.WikiTreeJsonWriter;
+import com.matilda.wikitree.api.util.WikiTreeApiUtilities;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.ParseException;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.ProtocolException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+/**
+ A {@link WikiTreeTransport} which either records the traffic going through another transport or replays recorded traffic.
+ <p/>In {@link Mode#RECORD} mode each request goes through the other transport as usual and the exchange (the request's method and URL,
+ the response's code, headers and raw body, and how long the whole thing took) is appended to a zip archive.
+ The {@code email} and {@code password} parameters are replaced by {@value #REDACTED} before the URL is recorded and so are
+ the values of any cookies that the server sets. Nothing is recorded for a request until its response body has been read and closed.
+ Call {@link #close()} once recording is done (the archive is unreadable until then).
+ <p/>In {@link Mode#REPLAY} mode the whole archive is loaded into memory and requests are answered from it without going anywhere near
+ the network. Requests are matched by method, path and (redacted) parameters, but not by host, so traffic recorded against the production
+ server can be replayed by a session pointed anywhere. A request which was recorded several times gets the recorded responses in turn
+ (starting over once they've all been used). Each response can optionally be delayed so that it takes as long as it did when it was recorded.
+ <blockquote>
+ {@code RecordReplayTransport recorder = new RecordReplayTransport( WikiTreeTransport.DEFAULT, new File( "traffic.zip" ) );}<br>
+ {@code session.setTransport( recorder );}<br>
+ ...<br>
+ {@code recorder.close();}<br>
+ {@code otherSession.setTransport( new RecordReplayTransport( new File( "traffic.zip" ), false ) );}
+ </blockquote>
+ */
+
+public class RecordReplayTransport implements WikiTreeTransport, Closeable {
+
+    public enum Mode {
+        RECORD,
+        REPLAY
+    }
+
+    private final Mode _mode;
+
+    private final File _archive;
+
+    private final WikiTreeTransport _delegate;
+
+    private final boolean _replayLatency;
+
+    private ZipOutputStream _zip;
+
+    private int _exchangeCount;
+
+    private final Map<String, Exchange[]> _exchanges;
+
+    private final Map<String, AtomicInteger> _nextExchange;
+
+    /**
+     One recorded request and its response.
+     */
+
+    private static final class Exchange {
+
+        private final String _method;
+
+        private final String _url;
+
+        private final int _code;
+
+        private final Map<String, List<String>> _headers;
+
+        private final long _latencyNanos;
+
+        private final byte[] _body;
+
+        private Exchange( String method, String url, int code, Map<String, List<String>> headers, long latencyNanos, byte[] body ) {
+
+            super();
+
+            _method = method;
+            _url = url;
+            _code = code;
+            _headers = headers;
+            _latencyNanos = latencyNanos;
+            _body = body;
+
+        }
+
+    }
+
+    /**
+     Record the traffic going through a transport.
+
+     @param delegate the transport that actually sends the requests.
+     @param archive  the archive to write (it is replaced if it already exists).
+     @throws IOException if the archive cannot be created.
+     */
+
+    public RecordReplayTransport( @NotNull WikiTreeTransport delegate, @NotNull File archive )
+            throws IOException {
+
+        super();
+
+        _mode = Mode.RECORD;
+        _archive = archive;
+        _delegate = delegate;
+        _replayLatency = false;
+        _zip = new ZipOutputStream( new FileOutputStream( archive ) );
+        _exchanges = null;
+        _nextExchange = null;
+
+    }
+
+    /**
+     Replay recorded traffic.
+
+     @param archive       an archive written by a recording instance.
+     @param replayLatency {@code true} if each response is to take as long as it did when it was recorded;
+     {@code false} if responses are to be available immediately.
+     @throws IOException if the archive cannot be read or doesn't contain what it should.
+     */
+
+    public RecordReplayTransport( @NotNull File archive, boolean replayLatency )
+            throws IOException {
+
+        super();
+
+        _mode = Mode.REPLAY;
+        _archive = archive;
+        _delegate = null;
+        _replayLatency = replayLatency;
+
+        Map<String, List<Exchange>> exchanges = new HashMap<>();
+        for ( Exchange exchange : readArchive( archive ) ) {
+
+            exchanges.computeIfAbsent( key( exchange._method, exchange._url ), k -> new ArrayList<>() ).add( exchange );
+            _exchangeCount += 1;
+
+        }
+
+        _exchanges = new HashMap<>();
+        _nextExchange = new HashMap<>();
+        for ( Map.Entry<String, List<Exchange>> entry : exchanges.entrySet() ) {
+
+            _exchanges.put( entry.getKey(), entry.getValue().toArray( new Exchange[0] ) );
+            _nextExchange.put( entry.getKey(), new AtomicInteger() );
+
+        }
+
+    }
+
+    @NotNull
+    public Mode getMode() {
+
+        return _mode;
+
+    }
+
+    @NotNull
+    public File getArchive() {
+
+        return _archive;
+
+    }
+
+    /**
+     Get how many exchanges have been recorded (in record mode) or were loaded from the archive (in replay mode).
+     */
+
+    public synchronized int getExchangeCount() {
+
+        return _exchangeCount;
+
+    }
+
+    @Override
+    @NotNull
+    public HttpURLConnection openConnection( @NotNull URL url )
+            throws IOException {
+
+        if ( _mode == Mode.RECORD ) {
+
+            synchronized ( this ) {
+
+                if ( _zip == null ) {
+
+                    throw new IOException( "RecordReplayTransport:  recording to " + _archive + " has been closed" );
+
+                }
+
+            }
+
+            return new RecordingConnection( url, _delegate.openConnection( url ) );
+
+        } else {
+
+            return new ReplayConnection( url );
+
+        }
+
+    }
+
+    /**
+     Finish writing the archive (does nothing in replay mode or if the archive has already been finished).
+
+     @throws IOException if the archive cannot be finished.
+     */
+
+    @Override
+    public synchronized void close()
+            throws IOException {
+
+        if ( _zip != null ) {
+
+            ZipOutputStream zip = _zip;
+            _zip = null;
+            zip.close();
+
+        }
+
+    }
+
+    /**
+     Replace the value of a {@code Set-Cookie} header (leaving the cookie's name and attributes alone).
+     */
+
+    private static String redactCookie( String setCookie ) {
+
+        int equals = setCookie.indexOf( '=' );
+        if ( equals < 0 ) {
+
+            return setCookie;
+
+        }
+
+        int semiColon = setCookie.indexOf( ';', equals );
+
+        return setCookie.substring( 0, equals + 1 ) + WikiTreeRequest.REDACTED + ( semiColon < 0 ? "" : setCookie.substring( semiColon ) );
+
+    }
+
+    /**
+     Work out what a request is matched by (its method, path and redacted parameters but not its host).
+     */
+
+    private static String key( String method, String redactedUrl ) {
+
+        int scheme = redactedUrl.indexOf( "://" );
+        int path = scheme < 0 ? 0 : redactedUrl.indexOf( '/', scheme + 3 );
+
+        return method + " " + ( path < 0 ? "/" : redactedUrl.substring( path ) );
+
+    }
+
+    private static String recordedUrl( URL url, @Nullable ByteArrayOutputStream requestBody ) {
+
+        String recorded = WikiTreeRequest.redact( url.toString() );
+        if ( requestBody != null && requestBody.size() > 0 ) {
+
+            recorded += ( recorded.contains( "?" ) ? "&" : "?" ) + WikiTreeRequest.redact( new String( requestBody.toByteArray(), StandardCharsets.UTF_8 ) );
+
+        }
+
+        return recorded;
+
+    }
+
+    @SuppressWarnings("unchecked")
+    private synchronized void record( Exchange exchange )
+            throws IOException {
+
+        if ( _zip == null ) {
+
+            return;
+
+        }
+
+        JSONObject headers = new JSONObject();
+        for ( Map.Entry<String, List<String>> header : exchange._headers.entrySet() ) {
+
+            JSONArray values = new JSONArray();
+            values.addAll( header.getValue() );
+            headers.put( header.getKey(), values );
+
+        }
+
+        JSONObject meta = new JSONObject();
+        meta.put( "method", exchange._method );
+        meta.put( "url", exchange._url );
+        meta.put( "code", (long)exchange._code );
+        meta.put( "latencyNanos", exchange._latencyNanos );
+        meta.put( "headers", headers );
+
+        _exchangeCount += 1;
+        String name = String.format( "exchange-%06d", _exchangeCount );
+
+        _zip.putNextEntry( new ZipEntry( name + ".json" ) );
+        _zip.write( WikiTreeJsonWriter.toJsonString( meta ).getBytes( StandardCharsets.UTF_8 ) );
+        _zip.closeEntry();
+
+        _zip.putNextEntry( new ZipEntry( name + ".body" ) );
+        _zip.write( exchange._body );
+        _zip.closeEntry();
+
+    }
+
+    private static List<Exchange> readArchive( File archive )
+            throws IOException {
+
+        Map<String, JSONObject> metas = new TreeMap<>();
+        Map<String, byte[]> bodies = new HashMap<>();
+        try ( ZipInputStream zip = new ZipInputStream( new FileInputStream( archive ) ) ) {
+
+            ZipEntry entry;
+            while ( ( entry = zip.getNextEntry() ) != null ) {
+
+                byte[] content = readFully( zip );
+                String name = entry.getName();
+                if ( name.endsWith( ".json" ) ) {
+
+                    try {
+
+                        metas.put( name.substring( 0, name.length() - ".json".length() ), WikiTreeApiUtilities.parseJsonObject( new String( content, StandardCharsets.UTF_8 ) ) );
+
+                    } catch ( ParseException e ) {
+
+                        throw new IOException( "RecordReplayTransport:  " + archive + " entry " + name + " is not valid JSON", e );
+
+                    }
+
+                } else if ( name.endsWith( ".body" ) ) {
+
+                    bodies.put( name.substring( 0, name.length() - ".body".length() ), content );
+
+                }
+
+            }
+
+        }
+
+        List<Exchange> exchanges = new ArrayList<>();
+        for ( Map.Entry<String, JSONObject> entry : metas.entrySet() ) {
+
+            byte[] body = bodies.get( entry.getKey() );
+            if ( body == null ) {
+
+                throw new IOException( "RecordReplayTransport:  " + archive + " has no body for " + entry.getKey() );
+
+            }
+
+            JSONObject meta = entry.getValue();
+            Map<String, List<String>> headers = new LinkedHashMap<>();
+            JSONObject recordedHeaders = (JSONObject)meta.get( "headers" );
+            if ( recordedHeaders != null ) {
+
+                for ( Object name : recordedHeaders.keySet() ) {
+
+                    List<String> values = new ArrayList<>();
+                    for ( Object value : (JSONArray)recordedHeaders.get( name ) ) {
+
+                        values.add( (String)value );
+
+                    }
+
+                    headers.put( (String)name, Collections.unmodifiableList( values ) );
+
+                }
+
+            }
+
+            exchanges.add(
+                    new Exchange(
+                            (String)meta.get( "method" ),
+                            (String)meta.get( "url" ),
+                            ( (Number)meta.get( "code" ) ).intValue(),
+                            Collections.unmodifiableMap( headers ),
+                            ( (Number)meta.get( "latencyNanos" ) ).longValue(),
+                            body
+                    )
+            );
+
+        }
+
+        return exchanges;
+
+    }
+
+    private static byte[] readFully( InputStream is )
+            throws IOException {
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int count;
+        while ( ( count = is.read( buffer ) ) >= 0 ) {
+
+            baos.write( buffer, 0, count );
+
+        }
+
+        return baos.toByteArray();
+
+    }
+
+    /**
+     A connection which passes everything through to a real connection and records the exchange once the response body has been closed
+     (or, for an error response, as soon as anyone asks for its response code or error stream).
+     */
+
+    private class RecordingConnection extends HttpURLConnection {
+
+        private final HttpURLConnection _connection;
+
+        private final long _openedNanos = System.nanoTime();
+
+        private ByteArrayOutputStream _requestBody;
+
+        private boolean _recorded;
+
+        /**
+         The body of an error response (once it has been read and recorded).
+         */
+
+        private byte[] _errorBody;
+
+        private RecordingConnection( URL url, HttpURLConnection connection ) {
+
+            super( url );
+
+            _connection = connection;
+
+        }
+
+        @Override
+        public void setRequestMethod( String method )
+                throws ProtocolException {
+
+            super.setRequestMethod( method );
+            _connection.setRequestMethod( method );
+
+        }
+
+        @Override
+        public String getRequestMethod() {
+
+            return _connection.getRequestMethod();
+
+        }
+
+        @Override
+        public void setDoInput( boolean doInput ) {
+
+            _connection.setDoInput( doInput );
+
+        }
+
+        @Override
+        public void setDoOutput( boolean doOutput ) {
+
+            _connection.setDoOutput( doOutput );
+
+        }
+
+        @Override
+        public void setFixedLengthStreamingMode( int contentLength ) {
+
+            _connection.setFixedLengthStreamingMode( contentLength );
+
+        }
+
+        @Override
+        public void setFixedLengthStreamingMode( long contentLength ) {
+
+            _connection.setFixedLengthStreamingMode( contentLength );
+
+        }
+
+        @Override
+        public void setChunkedStreamingMode( int chunkLength ) {
+
+            _connection.setChunkedStreamingMode( chunkLength );
+
+        }
+
+        @Override
+        public void setConnectTimeout( int timeout ) {
+
+            _connection.setConnectTimeout( timeout );
+
+        }
+
+        @Override
+        public void setReadTimeout( int timeout ) {
+
+            _connection.setReadTimeout( timeout );
+
+        }
+
+        @Override
+        public void setRequestProperty( String key, String value ) {
+
+            _connection.setRequestProperty( key, value );
+
+        }
+
+        @Override
+        public void addRequestProperty( String key, String value ) {
+
+            _connection.addRequestProperty( key, value );
+
+        }
+
+        @Override
+        public String getRequestProperty( String key ) {
+
+            return _connection.getRequestProperty( key );
+
+        }
+
+        @Override
+        public void connect()
+                throws IOException {
+
+            _connection.connect();
+
+        }
+
+        @Override
+        public void disconnect() {
+
+            _connection.disconnect();
+
+        }
+
+        @Override
+        public boolean usingProxy() {
+
+            return _connection.usingProxy();
+
+        }
+
+        /**
+         Get the response code, recording the exchange right away if it is an error response.
+         <p/>Callers generally don't ask for the input stream of an error response so this is our only chance to record it.
+         */
+
+        @Override
+        public int getResponseCode()
+                throws IOException {
+
+            int code = _connection.getResponseCode();
+            if ( code >= HTTP_BAD_REQUEST ) {
+
+                recordErrorResponse();
+
+            }
+
+            return code;
+
+        }
+
+        @Override
+        public String getResponseMessage()
+                throws IOException {
+
+            return _connection.getResponseMessage();
+
+        }
+
+        @Override
+        public Map<String, List<String>> getHeaderFields() {
+
+            return _connection.getHeaderFields();
+
+        }
+
+        @Override
+        public String getHeaderField( String name ) {
+
+            return _connection.getHeaderField( name );
+
+        }
+
+        @Override
+        public String getHeaderFieldKey( int n ) {
+
+            return _connection.getHeaderFieldKey( n );
+
+        }
+
+        @Override
+        public String getHeaderField( int n ) {
+
+            return _connection.getHeaderField( n );
+
+        }
+
+        @Override
+        public InputStream getErrorStream() {
+
+            try {
+
+                if ( _connection.getResponseCode() >= HTTP_BAD_REQUEST ) {
+
+                    recordErrorResponse();
+
+                }
+
+            } catch ( IOException e ) {
+
+                return _connection.getErrorStream();
+
+            }
+
+            return _errorBody == null ? null : new ByteArrayInputStream( _errorBody );
+
+        }
+
+        /**
+         Read and record an error response's body (which is then handed out by {@link #getErrorStream()}).
+         */
+
+        private void recordErrorResponse()
+                throws IOException {
+
+            if ( _errorBody != null ) {
+
+                return;
+
+            }
+
+            InputStream errorStream = _connection.getErrorStream();
+            if ( errorStream == null ) {
+
+                _errorBody = new byte[0];
+
+            } else {
+
+                try {
+
+                    _errorBody = readFully( errorStream );
+
+                } finally {
+
+                    errorStream.close();
+
+                }
+
+            }
+
+            recordOnce( _errorBody );
+
+        }
+
+        @Override
+        public OutputStream getOutputStream()
+                throws IOException {
+
+            if ( _requestBody == null ) {
+
+                _requestBody = new ByteArrayOutputStream();
+
+            }
+
+            return new FilterOutputStream( _connection.getOutputStream() ) {
+
+                @Override
+                public void write( int b )
+                        throws IOException {
+
+                    out.write( b );
+                    _requestBody.write( b );
+
+                }
+
+                @Override
+                public void write( @NotNull byte[] b, int off, int len )
+                        throws IOException {
+
+                    out.write( b, off, len );
+                    _requestBody.write( b, off, len );
+
+                }
+
+            };
+
+        }
+
+        @Override
+        public InputStream getInputStream()
+                throws IOException {
+
+            InputStream inputStream;
+            try {
+
+                inputStream = _connection.getInputStream();
+
+            } catch ( IOException e ) {
+
+                // Record the failure (along with its body if it is an error response).
+
+                if ( _connection.getResponseCode() >= HTTP_BAD_REQUEST ) {
+
+                    recordErrorResponse();
+
+                } else {
+
+                    recordOnce( new byte[0] );
+
+                }
+
+                throw e;
+
+            }
+
+            ByteArrayOutputStream body = new ByteArrayOutputStream();
+
+            return new FilterInputStream( inputStream ) {
+
+                @Override
+                public int read()
+                        throws IOException {
+
+                    int b = in.read();
+                    if ( b >= 0 ) {
+
+                        body.write( b );
+
+                    }
+
+                    return b;
+
+                }
+
+                @Override
+                public int read( @NotNull byte[] b, int off, int len )
+                        throws IOException {
+
+                    int count = in.read( b, off, len );
+                    if ( count > 0 ) {
+
+                        body.write( b, off, count );
+
+                    }
+
+                    return count;
+
+                }
+
+                @Override
+                public long skip( long n )
+                        throws IOException {
+
+                    long skipped = 0;
+                    while ( skipped < n && read() >= 0 ) {
+
+                        skipped += 1;
+
+                    }
+
+                    return skipped;
+
+                }
+
+                @Override
+                public void close()
+                        throws IOException {
+
+                    try {
+
+                        super.close();
+
+                    } finally {
+
+                        recordOnce( body.toByteArray() );
+
+                    }
+
+                }
+
+            };
+
+        }
+
+        private void recordOnce( byte[] body )
+                throws IOException {
+
+            if ( _recorded ) {
+
+                return;
+
+            }
+
+            _recorded = true;
+
+            Map<String, List<String>> headers = new LinkedHashMap<>();
+            for ( Map.Entry<String, List<String>> header : _connection.getHeaderFields().entrySet() ) {
+
+                if ( header.getKey() == null ) {
+
+                    continue;
+
+                }
+
+                List<String> values = new ArrayList<>( header.getValue() );
+                if ( "Set-Cookie".equalsIgnoreCase( header.getKey() ) ) {
+
+                    values.replaceAll( RecordReplayTransport::redactCookie );
+
+                }
+
+                headers.put( header.getKey(), values );
+
+            }
+
+            record(
+                    new Exchange(
+                            _connection.getRequestMethod(),
+                            recordedUrl( getURL(), _requestBody ),
+                            _connection.getResponseCode(),
+                            headers,
+                            System.nanoTime() - _openedNanos,
+                            body
+                    )
+            );
+
+        }
+
+    }
+
+    /**
+     A connection which answers from the archive.
+     */
+
+    private class ReplayConnection extends HttpURLConnection {
+
+        private final long _openedNanos = System.nanoTime();
+
+        private ByteArrayOutputStream _requestBody;
+
+        private Exchange _exchange;
+
+        private ReplayConnection( URL url ) {
+
+            super( url );
+
+        }
+
+        /**
+         Find the exchange (we can't do this until the request body, if any, has been written).
+         */
+
+        private Exchange exchange()
+                throws IOException {
+
+            if ( _exchange == null ) {
+
+                String key = key( getRequestMethod(), recordedUrl( getURL(), _requestBody ) );
+                Exchange[] exchanges = _exchanges.get( key );
+                if ( exchanges == null ) {
+
+                    throw new IOException( "RecordReplayTransport:  " + _archive + " has no response for " + key );
+
+                }
+
+                _exchange = exchanges[Math.floorMod( _nextExchange.get( key ).getAndIncrement(), exchanges.length )];
+
+                if ( _replayLatency ) {
+
+                    long remaining = _exchange._latencyNanos - ( System.nanoTime() - _openedNanos );
+                    if ( remaining > 0 ) {
+
+                        try {
+
+                            TimeUnit.NANOSECONDS.sleep( remaining );
+
+                        } catch ( InterruptedException e ) {
+
+                            Thread.currentThread().interrupt();
+                            throw new IOException( "RecordReplayTransport:  interrupted while replaying latency", e );
+
+                        }
+
+                    }
+
+                }
+
+            }
+
+            return _exchange;
+
+        }
+
+        @Override
+        public void connect() {
+
+            connected = true;
+
+        }
+
+        @Override
+        public void disconnect() {
+
+        }
+
+        @Override
+        public boolean usingProxy() {
+
+            return false;
+
+        }
+
+        @Override
+        public OutputStream getOutputStream() {
+
+            if ( _requestBody == null ) {
+
+                _requestBody = new ByteArrayOutputStream();
+
+            }
+
+            return _requestBody;
+
+        }
+
+        @Override
+        public int getResponseCode()
+                throws IOException {
+
+            return exchange()._code;
+
+        }
+
+        @Override
+        public Map<String, List<String>> getHeaderFields() {
+
+            return _exchange == null ? Collections.emptyMap() : _exchange._headers;
+
+        }
+
+        @Override
+        public String getHeaderField( String name ) {
+
+            for ( Map.Entry<String, List<String>> header : getHeaderFields().entrySet() ) {
+
+                if ( header.getKey().equalsIgnoreCase( name ) && !header.getValue().isEmpty() ) {
+
+                    return header.getValue().get( header.getValue().size() - 1 );
+
+                }
+
+            }
+
+            return null;
+
+        }
+
+        @Override
+        public InputStream getInputStream()
+                throws IOException {
+
+            Exchange exchange = exchange();
+            if ( exchange._code >= HTTP_BAD_REQUEST ) {
+
+                throw new IOException( "RecordReplayTransport:  replayed HTTP response code " + exchange._code + " for " + exchange._url );
+
+            }
+
+            return new ByteArrayInputStream( exchange._body );
+
+        }
+
+        @Override
+        public InputStream getErrorStream() {
+
+            try {
+
+                Exchange exchange = exchange();
+
+                return exchange._code >= HTTP_BAD_REQUEST ? new ByteArrayInputStream( exchange._body ) : null;
+
+            } catch ( IOException e ) {
+
+                return null;
+
+            }
+
+        }
+
+    }
+
+    public String toString() {
+
+        return "RecordReplayTransport( " + _mode + " " + _archive + ", " + getExchangeCount() + " exchanges" +
+               ( _mode == Mode.REPLAY ? ( _replayLatency ? ", with recorded latency" : ", at memory speed" ) : "" ) + " )";
+
+    }
+
+}
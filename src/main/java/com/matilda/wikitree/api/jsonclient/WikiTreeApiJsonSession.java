@@ -6,21 +6,32 @@ package com.matilda.wikitree.api.jsonclient;
 
 import com.matilda.wikitree.api.WikiTreeApiClient;
 import com.matilda.wikitree.api.exceptions.ReallyBadNewsError;
+import com.matilda.wikitree.api.jfr.WikiTreeFlightRecorder;
+import com.matilda.wikitree.api.metrics.RequestPhase;
+import com.matilda.wikitree.api.metrics.RequestTimings;
+import com.matilda.wikitree.api.metrics.WikiTreeRequestMetrics;
 import com.matilda.wikitree.api.util.WikiTreeApiUtilities;
 import com.matilda.wikitree.api.wrappers.WikiTreeId;
-import com.sun.corba.se.spi.monitoring.StatisticsAccumulator;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import org.json.simple.JSONObject;
 import org.json.simple.parser.ParseException;
 
+import javax.management.JMException;
+import javax.management.ObjectName;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
 import java.net.HttpURLConnection;
 import java.net.URL;
-import java.net.URLConnection;
-import java.util.Collection;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
-import java.util.Vector;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  A purely(?) JSON-based Java implementation of the WikiTree API.
@@ -41,25 +52,88 @@ public class WikiTreeApiJsonSession implements WikiTreeApiClient {
 
     public static final String DEFAULT_BASE_SERVER_URL_STRING = "https://apps.wikitree.com/api.php";
 
-    private static final StatisticsAccumulator s_innerRequestStats = new StatisticsAccumulator( "ms" );
+    /**
+     How long a request's URL can get before the request is sent as a form-encoded POST instead of a GET
+     (see {@link #setPostThreshold(int)}).
+     <p/>Most servers and proxies accept URLs up to 8K or so but some stop at around 2K.
+     */
+
+    public static final int DEFAULT_POST_THRESHOLD = 2000;
+
+    /**
+     The most {@code getPerson} lookups that are combined into one request unless told otherwise
+     (see {@link #setMaxBatchSize(int)}).
+     */
+
+    public static final int DEFAULT_MAX_BATCH_SIZE = 100;
+
+    /**
+     How long a login which is known to work is trusted to keep working (see {@link #setAutomaticReLogin(boolean)}).
+     <p/>A {@code "Permission denied."} response to a request made with such a login is taken to be a real refusal
+     (a private profile whose trusted list the account isn't on, for example) rather than a sign that the login has expired.
+     */
+
+    public static final long LOGIN_TRUST_MILLIS = 60_000L;
+
+    private static final WikiTreeRequestMetrics s_requestMetrics = new WikiTreeRequestMetrics();
 
     private static int _miniServerPort;
 
     private static String _miniServerUrlString;
 
-    private String _baseServerUrlString;
+    private final String _baseServerUrlString;
+
+    /**
+     Swapped (never changed) by each login attempt so that requests can read it without taking a lock (see {@link WikiTreeCredentials}).
+     */
+
+    private final AtomicReference<WikiTreeCredentials> _credentials = new AtomicReference<>( WikiTreeCredentials.ANONYMOUS );
 
-    private Vector<String> _loginCookies;
+    /**
+     Held while logging in again after the server forgot about our login so that only one request does it.
+     */
+
+    private final Object _reLoginLock = new Object();
+
+    private volatile boolean _automaticReLogin = true;
 
-    private String _authenticatedUserEmailAddress;
+    private volatile String _reLoginPassword;
 
-    private String _authenticatedWikiTreeId;
+    private final AtomicInteger _reLoginCount = new AtomicInteger();
 
-    private String _loginResultStatus;
+    private volatile VerifiedLogin _verifiedLogin;
+
+    private volatile WikiTreeCredentialStore _credentialStore;
+
+    private volatile WikiTreeResponseCache _responseCache;
+
+    private volatile WikiTreePersonCache _personCache;
 
     private static boolean s_showUrls = false;
 
-    private JSONObject _lastLoginResult;
+    private static final AtomicInteger s_sessionCounter = new AtomicInteger();
+
+    private final WikiTreeRequestMetrics _metrics = new WikiTreeRequestMetrics( s_requestMetrics );
+
+    private ObjectName _metricsMBeanName;
+
+    private static final WikiTreeRequestListener[] NO_LISTENERS = new WikiTreeRequestListener[0];
+
+    /**
+     Copy-on-write so that a request only has to read a field (and check the length of an empty array) when nobody is listening.
+     */
+
+    private volatile WikiTreeRequestListener[] _listeners = NO_LISTENERS;
+
+    private final Object _listenersLock = new Object();
+
+    private volatile WikiTreeTransport _transport = WikiTreeTransport.DEFAULT;
+
+    private volatile int _postThreshold = DEFAULT_POST_THRESHOLD;
+
+    private volatile WikiTreePersonBatcher _personBatcher;
+
+    private volatile int _maxBatchSize = DEFAULT_MAX_BATCH_SIZE;
 
     /**
      Create a reusable anonymous WikiTree API client instance which sends its requests to the production WikiTree API server.
@@ -142,7 +216,7 @@ public class WikiTreeApiJsonSession implements WikiTreeApiClient {
     @Override
     public String getLoginResultStatus() {
 
-        return _loginResultStatus;
+        return _credentials.get().getLoginResultStatus();
 
     }
 
@@ -159,7 +233,7 @@ public class WikiTreeApiJsonSession implements WikiTreeApiClient {
     @Override
     public boolean isAuthenticated() {
 
-        return _loginCookies != null;
+        return _credentials.get().isAuthenticated();
 
     }
 
@@ -173,7 +247,7 @@ public class WikiTreeApiJsonSession implements WikiTreeApiClient {
     @Override
     public String getAuthenticatedUserEmailAddress() {
 
-        return _authenticatedUserEmailAddress;
+        return _credentials.get().getEmailAddress();
 
     }
 
@@ -187,223 +261,388 @@ public class WikiTreeApiJsonSession implements WikiTreeApiClient {
     @Override
     public String getAuthenticatedWikiTreeId() {
 
-        return _authenticatedWikiTreeId;
+        return _credentials.get().getWikiTreeId();
+
+    }
+
+    /**
+     Get this session's current login state.
+     <p/>The session's other login related getters each read the current state independently. Use this method instead
+     if you need several of them to agree with each other (for example, the authenticated email address and WikiTree ID)
+     while another thread might be logging in.
+
+     @return an immutable snapshot of this session's login state.
+     */
+
+    @NotNull
+    public WikiTreeCredentials getCredentials() {
+
+        return _credentials.get();
 
     }
 
     /**
      Login to the WikiTree API server.
      <p/>See {@link WikiTreeApiClient#login(String, String)} for more info.
+     <p/>If this session has a credential store (see {@link #setCredentialStore(WikiTreeCredentialStore)}) which holds
+     unexpired cookies for this email address and password then they are used without asking the server. Otherwise, a
+     successful login's cookies are saved in the store for next time.
+     <p/>Unless automatic re-login is turned off (see {@link #setAutomaticReLogin(boolean)}), the password is kept
+     so that the session can login again if the server forgets about this login.
      */
 
-    @SuppressWarnings("unchecked")
     @Override
     public boolean login( @NotNull String emailAddress, @NotNull String password )
             throws IOException, ParseException {
 
-        JSONObject requestParams = new JSONObject();
-        requestParams.put( "action", "login" );
-        requestParams.put( "email", emailAddress );
-        requestParams.put( "password", password );
-        requestParams.put( "fields", "*" );
-        requestParams.put( "format", "json" );
+        WikiTreeCredentialStore store = _credentialStore;
+        if ( store != null ) {
+
+            Optional<WikiTreeCredentials> saved = store.load( emailAddress, password );
+            if ( saved.isPresent() ) {
+
+                _credentials.set( saved.get() );
+                _reLoginPassword = _automaticReLogin ? password : null;
+
+                return true;
+
+            }
+
+        }
+
+        return loginViaServer( emailAddress, password );
+
+    }
+
+    private boolean loginViaServer( @NotNull String emailAddress, @NotNull String password )
+            throws IOException, ParseException {
+
+        WikiTreeRequest.Login loginRequest = new WikiTreeRequest.Login( emailAddress, password );
 
         // Make the login attempt.
-        // Note that we don't need to do anything with the result of this call since it will have been
-        // preserved in {@code _lastLoginRequest} by {@link #requestViaHttpGet(JSONObject)}
-        // when it intercepts and processes the login attempt that this call to {@code makeRequest} is making.
+        // The attempt's outcome replaces this session's login state in one step regardless of whether or not it worked.
+        // Requests which are already in flight carry on with whatever state they started with.
+
+        List<String> setCookies = new ArrayList<>();
+        Optional<JSONObject> loginResult = makeRequest( loginRequest, setCookies );
+        if ( !loginResult.isPresent() ) {
+
+            System.err.println( "got null response from login attempt for " + emailAddress );
+
+        }
+
+        WikiTreeCredentials credentials;
+        try {
 
-        makeRequest( requestParams );
+            credentials = WikiTreeCredentials.fromLoginResult( emailAddress, loginResult.orElse( null ), setCookies );
 
-	/*
-     Figure out if the login worked.
-	 */
+        } catch ( ReallyBadNewsError e ) {
 
-        boolean worked = analyzeLoginResult( emailAddress, _lastLoginResult );
+            // Paranoia rules supreme! Don't leave the session authenticated as whoever it was before the attempt.
 
-        // Paranoia rules supreme!
+            _credentials.set( WikiTreeCredentials.ANONYMOUS );
 
-        if ( !worked || _loginCookies == null ) {
+            throw e;
+
+        }
+
+        _credentials.set( credentials );
+        _reLoginPassword = credentials.isAuthenticated() && _automaticReLogin ? password : null;
+        if ( credentials.isAuthenticated() ) {
 
-            _authenticatedWikiTreeId = null;
-            _authenticatedUserEmailAddress = null;
-            _loginCookies = null;
+            // The server just accepted these so a refusal right away is a real one.
+
+            _verifiedLogin = new VerifiedLogin( credentials );
 
         }
 
-	/*
-    Note that a successful login request results in the server sending us http cookies which must be provided on all future
-	calls to the server via this instance. These cookies are grabbed by one of the rather low level routines that this method
-	calls (quite indirectly). Consequently, the only sure way to determine if this call actually worked is to check if this instance has
-	references to these login cookies. This check must be done just before this method returns. Consequently, we do it here.
-	 */
+        WikiTreeCredentialStore store = _credentialStore;
+        if ( store != null && credentials.isAuthenticated() ) {
+
+            try {
+
+                store.save( credentials, password );
 
-        return _loginCookies != null;
+            } catch ( IOException e ) {
+
+                // Not being able to save the cookies for next time is no reason to fail this time.
+
+                System.err.println( "WikiTreeApiJsonSession.login:  unable to save login in " + store + " - " + e.getMessage() );
+
+            }
+
+        }
+
+        return credentials.isAuthenticated();
 
     }
 
     /**
-     Get the result from the most recent login attempt.
-     @return the {@link JSONObject} returned by the WikiTree API server.
+     Specify where this session keeps its login cookies between runs.
+     <p/>See {@link #login(String, String)} for how the store is used.
+
+     @param credentialStore the store ({@code null} to not keep them).
+     @return the previous store.
      */
 
-    public Optional<JSONObject> getLastLoginResult() {
+    @Nullable
+    public WikiTreeCredentialStore setCredentialStore( @Nullable WikiTreeCredentialStore credentialStore ) {
+
+        WikiTreeCredentialStore rval = _credentialStore;
+        _credentialStore = credentialStore;
+
+        return rval;
+
+    }
+
+    @Nullable
+    public WikiTreeCredentialStore getCredentialStore() {
+
+        return _credentialStore;
+
+    }
+
+    /**
+     Specify whether this session logs in again when its login expires.
+     <p/>A login has expired if the cookies that the server sent with it say so or if the server refuses a request
+     with {@code "Permission denied."} even though the request carried the login's cookies (requests for information
+     that anonymous users are allowed to see just quietly come back anonymous; there's no way to tell).
+     <p/>The server also says {@code "Permission denied."} when an account simply isn't allowed to see something (a private profile
+     whose trusted list the account isn't on, for example). So a refusal only counts as an expired login if the login hasn't been
+     shown to work in the last {@link #LOGIN_TRUST_MILLIS} milliseconds (by logging in or by an earlier check) and a quick
+     {@code getWatchlist} request, which any logged-in account is allowed to make, is refused too.
+     A refused {@code getWatchlist} request is its own check.
+     Either way, a bulk job which runs into lots of private profiles costs at most one extra request per {@link #LOGIN_TRUST_MILLIS} and no logins.
+     <p/>When that happens, the session logs in again once with the email address and password of the last successful login
+     and, if that works, repeats the request. If several requests notice at about the same time, one of them logs in
+     and the rest wait for it and then use the new login. If logging in again doesn't work then the session ends up
+     anonymous (it doesn't keep trying).
+     <p/>This is on by default. Turning it off makes the session forget the password.
+
+     @param automaticReLogin {@code true} to login again; {@code false} to not.
+     @return the previous setting.
+     */
+
+    public boolean setAutomaticReLogin( boolean automaticReLogin ) {
 
-        return Optional.ofNullable( _lastLoginResult );
+        boolean rval = _automaticReLogin;
+        _automaticReLogin = automaticReLogin;
+        if ( !automaticReLogin ) {
+
+            _reLoginPassword = null;
+
+        }
+
+        return rval;
+
+    }
+
+    public boolean isAutomaticReLogin() {
+
+        return _automaticReLogin;
+
+    }
+
+    /**
+     Specify a cache for this session's responses.
+     <p/>Several sessions can share a cache. Each only sees responses that were fetched with the same login (or anonymously
+     if it isn't logged in). Login requests and failed requests are never cached.
+     Responses which come out of the cache skip the request metrics and listeners (nothing was requested).
+
+     @param responseCache the cache ({@code null} for no caching, which is the default).
+     @return the previous cache.
+     */
+
+    @Nullable
+    public WikiTreeResponseCache setResponseCache( @Nullable WikiTreeResponseCache responseCache ) {
+
+        WikiTreeResponseCache rval = _responseCache;
+        _responseCache = responseCache;
+
+        return rval;
+
+    }
+
+    @Nullable
+    public WikiTreeResponseCache getResponseCache() {
+
+        return _responseCache;
 
     }
 
     /**
-     Analyze the result of a login attempt.
-     <p/>This method also erases any authentication information left by a previous successful login attempt and records
-     equivalent authentication information if this login attempt is deemed to have worked.
+     Specify a cache which remembers people field by field (see {@link WikiTreePersonCache}).
+     <p/>Unlike a response cache, which only answers repeats of exactly the same request, a person cache answers any
+     {@code getPerson} request for fields that it has already fetched for that person and fetches only the fields that it is missing.
+     The profiles which come back in the responses to this session's other requests (relatives, ancestors, watchlists and so on)
+     are put in the person cache too.
+     A person cache can be shared by any number of sessions (including sessions logged in as different accounts).
+
+     @param personCache the cache ({@code null} to stop using a cache).
+     @return the cache that was being used.
+     */
+
+    @Nullable
+    public WikiTreePersonCache setPersonCache( @Nullable WikiTreePersonCache personCache ) {
+
+        WikiTreePersonCache rval = _personCache;
+        _personCache = personCache;
+
+        return rval;
+
+    }
+
+    @Nullable
+    public WikiTreePersonCache getPersonCache() {
+
+        return _personCache;
 
-     @param emailAddress the email address used to identify the WikiTree user requesting the login.
-     @param resultObject the value returned by the login request to the WikiTree API server.
-     @return {@code true} if the login worked; {@code false} otherwise.
+    }
+
+    /**
+     Get how many times this session has logged in again because its login expired.
      */
 
-    private boolean analyzeLoginResult( @NotNull String emailAddress, @Nullable JSONObject resultObject ) {
+    public int getReLoginCount() {
 
-        // Start off by assuming that the login attempt failed.
+        return _reLoginCount.get();
 
-        _authenticatedWikiTreeId = null;
-        _authenticatedUserEmailAddress = null;
-        _loginResultStatus = null;
+    }
 
-        // Did we back the auxiliary information that we should have gotten back from a login attempt?
+    /**
+     Login again because a login has expired.
 
-        // First, we need to make sure that we got at least a JSON result object back.
+     @param expired the login that expired.
+     @return the session's login state afterwards. This is {@code expired} if there is no way to login again
+     or someone else's login state if another thread got here first or changed the login state in some other way.
+     */
 
-        if ( resultObject == null ) {
+    @NotNull
+    private WikiTreeCredentials reLogin( @NotNull WikiTreeCredentials expired )
+            throws IOException, ParseException {
 
-            // It cannot possibly have worked completely if we didn't get a JSON result object back.
-            // If we did get login cookies back then the screw up is in the logic on our end or we don't understand the protocol
-            // (which also means that the screwup is in the logic on our end).
+        synchronized ( _reLoginLock ) {
 
-            if ( _loginCookies != null ) {
+            WikiTreeCredentials current = _credentials.get();
+            String password = _reLoginPassword;
+            if ( current != expired || !_automaticReLogin || password == null || expired.getEmailAddress() == null ) {
 
-                throw new ReallyBadNewsError( "WikiTreeApiJsonSession.login:  did not get a result object even though we got login cookies" );
+                return current;
 
             }
 
-        } else {
+            _reLoginCount.incrementAndGet();
+            try {
 
-            // We got a result object back. Let's see what's inside.
+                if ( !loginViaServer( expired.getEmailAddress(), password ) ) {
 
-            // Does it contain a "login" object?
+                    System.err.println( "WikiTreeApiJsonSession:  unable to login again as " + expired.getEmailAddress() + " (continuing anonymously)" );
+
+                }
 
-            Object actualResultObj = resultObject.get( "login" );
-            if ( actualResultObj instanceof JSONObject ) {
+            } finally {
 
-                // We got a "login" object. Does it contain a "result" string?
+                // Make sure that nobody tries again with the same stale state (loginViaServer might have thrown before replacing it).
 
-                JSONObject actualResult = (JSONObject)actualResultObj;
-                Object resultStatus = actualResult.get( "result" );
-                if ( resultStatus instanceof String ) {
+                _credentials.compareAndSet( expired, WikiTreeCredentials.ANONYMOUS );
 
-                    _loginResultStatus = (String)resultStatus;
+            }
 
-                    // Is the result string equal to "Success"?
+            return _credentials.get();
 
-                    if ( "Success".equals( _loginResultStatus ) ) {
+        }
 
-                        // The login seems to have completely worked.
-                        // Let's extract user's WikiTree ID and remember the email address used to do this authentication.
+    }
 
-                        Object wikiTreeIdObj = actualResult.get( "username" );
-                        if ( wikiTreeIdObj instanceof String ) {
+    /**
+     A login and when it was last known to work.
+     */
 
-                            _authenticatedWikiTreeId = (String)wikiTreeIdObj;
-                            _authenticatedUserEmailAddress = emailAddress;
+    private static final class VerifiedLogin {
 
-                        } else if ( wikiTreeIdObj == null ) {
+        private final WikiTreeCredentials _credentials;
 
-                            throw new ReallyBadNewsError(
-                                    "JSonWikiTreeApiClient.login:  request result's \"login\" object does not contain a \"username\" entity"
-                            );
+        private final long _verifiedAtMillis;
 
-                        } else {
+        private VerifiedLogin( @NotNull WikiTreeCredentials credentials ) {
 
-                            throw new ReallyBadNewsError(
-                                    "JSonWikiTreeApiClient.login:  request result's \"login\" object's \"username\" entity is not a string " +
-                                    "(it is a " + wikiTreeIdObj.getClass().getCanonicalName() + ")"
-                            );
+            super();
 
-                        }
+            _credentials = credentials;
+            _verifiedAtMillis = System.currentTimeMillis();
 
-                    }
+        }
 
-                } else if ( resultStatus == null ) {
+        private boolean isTrusted( @NotNull WikiTreeCredentials credentials ) {
 
-                    throw new ReallyBadNewsError(
-                            "JSonWikiTreeApiClient.login:  request result's \"login\" object does not contain a \"result\" entity"
-                    );
+            return credentials == _credentials && System.currentTimeMillis() - _verifiedAtMillis < LOGIN_TRUST_MILLIS;
 
-                } else {
+        }
 
-                    // The "result" entity is not a string.
+        public String toString() {
 
-                    throw new ReallyBadNewsError(
-                            "JSonWikiTreeApiClient.login:  request result's \"login\" object's \"result\" entity " +
-                            "is not a string " +
-                            "(it is a " + resultStatus.getClass().getCanonicalName() + ")"
-                    );
+            return "VerifiedLogin( " + _credentials + " at " + _verifiedAtMillis + " )";
 
-                }
+        }
 
-            } else if ( actualResultObj == null ) {
+    }
 
-                throw new ReallyBadNewsError( "JSonWikiTreeApiClient.login:  request result does not contain a \"login\" entity" );
+    /**
+     Determine if a {@code "Permission denied."} response to a request made with a login means that the login has expired.
+     <p/>See {@link #setAutomaticReLogin(boolean)} for how this is decided.
+     */
 
-            } else {
+    private boolean isLoginExpired( @NotNull WikiTreeRequest request, @NotNull WikiTreeCredentials credentials )
+            throws IOException, ParseException {
 
-                throw new ReallyBadNewsError(
-                        "JSonWikiTreeApiClient.login:  request result's \"login\" entity is not a JSON object " +
-                        "(it is a " + actualResultObj.getClass().getCanonicalName() + ")"
-                );
+        if ( request instanceof WikiTreeRequest.GetWatchlist ) {
 
-            }
+            return true;
 
         }
 
-        // If the login worked then the authenticated WikiTree ID, the authenticated user email address and the login cookies must not be null.
-        // If the login failed then all three must be null.
-        // Let's make sure that that is what happened.
-
-        boolean wtiNull = _authenticatedWikiTreeId == null;
-        boolean aueaNull = _authenticatedUserEmailAddress == null;
-        boolean lcNull = _loginCookies == null;
-
-        // Are some but not all of them null?
-
-        if ( wtiNull != aueaNull || aueaNull != lcNull ) {
-
-            // Delete the login cookies if the above analysis screwed up.
-            // This may seem a bit brutal but the alternative is to end up with an authenticated session
-            // which we don't know who it is authenticated for.
-
-            Vector<String> loginCookies = _loginCookies;
-            _loginCookies = null;
-
-            throw new ReallyBadNewsError( "JSonWikiTreeApiClient.login:  supposedly " +
-                                          ( lcNull ? "failed" : "successful" ) + " login request " +
-                                          "did not yield " + ( lcNull ? "null" : "non-null" ) + " values for all of " +
-                                          "authenticated WikiTree ID (got " + _authenticatedWikiTreeId + "), " +
-                                          "authenticated User Email Address (got " + _authenticatedUserEmailAddress + "), and " +
-                                          "login cookies (got " +
-                                          (
-                                                  loginCookies == null
-                                                          ?
-                                                          "null"
-                                                          :
-                                                          loginCookies.size() + " cookie" + ( loginCookies.size() == 1 ? "" : "s" )
-                                          ) + ")"
-            );
+        VerifiedLogin verified = _verifiedLogin;
+        if ( verified != null && verified.isTrusted( credentials ) ) {
+
+            return false;
+
+        }
+
+        Optional<JSONObject> check = makeOneRequest(
+                new WikiTreeRequest.GetWatchlist( false, false, null, null, "Id", 1, null, null ),
+                credentials,
+                null
+        );
+        if ( isPermissionDenied( check ) ) {
+
+            return true;
 
         }
 
-        return _loginCookies != null;
+        _verifiedLogin = new VerifiedLogin( credentials );
+
+        return false;
+
+    }
+
+    /**
+     Determine if a response is the server refusing a request for lack of a login.
+     */
+
+    private static boolean isPermissionDenied( Optional<JSONObject> response ) {
+
+        return response.isPresent() && "Permission denied.".equals( response.get().get( "status" ) );
+
+    }
+
+    /**
+     Get the result from the most recent login attempt.
+     @return the {@link JSONObject} returned by the WikiTree API server.
+     */
+
+    public Optional<JSONObject> getLastLoginResult() {
+
+        return Optional.ofNullable( _credentials.get().getLoginResult() );
 
     }
 
@@ -518,18 +757,37 @@ public class WikiTreeApiJsonSession implements WikiTreeApiClient {
 
     }
 
-    @SuppressWarnings("unchecked")
     @NotNull
     public Optional<JSONObject> getPerson( String key, String fields )
             throws IOException, ParseException {
 
-        JSONObject requestParams = new JSONObject();
-        requestParams.put( "action", "getPerson" );
-        requestParams.put( "key", key ); // interpretIdParameter( "getPerson", key ) );
-        requestParams.put( "fields", fields );
-        requestParams.put( "format", "json" );
+        WikiTreePersonCache personCache = _personCache;
+        if ( personCache != null ) {
+
+            return personCache.getPerson( this, key, fields );
+
+        }
+
+        return fetchPerson( key, fields );
+
+    }
+
+    /**
+     Send a {@code getPerson} request (as part of a batch if batching is on) without looking in the person cache.
+     */
+
+    @NotNull
+    Optional<JSONObject> fetchPerson( String key, String fields )
+            throws IOException, ParseException {
+
+        WikiTreePersonBatcher batcher = _personBatcher;
+        if ( batcher != null ) {
+
+            return batcher.getPerson( key, fields );
 
-        Optional<JSONObject> optResultObject = makeRequest( requestParams );
+        }
+
+        Optional<JSONObject> optResultObject = makeRequest( new WikiTreeRequest.GetPerson( key, fields ) );
 
         return optResultObject;
 //        return optResultObject == null ? Optional.empty() : Optional.of( optResultObject );
@@ -586,17 +844,11 @@ public class WikiTreeApiJsonSession implements WikiTreeApiClient {
      @throws IOException
      @throws ParseException
      */
-    @SuppressWarnings("unchecked")
     @NotNull
     public Optional<JSONObject> getProfile( WikiTreeId key )
             throws IOException, ParseException {
 
-        JSONObject requestParams = new JSONObject();
-        requestParams.put( "action", "getProfile" );
-        requestParams.put( "key", key.getValueString() );
-        requestParams.put( "format", "json" );
-
-        Optional<JSONObject> optResultObject = makeRequest( requestParams );
+        Optional<JSONObject> optResultObject = makeRequest( new WikiTreeRequest.GetProfile( key.getValueString() ) );
         return optResultObject;
 
     }
@@ -605,12 +857,7 @@ public class WikiTreeApiJsonSession implements WikiTreeApiClient {
     public Optional<JSONObject> getProfile( long profileId )
             throws IOException, ParseException {
 
-        JSONObject requestParams = new JSONObject();
-        requestParams.put( "action", "getProfile" );
-        requestParams.put( "key", profileId );
-        requestParams.put( "format", "json" );
-
-        Optional<JSONObject> optResultObject = makeRequest( requestParams );
+        Optional<JSONObject> optResultObject = makeRequest( new WikiTreeRequest.GetProfile( String.valueOf( profileId ) ) );
         return optResultObject;
 
     }
@@ -628,17 +875,11 @@ public class WikiTreeApiJsonSession implements WikiTreeApiClient {
       For example, specify either {@code "Churchill-4"} (his WikiTree ID) or {@code "5589"} (his Person.Id) to request the biography section of Winston S. Churchill's profile.
      */
 
-    @SuppressWarnings("unchecked")
     @NotNull
     public Optional<JSONObject> getBio( WikiTreeId key )
             throws IOException, ParseException {
 
-        JSONObject requestParams = new JSONObject();
-        requestParams.put( "action", "getBio" );
-        requestParams.put( "key", key.getValueString() );
-        requestParams.put( "format", "json" );
-
-        Optional<JSONObject> optResultObject = makeRequest( requestParams );
+        Optional<JSONObject> optResultObject = makeRequest( new WikiTreeRequest.GetBio( key.getValueString() ) );
         return optResultObject;
 
     }
@@ -674,7 +915,6 @@ public class WikiTreeApiJsonSession implements WikiTreeApiClient {
                                         (be prepared to work with Danny to reproduce the problem).
      */
 
-    @SuppressWarnings("unchecked")
     @NotNull
     public Optional<JSONObject> getWatchlist(
             Boolean getPerson,
@@ -688,60 +928,9 @@ public class WikiTreeApiJsonSession implements WikiTreeApiClient {
     )
             throws IOException, ParseException {
 
-        JSONObject requestParams = new JSONObject();
-        requestParams.put( "action", "getWatchlist" );
-
-        if ( getPerson != null ) {
-
-            requestParams.put( "getPerson", getPerson.booleanValue() ? 1 : 0 );
-
-        }
-
-        if ( getSpace != null ) {
-
-            requestParams.put( "getSpace", getSpace.booleanValue() ? 1 : 0 );
-
-        }
-
-        if ( onlyLiving != null && onlyLiving.booleanValue() ) {
-
-            requestParams.put( "onlyLiving", 1 );
-
-        }
-
-        if ( excludeLiving != null && excludeLiving.booleanValue() ) {
-
-            requestParams.put( "excludeLiving", 1 );
-
-        }
-
-        if ( fields != null ) {
-
-            requestParams.put( "fields", fields );
-
-        }
-
-        if ( limit != null ) {
-
-            requestParams.put( "limit", limit.intValue() );
-
-        }
-
-        if ( offset != null ) {
-
-            requestParams.put( "offset", offset.intValue() );
-
-        }
-
-        if ( order != null ) {
-
-            requestParams.put( "order", order );
-
-        }
-
-        requestParams.put( "format", "json" );
-
-        Optional<JSONObject> optResultObject = makeRequest( requestParams );
+        Optional<JSONObject> optResultObject = makeRequest(
+                new WikiTreeRequest.GetWatchlist( getPerson, getSpace, onlyLiving, excludeLiving, fields, limit, offset, order )
+        );
         return optResultObject;
 
 //        if ( optResultObject == null ) {
@@ -772,24 +961,11 @@ public class WikiTreeApiJsonSession implements WikiTreeApiClient {
                             to reproduce the problem).
      */
 
-    @SuppressWarnings("unchecked")
     @NotNull
     public Optional<JSONObject> getAncestors( @NotNull WikiTreeId key, @Nullable Integer depth )
             throws IOException, ParseException {
 
-        JSONObject requestParams = new JSONObject();
-        requestParams.put( "action", "getAncestors" );
-        requestParams.put( "key", key.getValueString() );
-
-        if ( depth != null ) {
-
-            requestParams.put( "depth", depth.intValue() );
-
-        }
-
-        requestParams.put( "format", "json" );
-
-        Optional<JSONObject> optResultObject = makeRequest( requestParams );
+        Optional<JSONObject> optResultObject = makeRequest( new WikiTreeRequest.GetAncestors( key.getValueString(), depth ) );
         return optResultObject;
 
 //        if ( optResultObject == null ) {
@@ -823,21 +999,13 @@ public class WikiTreeApiJsonSession implements WikiTreeApiClient {
                             to reproduce the problem).
      */
 
-    @SuppressWarnings("unchecked")
     @NotNull
     public Optional<JSONObject> getRelatives( String keys, boolean getParents, boolean getChildren, boolean getSpouses, boolean getSiblings )
             throws IOException, ParseException {
 
-        JSONObject requestParams = new JSONObject();
-        requestParams.put( "action", "getRelatives" );
-        requestParams.put( "keys", keys );
-        requestParams.put( "getParents", getParents ? 1 : 0 );
-        requestParams.put( "getChildren", getChildren ? 1 : 0 );
-        requestParams.put( "getSpouses", getSpouses ? 1 : 0 );
-        requestParams.put( "getSiblings", getSiblings ? 1 : 0 );
-        requestParams.put( "format", "json" );
-
-        Optional<JSONObject> optResultObject = makeRequest( requestParams );
+        Optional<JSONObject> optResultObject = makeRequest(
+                new WikiTreeRequest.GetRelatives( keys, getParents, getChildren, getSpouses, getSiblings )
+        );
         return optResultObject;
 
 //        if ( optResultObject == null ) {
@@ -852,138 +1020,305 @@ public class WikiTreeApiJsonSession implements WikiTreeApiClient {
 
     }
 
+    /**
+     Make a request.
+     <p/>This is what all of the other request methods use. It is also useful for making requests which were built ahead of time
+     (for example, a list of requests read from a file).
+     Login requests aren't allowed here since the session wouldn't notice that it had been logged in (use {@link #login(String, String)}).
+
+     @param request the request.
+     @return the server's response.
+     @throws IllegalArgumentException if {@code request} is a login request.
+     @throws IOException    if an IOException is thrown by the networking facilities used to send and receive the request.
+     @throws ParseException if this client is unable to process the response from the WikiTree API server.
+     */
+
     @NotNull
-    private Optional<JSONObject> makeRequest( JSONObject requestObject )
+    public Optional<JSONObject> request( @NotNull WikiTreeRequest request )
             throws IOException, ParseException {
 
-//	System.out.println( "... starting @ " + WikiTreeApiUtilities.formatStandardMs( new Date() ) );
-        long startTime = System.currentTimeMillis();
-        Optional<JSONObject> rval = requestViaHttpGet( requestObject );
-        long endTime = System.currentTimeMillis();
-//	System.out.println( "... done @ " + WikiTreeApiUtilities.formatStandardMs( new Date() ) );
+        if ( request instanceof WikiTreeRequest.Login ) {
 
-        synchronized ( s_innerRequestStats ) {
-
-            double delta = ( endTime - startTime ) / 1000.0;
-            s_innerRequestStats.sample( delta );
-//	    System.out.println( "delta = " + delta );
+            throw new IllegalArgumentException( "WikiTreeApiJsonSession.request:  use login() to login" );
 
         }
 
-        return rval;
+        return makeRequest( request );
 
     }
 
     @NotNull
-    private synchronized Optional<JSONObject> requestViaHttpGet( JSONObject requestObject )
+    private Optional<JSONObject> makeRequest( WikiTreeRequest request )
             throws IOException, ParseException {
 
-        String who = "requestViaHttpGet";
+        return makeRequest( request, null );
 
-        String what = "formatting request URL";
+    }
 
-        StringBuffer requestSb = new StringBuffer( _baseServerUrlString );
-        WikiTreeApiUtilities.formatRequestAsUrlQueryParameters( who, requestObject, requestSb );
+    /**
+     Make a request.
 
-        String actualUrlString = requestSb.toString();
+     @param request    the request.
+     @param setCookies where to put the values of the response's {@code Set-Cookie} headers ({@code null} if nobody cares).
+     */
+
+    @NotNull
+    private Optional<JSONObject> makeRequest( WikiTreeRequest request, @Nullable List<String> setCookies )
+            throws IOException, ParseException {
+
+        WikiTreeCredentials credentials = _credentials.get();
+        if ( request instanceof WikiTreeRequest.Login ) {
+
+            return makeOneRequest( request, credentials, setCookies );
+
+        }
+
+        if ( credentials.isExpired() ) {
+
+            credentials = reLogin( credentials );
+
+        }
+
+        WikiTreeResponseCache cache = _responseCache;
+        if ( cache != null ) {
+
+            JSONObject cached = cache.get( WikiTreeResponseCache.getScope( credentials ), request );
+            if ( cached != null ) {
+
+                return Optional.of( cached );
+
+            }
+
+        }
+
+        Optional<JSONObject> rval = makeOneRequest( request, credentials, setCookies );
+        if ( credentials.isAuthenticated() && isPermissionDenied( rval ) && isLoginExpired( request, credentials ) ) {
+
+            WikiTreeCredentials fresh = reLogin( credentials );
+            if ( fresh != credentials && fresh.isAuthenticated() ) {
+
+                credentials = fresh;
+                rval = makeOneRequest( request, fresh, setCookies );
+
+            }
+
+        }
+
+        // Failures come back with a string status (successes have a numeric status or none at all). Don't remember them.
+
+        if ( cache != null && rval.isPresent() && !( rval.get().get( "status" ) instanceof String ) ) {
+
+            cache.put( WikiTreeResponseCache.getScope( credentials ), request, rval.get() );
+
+        }
+
+        // Remember the profiles that came along with the response (a cached response's profiles were remembered when it was fetched).
+
+        WikiTreePersonCache personCache = _personCache;
+        if ( personCache != null && rval.isPresent() ) {
+
+            personCache.seed( WikiTreeResponseCache.getScope( credentials ), rval.get() );
+
+        }
+
+        return rval;
+
+    }
+
+    @NotNull
+    private Optional<JSONObject> makeOneRequest( WikiTreeRequest request, @NotNull WikiTreeCredentials credentials, @Nullable List<String> setCookies )
+            throws IOException, ParseException {
+
+        RequestTimings timings = new RequestTimings( request.getAction(), request.getKey() );
+        WikiTreeRequestListener[] listeners = _listeners;
+        for ( WikiTreeRequestListener listener : listeners ) {
+
+            try {
+
+                listener.onRequestStart( timings );
+
+            } catch ( RuntimeException e ) {
+
+                listenerFailed( listener, "onRequestStart", e );
+
+            }
+
+        }
+
+        WikiTreeFlightRecorder.Span span = WikiTreeFlightRecorder.begin( WikiTreeFlightRecorder.Operation.REQUEST, timings.getAction(), timings.getKey() );
+        Optional<JSONObject> rval = null;
+        try {
+
+            rval = requestViaHttp( request, credentials, timings, listeners, setCookies );
+
+            return rval;
+
+        } catch ( IOException | ParseException | RuntimeException e ) {
+
+            for ( WikiTreeRequestListener listener : listeners ) {
+
+                try {
+
+                    listener.onError( timings, e );
+
+                } catch ( RuntimeException e2 ) {
+
+                    listenerFailed( listener, "onError", e2 );
+
+                }
+
+            }
+
+            throw e;
+
+        } finally {
+
+            timings.complete();
+            span.end( timings.getResponseBytes(), span.isRecording() && rval != null ? WikiTreeFlightRecorder.countProfiles( rval.orElse( null ) ) : -1 );
+            _metrics.record( timings );
+
+            for ( WikiTreeRequestListener listener : listeners ) {
+
+                try {
+
+                    listener.onComplete( timings );
+
+                } catch ( RuntimeException e ) {
+
+                    listenerFailed( listener, "onComplete", e );
+
+                }
+
+            }
+
+        }
+
+    }
+
+    /**
+     Send a request to the server and read its response.
+     <p/>The request goes as a GET unless its URL would be longer than the POST threshold
+     (see {@link #setPostThreshold(int)}), in which case its parameters go in a form-encoded POST body instead.
+     */
+
+    @NotNull
+    private Optional<JSONObject> requestViaHttp(
+            WikiTreeRequest request,
+            WikiTreeCredentials credentials,
+            RequestTimings timings,
+            WikiTreeRequestListener[] listeners,
+            @Nullable List<String> setCookies
+    )
+            throws IOException, ParseException {
+
+        String what = "formatting request URL";
+
+        String actualUrlString = _baseServerUrlString + request.getQueryString();
+        boolean post = actualUrlString.length() > _postThreshold;
+        String method = post ? "POST" : "GET";
 
         try {
 
             if ( s_showUrls ) {
 
-                if ( actualUrlString.contains( "action=login" ) ) {
+                if ( request.isSecret() ) {
 
                     System.out.println( "not showing URL for login request (protects the password)" );
 
                 } else {
 
-                    System.out.println( "URL will be " + actualUrlString );
+                    System.out.println( ( post ? "POST will be " : "URL will be " ) + actualUrlString );
 
                 }
 
             }
 
-            URL actualUrl = new URL( actualUrlString );
+            URL actualUrl = new URL( post ? _baseServerUrlString : actualUrlString );
 
             what = "initializing connection";
 
-            URLConnection urlConnection = actualUrl.openConnection();
-            HttpURLConnection connection = (HttpURLConnection)urlConnection;
-            connection.setDoOutput( false );
+            HttpURLConnection connection = _transport.openConnection( actualUrl );
+            connection.setDoOutput( post );
             connection.setDoInput( true );
             connection.setRequestProperty( "Accept", "application/json" );
-            if ( !"login".equals( requestObject.get( "action" ) ) && _loginCookies != null ) {
+            String cookieHeader = credentials.getCookieHeader();
+            if ( !( request instanceof WikiTreeRequest.Login ) && cookieHeader != null ) {
+
+                connection.addRequestProperty( "Cookie", cookieHeader );
 
-//		System.out.println( "it's not a login attempt and we have cookies" );
+            }
 
-                StringBuilder sb = new StringBuilder();
-                String semiColon = "";
-                for ( String cookie : _loginCookies ) {
+            byte[] body = null;
+            if ( post ) {
 
-                    sb.append( semiColon ).append( cookie.split( ";", 2 )[0] );
-                    semiColon = "; ";
+                body = request.getQueryString().substring( 1 ).getBytes( StandardCharsets.UTF_8 );
+                connection.setRequestProperty( "Content-Type", "application/x-www-form-urlencoded; charset=UTF-8" );
+                connection.setFixedLengthStreamingMode( body.length );
 
-                }
+            }
 
-                connection.addRequestProperty( "Cookie", sb.toString() );
+            connection.setRequestMethod( method );
 
-//		System.out.println( "done adding in cookies" );
+            what = "connecting";
 
-            }
+            long connectStart = System.nanoTime();
+            connection.connect();
+            long firstByteStart = timings.endPhase( RequestPhase.CONNECT, connectStart );
+
+            if ( body != null ) {
 
-            connection.setRequestMethod( "GET" );
+                what = "sending request body";
+
+                try ( OutputStream os = connection.getOutputStream() ) {
+
+                    os.write( body );
+
+                }
+
+            }
 
             what = "getting response";
 
-            Object rval = WikiTreeApiUtilities.readResponse( connection, true );
+            int httpResponseCode = connection.getResponseCode();
+            timings.endPhase( RequestPhase.FIRST_BYTE, firstByteStart );
+            for ( WikiTreeRequestListener listener : listeners ) {
 
-            if ( "login".equals( requestObject.get( "action" ) ) ) {
+                try {
 
-                what = "It's a login attempt";
+                    listener.onResponseHeaders( timings, httpResponseCode, connection.getHeaderFields() );
 
-                // Throw away the old cookies regardless of whether or not the login request worked.
+                } catch ( RuntimeException e ) {
 
-                _loginCookies = null;
-                _authenticatedUserEmailAddress = null;
-                _authenticatedWikiTreeId = null;
+                    listenerFailed( listener, "onResponseHeaders", e );
 
-                _lastLoginResult = (JSONObject)rval;
-                if ( _lastLoginResult == null ) {
+                }
 
-                    System.err.println( "got null response from login attempt for " + requestObject.get( "email" ) );
+            }
 
-                } else {
+            Object rval = WikiTreeApiUtilities.readResponse( connection, true, timings );
+            for ( WikiTreeRequestListener listener : listeners ) {
 
-                    JSONObject loginObject = (JSONObject)_lastLoginResult.get( "login" );
-                    if ( loginObject == null ) {
+                try {
 
-                        System.err.println( "got response from login attempt for " +
-                                            requestObject.get( "email" ) +
-                                            " which doesn't contain a \"login\" response object" );
+                    listener.onParsed( timings, rval );
 
-                    } else {
+                } catch ( RuntimeException e ) {
 
-                        String resultString = (String)loginObject.get( "result" );
-                        if ( "Success".equals( resultString ) ) {
+                    listenerFailed( listener, "onParsed", e );
 
-//			    System.out.println( "login worked!" );
+                }
 
-                            Collection<String> cookies = connection.getHeaderFields().get( "Set-Cookie" );
-                            if ( cookies != null ) {
+            }
 
-                                _loginCookies = new Vector<>( cookies );
+            if ( setCookies != null ) {
 
-//				for ( String cookie : _loginCookies ) {
-//
-//				    System.out.println( "cookie:  " + WikiTreeApiUtilities.enquoteForJavaString( cookie ) );
-//
-//				}
-//
-//				System.out.println( "done printing cookies" );
+                // Header names are case insensitive (some servers send "Set-cookie").
 
-                            }
+                for ( Map.Entry<String, List<String>> header : connection.getHeaderFields().entrySet() ) {
 
-                        }
+                    if ( "Set-Cookie".equalsIgnoreCase( header.getKey() ) ) {
+
+                        setCookies.addAll( header.getValue() );
 
                     }
 
@@ -1007,7 +1342,7 @@ public class WikiTreeApiJsonSession implements WikiTreeApiClient {
 
         } catch ( RuntimeException e ) {
 
-            System.err.println( "unable to issue GET with \"" + requestSb + "\" (doing " + what + "):  " + what );
+            System.err.println( "unable to issue " + method + " with \"" + _baseServerUrlString + request + "\" (doing " + what + "):  " + what );
 
             e.printStackTrace();
 
@@ -1017,68 +1352,292 @@ public class WikiTreeApiJsonSession implements WikiTreeApiClient {
 
     }
 
-//    private JSONObject requestViaJsonPost( JSONObject requestObject )
-//            throws IOException, ParseException {
-//
-//        String requestString = JSONObject.toJSONString( requestObject );
-//
-//        String what = "initializing connection";
-//
-//        try {
-//
-//            URL serverUrl = new URL( _baseServerUrlString );
-//
-//            URLConnection urlConnection = serverUrl.openConnection();
-//            HttpURLConnection connection = (HttpURLConnection)urlConnection;
-//            connection.setDoOutput( true );
-//            connection.setDoInput( true );
-//            connection.setRequestProperty( "Content-Type", "application/json; charset=UTF-8" );
-//            connection.setRequestProperty( "Accept", "application/json" );
-//            connection.setRequestMethod( "POST" );
-//
-//            what = "posting request";
-//
-//            try ( OutputStream writer = connection.getOutputStream() ) {
-//
-//                writer.write( ( requestString + '\n' ).getBytes( "UTF-8" ) );
-//                writer.flush();
-//
-//            } finally {
-//
-//                System.out.println( "writer closed" );
-//
-//            }
-//
-//            what = "getting response";
-//
-//            @SuppressWarnings("UnnecessaryLocalVariable")
-//            Object rval = WikiTreeApiUtilities.readResponse( connection, true );
-//
-//            if ( rval == null || rval instanceof JSONObject ) {
-//
-//                return (JSONObject)rval;
-//
-//            } else {
-//
-//                throw new ReallyBadNewsError( "requestViaJsonPost:  expected a JSONObject, got this instead:  " + rval );
-//
-//            }
-//
-//        } catch ( IOException | ParseException | RuntimeException e ) {
-//
-//            System.err.println( "unable to issue POST to \"" + _baseServerUrlString + "\" (doing " + what + "):  " + what );
-//
-//            e.printStackTrace();
-//
-//            throw e;
-//
-//        }
-//
-//    }
+    /**
+     Specify how this session's requests get to a server.
+     <p/>Requests already in progress keep using the transport that they started with.
+
+     @param transport the transport ({@link WikiTreeTransport#DEFAULT} is what a new session uses).
+     @return the transport that was being used.
+     */
+
+    @NotNull
+    public WikiTreeTransport setTransport( @NotNull WikiTreeTransport transport ) {
 
-    public static StatisticsAccumulator getTimingStats() {
+        WikiTreeTransport rval = _transport;
+        _transport = transport;
+
+        return rval;
+
+    }
+
+    @NotNull
+    public WikiTreeTransport getTransport() {
+
+        return _transport;
+
+    }
+
+    /**
+     Specify how long a request's URL can be before the request is sent as a form-encoded POST instead of a GET.
+     <p/>This lets requests with long parameters (for example, a {@code getRelatives} request for hundreds of keys)
+     go in one round trip without running into the limits that servers and proxies put on URL lengths.
+
+     @param postThreshold the longest URL (in characters) that is sent as a GET.
+     Use {@code 0} to always POST and {@link Integer#MAX_VALUE} to never POST.
+     @return the previous threshold.
+     @throws IllegalArgumentException if {@code postThreshold} is negative.
+     */
+
+    public int setPostThreshold( int postThreshold ) {
+
+        if ( postThreshold < 0 ) {
+
+            throw new IllegalArgumentException( "WikiTreeApiJsonSession.setPostThreshold:  threshold must not be negative (got " + postThreshold + ")" );
+
+        }
+
+        int rval = _postThreshold;
+        _postThreshold = postThreshold;
+
+        return rval;
+
+    }
+
+    public int getPostThreshold() {
+
+        return _postThreshold;
+
+    }
+
+    /**
+     Turn on (or off) batching of {@code getPerson} requests.
+     <p/>When batching is on, {@code getPerson} requests for single profiles made by different threads at about the same time
+     are combined into one request for all of them (see {@link WikiTreePersonBatcher}). Each request waits for up to the batch
+     window for others to join it, so this trades a little latency for far fewer round trips when lots of threads share a session.
+     Batching is off unless this method is used to turn it on.
+
+     @param batchWindowMillis how long the first request of a batch waits for others to join it
+     ({@code 0} to turn batching off).
+     @return the previous batch window ({@code 0} if batching was off).
+     @throws IllegalArgumentException if {@code batchWindowMillis} is negative.
+     */
+
+    public synchronized long setBatchWindowMillis( long batchWindowMillis ) {
+
+        if ( batchWindowMillis < 0 ) {
+
+            throw new IllegalArgumentException( "WikiTreeApiJsonSession.setBatchWindowMillis:  window must not be negative (got " + batchWindowMillis + ")" );
+
+        }
+
+        long rval = getBatchWindowMillis();
+        _personBatcher = batchWindowMillis == 0 ? null : new WikiTreePersonBatcher( this, batchWindowMillis, _maxBatchSize );
+
+        return rval;
+
+    }
+
+    public long getBatchWindowMillis() {
+
+        WikiTreePersonBatcher batcher = _personBatcher;
+
+        return batcher == null ? 0 : batcher.getWindowMillis();
+
+    }
+
+    /**
+     Specify how many {@code getPerson} lookups can be combined into one request when batching is on
+     (see {@link #setBatchWindowMillis(long)}). A batch which fills up is sent right away.
+
+     @param maxBatchSize the most lookups in a batch.
+     @return the previous limit.
+     @throws IllegalArgumentException if {@code maxBatchSize} is less than one.
+     */
+
+    public synchronized int setMaxBatchSize( int maxBatchSize ) {
+
+        if ( maxBatchSize < 1 ) {
+
+            throw new IllegalArgumentException( "WikiTreeApiJsonSession.setMaxBatchSize:  need at least one lookup per batch (got " + maxBatchSize + ")" );
+
+        }
+
+        int rval = _maxBatchSize;
+        _maxBatchSize = maxBatchSize;
+        WikiTreePersonBatcher batcher = _personBatcher;
+        if ( batcher != null ) {
+
+            _personBatcher = new WikiTreePersonBatcher( this, batcher.getWindowMillis(), maxBatchSize );
+
+        }
+
+        return rval;
+
+    }
+
+    public int getMaxBatchSize() {
+
+        return _maxBatchSize;
+
+    }
+
+    /**
+     Get how many batched requests this session has sent since batching was last turned on or reconfigured.
+     */
+
+    public long getBatchCount() {
+
+        WikiTreePersonBatcher batcher = _personBatcher;
+
+        return batcher == null ? 0 : batcher.getBatchCount();
+
+    }
+
+    /**
+     Get how many {@code getPerson} lookups the batched requests counted by {@link #getBatchCount()} carried.
+     */
+
+    public long getBatchedLookupCount() {
+
+        WikiTreePersonBatcher batcher = _personBatcher;
+
+        return batcher == null ? 0 : batcher.getBatchedLookupCount();
+
+    }
+
+    /**
+     Add a listener which is to hear about every request that this session makes from now on.
+     <p/>Adding the same listener twice means that it hears about everything twice.
+     A session with no listeners does essentially no extra work per request.
+
+     @param listener the listener.
+     */
+
+    public void addRequestListener( @NotNull WikiTreeRequestListener listener ) {
+
+        synchronized ( _listenersLock ) {
+
+            WikiTreeRequestListener[] listeners = Arrays.copyOf( _listeners, _listeners.length + 1 );
+            listeners[listeners.length - 1] = listener;
+            _listeners = listeners;
+
+        }
+
+    }
+
+    /**
+     Remove a listener.
+     <p/>A request which is already underway may still call the listener.
+
+     @param listener the listener (if it was added more than once then only one of them is removed).
+     @return {@code true} if the listener was found and removed; {@code false} otherwise.
+     */
+
+    public boolean removeRequestListener( @NotNull WikiTreeRequestListener listener ) {
+
+        synchronized ( _listenersLock ) {
+
+            WikiTreeRequestListener[] listeners = _listeners;
+            for ( int i = 0; i < listeners.length; i += 1 ) {
+
+                if ( listeners[i] == listener ) {
+
+                    WikiTreeRequestListener[] newListeners = new WikiTreeRequestListener[listeners.length - 1];
+                    System.arraycopy( listeners, 0, newListeners, 0, i );
+                    System.arraycopy( listeners, i + 1, newListeners, i, listeners.length - i - 1 );
+                    _listeners = newListeners.length == 0 ? NO_LISTENERS : newListeners;
+
+                    return true;
+
+                }
+
+            }
+
+            return false;
+
+        }
+
+    }
+
+    /**
+     Report (on one line) that a listener threw an exception.
+     <p/>A misbehaving listener can throw on every request so its stack trace is left out rather than flooding {@code System.err}.
+     */
+
+    private static void listenerFailed( WikiTreeRequestListener listener, String callback, RuntimeException e ) {
+
+        System.err.println( "WikiTreeApiJsonSession:  request listener " + listener + " threw " + e + " from " + callback + " (ignored)" );
+
+    }
+
+    /**
+     Get the metrics for the requests made by this session.
+     <p/>Everything recorded here is also recorded in the metrics for all sessions (see {@link #getTimingStats()}).
+     */
+
+    @NotNull
+    public WikiTreeRequestMetrics getMetrics() {
+
+        return _metrics;
+
+    }
+
+    /**
+     Register this session's metrics with the platform MBean server.
+     <p/>This is not done automatically because the MBean server would then keep every session ever created reachable.
+     Call {@link #unregisterMetricsMBean()} once the session is no longer needed.
+     Calling this method on a session whose metrics are already registered just returns the existing name.
+
+     @return the name that the metrics were registered under
+     (of the form {@code com.matilda.wikitree.api:type=WikiTreeApiJsonSession,name=session-}<i>n</i>).
+     @throws JMException if the MBean server won't take them.
+     */
+
+    @NotNull
+    public synchronized ObjectName registerMetricsMBean()
+            throws JMException {
+
+        if ( _metricsMBeanName == null ) {
+
+            ObjectName name = new ObjectName(
+                    "com.matilda.wikitree.api:type=WikiTreeApiJsonSession,name=session-" + s_sessionCounter.incrementAndGet()
+            );
+            ManagementFactory.getPlatformMBeanServer().registerMBean( _metrics, name );
+            _metricsMBeanName = name;
+
+        }
+
+        return _metricsMBeanName;
+
+    }
+
+    /**
+     Unregister this session's metrics from the platform MBean server (does nothing if they aren't registered).
+
+     @throws JMException if the MBean server won't let them go.
+     */
+
+    public synchronized void unregisterMetricsMBean()
+            throws JMException {
+
+        if ( _metricsMBeanName != null ) {
+
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean( _metricsMBeanName );
+            _metricsMBeanName = null;
+
+        }
+
+    }
+
+    /**
+     Get the latencies of the requests made to WikiTree API servers (by all sessions) broken down by action and by phase.
+     <p/>A request's latency is measured from just before it is sent until its response has been parsed (or it has failed).
+     */
+
+    @NotNull
+    public static WikiTreeRequestMetrics getTimingStats() {
 
-        return s_innerRequestStats;
+        return s_requestMetrics;
 
     }
 
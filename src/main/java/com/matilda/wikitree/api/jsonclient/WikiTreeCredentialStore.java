@@ -0,0 +1,340 @@
+/*
+ * Copyright © 2017 Daniel Boulet
+ */
+
+package com.matilda.wikitree.api.jsonclient;
+
+import com.matilda.wikitree.api.exceptions.ReallyBadNewsError;
+import com.matilda.wikitree.api.util.WikiTreeApiUtilities;
+import org.jetbrains.annotations.NotNull;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.ParseException;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.PBEKeySpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ A file which keeps a {@link WikiTreeApiJsonSession}'s login cookies between runs.
+ <p/>The file is encrypted (AES-GCM) with a key derived (PBKDF2) from the account's password, and the account's email address
+ is bound into the encryption as associated data. Only someone who already knows the email address and password can read
+ the cookies back, which also means that a successful {@link #load(String, String)} vouches for the password without a
+ round trip to the server.
+ <p/>Each store holds one account's cookies. Saving replaces the file's previous contents in one step.
+ <p/>A saved login is only used for a limited time (see {@link #WikiTreeCredentialStore(File, long)}) even if its cookies claim to last longer.
+ Cookies without an expiry of their own are only meant to last as long as the browser session so they would otherwise be reused forever.
+ See {@link WikiTreeApiJsonSession#setCredentialStore(WikiTreeCredentialStore)}.
+ */
+
+public class WikiTreeCredentialStore {
+
+    /**
+     How long a saved login is used for unless a store is told otherwise (twelve hours).
+     */
+
+    public static final long DEFAULT_MAX_LIFETIME_MILLIS = TimeUnit.HOURS.toMillis( 12 );
+
+    private static final byte[] MAGIC = { 'W', 'T', 'C', 'S', 1 };
+
+    private static final int SALT_LENGTH = 16;
+
+    private static final int IV_LENGTH = 12;
+
+    private static final int TAG_BITS = 128;
+
+    private static final int KEY_BITS = 256;
+
+    private static final int PBKDF2_ITERATIONS = 65536;
+
+    private static final SecureRandom s_random = new SecureRandom();
+
+    private final File _file;
+
+    private final long _maxLifetimeMillis;
+
+    /**
+     Create a store which keeps its cookies in a particular file and uses them for at most {@link #DEFAULT_MAX_LIFETIME_MILLIS}.
+     <p/>The file doesn't need to exist until something is saved.
+
+     @param file the file.
+     */
+
+    public WikiTreeCredentialStore( @NotNull File file ) {
+
+        this( file, DEFAULT_MAX_LIFETIME_MILLIS );
+
+    }
+
+    /**
+     Create a store which keeps its cookies in a particular file.
+     <p/>The file doesn't need to exist until something is saved.
+
+     @param file              the file.
+     @param maxLifetimeMillis how long after it was saved a login is used for (sooner if its cookies expire sooner).
+     @throws IllegalArgumentException if {@code maxLifetimeMillis} is not positive.
+     */
+
+    public WikiTreeCredentialStore( @NotNull File file, long maxLifetimeMillis ) {
+
+        super();
+
+        if ( maxLifetimeMillis <= 0 ) {
+
+            throw new IllegalArgumentException( "WikiTreeCredentialStore:  maximum lifetime must be positive (" + maxLifetimeMillis + ")" );
+
+        }
+
+        _file = file;
+        _maxLifetimeMillis = maxLifetimeMillis;
+
+    }
+
+    /**
+     Get the file that a store uses unless told otherwise ({@code ~/.wikitree-api/credentials}).
+     */
+
+    @NotNull
+    public static File getDefaultFile() {
+
+        return new File( new File( System.getProperty( "user.home", "." ), ".wikitree-api" ), "credentials" );
+
+    }
+
+    @NotNull
+    public File getFile() {
+
+        return _file;
+
+    }
+
+    public long getMaxLifetimeMillis() {
+
+        return _maxLifetimeMillis;
+
+    }
+
+    /**
+     Save a login.
+
+     @param credentials the login (it must be authenticated).
+     @param password    the password that the login was made with.
+     @throws IllegalArgumentException if {@code credentials} is not authenticated.
+     @throws IOException              if the file can't be written.
+     */
+
+    @SuppressWarnings("unchecked")
+    public void save( @NotNull WikiTreeCredentials credentials, @NotNull String password )
+            throws IOException {
+
+        if ( !credentials.isAuthenticated() ) {
+
+            throw new IllegalArgumentException( "WikiTreeCredentialStore.save:  only authenticated logins can be saved (got " + credentials + ")" );
+
+        }
+
+        JSONObject contents = new JSONObject();
+        contents.put( "email", credentials.getEmailAddress() );
+        contents.put( "wikiTreeId", credentials.getWikiTreeId() );
+        JSONArray cookies = new JSONArray();
+        cookies.addAll( credentials.getCookies() );
+        contents.put( "cookies", cookies );
+        long now = System.currentTimeMillis();
+        contents.put( "expiresAt", Math.min( credentials.getExpiresAtMillis(), now + _maxLifetimeMillis ) );
+        contents.put( "savedAt", now );
+
+        byte[] salt = new byte[SALT_LENGTH];
+        byte[] iv = new byte[IV_LENGTH];
+        s_random.nextBytes( salt );
+        s_random.nextBytes( iv );
+
+        byte[] ciphertext;
+        try {
+
+            Cipher cipher = createCipher( Cipher.ENCRYPT_MODE, credentials.getEmailAddress(), password, salt, iv );
+            ciphertext = cipher.doFinal( contents.toJSONString().getBytes( StandardCharsets.UTF_8 ) );
+
+        } catch ( GeneralSecurityException e ) {
+
+            throw new ReallyBadNewsError( "WikiTreeCredentialStore.save:  this JVM can't do AES-GCM with PBKDF2 keys", e );
+
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate( MAGIC.length + SALT_LENGTH + IV_LENGTH + ciphertext.length );
+        buffer.put( MAGIC ).put( salt ).put( iv ).put( ciphertext );
+
+        // Write a private temporary file next to the real one and then move it into place
+        // so that a reader never sees a half written file.
+
+        Path target = _file.getAbsoluteFile().toPath();
+        Path directory = target.getParent();
+        Files.createDirectories( directory );
+        Path temporary;
+        try {
+
+            temporary = Files.createTempFile( directory, target.getFileName().toString(), ".tmp", PosixFilePermissions.asFileAttribute( PosixFilePermissions.fromString( "rw-------" ) ) );
+
+        } catch ( UnsupportedOperationException e ) {
+
+            temporary = Files.createTempFile( directory, target.getFileName().toString(), ".tmp" );
+
+        }
+
+        try {
+
+            Files.write( temporary, buffer.array() );
+            try {
+
+                Files.move( temporary, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE );
+
+            } catch ( AtomicMoveNotSupportedException e ) {
+
+                Files.move( temporary, target, StandardCopyOption.REPLACE_EXISTING );
+
+            }
+
+        } finally {
+
+            Files.deleteIfExists( temporary );
+
+        }
+
+    }
+
+    /**
+     Load a saved login.
+
+     @param emailAddress the email address that the login was made with.
+     @param password     the password that the login was made with.
+     @return the login or an empty optional if there isn't one, if it was saved for a different email address or password,
+     if the file has been tampered with, if the login's cookies have expired or if it was saved longer ago than this store's maximum lifetime.
+     @throws IOException if the file exists but can't be read.
+     */
+
+    @NotNull
+    public Optional<WikiTreeCredentials> load( @NotNull String emailAddress, @NotNull String password )
+            throws IOException {
+
+        if ( !_file.isFile() ) {
+
+            return Optional.empty();
+
+        }
+
+        byte[] bytes = Files.readAllBytes( _file.toPath() );
+        if ( bytes.length < MAGIC.length + SALT_LENGTH + IV_LENGTH || !Arrays.equals( MAGIC, Arrays.copyOf( bytes, MAGIC.length ) ) ) {
+
+            return Optional.empty();
+
+        }
+
+        byte[] salt = Arrays.copyOfRange( bytes, MAGIC.length, MAGIC.length + SALT_LENGTH );
+        byte[] iv = Arrays.copyOfRange( bytes, MAGIC.length + SALT_LENGTH, MAGIC.length + SALT_LENGTH + IV_LENGTH );
+
+        JSONObject contents;
+        try {
+
+            Cipher cipher = createCipher( Cipher.DECRYPT_MODE, emailAddress, password, salt, iv );
+            int offset = MAGIC.length + SALT_LENGTH + IV_LENGTH;
+            byte[] plaintext = cipher.doFinal( bytes, offset, bytes.length - offset );
+            contents = WikiTreeApiUtilities.parseJsonObject( new String( plaintext, StandardCharsets.UTF_8 ) );
+
+        } catch ( GeneralSecurityException | ParseException | ClassCastException e ) {
+
+            // Wrong email address or password (the GCM tag doesn't match) or a damaged file.
+
+            return Optional.empty();
+
+        }
+
+        List<String> cookies = new ArrayList<>();
+        for ( Object cookie : (JSONArray)contents.get( "cookies" ) ) {
+
+            cookies.add( (String)cookie );
+
+        }
+
+        // The lifetime is applied again in case the file was saved by a store with a longer one.
+
+        long expiresAt = ( (Number)contents.get( "expiresAt" ) ).longValue();
+        Object savedAt = contents.get( "savedAt" );
+        if ( savedAt instanceof Number ) {
+
+            expiresAt = Math.min( expiresAt, ( (Number)savedAt ).longValue() + _maxLifetimeMillis );
+
+        }
+
+        WikiTreeCredentials credentials = WikiTreeCredentials.restore(
+                (String)contents.get( "email" ),
+                (String)contents.get( "wikiTreeId" ),
+                cookies,
+                expiresAt
+        );
+
+        return credentials.isExpired() ? Optional.empty() : Optional.of( credentials );
+
+    }
+
+    /**
+     Forget whatever is saved.
+
+     @return {@code true} if there was something to forget.
+     @throws IOException if the file exists but can't be deleted.
+     */
+
+    public boolean delete()
+            throws IOException {
+
+        return Files.deleteIfExists( _file.toPath() );
+
+    }
+
+    private static Cipher createCipher( int mode, String emailAddress, String password, byte[] salt, byte[] iv )
+            throws GeneralSecurityException {
+
+        PBEKeySpec keySpec = new PBEKeySpec( password.toCharArray(), salt, PBKDF2_ITERATIONS, KEY_BITS );
+        byte[] key;
+        try {
+
+            key = SecretKeyFactory.getInstance( "PBKDF2WithHmacSHA256" ).generateSecret( keySpec ).getEncoded();
+
+        } finally {
+
+            keySpec.clearPassword();
+
+        }
+
+        Cipher cipher = Cipher.getInstance( "AES/GCM/NoPadding" );
+        cipher.init( mode, new SecretKeySpec( key, "AES" ), new GCMParameterSpec( TAG_BITS, iv ) );
+        cipher.updateAAD( emailAddress.trim().toLowerCase( Locale.ROOT ).getBytes( StandardCharsets.UTF_8 ) );
+
+        return cipher;
+
+    }
+
+    public String toString() {
+
+        return "WikiTreeCredentialStore( " + _file + ", max lifetime=" + _maxLifetimeMillis + "ms )";
+
+    }
+
+}
@@ -0,0 +1,382 @@
+/*
+ * Copyright © 2017 Daniel Boulet
+ */
+
+package com.matilda.wikitree.api.jsonclient;
+
+import com.matilda.wikitree.api.exceptions.ReallyBadNewsError;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.json.simple.JSONObject;
+
+import java.net.HttpCookie;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ An immutable snapshot of a {@link WikiTreeApiJsonSession}'s login state.
+ <p/>A session holds exactly one of these at a time and replaces it in one step when a login attempt completes.
+ A request reads the snapshot once, when it starts, and sends whatever cookies it finds there. Requests therefore never
+ need a lock to get at the session's credentials and a login which happens while requests are in flight neither blocks them
+ nor changes which credentials they were sent with.
+ <p/>Every snapshot is either authenticated (it has an email address, a WikiTree ID and at least one cookie) or it isn't
+ (it has none of them).
+ */
+
+public final class WikiTreeCredentials {
+
+    /**
+     The login state of a session which has never tried to log in.
+     */
+
+    public static final WikiTreeCredentials ANONYMOUS = new WikiTreeCredentials( null, null, Collections.emptyList(), Long.MAX_VALUE, null, null );
+
+    private final String _emailAddress;
+
+    private final String _wikiTreeId;
+
+    private final List<String> _cookies;
+
+    private final String _cookieHeader;
+
+    private final long _expiresAtMillis;
+
+    private final String _loginResultStatus;
+
+    private final JSONObject _loginResult;
+
+    private WikiTreeCredentials(
+            @Nullable String emailAddress,
+            @Nullable String wikiTreeId,
+            @NotNull List<String> cookies,
+            long expiresAtMillis,
+            @Nullable String loginResultStatus,
+            @Nullable JSONObject loginResult
+    ) {
+
+        super();
+
+        _emailAddress = emailAddress;
+        _wikiTreeId = wikiTreeId;
+        _cookies = cookies;
+        _expiresAtMillis = expiresAtMillis;
+        _loginResultStatus = loginResultStatus;
+        _loginResult = loginResult;
+
+        // Requests send the cookies' name=value parts (not their attributes) so work that out once, here.
+
+        if ( cookies.isEmpty() ) {
+
+            _cookieHeader = null;
+
+        } else {
+
+            StringBuilder sb = new StringBuilder();
+            String semiColon = "";
+            for ( String cookie : cookies ) {
+
+                sb.append( semiColon ).append( cookie.split( ";", 2 )[0] );
+                semiColon = "; ";
+
+            }
+
+            _cookieHeader = sb.toString();
+
+        }
+
+    }
+
+    /**
+     Create the snapshot that a login attempt results in.
+
+     @param emailAddress the email address that the login attempt was made with.
+     @param loginResult  what the WikiTree API server sent back ({@code null} if it sent nothing back).
+     @param setCookies   the values of the {@code Set-Cookie} headers in the server's response (only used if the login worked).
+     @return an authenticated snapshot if the login worked; an unauthenticated one (which still records the attempt's
+     result status and result) if it didn't.
+     @throws ReallyBadNewsError if the server's response is not shaped like a login response or if it claims that the
+                                login worked but didn't send any cookies.
+     */
+
+    @NotNull
+    public static WikiTreeCredentials fromLoginResult(
+            @NotNull String emailAddress,
+            @Nullable JSONObject loginResult,
+            @Nullable Collection<String> setCookies
+    ) {
+
+        // It cannot possibly have worked if we didn't get a JSON result object back.
+
+        if ( loginResult == null ) {
+
+            return new WikiTreeCredentials( null, null, Collections.emptyList(), Long.MAX_VALUE, null, null );
+
+        }
+
+        // Does it contain a "login" object?
+
+        Object actualResultObj = loginResult.get( "login" );
+        if ( actualResultObj == null ) {
+
+            throw new ReallyBadNewsError( "JSonWikiTreeApiClient.login:  request result does not contain a \"login\" entity" );
+
+        } else if ( !( actualResultObj instanceof JSONObject ) ) {
+
+            throw new ReallyBadNewsError(
+                    "JSonWikiTreeApiClient.login:  request result's \"login\" entity is not a JSON object " +
+                    "(it is a " + actualResultObj.getClass().getCanonicalName() + ")"
+            );
+
+        }
+
+        // We got a "login" object. Does it contain a "result" string?
+
+        JSONObject actualResult = (JSONObject)actualResultObj;
+        Object resultStatus = actualResult.get( "result" );
+        if ( resultStatus == null ) {
+
+            throw new ReallyBadNewsError(
+                    "JSonWikiTreeApiClient.login:  request result's \"login\" object does not contain a \"result\" entity"
+            );
+
+        } else if ( !( resultStatus instanceof String ) ) {
+
+            throw new ReallyBadNewsError(
+                    "JSonWikiTreeApiClient.login:  request result's \"login\" object's \"result\" entity " +
+                    "is not a string " +
+                    "(it is a " + resultStatus.getClass().getCanonicalName() + ")"
+            );
+
+        }
+
+        String loginResultStatus = (String)resultStatus;
+        if ( !"Success".equals( loginResultStatus ) ) {
+
+            return new WikiTreeCredentials( null, null, Collections.emptyList(), Long.MAX_VALUE, loginResultStatus, loginResult );
+
+        }
+
+        // The login seems to have worked. Let's extract user's WikiTree ID.
+
+        Object wikiTreeIdObj = actualResult.get( "username" );
+        if ( wikiTreeIdObj == null ) {
+
+            throw new ReallyBadNewsError(
+                    "JSonWikiTreeApiClient.login:  request result's \"login\" object does not contain a \"username\" entity"
+            );
+
+        } else if ( !( wikiTreeIdObj instanceof String ) ) {
+
+            throw new ReallyBadNewsError(
+                    "JSonWikiTreeApiClient.login:  request result's \"login\" object's \"username\" entity is not a string " +
+                    "(it is a " + wikiTreeIdObj.getClass().getCanonicalName() + ")"
+            );
+
+        }
+
+        // A successful login without cookies means that we don't understand the protocol.
+        // The alternative is to end up with an authenticated session which can't prove who it is authenticated for.
+
+        if ( setCookies == null || setCookies.isEmpty() ) {
+
+            throw new ReallyBadNewsError(
+                    "JSonWikiTreeApiClient.login:  supposedly successful login request for " + wikiTreeIdObj + " did not yield any login cookies"
+            );
+
+        }
+
+        return new WikiTreeCredentials(
+                emailAddress,
+                (String)wikiTreeIdObj,
+                Collections.unmodifiableList( new ArrayList<>( setCookies ) ),
+                getExpiresAtMillis( setCookies ),
+                loginResultStatus,
+                loginResult
+        );
+
+    }
+
+    /**
+     Recreate an authenticated snapshot that was saved earlier (see {@link WikiTreeCredentialStore}).
+     */
+
+    @NotNull
+    static WikiTreeCredentials restore( @NotNull String emailAddress, @NotNull String wikiTreeId, @NotNull List<String> cookies, long expiresAtMillis ) {
+
+        if ( cookies.isEmpty() ) {
+
+            throw new IllegalArgumentException( "WikiTreeCredentials.restore:  an authenticated snapshot needs at least one cookie" );
+
+        }
+
+        return new WikiTreeCredentials(
+                emailAddress,
+                wikiTreeId,
+                Collections.unmodifiableList( new ArrayList<>( cookies ) ),
+                expiresAtMillis,
+                "Success",
+                null
+        );
+
+    }
+
+    /**
+     Work out when the first of a set of cookies expires.
+     <p/>Cookies with a max age of zero (including ones which expired in the past, like {@code x=deleted; expires=Thu, 01-Jan-1970 00:00:01 GMT})
+     are the server telling the client to delete them. They aren't part of the login so they don't get a say either.
+
+     @return when, in milliseconds since the epoch ({@link Long#MAX_VALUE} if none of them say).
+     */
+
+    private static long getExpiresAtMillis( Collection<String> setCookies ) {
+
+        long now = System.currentTimeMillis();
+        long rval = Long.MAX_VALUE;
+        for ( String setCookie : setCookies ) {
+
+            try {
+
+                for ( HttpCookie cookie : HttpCookie.parse( setCookie ) ) {
+
+                    // Either Max-Age or Expires (which HttpCookie turns into a max age). -1 means it lasts as long as the session
+                    // and 0 means that it is being deleted.
+
+                    if ( cookie.getMaxAge() > 0 ) {
+
+                        rval = Math.min( rval, now + TimeUnit.SECONDS.toMillis( cookie.getMaxAge() ) );
+
+                    }
+
+                }
+
+            } catch ( IllegalArgumentException e ) {
+
+                // Not a cookie that we can make sense of so it doesn't get a say.
+
+            }
+
+        }
+
+        return rval;
+
+    }
+
+    /**
+     Determine if requests made with this snapshot are made with a WikiTree user's credentials.
+     */
+
+    public boolean isAuthenticated() {
+
+        return _cookieHeader != null;
+
+    }
+
+    /**
+     Get the email address of the user that this snapshot is authenticated for ({@code null} if it isn't authenticated).
+     */
+
+    @Nullable
+    public String getEmailAddress() {
+
+        return _emailAddress;
+
+    }
+
+    /**
+     Get when this snapshot's cookies expire.
+
+     @return when, in milliseconds since the epoch ({@link Long#MAX_VALUE} if the server didn't say).
+     */
+
+    public long getExpiresAtMillis() {
+
+        return _expiresAtMillis;
+
+    }
+
+    /**
+     Determine if this snapshot is authenticated but the server has said that its cookies have expired by now.
+     <p/>Servers can forget about a login before its cookies expire so a snapshot which isn't expired isn't necessarily still good.
+     */
+
+    public boolean isExpired() {
+
+        return isAuthenticated() && System.currentTimeMillis() >= _expiresAtMillis;
+
+    }
+
+    /**
+     Get the WikiTree ID of the user that this snapshot is authenticated for ({@code null} if it isn't authenticated).
+     */
+
+    @Nullable
+    public String getWikiTreeId() {
+
+        return _wikiTreeId;
+
+    }
+
+    /**
+     Get the login cookies (exactly as they appeared in the login response's {@code Set-Cookie} headers).
+
+     @return an unmodifiable list which is empty if this snapshot isn't authenticated.
+     */
+
+    @NotNull
+    public List<String> getCookies() {
+
+        return _cookies;
+
+    }
+
+    /**
+     Get the value of the {@code Cookie} header that requests made with this snapshot carry.
+
+     @return the header's value or {@code null} if this snapshot isn't authenticated.
+     */
+
+    @Nullable
+    public String getCookieHeader() {
+
+        return _cookieHeader;
+
+    }
+
+    /**
+     Get the result status of the login attempt that created this snapshot.
+     <p/>See {@link WikiTreeApiJsonSession#getLoginResultStatus()} for more information.
+     */
+
+    @Nullable
+    public String getLoginResultStatus() {
+
+        return _loginResultStatus;
+
+    }
+
+    /**
+     Get what the WikiTree API server sent back for the login attempt that created this snapshot.
+     <p/>The object is shared by everyone who asks for it. Don't change it.
+     */
+
+    @Nullable
+    public JSONObject getLoginResult() {
+
+        return _loginResult;
+
+    }
+
+    public String toString() {
+
+        return "WikiTreeCredentials( " +
+               ( isAuthenticated() ? "authenticated as " + _wikiTreeId + ", " + _cookies.size() + " cookie" + ( _cookies.size() == 1 ? "" : "s" ) : "anonymous" ) +
+               ( isExpired() ? ", expired" : "" ) +
+               ( _loginResultStatus == null ? "" : ", status=" + _loginResultStatus ) +
+               " )";
+
+    }
+
+}
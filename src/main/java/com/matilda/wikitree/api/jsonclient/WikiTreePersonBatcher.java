@@ -0,0 +1,495 @@
+/*
+ * Copyright © 2017 Daniel Boulet
+ */
+
+package com.matilda.wikitree.api.jsonclient;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.ParseException;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ Combines {@code getPerson} requests for single profiles which arrive at about the same time into one request for all of them.
+ <p/>The WikiTree API has no multi-key form of {@code getPerson} but {@code getRelatives} takes a list of keys and returns each
+ profile with the same fields and relatives as {@code getPerson} does. The first lookup to arrive opens a batch and waits for
+ the batch window to pass (or for the batch to fill up) while other lookups for profiles with the same fields join it.
+ The whole batch then goes to the server as one {@code getRelatives} request and each caller gets back a {@code getPerson}
+ shaped response for its own profile. Lookups for the same profile in the same batch share one slot.
+ <p/>Profiles which the batched request doesn't return (for example, because the key doesn't exist) are looked up on their own
+ so that their callers get exactly what an unbatched {@code getPerson} request would have got.
+ <p/>See {@link WikiTreeApiJsonSession#setBatchWindowMillis(long)}.
+ */
+
+final class WikiTreePersonBatcher {
+
+    private static final String[] RELATIVE_MAPS = { "Parents", "Children", "Spouses", "Siblings" };
+
+    private static final class Batch {
+
+        private final String _fields;
+
+        private final Map<String, CompletableFuture<Optional<JSONObject>>> _lookups = new LinkedHashMap<>();
+
+        private boolean _closed;
+
+        private Batch( String fields ) {
+
+            super();
+
+            _fields = fields;
+
+        }
+
+    }
+
+    private final WikiTreeApiJsonSession _session;
+
+    private final long _windowNanos;
+
+    private final int _maxBatchSize;
+
+    /**
+     The batches that are still accepting lookups, by their fields parameter (which may be {@code null}).
+     */
+
+    private final Map<String, Batch> _openBatches = new HashMap<>();
+
+    private final LongAdder _batchCount = new LongAdder();
+
+    private final LongAdder _batchedLookupCount = new LongAdder();
+
+    WikiTreePersonBatcher( @NotNull WikiTreeApiJsonSession session, long windowMillis, int maxBatchSize ) {
+
+        super();
+
+        _session = session;
+        _windowNanos = TimeUnit.MILLISECONDS.toNanos( windowMillis );
+        _maxBatchSize = maxBatchSize;
+
+    }
+
+    long getWindowMillis() {
+
+        return TimeUnit.NANOSECONDS.toMillis( _windowNanos );
+
+    }
+
+    int getMaxBatchSize() {
+
+        return _maxBatchSize;
+
+    }
+
+    long getBatchCount() {
+
+        return _batchCount.sum();
+
+    }
+
+    long getBatchedLookupCount() {
+
+        return _batchedLookupCount.sum();
+
+    }
+
+    /**
+     Look up a profile, possibly as part of a batch.
+     */
+
+    @NotNull
+    Optional<JSONObject> getPerson( @NotNull String key, @Nullable String fields )
+            throws IOException, ParseException {
+
+        if ( !isBatchable( key, fields ) ) {
+
+            return _session.request( new WikiTreeRequest.GetPerson( key, fields ) );
+
+        }
+
+        WikiTreeResponseCache cache = _session.getResponseCache();
+        if ( cache != null ) {
+
+            JSONObject cached = cache.get( WikiTreeResponseCache.getScope( _session.getCredentials() ), new WikiTreeRequest.GetPerson( key, fields ) );
+            if ( cached != null ) {
+
+                return Optional.of( cached );
+
+            }
+
+        }
+
+        Batch batch;
+        CompletableFuture<Optional<JSONObject>> lookup;
+        boolean opened = false;
+        boolean filled = false;
+        synchronized ( _openBatches ) {
+
+            batch = _openBatches.get( fields );
+            if ( batch == null ) {
+
+                batch = new Batch( fields );
+                _openBatches.put( fields, batch );
+                opened = true;
+
+            }
+
+            lookup = batch._lookups.computeIfAbsent( key, k -> new CompletableFuture<>() );
+            if ( batch._lookups.size() >= _maxBatchSize ) {
+
+                close( batch );
+                filled = true;
+
+            }
+
+        }
+
+        if ( filled ) {
+
+            send( batch );
+
+        } else if ( opened ) {
+
+            // Give other lookups a chance to join and then send the batch unless it filled up (and was sent) in the meantime.
+
+            boolean interrupted = false;
+            try {
+
+                TimeUnit.NANOSECONDS.sleep( _windowNanos );
+
+            } catch ( InterruptedException e ) {
+
+                interrupted = true;
+
+            }
+
+            boolean stillOpen;
+            synchronized ( _openBatches ) {
+
+                stillOpen = !batch._closed;
+                if ( stillOpen ) {
+
+                    close( batch );
+
+                }
+
+            }
+
+            if ( stillOpen ) {
+
+                send( batch );
+
+            }
+
+            if ( interrupted ) {
+
+                Thread.currentThread().interrupt();
+
+            }
+
+        }
+
+        return await( lookup );
+
+    }
+
+    /**
+     Determine if a lookup can be batched.
+     <p/>The slice of a {@code getRelatives} response that belongs to a profile only turns into a proper {@code getPerson}
+     response if it includes the profile's {@code Name} (which is the {@code getPerson} response's {@code page_name}).
+     */
+
+    private static boolean isBatchable( @NotNull String key, @Nullable String fields ) {
+
+        if ( key.isEmpty() || key.indexOf( ',' ) >= 0 ) {
+
+            return false;
+
+        }
+
+        if ( fields == null ) {
+
+            return true;
+
+        }
+
+        for ( String field : fields.split( "," ) ) {
+
+            String trimmed = field.trim();
+            if ( "*".equals( trimmed ) || "Name".equals( trimmed ) ) {
+
+                return true;
+
+            }
+
+        }
+
+        return false;
+
+    }
+
+    private void close( Batch batch ) {
+
+        batch._closed = true;
+        _openBatches.remove( batch._fields, batch );
+
+    }
+
+    private void send( Batch batch ) {
+
+        // The batch is closed so nobody else touches its lookups from here on.
+
+        Map<String, CompletableFuture<Optional<JSONObject>>> lookups = batch._lookups;
+        try {
+
+            if ( lookups.size() == 1 ) {
+
+                Map.Entry<String, CompletableFuture<Optional<JSONObject>>> only = lookups.entrySet().iterator().next();
+                only.getValue().complete( _session.request( new WikiTreeRequest.GetPerson( only.getKey(), batch._fields ) ) );
+
+                return;
+
+            }
+
+            _batchCount.increment();
+            _batchedLookupCount.add( lookups.size() );
+
+            boolean[] wanted = getWantedRelativeMaps( batch._fields );
+            WikiTreeCredentials credentials = _session.getCredentials();
+            Optional<JSONObject> response = _session.request(
+                    new WikiTreeRequest.GetRelatives( String.join( ",", lookups.keySet() ), batch._fields, wanted[0], wanted[1], wanted[2], wanted[3] )
+            );
+
+            // Only cache the slices if the session was logged in as the same account for the whole request.
+
+            WikiTreeResponseCache cache = _session.getResponseCache();
+            boolean cacheable = cache != null && _session.getCredentials() == credentials;
+
+            Map<String, JSONObject> slices = getSlices( response, wanted );
+            List<String> leftovers = new ArrayList<>();
+            for ( Map.Entry<String, CompletableFuture<Optional<JSONObject>>> entry : lookups.entrySet() ) {
+
+                JSONObject slice = slices.get( entry.getKey() );
+                if ( slice == null ) {
+
+                    leftovers.add( entry.getKey() );
+
+                } else {
+
+                    if ( cacheable ) {
+
+                        cache.put( WikiTreeResponseCache.getScope( credentials ), new WikiTreeRequest.GetPerson( entry.getKey(), batch._fields ), slice );
+
+                    }
+
+                    entry.getValue().complete( Optional.of( slice ) );
+
+                }
+
+            }
+
+            for ( String key : leftovers ) {
+
+                try {
+
+                    lookups.get( key ).complete( _session.request( new WikiTreeRequest.GetPerson( key, batch._fields ) ) );
+
+                } catch ( IOException | ParseException | RuntimeException e ) {
+
+                    lookups.get( key ).completeExceptionally( e );
+
+                }
+
+            }
+
+        } catch ( IOException | ParseException | RuntimeException | Error e ) {
+
+            for ( CompletableFuture<Optional<JSONObject>> lookup : lookups.values() ) {
+
+                lookup.completeExceptionally( e );
+
+            }
+
+        }
+
+    }
+
+    /**
+     Work out which relatives a {@code getPerson} request with a particular fields parameter gets back.
+     */
+
+    private static boolean[] getWantedRelativeMaps( @Nullable String fields ) {
+
+        boolean[] wanted = new boolean[RELATIVE_MAPS.length];
+        if ( fields == null ) {
+
+            Arrays.fill( wanted, true );
+
+            return wanted;
+
+        }
+
+        // Trim the names just like isBatchable (and the server) do.
+
+        List<String> fieldNames = new ArrayList<>();
+        for ( String field : fields.split( "," ) ) {
+
+            fieldNames.add( field.trim() );
+
+        }
+
+        if ( fieldNames.contains( "*" ) ) {
+
+            Arrays.fill( wanted, true );
+
+        } else {
+
+            for ( int i = 0; i < RELATIVE_MAPS.length; i += 1 ) {
+
+                wanted[i] = fieldNames.contains( RELATIVE_MAPS[i] );
+
+            }
+
+        }
+
+        return wanted;
+
+    }
+
+    /**
+     Turn the items in a {@code getRelatives} response into {@code getPerson} responses.
+
+     @return the {@code getPerson} responses by the keys that they were requested with.
+     */
+
+    @SuppressWarnings("unchecked")
+    @NotNull
+    private static Map<String, JSONObject> getSlices( @NotNull Optional<JSONObject> response, boolean[] wanted ) {
+
+        Map<String, JSONObject> slices = new HashMap<>();
+        Object items = response.isPresent() ? response.get().get( "items" ) : null;
+        if ( !( items instanceof JSONArray ) ) {
+
+            return slices;
+
+        }
+
+        for ( Object rawItem : (JSONArray)items ) {
+
+            if ( !( rawItem instanceof JSONObject ) ) {
+
+                continue;
+
+            }
+
+            JSONObject item = (JSONObject)rawItem;
+            Object key = item.get( "key" );
+            Object person = item.get( "person" );
+            if ( !( key instanceof String ) || !( person instanceof JSONObject ) || ( (JSONObject)person ).get( "Name" ) == null ) {
+
+                continue;
+
+            }
+
+            // The response might be in a cache so copy the person rather than changing it.
+            // getRelatives leaves out relatives that a person doesn't have whereas getPerson returns them as empty arrays.
+
+            JSONObject slicePerson = new JSONObject( (JSONObject)person );
+            for ( int i = 0; i < RELATIVE_MAPS.length; i += 1 ) {
+
+                if ( wanted[i] && !slicePerson.containsKey( RELATIVE_MAPS[i] ) ) {
+
+                    slicePerson.put( RELATIVE_MAPS[i], new JSONArray() );
+
+                }
+
+            }
+
+            JSONObject slice = new JSONObject();
+            for ( String idName : new String[]{ "user_id", "user_name" } ) {
+
+                if ( item.containsKey( idName ) ) {
+
+                    slice.put( idName, item.get( idName ) );
+
+                }
+
+            }
+
+            slice.put( "page_name", slicePerson.get( "Name" ) );
+            slice.put( "person", slicePerson );
+            slice.put( "status", 0L );
+            slices.put( (String)key, slice );
+
+        }
+
+        return slices;
+
+    }
+
+    @NotNull
+    private static Optional<JSONObject> await( @NotNull CompletableFuture<Optional<JSONObject>> lookup )
+            throws IOException, ParseException {
+
+        try {
+
+            return lookup.get();
+
+        } catch ( InterruptedException e ) {
+
+            Thread.currentThread().interrupt();
+
+            throw new InterruptedIOException( "WikiTreePersonBatcher:  interrupted while waiting for a batched getPerson" );
+
+        } catch ( ExecutionException e ) {
+
+            Throwable cause = e.getCause();
+            if ( cause instanceof IOException ) {
+
+                throw (IOException)cause;
+
+            } else if ( cause instanceof ParseException ) {
+
+                throw (ParseException)cause;
+
+            } else if ( cause instanceof RuntimeException ) {
+
+                throw (RuntimeException)cause;
+
+            } else if ( cause instanceof Error ) {
+
+                throw (Error)cause;
+
+            } else {
+
+                throw new IllegalStateException( "WikiTreePersonBatcher:  unexpected failure", cause );
+
+            }
+
+        }
+
+    }
+
+    public String toString() {
+
+        return "WikiTreePersonBatcher( window=" + getWindowMillis() + "ms, max size=" + _maxBatchSize +
+               ", batches=" + getBatchCount() + ", batched lookups=" + getBatchedLookupCount() + " )";
+
+    }
+
+}
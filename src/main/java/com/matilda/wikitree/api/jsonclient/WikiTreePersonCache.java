@@ -0,0 +1,664 @@
+/*
+ * Copyright © 2017 Daniel Boulet
+ */
+
+package com.matilda.wikitree.api.jsonclient;
+
+import com.matilda.wikitree.api.util.WikiTreeApiUtilities;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.ParseException;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ A bounded, thread-safe cache of person profiles which remembers which {@code getPerson} fields it has for each person
+ (see {@link WikiTreeApiJsonSession#setPersonCache(WikiTreePersonCache)}).
+ <p/>A {@link WikiTreeResponseCache} treats {@code getPerson} requests for the same person with different {@code fields}
+ parameters as unrelated requests. This cache instead keeps one record per person with a bitmap of the fields in
+ {@link WikiTreeApiUtilities#S_ALL_GET_PERSON_FIELDS_SET} that it has fetched. A request for fields which are all in the record
+ is answered from the record. Otherwise only the missing fields are fetched and they are merged into the record.
+ For example, after {@code getPerson( key, "*" )} a {@code getBasicPersonProfile} for the same person needs no request at all,
+ and after {@code getBasicPersonProfile} a request for more fields only fetches the extra ones.
+ <p/>Responses built from a record look like the server's {@code getPerson} responses for the requested fields. Fields that the
+ server didn't return for a profile (usually because it's private) are left out in the same way. A record only answers
+ {@code fields=*} requests if it was fetched with {@code fields=*}, since those return things which aren't in the field list.
+ Requests without a fields parameter, or with fields that aren't in the list, bypass the cache.
+ <p/>Records are kept separate by scope in the same way as a {@link WikiTreeResponseCache}'s responses
+ (see {@link WikiTreeResponseCache#getScope(WikiTreeCredentials)}). A record can be found by the WikiTree ID, the Person.Id,
+ or whatever key it was fetched with. A record expires a fixed time after it was first fetched, no matter how many fields
+ were merged into it later. The least recently used records are evicted once the cache is full.
+ <p/>Responses to other requests carry profiles too. For example, a {@code getPerson} response includes the profiles of the
+ person's relatives, and {@code getRelatives}, {@code getAncestors} and {@code getWatchlist} responses are mostly profiles.
+ A session which uses this cache seeds it with every such profile (see {@link #seed(String, JSONObject)}), so a later
+ {@code getPerson} for one of them can often be answered without a request. A seeded profile only counts as having the fields
+ that actually appear in it, because a field can be missing for reasons that a {@code getPerson} request wouldn't share.
+ */
+
+public class WikiTreePersonCache {
+
+    private static final String[] s_fields = WikiTreeApiUtilities.S_ALL_GET_PERSON_FIELDS_SET.toArray( new String[0] );
+
+    private static final Map<String, Integer> s_fieldBits;
+
+    /**
+     The bit for records fetched with {@code fields=*} (which includes more than just the known fields).
+     */
+
+    private static final long ALL_FIELDS_BIT = 1L << 62;
+
+    private static final long KNOWN_FIELDS_MASK;
+
+    /**
+     Always fetched along with whatever is missing so that a record can be found by the person's WikiTree ID and Person.Id.
+     */
+
+    private static final long IDENTITY_MASK;
+
+    /**
+     Where the profiles are in the responses to the various requests.
+     */
+
+    private static final String[] PROFILE_ARRAYS = { "ancestors", "watchlist" };
+
+    private static final String[] RELATIVE_MAPS = { "Parents", "Children", "Spouses", "Siblings" };
+
+    static {
+
+        if ( s_fields.length > 62 ) {
+
+            throw new IllegalStateException( "WikiTreePersonCache:  too many getPerson fields for a long bitmap (" + s_fields.length + ")" );
+
+        }
+
+        Map<String, Integer> bits = new HashMap<>();
+        for ( int i = 0; i < s_fields.length; i += 1 ) {
+
+            bits.put( s_fields[i], i );
+
+        }
+
+        s_fieldBits = Collections.unmodifiableMap( bits );
+        KNOWN_FIELDS_MASK = ( 1L << s_fields.length ) - 1;
+        IDENTITY_MASK = ( 1L << bits.get( "Id" ) ) | ( 1L << bits.get( "Name" ) );
+
+    }
+
+    /**
+     What the cache knows about a person. Never changed once created (merging creates a new record).
+     */
+
+    private static final class Record {
+
+        private final long _fieldsMask;
+
+        private final JSONObject _person;
+
+        private final long _expiresAtNanos;
+
+        private Record( long fieldsMask, JSONObject person, long expiresAtNanos ) {
+
+            super();
+
+            _fieldsMask = fieldsMask;
+            _person = person;
+            _expiresAtNanos = expiresAtNanos;
+
+        }
+
+    }
+
+    private final Map<String, Record> _records;
+
+    private final int _maxEntries;
+
+    private final long _timeToLiveNanos;
+
+    private final LongAdder _hits = new LongAdder();
+
+    private final LongAdder _partialHits = new LongAdder();
+
+    private final LongAdder _misses = new LongAdder();
+
+    private final LongAdder _seeded = new LongAdder();
+
+    /**
+     Create a cache.
+
+     @param maxEntries       roughly how many people the cache remembers at most (each person takes up to three entries, one per way of finding them).
+     @param timeToLiveMillis how long a person stays in the cache.
+     @throws IllegalArgumentException if either is not positive.
+     */
+
+    public WikiTreePersonCache( int maxEntries, long timeToLiveMillis ) {
+
+        super();
+
+        if ( maxEntries <= 0 || timeToLiveMillis <= 0 ) {
+
+            throw new IllegalArgumentException(
+                    "WikiTreePersonCache:  need a positive size and time to live (got " + maxEntries + " and " + timeToLiveMillis + ")"
+            );
+
+        }
+
+        _maxEntries = maxEntries;
+        _timeToLiveNanos = TimeUnit.MILLISECONDS.toNanos( timeToLiveMillis );
+        _records = new LinkedHashMap<String, Record>( 16, 0.75f, true ) {
+
+            @Override
+            protected boolean removeEldestEntry( Map.Entry<String, Record> eldest ) {
+
+                return size() > _maxEntries;
+
+            }
+
+        };
+
+    }
+
+    /**
+     Work out the bitmap for a {@code fields} parameter.
+
+     @return the bitmap or {@code 0} if the parameter is {@code null} or names a field that isn't in {@link WikiTreeApiUtilities#S_ALL_GET_PERSON_FIELDS_SET}.
+     */
+
+    static long getFieldsMask( @Nullable String fields ) {
+
+        if ( fields == null ) {
+
+            return 0;
+
+        }
+
+        long rval = 0;
+        for ( String rawField : fields.split( "," ) ) {
+
+            String field = rawField.trim();
+            if ( "*".equals( field ) ) {
+
+                rval |= ALL_FIELDS_BIT | KNOWN_FIELDS_MASK;
+
+            } else {
+
+                Integer bit = s_fieldBits.get( field );
+                if ( bit == null ) {
+
+                    return 0;
+
+                }
+
+                rval |= 1L << bit;
+
+            }
+
+        }
+
+        return rval;
+
+    }
+
+    /**
+     Turn a bitmap back into a {@code fields} parameter.
+     */
+
+    @NotNull
+    static String getFieldsParameter( long fieldsMask ) {
+
+        if ( ( fieldsMask & ALL_FIELDS_BIT ) != 0 ) {
+
+            return "*";
+
+        }
+
+        StringBuilder sb = new StringBuilder();
+        for ( int i = 0; i < s_fields.length; i += 1 ) {
+
+            if ( ( fieldsMask & ( 1L << i ) ) != 0 ) {
+
+                sb.append( sb.length() == 0 ? "" : "," ).append( s_fields[i] );
+
+            }
+
+        }
+
+        return sb.toString();
+
+    }
+
+    /**
+     Get the name that a field has in responses ({@code "Derived."} fields appear without the prefix).
+     */
+
+    private static String getResponseName( String field ) {
+
+        return field.startsWith( "Derived." ) ? field.substring( "Derived.".length() ) : field;
+
+    }
+
+    /**
+     Look up a person, fetching whatever fields the cache doesn't have yet.
+
+     @param session the session to fetch missing fields with (which also determines the scope).
+     @param key     the person's WikiTree ID or Person.Id.
+     @param fields  the fields.
+     @return what a {@code getPerson} request for {@code fields} would have returned.
+     */
+
+    @NotNull
+    Optional<JSONObject> getPerson( @NotNull WikiTreeApiJsonSession session, @NotNull String key, @Nullable String fields )
+            throws IOException, ParseException {
+
+        long wanted = getFieldsMask( fields );
+        if ( wanted == 0 ) {
+
+            return session.fetchPerson( key, fields );
+
+        }
+
+        WikiTreeCredentials credentials = session.getCredentials();
+        String scope = WikiTreeResponseCache.getScope( credentials );
+        Record record = lookup( scope, key );
+        if ( record != null && ( record._fieldsMask & wanted ) == wanted ) {
+
+            _hits.increment();
+
+            return Optional.of( makeResponse( key, record, wanted ) );
+
+        }
+
+        long missing = wanted & ~( record == null ? 0 : record._fieldsMask );
+        if ( record == null ) {
+
+            _misses.increment();
+
+        } else {
+
+            _partialHits.increment();
+
+        }
+
+        Optional<JSONObject> response = session.fetchPerson( key, getFieldsParameter( missing | IDENTITY_MASK ) );
+        if ( !response.isPresent() || !( response.get().get( "person" ) instanceof JSONObject ) || response.get().get( "status" ) instanceof String ) {
+
+            // Let the caller see the failure just as if there were no cache.
+
+            return response;
+
+        }
+
+        if ( session.getCredentials() != credentials ) {
+
+            // Logged in or out while the request was in flight. What came back doesn't belong with the record.
+
+            return session.fetchPerson( key, fields );
+
+        }
+
+        return Optional.of( makeResponse( key, merge( scope, key, missing | IDENTITY_MASK, (JSONObject)response.get().get( "person" ) ), wanted ) );
+
+    }
+
+    /**
+     Remember the profiles in a response.
+     <p/>This looks for profiles where the WikiTree API puts them: the {@code person} in a {@code getPerson} response or in each
+     item of a {@code getRelatives} response, the {@code ancestors} and {@code watchlist} arrays, and the relatives in
+     each of those profiles' {@code Parents}, {@code Children}, {@code Spouses} and {@code Siblings} maps.
+
+     @param scope    the scope of the session that got the response.
+     @param response the response.
+     @return how many profiles were remembered.
+     */
+
+    public int seed( @NotNull String scope, @NotNull JSONObject response ) {
+
+        if ( response.get( "status" ) instanceof String ) {
+
+            return 0;
+
+        }
+
+        List<JSONObject> profiles = new ArrayList<>();
+        addProfile( profiles, response.get( "person" ) );
+        Object items = response.get( "items" );
+        if ( items instanceof JSONArray ) {
+
+            for ( Object item : (JSONArray)items ) {
+
+                if ( item instanceof JSONObject ) {
+
+                    addProfile( profiles, ( (JSONObject)item ).get( "person" ) );
+
+                }
+
+            }
+
+        }
+
+        for ( String arrayName : PROFILE_ARRAYS ) {
+
+            Object array = response.get( arrayName );
+            if ( array instanceof JSONArray ) {
+
+                for ( Object profile : (JSONArray)array ) {
+
+                    addProfile( profiles, profile );
+
+                }
+
+            }
+
+        }
+
+        int rval = 0;
+        for ( JSONObject profile : profiles ) {
+
+            long present = 0;
+            for ( int i = 0; i < s_fields.length; i += 1 ) {
+
+                if ( profile.containsKey( getResponseName( s_fields[i] ) ) ) {
+
+                    present |= 1L << i;
+
+                }
+
+            }
+
+            if ( ( present & IDENTITY_MASK ) == IDENTITY_MASK ) {
+
+                merge( scope, String.valueOf( profile.get( "Id" ) ), present, profile );
+                rval += 1;
+
+            }
+
+        }
+
+        _seeded.add( rval );
+
+        return rval;
+
+    }
+
+    /**
+     Add a profile and the profiles of any relatives that it carries.
+     */
+
+    private static void addProfile( List<JSONObject> profiles, Object profile ) {
+
+        if ( !( profile instanceof JSONObject ) ) {
+
+            return;
+
+        }
+
+        JSONObject person = (JSONObject)profile;
+        if ( !( person.get( "Id" ) instanceof Number ) || !( person.get( "Name" ) instanceof String ) ) {
+
+            return;
+
+        }
+
+        profiles.add( person );
+        for ( String mapName : RELATIVE_MAPS ) {
+
+            Object relatives = person.get( mapName );
+            if ( relatives instanceof JSONObject ) {
+
+                for ( Object relative : ( (JSONObject)relatives ).values() ) {
+
+                    addProfile( profiles, relative );
+
+                }
+
+            }
+
+        }
+
+    }
+
+    @Nullable
+    private Record lookup( String scope, String key ) {
+
+        String entryKey = scope + '\n' + key;
+        synchronized ( _records ) {
+
+            Record record = _records.get( entryKey );
+            if ( record != null && record._expiresAtNanos - System.nanoTime() <= 0 ) {
+
+                _records.remove( entryKey );
+
+                return null;
+
+            }
+
+            return record;
+
+        }
+
+    }
+
+    /**
+     Merge freshly fetched fields into whatever record there is by the time that they arrive.
+     */
+
+    @SuppressWarnings("unchecked")
+    private Record merge( String scope, String key, long fetchedMask, JSONObject fetched ) {
+
+        synchronized ( _records ) {
+
+            Record current = lookup( scope, key );
+            JSONObject person = new JSONObject();
+            long fieldsMask = fetchedMask;
+            long expiresAtNanos = System.nanoTime() + _timeToLiveNanos;
+            if ( current != null ) {
+
+                person.putAll( current._person );
+                fieldsMask |= current._fieldsMask;
+                expiresAtNanos = current._expiresAtNanos;
+
+            }
+
+            if ( ( fetchedMask & ALL_FIELDS_BIT ) != 0 ) {
+
+                person.clear();
+                person.putAll( fetched );
+
+            } else {
+
+                for ( int i = 0; i < s_fields.length; i += 1 ) {
+
+                    if ( ( fetchedMask & ( 1L << i ) ) != 0 ) {
+
+                        String name = getResponseName( s_fields[i] );
+                        if ( fetched.containsKey( name ) ) {
+
+                            person.put( name, fetched.get( name ) );
+
+                        } else {
+
+                            person.remove( name );
+
+                        }
+
+                    }
+
+                }
+
+            }
+
+            Record merged = new Record( fieldsMask, person, expiresAtNanos );
+            _records.put( scope + '\n' + key, merged );
+            for ( Object alias : new Object[]{ person.get( "Id" ), person.get( "Name" ) } ) {
+
+                if ( alias != null ) {
+
+                    _records.put( scope + '\n' + alias, merged );
+
+                }
+
+            }
+
+            return merged;
+
+        }
+
+    }
+
+    /**
+     Build a {@code getPerson} response for some of a record's fields.
+     */
+
+    @SuppressWarnings("unchecked")
+    @NotNull
+    private static JSONObject makeResponse( String key, Record record, long wanted ) {
+
+        JSONObject person = new JSONObject();
+        if ( ( wanted & ALL_FIELDS_BIT ) != 0 ) {
+
+            person.putAll( record._person );
+
+        } else {
+
+            for ( int i = 0; i < s_fields.length; i += 1 ) {
+
+                String name = getResponseName( s_fields[i] );
+                if ( ( wanted & ( 1L << i ) ) != 0 && record._person.containsKey( name ) ) {
+
+                    person.put( name, record._person.get( name ) );
+
+                }
+
+            }
+
+        }
+
+        JSONObject response = new JSONObject();
+        response.put( isPersonId( key ) ? "user_id" : "user_name", key );
+        response.put( "page_name", record._person.get( "Name" ) );
+        response.put( "person", person );
+        response.put( "status", 0L );
+
+        return response;
+
+    }
+
+    private static boolean isPersonId( String key ) {
+
+        for ( int i = 0; i < key.length(); i += 1 ) {
+
+            if ( !Character.isDigit( key.charAt( i ) ) ) {
+
+                return false;
+
+            }
+
+        }
+
+        return !key.isEmpty();
+
+    }
+
+    /**
+     Forget every person in a scope.
+
+     @param scope the scope.
+     */
+
+    public void invalidate( @NotNull String scope ) {
+
+        String prefix = scope + '\n';
+        synchronized ( _records ) {
+
+            _records.keySet().removeIf( entryKey -> entryKey.startsWith( prefix ) );
+
+        }
+
+    }
+
+    /**
+     Forget everything.
+     */
+
+    public void clear() {
+
+        synchronized ( _records ) {
+
+            _records.clear();
+
+        }
+
+    }
+
+    /**
+     Get the number of entries in the cache (a person can be in the cache under up to three keys).
+     */
+
+    public int size() {
+
+        synchronized ( _records ) {
+
+            return _records.size();
+
+        }
+
+    }
+
+    /**
+     Get how many lookups were answered entirely from the cache.
+     */
+
+    public long getHitCount() {
+
+        return _hits.sum();
+
+    }
+
+    /**
+     Get how many lookups found the person but had to fetch some missing fields.
+     */
+
+    public long getPartialHitCount() {
+
+        return _partialHits.sum();
+
+    }
+
+    /**
+     Get how many lookups didn't find the person at all.
+     */
+
+    public long getMissCount() {
+
+        return _misses.sum();
+
+    }
+
+    /**
+     Get how many profiles have been remembered from responses (see {@link #seed(String, JSONObject)}).
+     */
+
+    public long getSeededCount() {
+
+        return _seeded.sum();
+
+    }
+
+    public String toString() {
+
+        return "WikiTreePersonCache( size=" + size() + "/" + _maxEntries + ", hits=" + getHitCount() +
+               ", partial hits=" + getPartialHitCount() + ", misses=" + getMissCount() + ", seeded=" + getSeededCount() + " )";
+
+    }
+
+}
@@ -0,0 +1,503 @@
+/*
+ * Copyright © 2017 Daniel Boulet
+ */
+
+package com.matilda.wikitree.api.jsonclient;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ An immutable WikiTree API request. There is one subclass per API action.
+ <p/>A request's query string (the part of the URL after the server's base URL) is built once, when the request is created,
+ with its parameters in a fixed order (the action first and then the rest by name). Two requests with the same parameters
+ therefore have the same query string regardless of how they were created, and {@link #equals(Object)} and
+ {@link #hashCode()} (which is also computed once) just compare that. This makes a request usable as-is as a cache key,
+ as a key for spotting identical requests that are in flight at the same time, and as a log entry ({@link #toString()}
+ never includes a password).
+ <p/>See {@link WikiTreeApiJsonSession#request(WikiTreeRequest)}.
+ */
+
+public abstract class WikiTreeRequest {
+
+    /**
+     What redacted values are replaced by (see {@link #redact(String)}).
+     */
+
+    public static final String REDACTED = "REDACTED";
+
+    private static final Set<String> REDACTED_PARAMETERS = Collections.unmodifiableSet( new HashSet<>( Arrays.asList( "email", "password" ) ) );
+
+    private final String _action;
+
+    private final String _key;
+
+    private final Map<String, String> _parameters;
+
+    private final String _queryString;
+
+    private final int _hash;
+
+    /**
+     Create a request.
+
+     @param action          the API action.
+     @param namesAndValues  the request's other parameters as alternating names and values.
+     Values may be strings, numbers or booleans. Parameters whose values are {@code null} are left out.
+     The {@code format=json} parameter is always added.
+     @throws IllegalArgumentException if a name is repeated, a name is not a string or a value is of some other type.
+     */
+
+    protected WikiTreeRequest( @NotNull String action, @NotNull Object... namesAndValues ) {
+
+        super();
+
+        if ( namesAndValues.length % 2 != 0 ) {
+
+            throw new IllegalArgumentException( "WikiTreeRequest:  names and values must come in pairs (got " + namesAndValues.length + " things)" );
+
+        }
+
+        String[] names = new String[namesAndValues.length / 2 + 1];
+        String[] values = new String[names.length];
+        int count = 0;
+        for ( int i = 0; i < namesAndValues.length; i += 2 ) {
+
+            Object name = namesAndValues[i];
+            Object value = namesAndValues[i + 1];
+            if ( !( name instanceof String ) ) {
+
+                throw new IllegalArgumentException( "WikiTreeRequest:  parameter names must be strings (got " + name + ")" );
+
+            }
+
+            if ( value == null ) {
+
+                continue;
+
+            }
+
+            if ( !( value instanceof String || value instanceof Number || value instanceof Boolean ) ) {
+
+                throw new IllegalArgumentException(
+                        "WikiTreeRequest:  unexpected parameter value type - \"" + name + "\" is a " + value.getClass().getCanonicalName()
+                );
+
+            }
+
+            names[count] = (String)name;
+            values[count] = value.toString();
+            count += 1;
+
+        }
+
+        names[count] = "format";
+        values[count] = "json";
+        count += 1;
+
+        // Sort the parameters by name (there are only ever a handful so a simple insertion sort will do).
+
+        for ( int i = 1; i < count; i += 1 ) {
+
+            String name = names[i];
+            String value = values[i];
+            int j = i - 1;
+            while ( j >= 0 && names[j].compareTo( name ) > 0 ) {
+
+                names[j + 1] = names[j];
+                values[j + 1] = values[j];
+                j -= 1;
+
+            }
+
+            names[j + 1] = name;
+            values[j + 1] = value;
+
+        }
+
+        Map<String, String> parameters = new LinkedHashMap<>();
+        StringBuilder sb = new StringBuilder( 64 );
+        sb.append( "?action=" ).append( encode( action ) );
+        for ( int i = 0; i < count; i += 1 ) {
+
+            if ( i > 0 && names[i].equals( names[i - 1] ) || "action".equals( names[i] ) ) {
+
+                throw new IllegalArgumentException( "WikiTreeRequest:  parameter \"" + names[i] + "\" appears more than once" );
+
+            }
+
+            parameters.put( names[i], values[i] );
+            sb.append( '&' ).append( names[i] ).append( '=' ).append( encode( values[i] ) );
+
+        }
+
+        _action = action;
+        _parameters = Collections.unmodifiableMap( parameters );
+        _key = parameters.containsKey( "key" ) ? parameters.get( "key" ) : parameters.get( "keys" );
+        _queryString = sb.toString();
+        _hash = _queryString.hashCode();
+
+    }
+
+    private static String encode( String value ) {
+
+        try {
+
+            return URLEncoder.encode( value, "UTF-8" );
+
+        } catch ( UnsupportedEncodingException e ) {
+
+            throw new IllegalStateException( "WikiTreeRequest:  this JVM doesn't do UTF-8", e );
+
+        }
+
+    }
+
+    /**
+     Replace the values of the {@code email} and {@code password} parameters in a URL or a form-encoded body.
+     */
+
+    @NotNull
+    public static String redact( @NotNull String urlOrForm ) {
+
+        int question = urlOrForm.indexOf( '?' );
+        String prefix = question < 0 ? "" : urlOrForm.substring( 0, question + 1 );
+        String parameters = question < 0 ? urlOrForm : urlOrForm.substring( question + 1 );
+
+        StringBuilder sb = new StringBuilder( prefix );
+        String ampersand = "";
+        for ( String parameter : parameters.split( "&", -1 ) ) {
+
+            int equals = parameter.indexOf( '=' );
+            sb.append( ampersand );
+            if ( equals >= 0 && REDACTED_PARAMETERS.contains( parameter.substring( 0, equals ) ) ) {
+
+                sb.append( parameter, 0, equals + 1 ).append( REDACTED );
+
+            } else {
+
+                sb.append( parameter );
+
+            }
+
+            ampersand = "&";
+
+        }
+
+        return sb.toString();
+
+    }
+
+    /**
+     Get the request's API action (for example, {@code getPerson}).
+     */
+
+    @NotNull
+    public String getAction() {
+
+        return _action;
+
+    }
+
+    /**
+     Get the profile(s) that the request is about (its {@code key} or {@code keys} parameter).
+
+     @return the key(s) or {@code null} if the request isn't about particular profiles.
+     */
+
+    @Nullable
+    public String getKey() {
+
+        return _key;
+
+    }
+
+    /**
+     Get the request's parameters (other than its action) in the order that they appear in the query string.
+
+     @return an unmodifiable map from names to unencoded values.
+     */
+
+    @NotNull
+    public Map<String, String> getParameters() {
+
+        return _parameters;
+
+    }
+
+    /**
+     Get one of the request's parameters.
+
+     @param name the parameter's name.
+     @return its unencoded value or {@code null} if the request doesn't have it.
+     */
+
+    @Nullable
+    public String getParameter( @NotNull String name ) {
+
+        return _parameters.get( name );
+
+    }
+
+    /**
+     Get the request's URL encoded query string, starting with the {@code '?'}.
+     */
+
+    @NotNull
+    public String getQueryString() {
+
+        return _queryString;
+
+    }
+
+    /**
+     Determine if this request carries a password (and must therefore never be shown or cached).
+     */
+
+    public boolean isSecret() {
+
+        return false;
+
+    }
+
+    public final boolean equals( Object rhs ) {
+
+        return rhs instanceof WikiTreeRequest && _hash == ( (WikiTreeRequest)rhs )._hash && _queryString.equals( ( (WikiTreeRequest)rhs )._queryString );
+
+    }
+
+    public final int hashCode() {
+
+        return _hash;
+
+    }
+
+    public String toString() {
+
+        return _queryString;
+
+    }
+
+    /**
+     A {@code getPerson} request.
+     */
+
+    public static final class GetPerson extends WikiTreeRequest {
+
+        private final String _fields;
+
+        /**
+         @param key    the person's WikiTree ID or Person.Id.
+         @param fields a comma separated list of fields ({@code "*"} for all of them; {@code null} for the server's default fields).
+         */
+
+        public GetPerson( @NotNull String key, @Nullable String fields ) {
+
+            super( "getPerson", "key", key, "fields", fields );
+
+            _fields = fields;
+
+        }
+
+        @Nullable
+        public String getFields() {
+
+            return _fields;
+
+        }
+
+    }
+
+    /**
+     A {@code getProfile} request.
+     */
+
+    public static final class GetProfile extends WikiTreeRequest {
+
+        /**
+         @param key the person's WikiTree ID, the space's page name (for example, {@code "Space:Allied_POW_camps"}) or the PageId.
+         */
+
+        public GetProfile( @NotNull String key ) {
+
+            super( "getProfile", "key", key );
+
+        }
+
+    }
+
+    /**
+     A {@code getBio} request.
+     */
+
+    public static final class GetBio extends WikiTreeRequest {
+
+        /**
+         @param key the person's WikiTree ID or Person.Id.
+         */
+
+        public GetBio( @NotNull String key ) {
+
+            super( "getBio", "key", key );
+
+        }
+
+    }
+
+    /**
+     A {@code getAncestors} request.
+     */
+
+    public static final class GetAncestors extends WikiTreeRequest {
+
+        private final Integer _depth;
+
+        /**
+         @param key   the person's WikiTree ID or Person.Id.
+         @param depth how many generations ({@code null} for the server's default).
+         */
+
+        public GetAncestors( @NotNull String key, @Nullable Integer depth ) {
+
+            super( "getAncestors", "key", key, "depth", depth );
+
+            _depth = depth;
+
+        }
+
+        @Nullable
+        public Integer getDepth() {
+
+            return _depth;
+
+        }
+
+    }
+
+    /**
+     A {@code getRelatives} request.
+     */
+
+    public static final class GetRelatives extends WikiTreeRequest {
+
+        /**
+         @param keys a comma separated list of WikiTree IDs and/or Person.Ids.
+         */
+
+        public GetRelatives( @NotNull String keys, boolean getParents, boolean getChildren, boolean getSpouses, boolean getSiblings ) {
+
+            this( keys, null, getParents, getChildren, getSpouses, getSiblings );
+
+        }
+
+        /**
+         @param keys   a comma separated list of WikiTree IDs and/or Person.Ids.
+         @param fields a comma separated list of the fields to return for each of the specified profiles
+         ({@code null} for the server's default fields).
+         */
+
+        public GetRelatives(
+                @NotNull String keys,
+                @Nullable String fields,
+                boolean getParents,
+                boolean getChildren,
+                boolean getSpouses,
+                boolean getSiblings
+        ) {
+
+            super(
+                    "getRelatives",
+                    "keys", keys,
+                    "fields", fields,
+                    "getParents", getParents ? 1 : 0,
+                    "getChildren", getChildren ? 1 : 0,
+                    "getSpouses", getSpouses ? 1 : 0,
+                    "getSiblings", getSiblings ? 1 : 0
+            );
+
+        }
+
+    }
+
+    /**
+     A {@code getWatchlist} request.
+     <p/>See {@link WikiTreeApiJsonSession#getWatchlist} for what the parameters mean ({@code null} means the server's default).
+     */
+
+    public static final class GetWatchlist extends WikiTreeRequest {
+
+        public GetWatchlist(
+                @Nullable Boolean getPerson,
+                @Nullable Boolean getSpace,
+                @Nullable Boolean onlyLiving,
+                @Nullable Boolean excludeLiving,
+                @Nullable String fields,
+                @Nullable Integer limit,
+                @Nullable Integer offset,
+                @Nullable String order
+        ) {
+
+            super(
+                    "getWatchlist",
+                    "getPerson", getPerson == null ? null : getPerson ? 1 : 0,
+                    "getSpace", getSpace == null ? null : getSpace ? 1 : 0,
+                    "onlyLiving", onlyLiving != null && onlyLiving ? 1 : null,
+                    "excludeLiving", excludeLiving != null && excludeLiving ? 1 : null,
+                    "fields", fields,
+                    "limit", limit,
+                    "offset", offset,
+                    "order", order
+            );
+
+        }
+
+    }
+
+    /**
+     A {@code login} request.
+     */
+
+    public static final class Login extends WikiTreeRequest {
+
+        private final String _emailAddress;
+
+        public Login( @NotNull String emailAddress, @NotNull String password ) {
+
+            super( "login", "email", emailAddress, "password", password, "fields", "*" );
+
+            _emailAddress = emailAddress;
+
+        }
+
+        @NotNull
+        public String getEmailAddress() {
+
+            return _emailAddress;
+
+        }
+
+        @Override
+        public boolean isSecret() {
+
+            return true;
+
+        }
+
+        public String toString() {
+
+            return redact( getQueryString() );
+
+        }
+
+    }
+
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright © 2017 Daniel Boulet
+ */
+
+package com.matilda.wikitree.api.jsonclient;
+
+import com.matilda.wikitree.api.metrics.RequestTimings;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ Something which wants to hear about each request that a {@link WikiTreeApiJsonSession} makes (for tracing, logging, etc).
+ <p/>See {@link WikiTreeApiJsonSession#addRequestListener(WikiTreeRequestListener)}.
+ Every method does nothing by default so implementations only need to override the ones that they care about.
+ <p/>The callbacks for a request are made on the thread making the request in this order:
+ <ol>
+ <li>{@link #onRequestStart(RequestTimings)}</li>
+ <li>{@link #onResponseHeaders(RequestTimings, int, Map)} once the status line and headers have arrived</li>
+ <li>{@link #onParsed(RequestTimings, Object)} once the body has been read and parsed</li>
+ <li>{@link #onError(RequestTimings, Exception)} if anything after the start went wrong (in which case some of the above are skipped)</li>
+ <li>{@link #onComplete(RequestTimings)} (always)</li>
+ </ol>
+ The same {@link RequestTimings} instance is passed to every callback for a request. It carries the request's action and key
+ and fills in as the request progresses. The requests for a session can't overlap so one request's callbacks never interleave
+ with another's from the same session.
+ <p/>Callbacks should be quick since the request is waiting for them. A callback which throws a {@link RuntimeException} has the exception
+ reported on {@code System.err}. It does not affect the request or the other listeners.
+ <p/>Login requests are reported like any other request. Their passwords are never passed to listeners.
+ */
+
+public interface WikiTreeRequestListener {
+
+    /**
+     A request is about to be sent.
+
+     @param timings the request's action, key and (so far, empty) timings.
+     */
+
+    default void onRequestStart( @NotNull RequestTimings timings ) {
+
+    }
+
+    /**
+     The response's status line and headers have arrived.
+
+     @param timings          the request's timings (connect and first byte times are filled in by now).
+     @param httpResponseCode the HTTP response code.
+     @param headers          the response headers (see {@link java.net.URLConnection#getHeaderFields()}).
+     */
+
+    default void onResponseHeaders( @NotNull RequestTimings timings, int httpResponseCode, @NotNull Map<String, List<String>> headers ) {
+
+    }
+
+    /**
+     The response's body has been read and parsed.
+
+     @param timings  the request's timings (everything up to and including parse time and the response size is filled in by now).
+     @param response the parsed response (usually a {@link org.json.simple.JSONObject};
+     see {@link com.matilda.wikitree.api.util.WikiTreeApiUtilities#readResponse(java.net.HttpURLConnection, boolean)} for what else it can be).
+     */
+
+    default void onParsed( @NotNull RequestTimings timings, @Nullable Object response ) {
+
+    }
+
+    /**
+     The request failed.
+
+     @param timings the request's timings as far as it got.
+     @param e       what went wrong (this is rethrown to the caller once the listeners have heard about it).
+     */
+
+    default void onError( @NotNull RequestTimings timings, @NotNull Exception e ) {
+
+    }
+
+    /**
+     The request is over (successfully or otherwise).
+
+     @param timings the request's final timings (including its total time).
+     */
+
+    default void onComplete( @NotNull RequestTimings timings ) {
+
+    }
+
+}
@@ -0,0 +1,328 @@
+/*
+ * Copyright © 2017 Daniel Boulet
+ */
+
+package com.matilda.wikitree.api.jsonclient;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.json.simple.JSONObject;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ A bounded, thread-safe cache of WikiTree API responses which any number of {@link WikiTreeApiJsonSession}s can share
+ (see {@link WikiTreeApiJsonSession#setResponseCache(WikiTreeResponseCache)}).
+ <p/>Every entry belongs to a scope. A session only reads and writes the scope of whoever it is logged in as
+ (see {@link #getScope(WikiTreeCredentials)}) so one account never sees what was fetched on behalf of another account
+ or on behalf of anonymous requests, even when their sessions share a cache.
+ <p/>Entries expire after a fixed time and the least recently used entries are evicted once the cache is full.
+ The cache is split into independently locked stripes so that sessions on different threads rarely wait for each other.
+ <p/>Cached responses are shared by everyone who gets them from the cache. Don't change them.
+ */
+
+public class WikiTreeResponseCache {
+
+    /**
+     The scope of responses to anonymous requests.
+     */
+
+    public static final String ANONYMOUS_SCOPE = "anonymous";
+
+    private static final int STRIPES = 16;
+
+    private static final class Entry {
+
+        private final JSONObject _response;
+
+        private final long _expiresAtNanos;
+
+        private Entry( JSONObject response, long expiresAtNanos ) {
+
+            super();
+
+            _response = response;
+            _expiresAtNanos = expiresAtNanos;
+
+        }
+
+    }
+
+    /**
+     A request in a scope. The request's hash was worked out when it was created so this is cheap to hash too.
+     */
+
+    private static final class Key {
+
+        private final String _scope;
+
+        private final WikiTreeRequest _request;
+
+        private final int _hash;
+
+        private Key( String scope, WikiTreeRequest request ) {
+
+            super();
+
+            _scope = scope;
+            _request = request;
+            _hash = 31 * scope.hashCode() + request.hashCode();
+
+        }
+
+        public boolean equals( Object rhs ) {
+
+            return rhs instanceof Key &&
+                   _hash == ( (Key)rhs )._hash &&
+                   _request.equals( ( (Key)rhs )._request ) &&
+                   _scope.equals( ( (Key)rhs )._scope );
+
+        }
+
+        public int hashCode() {
+
+            return _hash;
+
+        }
+
+    }
+
+    private static final class Stripe extends LinkedHashMap<Key, Entry> {
+
+        private final int _maxEntries;
+
+        private Stripe( int maxEntries ) {
+
+            super( 16, 0.75f, true );
+
+            _maxEntries = maxEntries;
+
+        }
+
+        @Override
+        protected boolean removeEldestEntry( Map.Entry<Key, Entry> eldest ) {
+
+            return size() > _maxEntries;
+
+        }
+
+    }
+
+    private final Stripe[] _stripes = new Stripe[STRIPES];
+
+    private final int _maxEntries;
+
+    private final long _timeToLiveNanos;
+
+    private final LongAdder _hits = new LongAdder();
+
+    private final LongAdder _misses = new LongAdder();
+
+    /**
+     Create a cache.
+
+     @param maxEntries       roughly how many responses the cache holds at most.
+     @param timeToLiveMillis how long a response stays in the cache.
+     @throws IllegalArgumentException if either is not positive.
+     */
+
+    public WikiTreeResponseCache( int maxEntries, long timeToLiveMillis ) {
+
+        super();
+
+        if ( maxEntries <= 0 || timeToLiveMillis <= 0 ) {
+
+            throw new IllegalArgumentException(
+                    "WikiTreeResponseCache:  need a positive size and time to live (got " + maxEntries + " and " + timeToLiveMillis + ")"
+            );
+
+        }
+
+        _maxEntries = maxEntries;
+        _timeToLiveNanos = TimeUnit.MILLISECONDS.toNanos( timeToLiveMillis );
+        for ( int i = 0; i < STRIPES; i += 1 ) {
+
+            _stripes[i] = new Stripe( Math.max( 1, ( maxEntries + STRIPES - 1 ) / STRIPES ) );
+
+        }
+
+    }
+
+    /**
+     Get the scope that requests made with particular credentials use.
+
+     @param credentials the credentials.
+     @return {@link #ANONYMOUS_SCOPE} if they aren't authenticated; a scope which is unique to the account that they're authenticated for if they are.
+     */
+
+    @NotNull
+    public static String getScope( @NotNull WikiTreeCredentials credentials ) {
+
+        return credentials.isAuthenticated() ? "user:" + credentials.getWikiTreeId() : ANONYMOUS_SCOPE;
+
+    }
+
+    /**
+     Look up a response.
+
+     @param scope   the scope to look in.
+     @param request the request.
+     @return the response or {@code null} if it isn't in the cache (or has expired).
+     */
+
+    @Nullable
+    public JSONObject get( @NotNull String scope, @NotNull WikiTreeRequest request ) {
+
+        Key key = new Key( scope, request );
+        Stripe stripe = stripe( key );
+        synchronized ( stripe ) {
+
+            Entry entry = stripe.get( key );
+            if ( entry != null ) {
+
+                if ( entry._expiresAtNanos - System.nanoTime() > 0 ) {
+
+                    _hits.increment();
+
+                    return entry._response;
+
+                }
+
+                stripe.remove( key );
+
+            }
+
+        }
+
+        _misses.increment();
+
+        return null;
+
+    }
+
+    /**
+     Remember a response.
+
+     @param scope    the scope to remember it in.
+     @param request  the request.
+     @param response the response.
+     @throws IllegalArgumentException if the request carries a password (see {@link WikiTreeRequest#isSecret()}).
+     */
+
+    public void put( @NotNull String scope, @NotNull WikiTreeRequest request, @NotNull JSONObject response ) {
+
+        if ( request.isSecret() ) {
+
+            throw new IllegalArgumentException( "WikiTreeResponseCache.put:  refusing to cache the response to " + request );
+
+        }
+
+        Key key = new Key( scope, request );
+        Stripe stripe = stripe( key );
+        Entry entry = new Entry( response, System.nanoTime() + _timeToLiveNanos );
+        synchronized ( stripe ) {
+
+            stripe.put( key, entry );
+
+        }
+
+    }
+
+    /**
+     Forget every response in a scope (for example, after the account's data has been changed elsewhere).
+
+     @param scope the scope.
+     */
+
+    public void invalidate( @NotNull String scope ) {
+
+        for ( Stripe stripe : _stripes ) {
+
+            synchronized ( stripe ) {
+
+                for ( Iterator<Key> iterator = stripe.keySet().iterator(); iterator.hasNext(); ) {
+
+                    if ( iterator.next()._scope.equals( scope ) ) {
+
+                        iterator.remove();
+
+                    }
+
+                }
+
+            }
+
+        }
+
+    }
+
+    /**
+     Forget everything.
+     */
+
+    public void clear() {
+
+        for ( Stripe stripe : _stripes ) {
+
+            synchronized ( stripe ) {
+
+                stripe.clear();
+
+            }
+
+        }
+
+    }
+
+    /**
+     Get the number of responses in the cache (including any which have expired but haven't been noticed yet).
+     */
+
+    public int size() {
+
+        int rval = 0;
+        for ( Stripe stripe : _stripes ) {
+
+            synchronized ( stripe ) {
+
+                rval += stripe.size();
+
+            }
+
+        }
+
+        return rval;
+
+    }
+
+    public long getHitCount() {
+
+        return _hits.sum();
+
+    }
+
+    public long getMissCount() {
+
+        return _misses.sum();
+
+    }
+
+    private Stripe stripe( Key key ) {
+
+        int hash = key._hash;
+
+        return _stripes[( hash ^ ( hash >>> 16 ) ) & ( STRIPES - 1 )];
+
+    }
+
+    public String toString() {
+
+        return "WikiTreeResponseCache( size=" + size() + "/" + _maxEntries + ", hits=" + getHitCount() + ", misses=" + getMissCount() + " )";
+
+    }
+
+}
@@ -0,0 +1,41 @@
+/*
+ * Copyright © 2017 Daniel Boulet
+ */
+
+package com.matilda.wikitree.api.jsonclient;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+
+/**
+ How a {@link WikiTreeApiJsonSession} gets the connections that it sends its requests over.
+ <p/>The session configures the connection (method, request headers and so on), connects it, waits for the response code,
+ reads the response headers and then reads the body, in that order. A transport can hand back a connection which
+ goes somewhere other than the URL's server (or nowhere at all) as long as it behaves that way.
+ See {@link WikiTreeApiJsonSession#setTransport(WikiTreeTransport)} and {@link RecordReplayTransport}.
+ */
+
+public interface WikiTreeTransport {
+
+    /**
+     The transport that sessions use unless told otherwise (it just asks the URL for a connection).
+     */
+
+    WikiTreeTransport DEFAULT = url -> (HttpURLConnection)url.openConnection();
+
+    /**
+     Get a connection for a request.
+
+     @param url the request's URL (including its query parameters for a GET request).
+     @return an unconnected connection.
+     @throws IOException if no connection can be had.
+     */
+
+    @NotNull
+    HttpURLConnection openConnection( @NotNull URL url )
+            throws IOException;
+
+}
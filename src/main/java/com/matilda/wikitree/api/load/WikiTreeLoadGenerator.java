@@ -0,0 +1,1111 @@
+/*
+ * Copyright © 2017 Daniel Boulet
+ */
+
+package com.matilda.wikitree.api.load;
+
+import com.matilda.wikitree.api.jsonclient.WikiTreeApiJsonSession;
+import com.matilda.wikitree.api.metrics.LatencyHistogram;
+import com.matilda.wikitree.api.server.SyntheticWikiTreeDataset;
+import com.matilda.wikitree.api.server.WikiTreeApiStandInServer;
+import com.matilda.wikitree.api.wrappers.WikiTreeApiWrappersSession;
+import com.matilda.wikitree.api.wrappers.WikiTreeId;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ Drive a mix of WikiTree API requests through {@link WikiTreeApiWrappersSession}s from a growing number of threads.
+ <p/>A run is a series of steps, one per configured thread count. Each step runs its threads flat out for a warmup period
+ (which isn't measured) and then for a measurement period. Every step yields a {@link Result} with the step's throughput,
+ latency distribution, the rate at which the worker threads allocated memory and how much time the JVM spent collecting garbage.
+ <p/>The endpoint can be the real WikiTree API or, more usefully, a {@link WikiTreeApiStandInServer}
+ (running {@link #main(String[])} without a {@code --url} starts one over a {@link SyntheticWikiTreeDataset}).
+ */
+
+public class WikiTreeLoadGenerator {
+
+    /**
+     The requests that a load generator knows how to make.
+     */
+
+    public enum Action {
+
+        GET_PERSON( "getPerson" ),
+        GET_PROFILE( "getProfile" ),
+        GET_BIO( "getBio" ),
+        GET_ANCESTORS( "getAncestors" ),
+        GET_RELATIVES( "getRelatives" ),
+        GET_WATCHLIST( "getWatchlist" );
+
+        private final String _actionName;
+
+        Action( String actionName ) {
+
+            _actionName = actionName;
+
+        }
+
+        /**
+         Get the action's name as the WikiTree API knows it.
+         */
+
+        @NotNull
+        public String getActionName() {
+
+            return _actionName;
+
+        }
+
+        /**
+         Find an action by its WikiTree API name.
+
+         @param actionName the name (for example, {@code getPerson}).
+         @return the action.
+         @throws IllegalArgumentException if there is no such action.
+         */
+
+        @NotNull
+        public static Action forActionName( @NotNull String actionName ) {
+
+            for ( Action action : values() ) {
+
+                if ( action._actionName.equals( actionName ) ) {
+
+                    return action;
+
+                }
+
+            }
+
+            throw new IllegalArgumentException( "WikiTreeLoadGenerator.Action:  unknown action \"" + actionName + "\"" );
+
+        }
+
+    }
+
+    /**
+     What one step of a run (one thread count) achieved.
+     */
+
+    public static final class Result {
+
+        private final int _threadCount;
+
+        private final boolean _virtualThreads;
+
+        private final long _requests;
+
+        private final long _errors;
+
+        private final long _elapsedNanos;
+
+        private final LatencyHistogram.Snapshot _latencies;
+
+        private final long _allocatedBytes;
+
+        private final long _gcMillis;
+
+        private Result(
+                int threadCount,
+                boolean virtualThreads,
+                long requests,
+                long errors,
+                long elapsedNanos,
+                @NotNull LatencyHistogram.Snapshot latencies,
+                long allocatedBytes,
+                long gcMillis
+        ) {
+
+            super();
+
+            _threadCount = threadCount;
+            _virtualThreads = virtualThreads;
+            _requests = requests;
+            _errors = errors;
+            _elapsedNanos = elapsedNanos;
+            _latencies = latencies;
+            _allocatedBytes = allocatedBytes;
+            _gcMillis = gcMillis;
+
+        }
+
+        public int getThreadCount() {
+
+            return _threadCount;
+
+        }
+
+        public boolean isVirtualThreads() {
+
+            return _virtualThreads;
+
+        }
+
+        /**
+         Get the number of requests which completed (successfully or not) during the measurement period.
+         */
+
+        public long getRequests() {
+
+            return _requests;
+
+        }
+
+        /**
+         Get the number of requests which threw an exception or got nothing back during the measurement period.
+         */
+
+        public long getErrors() {
+
+            return _errors;
+
+        }
+
+        public long getElapsedNanos() {
+
+            return _elapsedNanos;
+
+        }
+
+        /**
+         Get the number of requests per second.
+         */
+
+        public double getThroughput() {
+
+            return _elapsedNanos == 0 ? 0 : _requests * 1e9 / _elapsedNanos;
+
+        }
+
+        @NotNull
+        public LatencyHistogram.Snapshot getLatencies() {
+
+            return _latencies;
+
+        }
+
+        /**
+         Get the number of bytes that the worker threads allocated during the measurement period.
+
+         @return the number of bytes or -1 if the JVM can't tell us (it never can for virtual threads).
+         */
+
+        public long getAllocatedBytes() {
+
+            return _allocatedBytes;
+
+        }
+
+        /**
+         Get the worker threads' allocation rate in bytes per second (-1 if it isn't known).
+         */
+
+        public double getAllocationRate() {
+
+            return _allocatedBytes < 0 ? -1 : _elapsedNanos == 0 ? 0 : _allocatedBytes * 1e9 / _elapsedNanos;
+
+        }
+
+        /**
+         Get the number of milliseconds that the JVM spent collecting garbage during the measurement period.
+         */
+
+        public long getGcMillis() {
+
+            return _gcMillis;
+
+        }
+
+        /**
+         Get a header line which lines up with what {@link #toString()} returns.
+         */
+
+        @NotNull
+        public static String getReportHeader() {
+
+            return String.format(
+                    "%8s %10s %7s %12s %10s %10s %10s %10s %12s %8s",
+                    "threads", "requests", "errors", "req/sec", "p50 ms", "p99 ms", "p999 ms", "max ms", "alloc MB/s", "gc ms"
+            );
+
+        }
+
+        public String toString() {
+
+            return String.format(
+                    "%7d%s %10d %7d %12.1f %10.3f %10.3f %10.3f %10.3f %12s %8d",
+                    _threadCount,
+                    _virtualThreads ? "v" : " ",
+                    _requests,
+                    _errors,
+                    getThroughput(),
+                    _latencies.getP50Nanos() / 1e6,
+                    _latencies.getP99Nanos() / 1e6,
+                    _latencies.getP999Nanos() / 1e6,
+                    _latencies.getMaxNanos() / 1e6,
+                    _allocatedBytes < 0 ? "n/a" : String.format( "%.1f", getAllocationRate() / ( 1024 * 1024 ) ),
+                    _gcMillis
+            );
+
+        }
+
+    }
+
+    private final String _baseUrlString;
+
+    private final List<WikiTreeId> _keys;
+
+    private final EnumMap<Action, Integer> _mix = new EnumMap<>( Action.class );
+
+    private int[] _threadCounts = { 1, 2, 4, 8 };
+
+    private long _warmupMillis = 2000;
+
+    private long _measureMillis = 5000;
+
+    private boolean _virtualThreads = false;
+
+    private boolean _sharedSession = false;
+
+    private String _emailAddress;
+
+    private String _password;
+
+    /**
+     Create a load generator.
+
+     @param baseUrlString the WikiTree API endpoint (see {@link WikiTreeApiJsonSession#WikiTreeApiJsonSession(String)}).
+     @param keys          the WikiTree IDs of the profiles to make requests about (each request picks one at random).
+     @throws IllegalArgumentException if {@code keys} is empty.
+     */
+
+    public WikiTreeLoadGenerator( @NotNull String baseUrlString, @NotNull List<WikiTreeId> keys ) {
+
+        super();
+
+        if ( keys.isEmpty() ) {
+
+            throw new IllegalArgumentException( "WikiTreeLoadGenerator:  need at least one key" );
+
+        }
+
+        _baseUrlString = baseUrlString;
+        _keys = Collections.unmodifiableList( new ArrayList<>( keys ) );
+
+        _mix.put( Action.GET_PERSON, 6 );
+        _mix.put( Action.GET_PROFILE, 2 );
+        _mix.put( Action.GET_BIO, 1 );
+        _mix.put( Action.GET_ANCESTORS, 1 );
+
+    }
+
+    @NotNull
+    public String getBaseUrlString() {
+
+        return _baseUrlString;
+
+    }
+
+    @NotNull
+    public List<WikiTreeId> getKeys() {
+
+        return _keys;
+
+    }
+
+    /**
+     Get the mix of actions (how often each action is picked relative to the others).
+     */
+
+    @NotNull
+    public Map<Action, Integer> getMix() {
+
+        return Collections.unmodifiableMap( _mix );
+
+    }
+
+    /**
+     Set how often an action is picked relative to the others.
+
+     @param action the action.
+     @param weight its weight (zero means never).
+     @return the action's previous weight.
+     @throws IllegalArgumentException if {@code weight} is negative.
+     */
+
+    public int setWeight( @NotNull Action action, int weight ) {
+
+        if ( weight < 0 ) {
+
+            throw new IllegalArgumentException( "WikiTreeLoadGenerator.setWeight:  weight must not be negative (it is " + weight + ")" );
+
+        }
+
+        Integer rval = weight == 0 ? _mix.remove( action ) : _mix.put( action, weight );
+
+        return rval == null ? 0 : rval;
+
+    }
+
+    @NotNull
+    public int[] getThreadCounts() {
+
+        return _threadCounts.clone();
+
+    }
+
+    /**
+     Set the thread counts that a run steps through.
+
+     @param threadCounts the thread counts (in the order that they are to be run).
+     @return the previous thread counts.
+     @throws IllegalArgumentException if there are none or any of them are less than one.
+     */
+
+    @NotNull
+    public int[] setThreadCounts( @NotNull int... threadCounts ) {
+
+        if ( threadCounts.length == 0 ) {
+
+            throw new IllegalArgumentException( "WikiTreeLoadGenerator.setThreadCounts:  need at least one thread count" );
+
+        }
+
+        for ( int threadCount : threadCounts ) {
+
+            if ( threadCount < 1 ) {
+
+                throw new IllegalArgumentException( "WikiTreeLoadGenerator.setThreadCounts:  thread counts must be positive (got " + threadCount + ")" );
+
+            }
+
+        }
+
+        int[] rval = _threadCounts;
+        _threadCounts = threadCounts.clone();
+
+        return rval;
+
+    }
+
+    public long getWarmupMillis() {
+
+        return _warmupMillis;
+
+    }
+
+    public long setWarmupMillis( long warmupMillis ) {
+
+        if ( warmupMillis < 0 ) {
+
+            throw new IllegalArgumentException( "WikiTreeLoadGenerator.setWarmupMillis:  warmup must not be negative (it is " + warmupMillis + ")" );
+
+        }
+
+        long rval = _warmupMillis;
+        _warmupMillis = warmupMillis;
+
+        return rval;
+
+    }
+
+    public long getMeasureMillis() {
+
+        return _measureMillis;
+
+    }
+
+    public long setMeasureMillis( long measureMillis ) {
+
+        if ( measureMillis <= 0 ) {
+
+            throw new IllegalArgumentException( "WikiTreeLoadGenerator.setMeasureMillis:  measurement period must be positive (it is " + measureMillis + ")" );
+
+        }
+
+        long rval = _measureMillis;
+        _measureMillis = measureMillis;
+
+        return rval;
+
+    }
+
+    public boolean isVirtualThreads() {
+
+        return _virtualThreads;
+
+    }
+
+    /**
+     Specify whether the workers run on virtual threads.
+     <p/>Virtual threads need a JVM which has them (Java 21 or later). Asking for them on one that doesn't is only
+     reported when a run starts.
+
+     @param virtualThreads {@code true} for virtual threads; {@code false} for platform threads.
+     @return the previous setting.
+     */
+
+    public boolean setVirtualThreads( boolean virtualThreads ) {
+
+        boolean rval = _virtualThreads;
+        _virtualThreads = virtualThreads;
+
+        return rval;
+
+    }
+
+    public boolean isSharedSession() {
+
+        return _sharedSession;
+
+    }
+
+    /**
+     Specify whether all of a step's threads share one session or each get their own.
+     <p/>A shared session shows how far one session scales; separate sessions show how far the JVM scales.
+
+     @param sharedSession {@code true} if the threads are to share a session.
+     @return the previous setting.
+     */
+
+    public boolean setSharedSession( boolean sharedSession ) {
+
+        boolean rval = _sharedSession;
+        _sharedSession = sharedSession;
+
+        return rval;
+
+    }
+
+    /**
+     Log every session that a run creates in as a particular user (needed for {@link Action#GET_WATCHLIST}).
+
+     @param emailAddress the user's email address ({@code null} to not log in).
+     @param password     the user's password.
+     */
+
+    public void setCredentials( @Nullable String emailAddress, @Nullable String password ) {
+
+        _emailAddress = emailAddress;
+        _password = password;
+
+    }
+
+    /**
+     Run every step.
+
+     @return one result per configured thread count (in the same order).
+     @throws IllegalStateException         if the mix is empty, if it includes {@link Action#GET_WATCHLIST} without credentials
+                                           or if a session can't log in.
+     @throws UnsupportedOperationException if virtual threads were requested and this JVM doesn't have them.
+     @throws InterruptedException          if the calling thread is interrupted.
+     */
+
+    @NotNull
+    public List<Result> run()
+            throws InterruptedException {
+
+        List<Result> rval = new ArrayList<>();
+        for ( int threadCount : _threadCounts ) {
+
+            rval.add( runStep( threadCount ) );
+
+        }
+
+        return rval;
+
+    }
+
+    /**
+     Run one step.
+
+     @param threadCount how many threads to run.
+     @return what they achieved.
+     @throws IllegalStateException         if the mix is empty, if it includes {@link Action#GET_WATCHLIST} without credentials
+                                           or if a session can't log in.
+     @throws UnsupportedOperationException if virtual threads were requested and this JVM doesn't have them.
+     @throws InterruptedException          if the calling thread is interrupted.
+     */
+
+    @NotNull
+    public Result runStep( int threadCount )
+            throws InterruptedException {
+
+        if ( threadCount < 1 ) {
+
+            throw new IllegalArgumentException( "WikiTreeLoadGenerator.runStep:  thread count must be positive (it is " + threadCount + ")" );
+
+        }
+
+        if ( _mix.isEmpty() ) {
+
+            throw new IllegalStateException( "WikiTreeLoadGenerator.runStep:  the action mix is empty" );
+
+        }
+
+        if ( _mix.containsKey( Action.GET_WATCHLIST ) && _emailAddress == null ) {
+
+            throw new IllegalStateException( "WikiTreeLoadGenerator.runStep:  getWatchlist needs credentials (see setCredentials)" );
+
+        }
+
+        // Flatten the mix into a cumulative table that the workers can pick from without taking any locks.
+
+        Action[] actions = _mix.keySet().toArray( new Action[0] );
+        int[] cumulativeWeights = new int[actions.length];
+        int totalWeight = 0;
+        for ( int i = 0; i < actions.length; i += 1 ) {
+
+            totalWeight += _mix.get( actions[i] );
+            cumulativeWeights[i] = totalWeight;
+
+        }
+
+        WikiTreeApiWrappersSession[] sessions = new WikiTreeApiWrappersSession[threadCount];
+        for ( int i = 0; i < threadCount; i += 1 ) {
+
+            sessions[i] = _sharedSession && i > 0 ? sessions[0] : createSession();
+
+        }
+
+        LatencyHistogram latencies = new LatencyHistogram();
+        LongAdder requests = new LongAdder();
+        LongAdder errors = new LongAdder();
+        AtomicLong allocatedBytes = new AtomicLong();
+        CountDownLatch ready = new CountDownLatch( threadCount );
+        CountDownLatch go = new CountDownLatch( 1 );
+        CountDownLatch done = new CountDownLatch( threadCount );
+        long[] window = new long[2];
+
+        ExecutorService executor = createExecutor( threadCount );
+        try {
+
+            for ( int i = 0; i < threadCount; i += 1 ) {
+
+                WikiTreeApiWrappersSession session = sessions[i];
+                executor.execute(
+                        () -> {
+
+                            try {
+
+                                ready.countDown();
+                                go.await();
+                                work( session, actions, cumulativeWeights, window[0], window[1], latencies, requests, errors, allocatedBytes );
+
+                            } catch ( InterruptedException e ) {
+
+                                Thread.currentThread().interrupt();
+
+                            } finally {
+
+                                done.countDown();
+
+                            }
+
+                        }
+                );
+
+            }
+
+            ready.await();
+
+            long now = System.nanoTime();
+            window[0] = now + TimeUnit.MILLISECONDS.toNanos( _warmupMillis );
+            window[1] = window[0] + TimeUnit.MILLISECONDS.toNanos( _measureMillis );
+            go.countDown();
+
+            sleepUntil( window[0] );
+            long gcStart = getGcMillis();
+            sleepUntil( window[1] );
+            long gcEnd = getGcMillis();
+
+            done.await();
+
+            return new Result(
+                    threadCount,
+                    _virtualThreads,
+                    requests.sum(),
+                    errors.sum(),
+                    window[1] - window[0],
+                    latencies.snapshot(),
+                    allocatedBytes.get(),
+                    gcEnd - gcStart
+            );
+
+        } finally {
+
+            executor.shutdownNow();
+
+        }
+
+    }
+
+    /**
+     What each worker thread does.
+     <p/>Requests which complete outside of the measurement window aren't counted.
+     */
+
+    private void work(
+            WikiTreeApiWrappersSession session,
+            Action[] actions,
+            int[] cumulativeWeights,
+            long measureStart,
+            long measureEnd,
+            LatencyHistogram latencies,
+            LongAdder requests,
+            LongAdder errors,
+            AtomicLong allocatedBytes
+    ) {
+
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int totalWeight = cumulativeWeights[cumulativeWeights.length - 1];
+        long allocatedAtStart = -1;
+        boolean measuring = false;
+
+        while ( true ) {
+
+            long start = System.nanoTime();
+            if ( start >= measureEnd ) {
+
+                break;
+
+            }
+
+            if ( !measuring && start >= measureStart ) {
+
+                measuring = true;
+                allocatedAtStart = getCurrentThreadAllocatedBytes();
+
+            }
+
+            int pick = random.nextInt( totalWeight );
+            int which = 0;
+            while ( cumulativeWeights[which] <= pick ) {
+
+                which += 1;
+
+            }
+
+            WikiTreeId key = _keys.get( random.nextInt( _keys.size() ) );
+            boolean ok;
+            try {
+
+                ok = perform( session, actions[which], key ) != null;
+
+            } catch ( Exception e ) {
+
+                ok = false;
+
+            }
+
+            long end = System.nanoTime();
+            if ( measuring && end <= measureEnd ) {
+
+                latencies.record( end - start );
+                requests.increment();
+                if ( !ok ) {
+
+                    errors.increment();
+
+                }
+
+            }
+
+        }
+
+        long allocatedAtEnd = measuring ? getCurrentThreadAllocatedBytes() : -1;
+        if ( allocatedAtStart < 0 || allocatedAtEnd < 0 ) {
+
+            allocatedBytes.set( -1 );
+
+        } else {
+
+            allocatedBytes.accumulateAndGet( allocatedAtEnd - allocatedAtStart, ( sofar, more ) -> sofar < 0 ? sofar : sofar + more );
+
+        }
+
+    }
+
+    @Nullable
+    private static Object perform( WikiTreeApiWrappersSession session, Action action, WikiTreeId key )
+            throws Exception {
+
+        switch ( action ) {
+
+            case GET_PERSON:
+
+                return session.getPerson( key );
+
+            case GET_PROFILE:
+
+                return session.getProfile( key );
+
+            case GET_BIO:
+
+                return session.getBio( key );
+
+            case GET_ANCESTORS:
+
+                return session.getAncestors( key, 3 );
+
+            case GET_RELATIVES:
+
+                return session.getRelatives( key.getValueString(), true, true, true, false );
+
+            case GET_WATCHLIST:
+
+                return session.getWatchlist( true, false, null, null, null, 25, null, null );
+
+            default:
+
+                throw new IllegalArgumentException( "WikiTreeLoadGenerator.perform:  unknown action " + action );
+
+        }
+
+    }
+
+    private WikiTreeApiWrappersSession createSession() {
+
+        WikiTreeApiWrappersSession session = new WikiTreeApiWrappersSession( new WikiTreeApiJsonSession( _baseUrlString ) );
+        if ( _emailAddress != null ) {
+
+            boolean loggedIn;
+            try {
+
+                loggedIn = session.login( _emailAddress, _password == null ? "" : _password );
+
+            } catch ( Exception e ) {
+
+                throw new IllegalStateException( "WikiTreeLoadGenerator:  unable to log in as " + _emailAddress, e );
+
+            }
+
+            if ( !loggedIn ) {
+
+                throw new IllegalStateException( "WikiTreeLoadGenerator:  login as " + _emailAddress + " was refused" );
+
+            }
+
+        }
+
+        return session;
+
+    }
+
+    private ExecutorService createExecutor( int threadCount ) {
+
+        if ( !_virtualThreads ) {
+
+            return Executors.newFixedThreadPool( threadCount );
+
+        }
+
+        // Found reflectively so that this still compiles (and runs with platform threads) on older JVMs.
+
+        try {
+
+            return (ExecutorService)Executors.class.getMethod( "newVirtualThreadPerTaskExecutor" ).invoke( null );
+
+        } catch ( ReflectiveOperationException e ) {
+
+            throw new UnsupportedOperationException( "WikiTreeLoadGenerator:  this JVM (" + System.getProperty( "java.version" ) + ") has no virtual threads", e );
+
+        }
+
+    }
+
+    private static void sleepUntil( long deadline )
+            throws InterruptedException {
+
+        long remaining;
+        while ( ( remaining = deadline - System.nanoTime() ) > 0 ) {
+
+            TimeUnit.NANOSECONDS.sleep( remaining );
+
+        }
+
+    }
+
+    private static long getGcMillis() {
+
+        long rval = 0;
+        for ( GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans() ) {
+
+            rval += Math.max( 0, collector.getCollectionTime() );
+
+        }
+
+        return rval;
+
+    }
+
+    /**
+     Get the number of bytes that the current thread has allocated so far (-1 if the JVM can't tell us).
+     */
+
+    private static long getCurrentThreadAllocatedBytes() {
+
+        ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+        if ( threadBean instanceof com.sun.management.ThreadMXBean ) {
+
+            com.sun.management.ThreadMXBean sunThreadBean = (com.sun.management.ThreadMXBean)threadBean;
+            if ( sunThreadBean.isThreadAllocatedMemorySupported() && sunThreadBean.isThreadAllocatedMemoryEnabled() ) {
+
+                return sunThreadBean.getThreadAllocatedBytes( Thread.currentThread().getId() );
+
+            }
+
+        }
+
+        return -1;
+
+    }
+
+    private static List<WikiTreeId> syntheticKeys( SyntheticWikiTreeDataset dataset, int count ) {
+
+        List<WikiTreeId> rval = new ArrayList<>();
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for ( int i = 0; i < count; i += 1 ) {
+
+            long personId = 1 + random.nextInt( dataset.getPersonCount() );
+            rval.add( new WikiTreeId( (String)dataset.getPerson( personId ).get( "Name" ) ) );
+
+        }
+
+        return rval;
+
+    }
+
+    private static int[] parseInts( String value ) {
+
+        String[] parts = value.split( "," );
+        int[] rval = new int[parts.length];
+        for ( int i = 0; i < parts.length; i += 1 ) {
+
+            rval[i] = Integer.parseInt( parts[i].trim() );
+
+        }
+
+        return rval;
+
+    }
+
+    /**
+     Run a load test from the command line.
+     <p/>Options:
+     <ul>
+     <li>{@code --url <url>} the endpoint (without one, a stand-in server is started over a synthetic genealogy).</li>
+     <li>{@code --keys <id>,<id>,...} the WikiTree IDs to ask about (required with {@code --url}).</li>
+     <li>{@code --people <n>} how many people the synthetic genealogy has (default 100000).</li>
+     <li>{@code --latency <min>,<max>} the stand-in server's simulated latency in milliseconds (default none).</li>
+     <li>{@code --threads <n>,<n>,...} the thread counts to step through (default 1,2,4,8).</li>
+     <li>{@code --warmup <seconds>} and {@code --seconds <seconds>} how long each step warms up and is measured for (default 2 and 5).</li>
+     <li>{@code --mix <action>=<weight>,...} the action mix (for example, {@code getPerson=6,getBio=1}).</li>
+     <li>{@code --virtual} run on virtual threads.</li>
+     <li>{@code --shared} have each step's threads share one session.</li>
+     </ul>
+     <p/>Nagle's algorithm is turned off in the JDK's HTTP server for the whole run (see {@link WikiTreeApiStandInServer#enableNoDelay()})
+     since the stand-in server would otherwise add about 40ms to every request.
+     */
+
+    public static void main( String[] args )
+            throws InterruptedException {
+
+        String url = null;
+        String keys = null;
+        int people = 100_000;
+        int[] latency = null;
+        String threads = null;
+        double warmupSeconds = 2;
+        double seconds = 5;
+        String mix = null;
+        boolean virtual = false;
+        boolean shared = false;
+
+        for ( int i = 0; i < args.length; i += 1 ) {
+
+            String arg = args[i];
+            if ( "--virtual".equals( arg ) ) {
+
+                virtual = true;
+                continue;
+
+            }
+
+            if ( "--shared".equals( arg ) ) {
+
+                shared = true;
+                continue;
+
+            }
+
+            if ( i + 1 >= args.length ) {
+
+                throw new IllegalArgumentException( "WikiTreeLoadGenerator:  unknown option or missing value for " + arg );
+
+            }
+
+            i += 1;
+            String value = args[i];
+            switch ( arg ) {
+
+                case "--url":
+                    url = value;
+                    break;
+
+                case "--keys":
+                    keys = value;
+                    break;
+
+                case "--people":
+                    people = Integer.parseInt( value );
+                    break;
+
+                case "--latency":
+                    latency = parseInts( value );
+                    break;
+
+                case "--threads":
+                    threads = value;
+                    break;
+
+                case "--warmup":
+                    warmupSeconds = Double.parseDouble( value );
+                    break;
+
+                case "--seconds":
+                    seconds = Double.parseDouble( value );
+                    break;
+
+                case "--mix":
+                    mix = value;
+                    break;
+
+                default:
+                    throw new IllegalArgumentException( "WikiTreeLoadGenerator:  unknown option " + arg );
+
+            }
+
+        }
+
+        WikiTreeApiStandInServer server = null;
+        List<WikiTreeId> keyList = new ArrayList<>();
+        if ( url == null ) {
+
+            WikiTreeApiStandInServer.enableNoDelay();
+
+            SyntheticWikiTreeDataset.Parameters parameters = new SyntheticWikiTreeDataset.Parameters();
+            parameters.setPersonCount( people );
+            SyntheticWikiTreeDataset dataset = new SyntheticWikiTreeDataset( parameters );
+            server = new WikiTreeApiStandInServer( dataset );
+            if ( latency != null ) {
+
+                server.setLatency( latency[0], latency.length > 1 ? latency[1] : latency[0] );
+
+            }
+
+            try {
+
+                server.start();
+
+            } catch ( IOException e ) {
+
+                throw new IllegalStateException( "WikiTreeLoadGenerator:  unable to start the stand-in server", e );
+
+            }
+
+            url = server.getBaseUrlString();
+            keyList.addAll( syntheticKeys( dataset, 1000 ) );
+            System.out.println( "stand-in server at " + url + " over " + dataset );
+
+        } else if ( keys == null ) {
+
+            throw new IllegalArgumentException( "WikiTreeLoadGenerator:  --url needs --keys" );
+
+        } else {
+
+            for ( String key : keys.split( "," ) ) {
+
+                keyList.add( new WikiTreeId( key.trim() ) );
+
+            }
+
+        }
+
+        try {
+
+            WikiTreeLoadGenerator generator = new WikiTreeLoadGenerator( url, keyList );
+            if ( threads != null ) {
+
+                generator.setThreadCounts( parseInts( threads ) );
+
+            }
+
+            if ( mix != null ) {
+
+                for ( Action action : Action.values() ) {
+
+                    generator.setWeight( action, 0 );
+
+                }
+
+                for ( String entry : mix.split( "," ) ) {
+
+                    String[] parts = entry.split( "=" );
+                    generator.setWeight( Action.forActionName( parts[0].trim() ), parts.length > 1 ? Integer.parseInt( parts[1].trim() ) : 1 );
+
+                }
+
+            }
+
+            generator.setWarmupMillis( (long)( warmupSeconds * 1000 ) );
+            generator.setMeasureMillis( (long)( seconds * 1000 ) );
+            generator.setVirtualThreads( virtual );
+            generator.setSharedSession( shared );
+
+            System.out.println( "mix " + generator.getMix() + ( shared ? " (shared session)" : "" ) );
+            System.out.println( Result.getReportHeader() );
+            for ( int threadCount : generator.getThreadCounts() ) {
+
+                System.out.println( generator.runStep( threadCount ) );
+
+            }
+
+        } finally {
+
+            if ( server != null ) {
+
+                server.stop();
+
+            }
+
+        }
+
+    }
+
+    public String toString() {
+
+        return "WikiTreeLoadGenerator( url=" + _baseUrlString + ", keys=" + _keys.size() + ", mix=" + _mix +
+               ", threads=" + Arrays.toString( _threadCounts ) + ( _virtualThreads ? ", virtual" : "" ) + ( _sharedSession ? ", shared" : "" ) + " )";
+
+    }
+
+}
@@ -0,0 +1,265 @@
+/*
+ * Copyright © 2017 Daniel Boulet
+ */
+
+package com.matilda.wikitree.api.metrics;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ A lock-free histogram of latencies (in nanoseconds).
+ <p/>Each power of two is split into {@value #SUB_BUCKETS} equal sized buckets so any reported value is within about 3% of the real one
+ regardless of whether we are talking about microseconds or minutes. Recording a value is a handful of shifts and a single atomic increment
+ with no locks anywhere so any number of threads can record into the same histogram at once.
+ <p/>Percentiles are computed from a {@link Snapshot}. A snapshot taken while other threads are recording is not an atomic picture of the
+ histogram but every value which was completely recorded before the snapshot was started is in it.
+ */
+
+public class LatencyHistogram {
+
+    /**
+     The number of buckets that each power of two is split into (must be a power of two).
+     */
+
+    public static final int SUB_BUCKETS = 32;
+
+    private static final int SUB_BUCKET_BITS = Integer.numberOfTrailingZeros( SUB_BUCKETS );
+
+    /**
+     Enough buckets for every non-negative {@code long}.
+     */
+
+    private static final int BUCKET_COUNT = SUB_BUCKETS + ( 63 - SUB_BUCKET_BITS ) * SUB_BUCKETS;
+
+    private final AtomicLongArray _buckets = new AtomicLongArray( BUCKET_COUNT );
+
+    private final LongAdder _count = new LongAdder();
+
+    private final LongAdder _totalNanos = new LongAdder();
+
+    private final AtomicLong _maxNanos = new AtomicLong();
+
+    /**
+     Record one latency.
+
+     @param nanos the latency in nanoseconds (negative values, which {@link System#nanoTime()} should never yield, are recorded as zero).
+     */
+
+    public void record( long nanos ) {
+
+        long value = Math.max( 0L, nanos );
+
+        _buckets.getAndIncrement( bucketIndex( value ) );
+        _count.increment();
+        _totalNanos.add( value );
+
+        long max = _maxNanos.get();
+        while ( value > max && !_maxNanos.compareAndSet( max, value ) ) {
+
+            max = _maxNanos.get();
+
+        }
+
+    }
+
+    /**
+     Get the number of latencies recorded so far.
+     */
+
+    public long getCount() {
+
+        return _count.sum();
+
+    }
+
+    /**
+     Take a snapshot of this histogram.
+     */
+
+    @NotNull
+    public Snapshot snapshot() {
+
+        long[] buckets = new long[BUCKET_COUNT];
+        long count = 0;
+        for ( int i = 0; i < BUCKET_COUNT; i += 1 ) {
+
+            buckets[i] = _buckets.get( i );
+            count += buckets[i];
+
+        }
+
+        return new Snapshot( buckets, count, _totalNanos.sum(), _maxNanos.get() );
+
+    }
+
+    static int bucketIndex( long value ) {
+
+        if ( value < SUB_BUCKETS ) {
+
+            return (int)value;
+
+        }
+
+        int exponent = 63 - Long.numberOfLeadingZeros( value );
+        int shift = exponent - SUB_BUCKET_BITS;
+
+        return SUB_BUCKETS + shift * SUB_BUCKETS + (int)( ( value >>> shift ) - SUB_BUCKETS );
+
+    }
+
+    /**
+     Get the largest value which lands in a bucket.
+     */
+
+    static long bucketUpperBound( int index ) {
+
+        if ( index < SUB_BUCKETS ) {
+
+            return index;
+
+        }
+
+        int shift = ( index - SUB_BUCKETS ) / SUB_BUCKETS;
+        long subBucket = SUB_BUCKETS + ( index - SUB_BUCKETS ) % SUB_BUCKETS;
+
+        return ( ( subBucket + 1 ) << shift ) - 1;
+
+    }
+
+    /**
+     An immutable copy of a {@link LatencyHistogram}'s contents.
+     */
+
+    public static final class Snapshot {
+
+        private final long[] _buckets;
+
+        private final long _count;
+
+        private final long _totalNanos;
+
+        private final long _maxNanos;
+
+        private Snapshot( long[] buckets, long count, long totalNanos, long maxNanos ) {
+
+            super();
+
+            _buckets = buckets;
+            _count = count;
+            _totalNanos = totalNanos;
+            _maxNanos = maxNanos;
+
+        }
+
+        public long getCount() {
+
+            return _count;
+
+        }
+
+        public long getTotalNanos() {
+
+            return _totalNanos;
+
+        }
+
+        public long getMaxNanos() {
+
+            return _maxNanos;
+
+        }
+
+        public double getMeanNanos() {
+
+            return _count == 0 ? 0 : (double)_totalNanos / _count;
+
+        }
+
+        /**
+         Get a percentile.
+
+         @param percentile the percentile (for example, {@code 99.9}).
+         @return the smallest recorded latency (to within the histogram's precision) which at least {@code percentile} percent of the
+         recorded latencies are less than or equal to (zero if nothing has been recorded).
+         @throws IllegalArgumentException if {@code percentile} is not between 0 and 100.
+         */
+
+        public long getPercentileNanos( double percentile ) {
+
+            if ( !( percentile >= 0 && percentile <= 100 ) ) {
+
+                throw new IllegalArgumentException( "LatencyHistogram.getPercentileNanos:  percentile must be between 0 and 100 (it is " + percentile + ")" );
+
+            }
+
+            if ( _count == 0 ) {
+
+                return 0;
+
+            }
+
+            long rank = Math.max( 1L, (long)Math.ceil( percentile / 100.0 * _count ) );
+            long seen = 0;
+            for ( int i = 0; i < _buckets.length; i += 1 ) {
+
+                seen += _buckets[i];
+                if ( seen >= rank ) {
+
+                    return Math.min( bucketUpperBound( i ), _maxNanos );
+
+                }
+
+            }
+
+            return _maxNanos;
+
+        }
+
+        public long getP50Nanos() {
+
+            return getPercentileNanos( 50 );
+
+        }
+
+        public long getP99Nanos() {
+
+            return getPercentileNanos( 99 );
+
+        }
+
+        public long getP999Nanos() {
+
+            return getPercentileNanos( 99.9 );
+
+        }
+
+        public String toString() {
+
+            return "count=" + _count +
+                   ", mean=" + formatMs( getMeanNanos() ) +
+                   ", p50=" + formatMs( getP50Nanos() ) +
+                   ", p99=" + formatMs( getP99Nanos() ) +
+                   ", p999=" + formatMs( getP999Nanos() ) +
+                   ", max=" + formatMs( _maxNanos );
+
+        }
+
+        private static String formatMs( double nanos ) {
+
+            return String.format( "%.3fms", nanos / 1e6 );
+
+        }
+
+    }
+
+    public String toString() {
+
+        return "LatencyHistogram( " + snapshot() + " )";
+
+    }
+
+}
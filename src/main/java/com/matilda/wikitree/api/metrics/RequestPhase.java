@@ -0,0 +1,44 @@
+/*
+ * Copyright © 2017 Daniel Boulet
+ */
+
+package com.matilda.wikitree.api.metrics;
+
+/**
+ The phases that the time spent on a WikiTree API request is broken down into.
+ */
+
+public enum RequestPhase {
+
+    /**
+     Opening the connection to the API server (including the TLS handshake for {@code https} URLs).
+     */
+
+    CONNECT,
+
+    /**
+     Sending the request and waiting for the response's status line and headers.
+     */
+
+    FIRST_BYTE,
+
+    /**
+     Reading the body of the response.
+     */
+
+    DOWNLOAD,
+
+    /**
+     Parsing the body of the response as JSON.
+     */
+
+    PARSE,
+
+    /**
+     Building the {@link com.matilda.wikitree.api.wrappers.WikiTreeWrapper} instances for the parsed response
+     (only happens for requests made via a {@link com.matilda.wikitree.api.wrappers.WikiTreeApiWrappersSession}).
+     */
+
+    WRAP
+
+}
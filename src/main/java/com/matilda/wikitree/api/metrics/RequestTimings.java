@@ -0,0 +1,182 @@
+/*
+ * Copyright © 2017 Daniel Boulet
+ */
+
+package com.matilda.wikitree.api.metrics;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Arrays;
+
+/**
+ Where the time went for one request.
+ <p/>An instance is created when a request starts and is handed along to whatever does each phase of the request
+ (see {@link com.matilda.wikitree.api.util.WikiTreeApiUtilities#readResponse(java.net.HttpURLConnection, boolean, RequestTimings)}, for example).
+ Phases which never happened (because the request failed, because it was a plain {@code WikiTreeApiJsonSession} request so nothing was wrapped, etc)
+ are reported as {@code -1}.
+ <p/>Instances are not thread safe. They are meant to be used by the thread making the request.
+ */
+
+public class RequestTimings {
+
+    private static final RequestPhase[] PHASES = RequestPhase.values();
+
+    private final String _action;
+
+    private final String _key;
+
+    private final long _startNanos;
+
+    private final long[] _phaseNanos = new long[PHASES.length];
+
+    private long _totalNanos = -1;
+
+    private long _responseBytes = -1;
+
+    /**
+     Start timing a request.
+
+     @param action the request's action ({@code getPerson}, {@code getAncestors}, etc).
+     */
+
+    public RequestTimings( @Nullable String action ) {
+
+        this( action, null );
+
+    }
+
+    /**
+     Start timing a request for something in particular.
+
+     @param action the request's action ({@code getPerson}, {@code getAncestors}, etc).
+     @param key    what the request is about (the value of its {@code key} or {@code keys} parameter).
+     */
+
+    public RequestTimings( @Nullable String action, @Nullable String key ) {
+
+        super();
+
+        _action = action;
+        _key = key;
+        _startNanos = System.nanoTime();
+        Arrays.fill( _phaseNanos, -1L );
+
+    }
+
+    /**
+     Note that a phase has ended.
+
+     @param phase            the phase.
+     @param phaseStartNanos  when the phase started (according to {@link System#nanoTime()}).
+     @return the current time (according to {@link System#nanoTime()}) which is handy if the next phase is starting right now.
+     */
+
+    public long endPhase( @NotNull RequestPhase phase, long phaseStartNanos ) {
+
+        long now = System.nanoTime();
+        _phaseNanos[phase.ordinal()] = now - phaseStartNanos;
+
+        return now;
+
+    }
+
+    /**
+     Note that the request is finished (successfully or otherwise).
+
+     @return how long the request took in nanoseconds.
+     */
+
+    public long complete() {
+
+        _totalNanos = System.nanoTime() - _startNanos;
+
+        return _totalNanos;
+
+    }
+
+    public void setResponseBytes( long responseBytes ) {
+
+        _responseBytes = responseBytes;
+
+    }
+
+    @Nullable
+    public String getAction() {
+
+        return _action;
+
+    }
+
+    @Nullable
+    public String getKey() {
+
+        return _key;
+
+    }
+
+    public long getStartNanos() {
+
+        return _startNanos;
+
+    }
+
+    /**
+     Get how long a phase took.
+
+     @param phase the phase.
+     @return how long it took in nanoseconds or {@code -1} if it didn't happen.
+     */
+
+    public long getPhaseNanos( @NotNull RequestPhase phase ) {
+
+        return _phaseNanos[phase.ordinal()];
+
+    }
+
+    /**
+     Get how long the whole request took.
+
+     @return how long it took in nanoseconds or {@code -1} if it isn't finished yet.
+     */
+
+    public long getTotalNanos() {
+
+        return _totalNanos;
+
+    }
+
+    /**
+     Get the size of the body of the response.
+
+     @return the number of bytes or {@code -1} if we never got that far.
+     */
+
+    public long getResponseBytes() {
+
+        return _responseBytes;
+
+    }
+
+    public String toString() {
+
+        StringBuilder sb = new StringBuilder( "RequestTimings( action=" ).append( _action )
+                                                                      .append( ", key=" )
+                                                                      .append( _key )
+                                                                      .append( ", totalNanos=" )
+                                                                      .append( _totalNanos );
+        for ( RequestPhase phase : PHASES ) {
+
+            if ( _phaseNanos[phase.ordinal()] >= 0 ) {
+
+                sb.append( ", " ).append( phase ).append( '=' ).append( _phaseNanos[phase.ordinal()] );
+
+            }
+
+        }
+
+        return sb.append( ", responseBytes=" ).append( _responseBytes ).append( " )" ).toString();
+
+    }
+
+}
@@ -0,0 +1,392 @@
+/*
+ * Copyright © 2017 Daniel Boulet
+ */
+
+package com.matilda.wikitree.api.metrics;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ Request latencies broken down by WikiTree API action ({@code getPerson}, {@code getAncestors}, etc) and by {@link RequestPhase}.
+ <p/>There is one {@link LatencyHistogram} per action, one per phase and one for every request regardless of its action.
+ Action histograms are created the first time that their action is seen. After that, recording takes no locks.
+ <p/>An instance can have a parent which gets a copy of everything recorded in it. This is how each
+ {@link com.matilda.wikitree.api.jsonclient.WikiTreeApiJsonSession}'s metrics also end up in the metrics for all sessions.
+ <p/>This class is also a JMX standard MBean (see {@link WikiTreeRequestMetricsMBean}).
+ */
+
+public class WikiTreeRequestMetrics implements WikiTreeRequestMetricsMBean {
+
+    /**
+     What requests which don't have an action are recorded under.
+     */
+
+    public static final String UNKNOWN_ACTION = "unknown";
+
+    private final WikiTreeRequestMetrics _parent;
+
+    private final ConcurrentHashMap<String, LatencyHistogram> _byAction = new ConcurrentHashMap<>();
+
+    private final LatencyHistogram _allRequests = new LatencyHistogram();
+
+    private final EnumMap<RequestPhase, LatencyHistogram> _byPhase = new EnumMap<>( RequestPhase.class );
+
+    private final LongAdder _responseBytes = new LongAdder();
+
+    /**
+     Create a top level set of metrics.
+     */
+
+    public WikiTreeRequestMetrics() {
+
+        this( null );
+
+    }
+
+    /**
+     Create a set of metrics which copies everything recorded in it to another set of metrics.
+
+     @param parent the other set of metrics ({@code null} if there isn't one).
+     */
+
+    public WikiTreeRequestMetrics( @Nullable WikiTreeRequestMetrics parent ) {
+
+        super();
+
+        _parent = parent;
+
+        for ( RequestPhase phase : RequestPhase.values() ) {
+
+            _byPhase.put( phase, new LatencyHistogram() );
+
+        }
+
+    }
+
+    /**
+     Record how long a request took.
+
+     @param action the request's action ({@code null} means {@link #UNKNOWN_ACTION}).
+     @param nanos  how long it took in nanoseconds.
+     */
+
+    public void record( @Nullable String action, long nanos ) {
+
+        getHistogram( action ).record( nanos );
+        _allRequests.record( nanos );
+
+        if ( _parent != null ) {
+
+            _parent.record( action, nanos );
+
+        }
+
+    }
+
+    /**
+     Record everything about a finished request.
+     <p/>The request's phases which did not happen are not recorded. Its total time is recorded under its action.
+
+     @param timings the request's timings (see {@link RequestTimings#complete()}).
+     */
+
+    public void record( @NotNull RequestTimings timings ) {
+
+        for ( RequestPhase phase : RequestPhase.values() ) {
+
+            long nanos = timings.getPhaseNanos( phase );
+            if ( nanos >= 0 ) {
+
+                _byPhase.get( phase ).record( nanos );
+
+            }
+
+        }
+
+        if ( timings.getResponseBytes() > 0 ) {
+
+            _responseBytes.add( timings.getResponseBytes() );
+
+        }
+
+        getHistogram( timings.getAction() ).record( timings.getTotalNanos() );
+        _allRequests.record( timings.getTotalNanos() );
+
+        if ( _parent != null ) {
+
+            _parent.record( timings );
+
+        }
+
+    }
+
+    /**
+     Record how long one phase of a request took.
+     <p/>This is for phases which happen after the request itself has been recorded ({@link RequestPhase#WRAP} is the only one at present).
+
+     @param phase the phase.
+     @param nanos how long it took in nanoseconds.
+     */
+
+    public void recordPhase( @NotNull RequestPhase phase, long nanos ) {
+
+        _byPhase.get( phase ).record( nanos );
+
+        if ( _parent != null ) {
+
+            _parent.recordPhase( phase, nanos );
+
+        }
+
+    }
+
+    /**
+     Get the histogram for an action.
+
+     @param action the action ({@code null} means {@link #UNKNOWN_ACTION}).
+     @return the action's histogram (created if this is the first time that we've heard of the action).
+     */
+
+    @NotNull
+    public LatencyHistogram getHistogram( @Nullable String action ) {
+
+        String key = action == null ? UNKNOWN_ACTION : action;
+
+        // Avoid computeIfAbsent's locking on the (overwhelmingly common) path where the histogram already exists.
+
+        LatencyHistogram histogram = _byAction.get( key );
+        if ( histogram == null ) {
+
+            histogram = _byAction.computeIfAbsent( key, k -> new LatencyHistogram() );
+
+        }
+
+        return histogram;
+
+    }
+
+    /**
+     Get the histogram for a phase.
+     */
+
+    @NotNull
+    public LatencyHistogram getHistogram( @NotNull RequestPhase phase ) {
+
+        return _byPhase.get( phase );
+
+    }
+
+    /**
+     Get the histogram which every request is recorded in.
+     */
+
+    @NotNull
+    public LatencyHistogram getAllRequests() {
+
+        return _allRequests;
+
+    }
+
+    /**
+     Take a snapshot of each action's histogram.
+
+     @return an unmodifiable map from action names (in alphabetical order) to snapshots of their histograms.
+     */
+
+    @NotNull
+    public SortedMap<String, LatencyHistogram.Snapshot> snapshotByAction() {
+
+        SortedMap<String, LatencyHistogram.Snapshot> rval = new TreeMap<>();
+        for ( Map.Entry<String, LatencyHistogram> entry : _byAction.entrySet() ) {
+
+            rval.put( entry.getKey(), entry.getValue().snapshot() );
+
+        }
+
+        return Collections.unmodifiableSortedMap( rval );
+
+    }
+
+    @Override
+    public long getRequestCount() {
+
+        return _allRequests.getCount();
+
+    }
+
+    @Override
+    public long getResponseBytes() {
+
+        return _responseBytes.sum();
+
+    }
+
+    @Override
+    public double getMeanMillis() {
+
+        return _allRequests.snapshot().getMeanNanos() / 1e6;
+
+    }
+
+    @Override
+    public double getP50Millis() {
+
+        return toMillis( _allRequests.snapshot().getP50Nanos() );
+
+    }
+
+    @Override
+    public double getP99Millis() {
+
+        return toMillis( _allRequests.snapshot().getP99Nanos() );
+
+    }
+
+    @Override
+    public double getP999Millis() {
+
+        return toMillis( _allRequests.snapshot().getP999Nanos() );
+
+    }
+
+    @Override
+    public double getMaxMillis() {
+
+        return toMillis( _allRequests.snapshot().getMaxNanos() );
+
+    }
+
+    @Override
+    public double getConnectP50Millis() {
+
+        return phaseMillis( RequestPhase.CONNECT, 50 );
+
+    }
+
+    @Override
+    public double getConnectP99Millis() {
+
+        return phaseMillis( RequestPhase.CONNECT, 99 );
+
+    }
+
+    @Override
+    public double getFirstByteP50Millis() {
+
+        return phaseMillis( RequestPhase.FIRST_BYTE, 50 );
+
+    }
+
+    @Override
+    public double getFirstByteP99Millis() {
+
+        return phaseMillis( RequestPhase.FIRST_BYTE, 99 );
+
+    }
+
+    @Override
+    public double getDownloadP50Millis() {
+
+        return phaseMillis( RequestPhase.DOWNLOAD, 50 );
+
+    }
+
+    @Override
+    public double getDownloadP99Millis() {
+
+        return phaseMillis( RequestPhase.DOWNLOAD, 99 );
+
+    }
+
+    @Override
+    public double getParseP50Millis() {
+
+        return phaseMillis( RequestPhase.PARSE, 50 );
+
+    }
+
+    @Override
+    public double getParseP99Millis() {
+
+        return phaseMillis( RequestPhase.PARSE, 99 );
+
+    }
+
+    @Override
+    public double getWrapP50Millis() {
+
+        return phaseMillis( RequestPhase.WRAP, 50 );
+
+    }
+
+    @Override
+    public double getWrapP99Millis() {
+
+        return phaseMillis( RequestPhase.WRAP, 99 );
+
+    }
+
+    @Override
+    public String[] getActionSummaries() {
+
+        SortedMap<String, LatencyHistogram.Snapshot> byAction = snapshotByAction();
+        String[] rval = new String[byAction.size()];
+        int ix = 0;
+        for ( Map.Entry<String, LatencyHistogram.Snapshot> entry : byAction.entrySet() ) {
+
+            rval[ix] = entry.getKey() + ":  " + entry.getValue();
+            ix += 1;
+
+        }
+
+        return rval;
+
+    }
+
+    private double phaseMillis( RequestPhase phase, double percentile ) {
+
+        return toMillis( _byPhase.get( phase ).snapshot().getPercentileNanos( percentile ) );
+
+    }
+
+    private static double toMillis( long nanos ) {
+
+        return nanos / 1e6;
+
+    }
+
+    /**
+     Describe the latencies recorded so far (one line per action and then one line per phase).
+     */
+
+    public String toString() {
+
+        StringBuilder sb = new StringBuilder( "all requests:  " ).append( _allRequests.snapshot() )
+                                                                 .append( ", responseBytes=" )
+                                                                 .append( _responseBytes.sum() );
+        for ( String actionSummary : getActionSummaries() ) {
+
+            sb.append( '\n' ).append( actionSummary );
+
+        }
+
+        for ( Map.Entry<RequestPhase, LatencyHistogram> entry : _byPhase.entrySet() ) {
+
+            sb.append( "\nphase " ).append( entry.getKey() ).append( ":  " ).append( entry.getValue().snapshot() );
+
+        }
+
+        return sb.toString();
+
+    }
+
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright © 2017 Daniel Boulet
+ */
+
+package com.matilda.wikitree.api.metrics;
+
+/**
+ The JMX view of a {@link WikiTreeRequestMetrics} instance.
+ <p/>See {@link com.matilda.wikitree.api.jsonclient.WikiTreeApiJsonSession#registerMetricsMBean()} for how a session's metrics get registered.
+ All times are in milliseconds.
+ */
+
+public interface WikiTreeRequestMetricsMBean {
+
+    long getRequestCount();
+
+    /**
+     The total size of the bodies of all the responses received so far.
+     */
+
+    long getResponseBytes();
+
+    double getMeanMillis();
+
+    double getP50Millis();
+
+    double getP99Millis();
+
+    double getP999Millis();
+
+    double getMaxMillis();
+
+    double getConnectP50Millis();
+
+    double getConnectP99Millis();
+
+    double getFirstByteP50Millis();
+
+    double getFirstByteP99Millis();
+
+    double getDownloadP50Millis();
+
+    double getDownloadP99Millis();
+
+    double getParseP50Millis();
+
+    double getParseP99Millis();
+
+    double getWrapP50Millis();
+
+    double getWrapP99Millis();
+
+    /**
+     One line per action describing its count, mean, p50, p99, p999 and max.
+     */
+
+    String[] getActionSummaries();
+
+}
@@ -0,0 +1,304 @@
+/*
+ * Copyright © 2017 Daniel Boulet
+ */
+
+package com.matilda.wikitree.api.server;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.json.simple.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ A {@link WikiTreeDataset} which keeps everything in maps.
+ <p/>Profiles can be added while a server is using the dataset.
+ */
+
+public class InMemoryWikiTreeDataset implements WikiTreeDataset {
+
+    private static final String[] RELATIVE_MAPS = { "Parents", "Children", "Spouses", "Siblings" };
+
+    private final Map<Long, JSONObject> _people = new ConcurrentHashMap<>();
+
+    private final Map<String, Long> _personIds = new ConcurrentHashMap<>();
+
+    private final Map<Long, List<Long>> _children = new ConcurrentHashMap<>();
+
+    private final Map<Long, List<Long>> _spouses = new ConcurrentHashMap<>();
+
+    private final Map<Long, String> _bios = new ConcurrentHashMap<>();
+
+    private final Map<String, JSONObject> _spaces = new ConcurrentHashMap<>();
+
+    private final Map<String, Account> _accounts = new ConcurrentHashMap<>();
+
+    /**
+     Add (or replace) a person profile.
+     <p/>The profile must have a numeric {@code Id} and a {@code Name}. Its {@code Father} and {@code Mother} (if non-zero) make it a child of
+     those people. Any {@code Parents}, {@code Children}, {@code Spouses} or {@code Siblings} maps are dropped
+     (see {@link #addPersonAndRelatives(JSONObject)} if you want them added too).
+     Replacing a profile with one which has different parents is not supported.
+
+     @param profile the profile.
+     @throws IllegalArgumentException if the profile does not have an {@code Id} or a {@code Name}.
+     */
+
+    @SuppressWarnings("unchecked")
+    public void addPerson( @NotNull JSONObject profile ) {
+
+        long id = getId( profile );
+        Object name = profile.get( "Name" );
+        if ( !( name instanceof String ) ) {
+
+            throw new IllegalArgumentException( "InMemoryWikiTreeDataset.addPerson:  profile " + id + " has no Name" );
+
+        }
+
+        JSONObject copy = new JSONObject( profile );
+        for ( String relativeMap : RELATIVE_MAPS ) {
+
+            copy.remove( relativeMap );
+
+        }
+
+        JSONObject previous = _people.put( id, copy );
+        _personIds.put( (String)name, id );
+
+        if ( previous == null ) {
+
+            for ( String parent : new String[]{ "Father", "Mother" } ) {
+
+                long parentId = getLong( profile, parent );
+                if ( parentId != 0 ) {
+
+                    _children.computeIfAbsent( parentId, k -> new CopyOnWriteArrayList<>() ).add( id );
+
+                }
+
+            }
+
+        }
+
+    }
+
+    /**
+     Add a person profile along with everyone in its {@code Parents}, {@code Children}, {@code Spouses} and {@code Siblings} maps
+     (which is what a {@code getPerson} response for {@code fields=*} contains).
+     <p/>People who are already in this dataset are not replaced. The spouses in the {@code Spouses} map become the person's spouses.
+
+     @param profile the profile.
+     */
+
+    public void addPersonAndRelatives( @NotNull JSONObject profile ) {
+
+        long id = getId( profile );
+        for ( String relativeMap : RELATIVE_MAPS ) {
+
+            Object relatives = profile.get( relativeMap );
+            if ( relatives instanceof Map ) {
+
+                for ( Object relative : ( (Map)relatives ).values() ) {
+
+                    if ( relative instanceof JSONObject && !_people.containsKey( getId( (JSONObject)relative ) ) ) {
+
+                        addPerson( (JSONObject)relative );
+
+                    }
+
+                    if ( "Spouses".equals( relativeMap ) && relative instanceof JSONObject ) {
+
+                        addSpouses( id, getId( (JSONObject)relative ) );
+
+                    }
+
+                }
+
+            }
+
+        }
+
+        if ( !_people.containsKey( id ) ) {
+
+            addPerson( profile );
+
+        }
+
+    }
+
+    /**
+     Record that two people are (or were) married to each other.
+     */
+
+    public void addSpouses( long personId, long spouseId ) {
+
+        addIfAbsent( _spouses.computeIfAbsent( personId, k -> new CopyOnWriteArrayList<>() ), spouseId );
+        addIfAbsent( _spouses.computeIfAbsent( spouseId, k -> new CopyOnWriteArrayList<>() ), personId );
+
+    }
+
+    public void setBio( long personId, @Nullable String bio ) {
+
+        if ( bio == null ) {
+
+            _bios.remove( personId );
+
+        } else {
+
+            _bios.put( personId, bio );
+
+        }
+
+    }
+
+    /**
+     Add a free-space profile.
+
+     @param pageName the page's name (for example, {@code "Space:Allied_POW_camps"}).
+     @param profile  the profile (what goes in the {@code profile} object of a {@code getProfile} response).
+     */
+
+    public void addSpace( @NotNull String pageName, @NotNull JSONObject profile ) {
+
+        _spaces.put( pageName, new JSONObject( profile ) );
+
+    }
+
+    public void addAccount( @NotNull Account account ) {
+
+        _accounts.put( account.getEmailAddress(), account );
+
+    }
+
+    /**
+     Get the number of person profiles in this dataset.
+     */
+
+    public int getPersonCount() {
+
+        return _people.size();
+
+    }
+
+    @Override
+    @Nullable
+    public JSONObject getPerson( long personId ) {
+
+        return _people.get( personId );
+
+    }
+
+    @Override
+    @Nullable
+    public Long getPersonId( @NotNull String wikiTreeId ) {
+
+        return _personIds.get( wikiTreeId );
+
+    }
+
+    @Override
+    @NotNull
+    public List<Long> getChildIds( long personId ) {
+
+        List<Long> children = _children.get( personId );
+
+        return children == null ? Collections.emptyList() : Collections.unmodifiableList( new ArrayList<>( children ) );
+
+    }
+
+    @Override
+    @NotNull
+    public List<Long> getSpouseIds( long personId ) {
+
+        List<Long> spouses = _spouses.get( personId );
+
+        return spouses == null ? Collections.emptyList() : Collections.unmodifiableList( new ArrayList<>( spouses ) );
+
+    }
+
+    @Override
+    @Nullable
+    public String getBio( long personId ) {
+
+        return _bios.get( personId );
+
+    }
+
+    @Override
+    @Nullable
+    public JSONObject getSpace( @NotNull String pageName ) {
+
+        return _spaces.get( pageName );
+
+    }
+
+    @Override
+    @Nullable
+    public Account getAccount( @NotNull String emailAddress ) {
+
+        return _accounts.get( emailAddress );
+
+    }
+
+    private static synchronized void addIfAbsent( List<Long> list, long value ) {
+
+        if ( !list.contains( value ) ) {
+
+            list.add( value );
+
+        }
+
+    }
+
+    private static long getId( JSONObject profile ) {
+
+        long id = getLong( profile, "Id" );
+        if ( id == 0 ) {
+
+            throw new IllegalArgumentException( "InMemoryWikiTreeDataset:  profile has no Id - " + profile );
+
+        }
+
+        return id;
+
+    }
+
+    private static long getLong( JSONObject profile, String fieldName ) {
+
+        Object value = profile.get( fieldName );
+        if ( value instanceof Number ) {
+
+            return ( (Number)value ).longValue();
+
+        } else if ( value instanceof String && !( (String)value ).isEmpty() ) {
+
+            try {
+
+                return Long.parseLong( (String)value );
+
+            } catch ( NumberFormatException e ) {
+
+                return 0;
+
+            }
+
+        } else {
+
+            return 0;
+
+        }
+
+    }
+
+    public String toString() {
+
+        return "InMemoryWikiTreeDataset( " + _people.size() + " people, " + _spaces.size() + " spaces, " + _accounts.size() + " accounts )";
+
+    }
+
+}
@@ -0,0 +1,1214 @@
+/*
+ * Copyright © 2017 Daniel Boulet
+ */
+
+package com.matilda.wikitree.api.server;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.json.simple.JSONObject;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ A seeded, procedurally generated population which is big enough to stress the wrappers, the graph code and any caching.
+ <p/>The population is built generation by generation. Most people in each generation marry someone from the same generation,
+ some of them marry a first cousin (which gives their descendants pedigree collapse) and some of them marry a second time
+ (which gives their children half-siblings). Each generation's children are spread at random over the previous generation's couples.
+ Some children have an unknown father or mother. People born recently enough are still living and their profiles are private,
+ as are a few of the profiles of people who have died.
+ <p/>Only the family structure and a few small per-person values are stored (21 bytes per person plus 16 bytes per couple),
+ so populations of 10<sup>7</sup> people fit in a modest heap. Everything else (names, dates, places and so on) is derived from the seed
+ and the person's Person.Id each time a profile is asked for. The same {@link Parameters} always yield the same population.
+ <p/>Person.Ids run from {@code 1} to {@link #getPersonCount()}, oldest generation first. WikiTree IDs are the person's
+ {@code LastNameAtBirth} followed by a dash and their Person.Id (for example, {@code "Ashford-1234"}).
+ <p/>Serve one with a {@link WikiTreeApiStandInServer} to get responses in exactly the shapes that the wrappers expect.
+ */
+
+public class SyntheticWikiTreeDataset implements WikiTreeDataset {
+
+    /**
+     What sort of population to generate.
+     <p/>The defaults yield a ten generation population of {@code 100_000} people starting in the early eighteenth century.
+     */
+
+    public static class Parameters {
+
+        private long _seed = 1;
+
+        private int _personCount = 100_000;
+
+        private int _generations = 10;
+
+        private double _growthRate = 1.3;
+
+        private double _marriageRate = 0.85;
+
+        private double _remarriageRate = 0.08;
+
+        private double _cousinMarriageRate = 0.03;
+
+        private double _missingParentRate = 0.05;
+
+        private double _privateRate = 0.05;
+
+        private int _referenceYear = 2017;
+
+        public long getSeed() {
+
+            return _seed;
+
+        }
+
+        public long setSeed( long seed ) {
+
+            long rval = _seed;
+            _seed = seed;
+
+            return rval;
+
+        }
+
+        public int getPersonCount() {
+
+            return _personCount;
+
+        }
+
+        /**
+         Specify how many people there are in the population.
+         */
+
+        public int setPersonCount( int personCount ) {
+
+            int rval = _personCount;
+            _personCount = personCount;
+
+            return rval;
+
+        }
+
+        public int getGenerations() {
+
+            return _generations;
+
+        }
+
+        public int setGenerations( int generations ) {
+
+            int rval = _generations;
+            _generations = generations;
+
+            return rval;
+
+        }
+
+        public double getGrowthRate() {
+
+            return _growthRate;
+
+        }
+
+        /**
+         Specify how much bigger each generation is than the previous one.
+         */
+
+        public double setGrowthRate( double growthRate ) {
+
+            double rval = _growthRate;
+            _growthRate = growthRate;
+
+            return rval;
+
+        }
+
+        public double getMarriageRate() {
+
+            return _marriageRate;
+
+        }
+
+        /**
+         Specify the fraction of men in each generation who marry (if there's anyone left for them to marry).
+         */
+
+        public double setMarriageRate( double marriageRate ) {
+
+            double rval = _marriageRate;
+            _marriageRate = marriageRate;
+
+            return rval;
+
+        }
+
+        public double getRemarriageRate() {
+
+            return _remarriageRate;
+
+        }
+
+        /**
+         Specify the fraction of couples in which one of the spouses also marries someone else.
+         */
+
+        public double setRemarriageRate( double remarriageRate ) {
+
+            double rval = _remarriageRate;
+            _remarriageRate = remarriageRate;
+
+            return rval;
+
+        }
+
+        public double getCousinMarriageRate() {
+
+            return _cousinMarriageRate;
+
+        }
+
+        /**
+         Specify the fraction of marrying men who marry a first cousin (if they have an unmarried one).
+         */
+
+        public double setCousinMarriageRate( double cousinMarriageRate ) {
+
+            double rval = _cousinMarriageRate;
+            _cousinMarriageRate = cousinMarriageRate;
+
+            return rval;
+
+        }
+
+        public double getMissingParentRate() {
+
+            return _missingParentRate;
+
+        }
+
+        /**
+         Specify the fraction of children who have an unknown father or an unknown mother.
+         */
+
+        public double setMissingParentRate( double missingParentRate ) {
+
+            double rval = _missingParentRate;
+            _missingParentRate = missingParentRate;
+
+            return rval;
+
+        }
+
+        public double getPrivateRate() {
+
+            return _privateRate;
+
+        }
+
+        /**
+         Specify the fraction of dead people whose profiles are private (living people's profiles are always private).
+         */
+
+        public double setPrivateRate( double privateRate ) {
+
+            double rval = _privateRate;
+            _privateRate = privateRate;
+
+            return rval;
+
+        }
+
+        public int getReferenceYear() {
+
+            return _referenceYear;
+
+        }
+
+        /**
+         Specify the 'current' year (nobody is born after it and people who would have died after it are still living).
+         */
+
+        public int setReferenceYear( int referenceYear ) {
+
+            int rval = _referenceYear;
+            _referenceYear = referenceYear;
+
+            return rval;
+
+        }
+
+        public String toString() {
+
+            return "Parameters( seed=" + _seed + ", personCount=" + _personCount + ", generations=" + _generations +
+                   ", growthRate=" + _growthRate + ", marriageRate=" + _marriageRate + ", remarriageRate=" + _remarriageRate +
+                   ", cousinMarriageRate=" + _cousinMarriageRate + ", missingParentRate=" + _missingParentRate +
+                   ", privateRate=" + _privateRate + ", referenceYear=" + _referenceYear + " )";
+
+        }
+
+    }
+
+    /**
+     Roughly how many years there are between the starts of successive generations.
+     */
+
+    private static final int GENERATION_YEARS = 29;
+
+    /**
+     When profiles started being touched (WikiTree went live in 2008).
+     */
+
+    private static final long TOUCHED_EPOCH = LocalDateTime.of( 2008, 1, 1, 0, 0 ).toEpochSecond( ZoneOffset.UTC );
+
+    private static final DateTimeFormatter TOUCHED_FORMAT = DateTimeFormatter.ofPattern( "yyyyMMddHHmmss" );
+
+    private static final String[] MALE_FIRST_NAMES = {
+            "Albert", "Arthur", "Charles", "Daniel", "David", "Edward", "Francis", "Frederick", "George", "Henry",
+            "Hugh", "Isaac", "James", "John", "Joseph", "Lewis", "Matthew", "Nathaniel", "Owen", "Peter",
+            "Richard", "Robert", "Samuel", "Thomas", "Walter", "William"
+    };
+
+    private static final String[] FEMALE_FIRST_NAMES = {
+            "Agnes", "Alice", "Anne", "Catherine", "Charlotte", "Clementine", "Dorothy", "Edith", "Eleanor", "Elizabeth",
+            "Emma", "Florence", "Grace", "Hannah", "Harriet", "Isabel", "Jane", "Louisa", "Margaret", "Martha",
+            "Mary", "Rebecca", "Ruth", "Sarah", "Susanna", "Victoria"
+    };
+
+    private static final String[] SURNAME_STARTS = {
+            "Ash", "Black", "Brad", "Brook", "Carl", "Cold", "Dun", "Fair", "Green", "Hart",
+            "Hol", "Kings", "Lang", "Mar", "New", "Pem", "Red", "Stan", "Thorn", "Wood"
+    };
+
+    private static final String[] SURNAME_ENDS = {
+            "by", "croft", "den", "field", "ford", "gate", "ham", "hill", "ley", "low",
+            "mere", "more", "ridge", "shaw", "stone", "ton", "wick", "well", "worth", "yard"
+    };
+
+    private static final String[] LOCATIONS = {
+            "Woodstock, Oxfordshire, England", "Kensington, London, England", "Bath, Somerset, England", "York, Yorkshire, England",
+            "Edinburgh, Midlothian, Scotland", "Dublin, Ireland", "Cardiff, Glamorgan, Wales", "Halifax, Nova Scotia, Canada",
+            "Boston, Suffolk, Massachusetts", "Philadelphia, Pennsylvania", "Charleston, South Carolina", "Quebec City, Quebec, Canada",
+            "Kingston, Ontario, Canada", "Hobart, Tasmania, Australia", "Sydney, New South Wales, Australia", "Auckland, New Zealand"
+    };
+
+    /**
+     Privacy levels (see the WikiTree help pages).
+     */
+
+    private static final long[] PRIVATE_LEVELS = { 20, 30, 35, 40 };
+
+    private static final long PUBLIC_LEVEL = 50;
+
+    private static final long OPEN_LEVEL = 60;
+
+    private static final byte MALE = 1;
+
+    private static final byte FATHER_UNKNOWN = 2;
+
+    private static final byte MOTHER_UNKNOWN = 4;
+
+    private final long _seed;
+
+    private final int _referenceYear;
+
+    private final double _privateRate;
+
+    private final int _personCount;
+
+    private final int[] _generationStarts;
+
+    /**
+     The index of the couple each person is a child of ({@code -1} for people whose parents aren't in the population).
+     */
+
+    private final int[] _birthCouple;
+
+    private final int[] _firstCouple;
+
+    private final int[] _secondCouple;
+
+    private final short[] _birthYear;
+
+    private final short[] _surname;
+
+    private final byte[] _flags;
+
+    /**
+     Seconds since {@link #TOUCHED_EPOCH}.
+     */
+
+    private final int[] _touched;
+
+    private final int[] _coupleHusband;
+
+    private final int[] _coupleWife;
+
+    private final int[] _coupleFirstChild;
+
+    private final int[] _coupleChildCount;
+
+    private final int _cousinMarriages;
+
+    private final int _remarriages;
+
+    private final Map<String, Account> _accounts = new ConcurrentHashMap<>();
+
+    /**
+     Generate a population.
+
+     @param parameters what sort of population to generate (later changes to it have no effect on this population).
+     @throws IllegalArgumentException if the parameters make no sense (for example, fewer than two people per generation or a negative rate).
+     */
+
+    public SyntheticWikiTreeDataset( @NotNull Parameters parameters ) {
+
+        super();
+
+        int generations = parameters.getGenerations();
+        int personCount = parameters.getPersonCount();
+        double growthRate = parameters.getGrowthRate();
+        if ( generations < 1 || personCount < 2 * generations || growthRate <= 0 ) {
+
+            throw new IllegalArgumentException(
+                    "SyntheticWikiTreeDataset:  need at least one generation, two people per generation and a positive growth rate - " + parameters
+            );
+
+        }
+
+        for ( double rate : new double[]{
+                parameters.getMarriageRate(), parameters.getRemarriageRate(), parameters.getCousinMarriageRate(),
+                parameters.getMissingParentRate(), parameters.getPrivateRate()
+        } ) {
+
+            if ( rate < 0 || rate > 1 ) {
+
+                throw new IllegalArgumentException( "SyntheticWikiTreeDataset:  rates must be between 0 and 1 - " + parameters );
+
+            }
+
+        }
+
+        _seed = parameters.getSeed();
+        _referenceYear = parameters.getReferenceYear();
+        _privateRate = parameters.getPrivateRate();
+        _personCount = personCount;
+
+        _generationStarts = generationStarts( personCount, generations, growthRate );
+        _birthCouple = new int[personCount];
+        _firstCouple = new int[personCount];
+        _secondCouple = new int[personCount];
+        _birthYear = new short[personCount];
+        _surname = new short[personCount];
+        _flags = new byte[personCount];
+        _touched = new int[personCount];
+
+        Arrays.fill( _firstCouple, -1 );
+        Arrays.fill( _secondCouple, -1 );
+
+        Generator generator = new Generator( parameters );
+        generator.generate();
+
+        _coupleHusband = generator._husbands.toArray();
+        _coupleWife = generator._wives.toArray();
+        _coupleFirstChild = generator._firstChildren.toArray();
+        _coupleChildCount = generator._childCounts.toArray();
+        _cousinMarriages = generator._cousinMarriages;
+        _remarriages = generator._remarriages;
+
+    }
+
+    /**
+     Figure out where each generation starts.
+
+     @return the index of each generation's first person followed by the population's size.
+     */
+
+    private static int[] generationStarts( int personCount, int generations, double growthRate ) {
+
+        double total = 0;
+        for ( int g = 0; g < generations; g += 1 ) {
+
+            total += Math.pow( growthRate, g );
+
+        }
+
+        int[] starts = new int[generations + 1];
+        for ( int g = 0; g < generations; g += 1 ) {
+
+            int size = Math.max( 2, (int)Math.round( personCount * Math.pow( growthRate, g ) / total ) );
+            starts[g + 1] = Math.min( starts[g] + size, personCount - 2 * ( generations - g - 1 ) );
+
+        }
+
+        starts[generations] = personCount;
+
+        return starts;
+
+    }
+
+    /**
+     The state that is only needed while the population is being generated.
+     */
+
+    private class Generator {
+
+        private final SplittableRandom _random;
+
+        private final Parameters _parameters;
+
+        private final IntList _husbands = new IntList();
+
+        private final IntList _wives = new IntList();
+
+        private final IntList _firstChildren = new IntList();
+
+        private final IntList _childCounts = new IntList();
+
+        private final IntList _candidates = new IntList();
+
+        private final int _startYear;
+
+        private int _cousinMarriages;
+
+        private int _remarriages;
+
+        private Generator( Parameters parameters ) {
+
+            super();
+
+            _parameters = parameters;
+            _random = new SplittableRandom( parameters.getSeed() );
+            _startYear = parameters.getReferenceYear() - ( _generationStarts.length - 1 ) * GENERATION_YEARS;
+
+        }
+
+        private void generate() {
+
+            int generations = _generationStarts.length - 1;
+            addFounders( 0 );
+
+            for ( int g = 0; g < generations - 1; g += 1 ) {
+
+                int coupleStart = _husbands.size();
+                marry( g, coupleStart );
+
+                if ( _husbands.size() == coupleStart ) {
+
+                    addFounders( g + 1 );
+
+                } else {
+
+                    addChildren( g + 1, coupleStart, _husbands.size() );
+
+                }
+
+            }
+
+        }
+
+        private void addFounders( int generation ) {
+
+            for ( int person = _generationStarts[generation]; person < _generationStarts[generation + 1]; person += 1 ) {
+
+                _birthCouple[person] = -1;
+                _flags[person] = _random.nextBoolean() ? MALE : 0;
+                _birthYear[person] = (short)Math.min( _referenceYear, _startYear + generation * GENERATION_YEARS + _random.nextInt( GENERATION_YEARS ) );
+                _surname[person] = (short)_random.nextInt( SURNAME_STARTS.length * SURNAME_ENDS.length );
+                _touched[person] = touched();
+
+            }
+
+        }
+
+        private void marry( int generation, int coupleStart ) {
+
+            int start = _generationStarts[generation];
+            int end = _generationStarts[generation + 1];
+
+            IntList men = new IntList();
+            IntList women = new IntList();
+            for ( int person = start; person < end; person += 1 ) {
+
+                ( isMale( person ) ? men : women ).add( person );
+
+            }
+
+            men.shuffle( _random );
+            women.shuffle( _random );
+
+            IntList bachelors = new IntList();
+            int nextWoman = 0;
+            for ( int i = 0; i < men.size(); i += 1 ) {
+
+                int man = men.get( i );
+                if ( _random.nextDouble() >= _parameters.getMarriageRate() ) {
+
+                    bachelors.add( man );
+                    continue;
+
+                }
+
+                int wife = -1;
+                if ( _random.nextDouble() < _parameters.getCousinMarriageRate() ) {
+
+                    wife = findCousin( man, start, end );
+                    if ( wife >= 0 ) {
+
+                        _cousinMarriages += 1;
+
+                    }
+
+                }
+
+                if ( wife < 0 ) {
+
+                    while ( nextWoman < women.size() && _firstCouple[women.get( nextWoman )] >= 0 ) {
+
+                        nextWoman += 1;
+
+                    }
+
+                    if ( nextWoman == women.size() ) {
+
+                        bachelors.add( man );
+                        continue;
+
+                    }
+
+                    wife = women.get( nextWoman );
+
+                }
+
+                addCouple( man, wife );
+
+            }
+
+            // Some people marry twice (to someone from the same generation who hasn't married yet).
+
+            int nextBachelor = 0;
+            int coupleEnd = _husbands.size();
+            for ( int couple = coupleStart; couple < coupleEnd; couple += 1 ) {
+
+                if ( _random.nextDouble() >= _parameters.getRemarriageRate() ) {
+
+                    continue;
+
+                }
+
+                if ( _random.nextBoolean() ) {
+
+                    while ( nextWoman < women.size() && _firstCouple[women.get( nextWoman )] >= 0 ) {
+
+                        nextWoman += 1;
+
+                    }
+
+                    if ( nextWoman < women.size() ) {
+
+                        addCouple( _husbands.get( couple ), women.get( nextWoman ) );
+                        _remarriages += 1;
+
+                    }
+
+                } else if ( nextBachelor < bachelors.size() ) {
+
+                    addCouple( bachelors.get( nextBachelor ), _wives.get( couple ) );
+                    nextBachelor += 1;
+                    _remarriages += 1;
+
+                }
+
+            }
+
+        }
+
+        /**
+         Find an unmarried female first cousin of someone who is in the same generation and isn't also a half-sibling.
+
+         @return the cousin or {@code -1} if there isn't one.
+         */
+
+        private int findCousin( int person, int generationStart, int generationEnd ) {
+
+            int birthCouple = _birthCouple[person];
+            if ( birthCouple < 0 ) {
+
+                return -1;
+
+            }
+
+            int father = _husbands.get( birthCouple );
+            int mother = _wives.get( birthCouple );
+
+            _candidates.clear();
+            for ( int parent : new int[]{ father, mother } ) {
+
+                int parentBirthCouple = _birthCouple[parent];
+                if ( parentBirthCouple < 0 ) {
+
+                    continue;
+
+                }
+
+                for ( int grandparent : new int[]{ _husbands.get( parentBirthCouple ), _wives.get( parentBirthCouple ) } ) {
+
+                    for ( int grandparentCouple : new int[]{ _firstCouple[grandparent], _secondCouple[grandparent] } ) {
+
+                        if ( grandparentCouple < 0 ) {
+
+                            continue;
+
+                        }
+
+                        int firstUncle = _firstChildren.get( grandparentCouple );
+                        for ( int uncle = firstUncle; uncle < firstUncle + _childCounts.get( grandparentCouple ); uncle += 1 ) {
+
+                            if ( uncle == parent ) {
+
+                                continue;
+
+                            }
+
+                            for ( int uncleCouple : new int[]{ _firstCouple[uncle], _secondCouple[uncle] } ) {
+
+                                if ( uncleCouple < 0 ) {
+
+                                    continue;
+
+                                }
+
+                                int husband = _husbands.get( uncleCouple );
+                                int wife = _wives.get( uncleCouple );
+                                if ( husband == father || wife == mother ) {
+
+                                    continue;
+
+                                }
+
+                                int firstCousin = _firstChildren.get( uncleCouple );
+                                for ( int cousin = firstCousin; cousin < firstCousin + _childCounts.get( uncleCouple ); cousin += 1 ) {
+
+                                    if ( cousin >= generationStart && cousin < generationEnd && !isMale( cousin ) && _firstCouple[cousin] < 0 ) {
+
+                                        _candidates.add( cousin );
+
+                                    }
+
+                                }
+
+                            }
+
+                        }
+
+                    }
+
+                }
+
+            }
+
+            return _candidates.size() == 0 ? -1 : _candidates.get( _random.nextInt( _candidates.size() ) );
+
+        }
+
+        private void addCouple( int husband, int wife ) {
+
+            int couple = _husbands.size();
+            _husbands.add( husband );
+            _wives.add( wife );
+            _firstChildren.add( 0 );
+            _childCounts.add( 0 );
+
+            for ( int spouse : new int[]{ husband, wife } ) {
+
+                if ( _firstCouple[spouse] < 0 ) {
+
+                    _firstCouple[spouse] = couple;
+
+                } else {
+
+                    _secondCouple[spouse] = couple;
+
+                }
+
+            }
+
+        }
+
+        private void addChildren( int generation, int coupleStart, int coupleEnd ) {
+
+            int coupleCount = coupleEnd - coupleStart;
+            int[] counts = new int[coupleCount];
+            for ( int child = _generationStarts[generation]; child < _generationStarts[generation + 1]; child += 1 ) {
+
+                counts[_random.nextInt( coupleCount )] += 1;
+
+            }
+
+            int child = _generationStarts[generation];
+            for ( int i = 0; i < coupleCount; i += 1 ) {
+
+                int couple = coupleStart + i;
+                int husband = _husbands.get( couple );
+                int wife = _wives.get( couple );
+                _firstChildren.set( couple, child );
+                _childCounts.set( couple, counts[i] );
+
+                int motherBorn = _birthYear[wife];
+                for ( int n = 0; n < counts[i]; n += 1 ) {
+
+                    byte flags = _random.nextBoolean() ? MALE : 0;
+                    if ( _random.nextDouble() < _parameters.getMissingParentRate() ) {
+
+                        flags |= _random.nextBoolean() ? FATHER_UNKNOWN : MOTHER_UNKNOWN;
+
+                    }
+
+                    _birthCouple[child] = couple;
+                    _flags[child] = flags;
+                    _birthYear[child] = (short)Math.min( _referenceYear, motherBorn + 17 + _random.nextInt( 24 ) );
+                    _surname[child] = _surname[husband];
+                    _touched[child] = touched();
+                    child += 1;
+
+                }
+
+            }
+
+        }
+
+        private int touched() {
+
+            long range = LocalDateTime.of( _referenceYear + 1, 1, 1, 0, 0 ).toEpochSecond( ZoneOffset.UTC ) - TOUCHED_EPOCH;
+
+            return (int)Math.max( 0, _random.nextLong( Math.max( 1, range ) ) );
+
+        }
+
+    }
+
+    /**
+     A minimal growable {@code int} array.
+     */
+
+    private static final class IntList {
+
+        private int[] _values = new int[16];
+
+        private int _size;
+
+        private void add( int value ) {
+
+            if ( _size == _values.length ) {
+
+                _values = Arrays.copyOf( _values, _size * 2 );
+
+            }
+
+            _values[_size] = value;
+            _size += 1;
+
+        }
+
+        private int get( int index ) {
+
+            return _values[index];
+
+        }
+
+        private void set( int index, int value ) {
+
+            _values[index] = value;
+
+        }
+
+        private int size() {
+
+            return _size;
+
+        }
+
+        private void clear() {
+
+            _size = 0;
+
+        }
+
+        private void shuffle( SplittableRandom random ) {
+
+            for ( int i = _size - 1; i > 0; i -= 1 ) {
+
+                int j = random.nextInt( i + 1 );
+                int tmp = _values[i];
+                _values[i] = _values[j];
+                _values[j] = tmp;
+
+            }
+
+        }
+
+        private int[] toArray() {
+
+            return Arrays.copyOf( _values, _size );
+
+        }
+
+    }
+
+    /**
+     Add an account (for {@code login} and {@code getWatchlist} requests).
+     */
+
+    public void addAccount( @NotNull Account account ) {
+
+        _accounts.put( account.getEmailAddress(), account );
+
+    }
+
+    public int getPersonCount() {
+
+        return _personCount;
+
+    }
+
+    public int getCoupleCount() {
+
+        return _coupleHusband.length;
+
+    }
+
+    public int getGenerationCount() {
+
+        return _generationStarts.length - 1;
+
+    }
+
+    /**
+     Get the Person.Id of the first person in a generation (generation {@code 0} is the oldest).
+     */
+
+    public long getFirstPersonId( int generation ) {
+
+        return _generationStarts[generation] + 1L;
+
+    }
+
+    public int getGenerationSize( int generation ) {
+
+        return _generationStarts[generation + 1] - _generationStarts[generation];
+
+    }
+
+    /**
+     Get how many marriages between first cousins there are.
+     */
+
+    public int getCousinMarriageCount() {
+
+        return _cousinMarriages;
+
+    }
+
+    /**
+     Get how many second marriages there are.
+     */
+
+    public int getRemarriageCount() {
+
+        return _remarriages;
+
+    }
+
+    @Override
+    @Nullable
+    @SuppressWarnings("unchecked")
+    public JSONObject getPerson( long personId ) {
+
+        int person = index( personId );
+        if ( person < 0 ) {
+
+            return null;
+
+        }
+
+        long hash = hash( person );
+        boolean male = isMale( person );
+        String[] firstNames = male ? MALE_FIRST_NAMES : FEMALE_FIRST_NAMES;
+        String firstName = firstNames[(int)( ( hash >>> 1 ) % firstNames.length )];
+        String middleName = ( hash & 0x3 ) == 0 ? "" : firstNames[(int)( ( hash >>> 9 ) % firstNames.length )];
+        String lastNameAtBirth = surname( _surname[person] );
+        String lastNameCurrent = lastNameAtBirth;
+        if ( !male && _firstCouple[person] >= 0 ) {
+
+            lastNameCurrent = surname( _surname[_coupleHusband[_firstCouple[person]]] );
+
+        }
+
+        int birthYear = _birthYear[person];
+        int deathYear = deathYear( person, hash );
+        boolean living = deathYear > _referenceYear;
+
+        long privacy;
+        if ( living || ( ( hash >>> 17 ) % 10_000 ) < _privateRate * 10_000 ) {
+
+            privacy = PRIVATE_LEVELS[(int)( ( hash >>> 24 ) % PRIVATE_LEVELS.length )];
+
+        } else {
+
+            privacy = ( ( hash >>> 28 ) % 10 ) == 0 ? PUBLIC_LEVEL : OPEN_LEVEL;
+
+        }
+
+        String name = lastNameAtBirth + "-" + personId;
+
+        JSONObject profile = new JSONObject();
+        profile.put( "Id", personId );
+        profile.put( "Name", name );
+        profile.put( "FirstName", firstName );
+        profile.put( "MiddleName", middleName );
+        profile.put( "LastNameAtBirth", lastNameAtBirth );
+        profile.put( "LastNameCurrent", lastNameCurrent );
+        profile.put( "Nicknames", "" );
+        profile.put( "LastNameOther", "" );
+        profile.put( "RealName", firstName );
+        profile.put( "Prefix", "" );
+        profile.put( "Suffix", "" );
+        profile.put( "Gender", male ? "Male" : "Female" );
+        profile.put( "BirthDate", date( birthYear, hash >>> 32 ) );
+        profile.put( "DeathDate", living ? "0000-00-00" : date( deathYear, hash >>> 40 ) );
+        profile.put( "BirthLocation", LOCATIONS[(int)( ( hash >>> 48 ) % LOCATIONS.length )] );
+        profile.put( "DeathLocation", living ? "" : LOCATIONS[(int)( ( hash >>> 52 ) % LOCATIONS.length )] );
+        profile.put( "BirthDateDecade", ( birthYear / 10 ) * 10 + "s" );
+        profile.put( "DeathDateDecade", living ? "unknown" : ( deathYear / 10 ) * 10 + "s" );
+        profile.put( "Photo", ( hash >>> 56 ) % 10 == 0 ? name + ".jpg" : "" );
+        profile.put( "IsLiving", living ? 1L : 0L );
+        profile.put( "Privacy", privacy );
+        profile.put( "Mother", parentId( person, false ) );
+        profile.put( "Father", parentId( person, true ) );
+        profile.put( "Manager", 1 + Long.remainderUnsigned( hash * 31, _personCount ) );
+        profile.put( "Touched", LocalDateTime.ofEpochSecond( TOUCHED_EPOCH + ( _touched[person] & 0xffffffffL ), 0, ZoneOffset.UTC ).format( TOUCHED_FORMAT ) );
+        profile.put( "ShortName", firstName + " " + lastNameCurrent );
+        profile.put( "BirthNamePrivate", firstName + " " + lastNameAtBirth );
+        profile.put(
+                "LongNamePrivate",
+                firstName + ( middleName.isEmpty() ? "" : " " + middleName ) +
+                ( lastNameAtBirth.equals( lastNameCurrent ) ? "" : " (" + lastNameAtBirth + ")" ) + " " + lastNameCurrent
+        );
+        profile.put( "HasChildren", getChildIds( personId ).isEmpty() ? 0L : 1L );
+        profile.put( "NoChildren", 0L );
+
+        return profile;
+
+    }
+
+    @Override
+    @Nullable
+    public Long getPersonId( @NotNull String wikiTreeId ) {
+
+        int dash = wikiTreeId.lastIndexOf( '-' );
+        if ( dash <= 0 ) {
+
+            return null;
+
+        }
+
+        long personId;
+        try {
+
+            personId = Long.parseLong( wikiTreeId.substring( dash + 1 ) );
+
+        } catch ( NumberFormatException e ) {
+
+            return null;
+
+        }
+
+        int person = index( personId );
+
+        return person >= 0 && surname( _surname[person] ).equals( wikiTreeId.substring( 0, dash ) ) ? personId : null;
+
+    }
+
+    @Override
+    @NotNull
+    public List<Long> getChildIds( long personId ) {
+
+        int person = index( personId );
+        if ( person < 0 ) {
+
+            return Collections.emptyList();
+
+        }
+
+        List<Long> children = new ArrayList<>();
+        for ( int couple : new int[]{ _firstCouple[person], _secondCouple[person] } ) {
+
+            if ( couple >= 0 ) {
+
+                byte unknownIfThisParent = _coupleHusband[couple] == person ? FATHER_UNKNOWN : MOTHER_UNKNOWN;
+                for ( int child = _coupleFirstChild[couple]; child < _coupleFirstChild[couple] + _coupleChildCount[couple]; child += 1 ) {
+
+                    if ( ( _flags[child] & unknownIfThisParent ) == 0 ) {
+
+                        children.add( child + 1L );
+
+                    }
+
+                }
+
+            }
+
+        }
+
+        return children;
+
+    }
+
+    @Override
+    @NotNull
+    public List<Long> getSpouseIds( long personId ) {
+
+        int person = index( personId );
+        if ( person < 0 ) {
+
+            return Collections.emptyList();
+
+        }
+
+        List<Long> spouses = new ArrayList<>( 2 );
+        for ( int couple : new int[]{ _firstCouple[person], _secondCouple[person] } ) {
+
+            if ( couple >= 0 ) {
+
+                spouses.add( ( _coupleHusband[couple] == person ? _coupleWife[couple] : _coupleHusband[couple] ) + 1L );
+
+            }
+
+        }
+
+        return spouses;
+
+    }
+
+    @Override
+    @Nullable
+    public String getBio( long personId ) {
+
+        JSONObject profile = getPerson( personId );
+        if ( profile == null ) {
+
+            return null;
+
+        }
+
+        StringBuilder bio = new StringBuilder( "== Biography ==\n" );
+        bio.append( "'''" ).append( profile.get( "LongNamePrivate" ) ).append( "''' was born " ).append( profile.get( "BirthDate" ) )
+           .append( " in " ).append( profile.get( "BirthLocation" ) ).append( ".\n" );
+        if ( ( (Long)profile.get( "IsLiving" ) ) == 0 ) {
+
+            bio.append( "Died " ).append( profile.get( "DeathDate" ) ).append( " in " ).append( profile.get( "DeathLocation" ) ).append( ".\n" );
+
+        }
+
+        bio.append( "\n=== Sources ===\n<references />\n* Synthetic record " ).append( personId ).append( ".\n" );
+
+        return bio.toString();
+
+    }
+
+    @Override
+    @Nullable
+    public JSONObject getSpace( @NotNull String pageName ) {
+
+        return null;
+
+    }
+
+    @Override
+    @Nullable
+    public Account getAccount( @NotNull String emailAddress ) {
+
+        return _accounts.get( emailAddress );
+
+    }
+
+    private int index( long personId ) {
+
+        return personId >= 1 && personId <= _personCount ? (int)( personId - 1 ) : -1;
+
+    }
+
+    private boolean isMale( int person ) {
+
+        return ( _flags[person] & MALE ) != 0;
+
+    }
+
+    private long parentId( int person, boolean father ) {
+
+        int couple = _birthCouple[person];
+        if ( couple < 0 || ( _flags[person] & ( father ? FATHER_UNKNOWN : MOTHER_UNKNOWN ) ) != 0 ) {
+
+            return 0L;
+
+        }
+
+        return ( father ? _coupleHusband[couple] : _coupleWife[couple] ) + 1L;
+
+    }
+
+    /**
+     A person's year of death (which is after the reference year if they're still alive).
+     About one in seven die in childhood; the rest live to somewhere between 40 and 95.
+     */
+
+    private int deathYear( int person, long hash ) {
+
+        int age = ( hash >>> 5 ) % 7 == 0 ? (int)( ( hash >>> 13 ) % 6 ) : 40 + (int)( ( hash >>> 13 ) % 56 );
+
+        return _birthYear[person] + age;
+
+    }
+
+    private long hash( int person ) {
+
+        // SplitMix64's finalizer.
+
+        long z = _seed * 0x9E3779B97F4A7C15L + ( person + 1L ) * 0xBF58476D1CE4E5B9L;
+        z = ( z ^ ( z >>> 30 ) ) * 0xBF58476D1CE4E5B9L;
+        z = ( z ^ ( z >>> 27 ) ) * 0x94D049BB133111EBL;
+
+        return z ^ ( z >>> 31 );
+
+    }
+
+    private static String surname( int index ) {
+
+        return SURNAME_STARTS[index / SURNAME_ENDS.length] + SURNAME_ENDS[index % SURNAME_ENDS.length];
+
+    }
+
+    private static String date( int year, long bits ) {
+
+        int month = 1 + (int)( ( bits & 0xff ) % 12 );
+        int day = 1 + (int)( ( ( bits >>> 8 ) & 0xff ) % 28 );
+
+        return String.format( "%04d-%02d-%02d", year, month, day );
+
+    }
+
+    public String toString() {
+
+        return "SyntheticWikiTreeDataset( " + _personCount + " people in " + getGenerationCount() + " generations, " +
+               _coupleHusband.length + " couples, " + _cousinMarriages + " cousin marriages, " + _remarriages + " remarriages )";
+
+    }
+
+}
@@ -0,0 +1,1215 @@
+/*
+ * Copyright © 2017 Daniel Boulet
+ */
+
+package com.matilda.wikitree.api.server;
+
+import com.matilda.wikitree.api.json.WikiTreeJsonWriter;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ An in-process stand-in for the WikiTree API server.
+ <p/>It answers {@code getPerson}, {@code getProfile}, {@code getBio}, {@code getAncestors}, {@code getRelatives}, {@code getWatchlist} and {@code login}
+ requests sent as HTTP GETs or as form-encoded POSTs (which is what {@link com.matilda.wikitree.api.jsonclient.WikiTreeApiJsonSession} sends)
+ using the data in a {@link WikiTreeDataset}.
+ The responses have the same shape as the real server's so that the JSON and wrappers APIs can be tested and benchmarked without any network access:
+ <blockquote>
+ {@code WikiTreeApiStandInServer server = new WikiTreeApiStandInServer( dataset );}<br>
+ {@code server.start();}<br>
+ {@code WikiTreeApiWrappersSession session = new WikiTreeApiWrappersSession( server.getBaseUrlString() );}
+ </blockquote>
+ <p/>A simulated latency can be added to every request using {@link #setLatency(long, long)}.
+ A limit on URL lengths like the ones that real servers and proxies have can be set using {@link #setMaxUrlLength(int)}.
+ Benchmarks and load tests should call {@link #enableNoDelay()} before the first server is created.
+ Requests are handled by an unbounded pool of daemon threads so there is no server-side limit on how many requests can be in progress at once.
+ <p/>Anonymous requests for profiles whose {@code Privacy} is below {@link #PUBLIC_PRIVACY_LEVEL} get back a profile without
+ the fields in {@link #PRIVATE_FIELDS} (the real server has a far more elaborate set of rules).
+ */
+
+public class WikiTreeApiStandInServer {
+
+    /**
+     The path that the server answers requests on.
+     */
+
+    public static final String API_PATH = "/api.php";
+
+    /**
+     The lowest {@code Privacy} level whose profiles are entirely visible to anonymous requests.
+     */
+
+    public static final int PUBLIC_PRIVACY_LEVEL = 50;
+
+    /**
+     The fields which anonymous requests don't get to see in profiles with a {@code Privacy} level below {@link #PUBLIC_PRIVACY_LEVEL}.
+     */
+
+    public static final Set<String> PRIVATE_FIELDS = Collections.unmodifiableSet(
+            new HashSet<>( Arrays.asList( "BirthDate", "DeathDate", "BirthLocation", "DeathLocation", "Photo" ) )
+    );
+
+    /**
+     The name of the cookie that identifies a logged-in session.
+     */
+
+    public static final String SESSION_COOKIE_NAME = "wikidb_wtb_session";
+
+    private static final int DEFAULT_ANCESTORS_DEPTH = 5;
+
+    private static final int MAX_ANCESTORS_DEPTH = 10;
+
+    private static final int DEFAULT_WATCHLIST_LIMIT = 100;
+
+    private static final String[] RELATIVE_MAPS = { "Parents", "Children", "Spouses", "Siblings" };
+
+    private static final AtomicInteger s_serverCounter = new AtomicInteger();
+
+    /**
+     The system property which turns Nagle's algorithm off in the JDK's HTTP server.
+     */
+
+    public static final String NODELAY_PROPERTY = "sun.net.httpserver.nodelay";
+
+    private final WikiTreeDataset _dataset;
+
+    private final Map<String, WikiTreeDataset.Account> _loggedInSessions = new ConcurrentHashMap<>();
+
+    private final SecureRandom _sessionIdGenerator = new SecureRandom();
+
+    private final LongAdder _requestCount = new LongAdder();
+
+    private final LongAdder _loginCount = new LongAdder();
+
+    private volatile long _minLatencyNanos = 0;
+
+    private volatile long _maxLatencyNanos = 0;
+
+    private volatile int _maxUrlLength = Integer.MAX_VALUE;
+
+    private volatile boolean _privateBiosRefused = false;
+
+    private volatile boolean _watchlistCountSent = true;
+
+    private HttpServer _server;
+
+    private ExecutorService _executor;
+
+
+    /**
+     Turn Nagle's algorithm off in the JDK's HTTP server (unless somebody has already set {@value #NODELAY_PROPERTY} either way).
+     <p/>The JDK's server sends a response's headers and body in separate writes. With Nagle's algorithm on, the body
+     then waits for the client's delayed ACK of the headers and every request takes about 40ms longer than it should.
+     That matters when this server is used for benchmarks or load tests.
+     <p/>This is opt-in because the property is JVM-wide: it affects every {@code com.sun.net.httpserver} server in the process,
+     not just this one. The JDK only reads it once (the first time that any such server is created) so call this before that happens.
+
+     @return {@code true} if the property was set by this call; {@code false} if it was already set.
+     */
+
+    public static boolean enableNoDelay() {
+
+        if ( System.getProperty( NODELAY_PROPERTY ) == null ) {
+
+            System.setProperty( NODELAY_PROPERTY, "true" );
+
+            return true;
+
+        }
+
+        return false;
+
+    }
+
+    /**
+     Create a server which serves the contents of a dataset.
+     <p/>The server does not accept requests until it is started.
+
+     @param dataset the dataset.
+     */
+
+    public WikiTreeApiStandInServer( @NotNull WikiTreeDataset dataset ) {
+
+        super();
+
+        _dataset = dataset;
+
+    }
+
+    /**
+     Start the server on an ephemeral port on the loopback interface.
+
+     @throws IOException if the server's socket cannot be created.
+     */
+
+    public void start()
+            throws IOException {
+
+        start( 0 );
+
+    }
+
+    /**
+     Start the server on the loopback interface.
+
+     @param port the port to listen on ({@code 0} means any free port).
+     @throws IOException           if the server's socket cannot be created.
+     @throws IllegalStateException if the server is already running.
+     */
+
+    public synchronized void start( int port )
+            throws IOException {
+
+        if ( _server != null ) {
+
+            throw new IllegalStateException( "WikiTreeApiStandInServer.start:  already running on port " + getPort() );
+
+        }
+
+        int serverNumber = s_serverCounter.incrementAndGet();
+        AtomicInteger threadCounter = new AtomicInteger();
+        ExecutorService executor = Executors.newCachedThreadPool(
+                runnable -> {
+
+                    Thread thread = new Thread( runnable, "wikitree-stand-in-" + serverNumber + "-" + threadCounter.incrementAndGet() );
+                    thread.setDaemon( true );
+
+                    return thread;
+
+                }
+        );
+
+        HttpServer server = HttpServer.create( new InetSocketAddress( InetAddress.getLoopbackAddress(), port ), 0 );
+        server.createContext( API_PATH, this::handle );
+        server.setExecutor( executor );
+        server.start();
+
+        _executor = executor;
+        _server = server;
+
+    }
+
+    /**
+     Stop the server (requests in progress are abandoned). Does nothing if the server isn't running.
+     */
+
+    public synchronized void stop() {
+
+        if ( _server != null ) {
+
+            _server.stop( 0 );
+            _executor.shutdownNow();
+
+            _server = null;
+            _executor = null;
+            _loggedInSessions.clear();
+
+        }
+
+    }
+
+    public synchronized boolean isRunning() {
+
+        return _server != null;
+
+    }
+
+    /**
+     Get the port that the server is listening on.
+
+     @throws IllegalStateException if the server isn't running.
+     */
+
+    public synchronized int getPort() {
+
+        if ( _server == null ) {
+
+            throw new IllegalStateException( "WikiTreeApiStandInServer.getPort:  server is not running" );
+
+        }
+
+        return _server.getAddress().getPort();
+
+    }
+
+    /**
+     Get the base server URL to give to a {@link com.matilda.wikitree.api.jsonclient.WikiTreeApiJsonSession} or
+     {@link com.matilda.wikitree.api.wrappers.WikiTreeApiWrappersSession} which is to talk to this server.
+
+     @throws IllegalStateException if the server isn't running.
+     */
+
+    @NotNull
+    public String getBaseUrlString() {
+
+        return "http://localhost:" + getPort() + API_PATH;
+
+    }
+
+    @NotNull
+    public WikiTreeDataset getDataset() {
+
+        return _dataset;
+
+    }
+
+    /**
+     Make every request take a while.
+     <p/>Each request is delayed by a random amount of time (chosen uniformly) between the two limits before it is answered.
+     Both limits being {@code 0} (the default) means no delay.
+
+     @param minMillis the shortest delay in milliseconds.
+     @param maxMillis the longest delay in milliseconds.
+     @throws IllegalArgumentException if either limit is negative or {@code minMillis} is greater than {@code maxMillis}.
+     */
+
+    public void setLatency( long minMillis, long maxMillis ) {
+
+        if ( minMillis < 0 || minMillis > maxMillis ) {
+
+            throw new IllegalArgumentException(
+                    "WikiTreeApiStandInServer.setLatency:  need 0 <= minMillis <= maxMillis (got " + minMillis + " and " + maxMillis + ")"
+            );
+
+        }
+
+        synchronized ( this ) {
+
+            _minLatencyNanos = TimeUnit.MILLISECONDS.toNanos( minMillis );
+            _maxLatencyNanos = TimeUnit.MILLISECONDS.toNanos( maxMillis );
+
+        }
+
+    }
+
+    /**
+     Refuse requests whose URLs are too long with a {@code 414 URI Too Long} response.
+
+     @param maxUrlLength the longest URL (counting its path and query string) that is accepted ({@link Integer#MAX_VALUE}, the default, for no limit).
+     @return the previous limit.
+     */
+
+    public int setMaxUrlLength( int maxUrlLength ) {
+
+        int rval = _maxUrlLength;
+        _maxUrlLength = maxUrlLength;
+
+        return rval;
+
+    }
+
+    /**
+     Refuse {@code getBio} requests for private profiles the way that the real server does.
+     <p/>When this is on, a {@code getBio} request for a profile whose {@code Privacy} is below {@link #PUBLIC_PRIVACY_LEVEL} gets a
+     {@code "Permission denied."} status unless it comes from an account which has the profile on its watchlist
+     (this server's stand-in for the real server's trusted lists). Logged-in accounts are refused too, which is what makes this
+     different from an expired login. It is off by default.
+
+     @param privateBiosRefused {@code true} to refuse them.
+     @return the previous setting.
+     */
+
+    public boolean setPrivateBiosRefused( boolean privateBiosRefused ) {
+
+        boolean rval = _privateBiosRefused;
+        _privateBiosRefused = privateBiosRefused;
+
+        return rval;
+
+    }
+
+    /**
+     Include a {@code watchlistCount} in {@code getWatchlist} responses.
+     <p/>The real server does but the API documentation doesn't promise it, so turning this off checks that a client
+     can page through a watchlist without it. It is on by default.
+
+     @param watchlistCountSent {@code true} to include it.
+     @return the previous setting.
+     */
+
+    public boolean setWatchlistCountSent( boolean watchlistCountSent ) {
+
+        boolean rval = _watchlistCountSent;
+        _watchlistCountSent = watchlistCountSent;
+
+        return rval;
+
+    }
+
+    /**
+     Get how many requests this server has answered (or tried to answer).
+     */
+
+    public long getRequestCount() {
+
+        return _requestCount.sum();
+
+    }
+
+    /**
+     Get how many successful logins this server has handled.
+     */
+
+    public long getLoginCount() {
+
+        return _loginCount.sum();
+
+    }
+
+    /**
+     Forget about every login (as if they had all timed out).
+     <p/>Requests which carry the forgotten logins' cookies are treated as anonymous requests from then on.
+     */
+
+    public void expireLogins() {
+
+        _loggedInSessions.clear();
+
+    }
+
+    private void handle( HttpExchange exchange )
+            throws IOException {
+
+        try {
+
+            _requestCount.increment();
+
+            simulateLatency();
+
+            if ( exchange.getRequestURI().toString().length() > _maxUrlLength ) {
+
+                send( exchange, 414, WikiTreeJsonWriter.toJsonString( status( "URI Too Long" ) ) );
+
+                return;
+
+            }
+
+            Map<String, String> params = parseQuery( exchange.getRequestURI().getRawQuery() );
+            if ( "POST".equals( exchange.getRequestMethod() ) ) {
+
+                params.putAll( parseQuery( new String( readFully( exchange.getRequestBody() ), StandardCharsets.UTF_8 ) ) );
+
+            }
+
+            WikiTreeDataset.Account account = getLoggedInAccount( exchange );
+
+            String action = params.get( "action" );
+            Object response;
+            if ( "getPerson".equals( action ) ) {
+
+                response = getPerson( params, account );
+
+            } else if ( "getProfile".equals( action ) ) {
+
+                response = getProfile( params, account );
+
+            } else if ( "getBio".equals( action ) ) {
+
+                response = getBio( params, account );
+
+            } else if ( "getAncestors".equals( action ) ) {
+
+                response = getAncestors( params, account );
+
+            } else if ( "getRelatives".equals( action ) ) {
+
+                response = getRelatives( params, account );
+
+            } else if ( "getWatchlist".equals( action ) ) {
+
+                response = getWatchlist( params, account );
+
+            } else if ( "login".equals( action ) ) {
+
+                response = login( params, exchange );
+
+            } else {
+
+                response = status( "Illegal action." );
+
+            }
+
+            send( exchange, 200, WikiTreeJsonWriter.toJsonString( response ) );
+
+        } catch ( InterruptedException e ) {
+
+            // We're being stopped.
+
+            Thread.currentThread().interrupt();
+
+        } catch ( RuntimeException e ) {
+
+            send( exchange, 500, WikiTreeJsonWriter.toJsonString( status( "Internal error:  " + e ) ) );
+
+        } finally {
+
+            exchange.close();
+
+        }
+
+    }
+
+    private void simulateLatency()
+            throws InterruptedException {
+
+        long minNanos;
+        long maxNanos;
+        synchronized ( this ) {
+
+            minNanos = _minLatencyNanos;
+            maxNanos = _maxLatencyNanos;
+
+        }
+
+        if ( maxNanos > 0 ) {
+
+            long delay = minNanos == maxNanos ? minNanos : ThreadLocalRandom.current().nextLong( minNanos, maxNanos + 1 );
+            TimeUnit.NANOSECONDS.sleep( delay );
+
+        }
+
+    }
+
+    private static byte[] readFully( InputStream is )
+            throws IOException {
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int count;
+        while ( ( count = is.read( buffer ) ) >= 0 ) {
+
+            bytes.write( buffer, 0, count );
+
+        }
+
+        return bytes.toByteArray();
+
+    }
+
+    private static void send( HttpExchange exchange, int code, String body )
+            throws IOException {
+
+        byte[] bytes = body.getBytes( StandardCharsets.UTF_8 );
+        exchange.getResponseHeaders().set( "Content-Type", "application/json; charset=utf-8" );
+        exchange.sendResponseHeaders( code, bytes.length );
+        try ( OutputStream os = exchange.getResponseBody() ) {
+
+            os.write( bytes );
+
+        }
+
+    }
+
+    @NotNull
+    static Map<String, String> parseQuery( @Nullable String rawQuery ) {
+
+        Map<String, String> params = new HashMap<>();
+        if ( rawQuery == null || rawQuery.isEmpty() ) {
+
+            return params;
+
+        }
+
+        try {
+
+            for ( String param : rawQuery.split( "&" ) ) {
+
+                int equals = param.indexOf( '=' );
+                if ( equals < 0 ) {
+
+                    params.put( URLDecoder.decode( param, "UTF-8" ), "" );
+
+                } else {
+
+                    params.put( URLDecoder.decode( param.substring( 0, equals ), "UTF-8" ), URLDecoder.decode( param.substring( equals + 1 ), "UTF-8" ) );
+
+                }
+
+            }
+
+        } catch ( UnsupportedEncodingException e ) {
+
+            throw new IllegalStateException( "WikiTreeApiStandInServer.parseQuery:  no UTF-8?", e );
+
+        }
+
+        return params;
+
+    }
+
+    @Nullable
+    private WikiTreeDataset.Account getLoggedInAccount( HttpExchange exchange ) {
+
+        List<String> cookieHeaders = exchange.getRequestHeaders().get( "Cookie" );
+        if ( cookieHeaders != null ) {
+
+            for ( String cookieHeader : cookieHeaders ) {
+
+                for ( String cookie : cookieHeader.split( ";" ) ) {
+
+                    String[] nameAndValue = cookie.trim().split( "=", 2 );
+                    if ( nameAndValue.length == 2 && SESSION_COOKIE_NAME.equals( nameAndValue[0] ) ) {
+
+                        WikiTreeDataset.Account account = _loggedInSessions.get( nameAndValue[1] );
+                        if ( account != null ) {
+
+                            return account;
+
+                        }
+
+                    }
+
+                }
+
+            }
+
+        }
+
+        return null;
+
+    }
+
+    @SuppressWarnings("unchecked")
+    private JSONObject login( Map<String, String> params, HttpExchange exchange ) {
+
+        String emailAddress = params.get( "email" );
+        String password = params.get( "password" );
+
+        WikiTreeDataset.Account account = emailAddress == null ? null : _dataset.getAccount( emailAddress );
+
+        JSONObject result = new JSONObject();
+        if ( account == null ) {
+
+            result.put( "result", "NotExists" );
+
+        } else if ( !account.getPassword().equals( password ) ) {
+
+            result.put( "result", "WrongPass" );
+
+        } else {
+
+            byte[] idBytes = new byte[16];
+            _sessionIdGenerator.nextBytes( idBytes );
+            StringBuilder sessionId = new StringBuilder();
+            for ( byte b : idBytes ) {
+
+                sessionId.append( String.format( "%02x", b & 0xff ) );
+
+            }
+
+            _loggedInSessions.put( sessionId.toString(), account );
+            _loginCount.increment();
+            exchange.getResponseHeaders().add( "Set-Cookie", SESSION_COOKIE_NAME + "=" + sessionId + "; path=/; HttpOnly" );
+
+            // Like the real server, clear out a cookie left over from some earlier visit while we're at it.
+
+            exchange.getResponseHeaders().add( "Set-Cookie", "wikidb_wtb_Token=deleted; expires=Thu, 01-Jan-1970 00:00:01 GMT; path=/" );
+
+            result.put( "result", "Success" );
+            result.put( "userid", account.getUserId() );
+            result.put( "username", account.getUserName() );
+            result.put( "token", sessionId.toString() );
+
+        }
+
+        JSONObject response = new JSONObject();
+        response.put( "login", result );
+
+        return response;
+
+    }
+
+    @SuppressWarnings("unchecked")
+    private JSONArray getPerson( Map<String, String> params, @Nullable WikiTreeDataset.Account account ) {
+
+        String key = params.get( "key" );
+        Long personId = lookup( key );
+        JSONObject profile = personId == null ? null : _dataset.getPerson( personId );
+
+        JSONObject result = new JSONObject();
+        result.put( isPersonId( key ) ? "user_id" : "user_name", key );
+        if ( profile == null ) {
+
+            result.put( "status", "Illegal WikiTree ID" );
+
+        } else {
+
+            Set<String> fields = parseFields( params.get( "fields" ) );
+            JSONObject person = visibleProfile( profile, fields, account );
+            addRelativeMaps( person, personId, fields, account, new boolean[]{ true, true, true, true }, false );
+
+            result.put( "page_name", profile.get( "Name" ) );
+            result.put( "person", person );
+            result.put( "status", 0L );
+
+        }
+
+        return single( result );
+
+    }
+
+    @SuppressWarnings("unchecked")
+    private JSONArray getProfile( Map<String, String> params, @Nullable WikiTreeDataset.Account account ) {
+
+        String key = params.get( "key" );
+
+        JSONObject result = new JSONObject();
+        JSONObject space = key == null ? null : _dataset.getSpace( key );
+        if ( space != null ) {
+
+            result.put( "page_name", key );
+            result.put( "profile", new JSONObject( space ) );
+            result.put( "status", 0L );
+
+            return single( result );
+
+        }
+
+        Long personId = lookup( key );
+        JSONObject profile = personId == null ? null : _dataset.getPerson( personId );
+        if ( profile == null ) {
+
+            result.put( "page_name", key );
+            result.put( "status", "Illegal WikiTree ID" );
+
+        } else {
+
+            JSONObject visible = visibleProfile( profile, parseFields( params.get( "fields" ) ), account );
+            visible.put( "IsPerson", 1L );
+            if ( !visible.containsKey( "PageId" ) ) {
+
+                visible.put( "PageId", String.valueOf( personId ) );
+
+            }
+
+            result.put( "page_name", profile.get( "Name" ) );
+            result.put( "profile", visible );
+            result.put( "status", 0L );
+
+        }
+
+        return single( result );
+
+    }
+
+    @SuppressWarnings("unchecked")
+    private JSONArray getBio( Map<String, String> params, @Nullable WikiTreeDataset.Account account ) {
+
+        String key = params.get( "key" );
+        Long personId = lookup( key );
+        JSONObject profile = personId == null ? null : _dataset.getPerson( personId );
+
+        JSONObject result = new JSONObject();
+        if ( profile == null ) {
+
+            result.put( isPersonId( key ) ? "user_id" : "page_name", key );
+            result.put( "status", "Illegal WikiTree ID" );
+
+        } else if (
+                _privateBiosRefused &&
+                getLong( profile, "Privacy" ) < PUBLIC_PRIVACY_LEVEL &&
+                ( account == null || !account.getWatchlist().contains( personId ) )
+                ) {
+
+            result.put( "page_name", profile.get( "Name" ) );
+            result.put( "status", "Permission denied." );
+
+        } else {
+
+            result.put( "page_name", profile.get( "Name" ) );
+            result.put( "user_id", String.valueOf( personId ) );
+            result.put( "status", 0L );
+            String bio = _dataset.getBio( personId );
+            result.put( "bio", bio == null ? "" : bio );
+
+        }
+
+        return single( result );
+
+    }
+
+    @SuppressWarnings("unchecked")
+    private JSONArray getAncestors( Map<String, String> params, @Nullable WikiTreeDataset.Account account ) {
+
+        String key = params.get( "key" );
+        Long personId = lookup( key );
+
+        JSONObject result = new JSONObject();
+        result.put( isPersonId( key ) ? "user_id" : "user_name", key );
+        if ( personId == null || _dataset.getPerson( personId ) == null ) {
+
+            result.put( "status", "Illegal WikiTree ID" );
+
+            return single( result );
+
+        }
+
+        int depth = clamp( parseInt( params.get( "depth" ), DEFAULT_ANCESTORS_DEPTH ), 1, MAX_ANCESTORS_DEPTH );
+        Set<String> fields = parseFields( params.get( "fields" ) );
+
+        // Breadth first so that the base person comes first and each generation comes before the previous one.
+        // People who appear more than once in the tree (pedigree collapse) are only listed once.
+
+        Set<Long> seen = new LinkedHashSet<>();
+        seen.add( personId );
+        List<Long> generation = Collections.singletonList( personId );
+        for ( int level = 0; level < depth && !generation.isEmpty(); level += 1 ) {
+
+            List<Long> parents = new ArrayList<>();
+            for ( long id : generation ) {
+
+                JSONObject profile = _dataset.getPerson( id );
+                for ( String parent : new String[]{ "Father", "Mother" } ) {
+
+                    long parentId = getLong( profile, parent );
+                    if ( parentId != 0 && _dataset.getPerson( parentId ) != null && seen.add( parentId ) ) {
+
+                        parents.add( parentId );
+
+                    }
+
+                }
+
+            }
+
+            generation = parents;
+
+        }
+
+        JSONArray ancestors = new JSONArray();
+        for ( long id : seen ) {
+
+            ancestors.add( visibleProfile( _dataset.getPerson( id ), fields, account ) );
+
+        }
+
+        result.put( "ancestors", ancestors );
+        result.put( "status", 0L );
+
+        return single( result );
+
+    }
+
+    @SuppressWarnings("unchecked")
+    private JSONArray getRelatives( Map<String, String> params, @Nullable WikiTreeDataset.Account account ) {
+
+        String keys = params.get( "keys" );
+        Set<String> fields = parseFields( params.get( "fields" ) );
+        boolean[] wanted = {
+                "1".equals( params.get( "getParents" ) ),
+                "1".equals( params.get( "getChildren" ) ),
+                "1".equals( params.get( "getSpouses" ) ),
+                "1".equals( params.get( "getSiblings" ) )
+        };
+
+        JSONArray items = new JSONArray();
+        if ( keys != null ) {
+
+            for ( String rawKey : keys.split( "," ) ) {
+
+                String key = rawKey.trim();
+                Long personId = lookup( key );
+                JSONObject profile = personId == null ? null : _dataset.getPerson( personId );
+                if ( profile != null ) {
+
+                    JSONObject person = visibleProfile( profile, fields, account );
+                    addRelativeMaps( person, personId, null, account, wanted, true );
+
+                    JSONObject item = new JSONObject();
+                    item.put( "key", key );
+                    item.put( isPersonId( key ) ? "user_id" : "user_name", key );
+                    item.put( "person", person );
+                    items.add( item );
+
+                }
+
+            }
+
+        }
+
+        JSONObject result = new JSONObject();
+        result.put( "items", items );
+        result.put( "status", 0L );
+
+        return single( result );
+
+    }
+
+    @SuppressWarnings("unchecked")
+    private JSONArray getWatchlist( Map<String, String> params, @Nullable WikiTreeDataset.Account account ) {
+
+        JSONObject result = new JSONObject();
+        if ( account == null ) {
+
+            result.put( "status", "Permission denied." );
+
+            return single( result );
+
+        }
+
+        boolean onlyLiving = "1".equals( params.get( "onlyLiving" ) );
+        boolean excludeLiving = "1".equals( params.get( "excludeLiving" ) );
+        boolean getPerson = !"0".equals( params.get( "getPerson" ) );
+
+        List<JSONObject> watched = new ArrayList<>();
+        if ( getPerson ) {
+
+            for ( long id : account.getWatchlist() ) {
+
+                JSONObject profile = _dataset.getPerson( id );
+                if ( profile != null ) {
+
+                    boolean living = getLong( profile, "IsLiving" ) != 0;
+                    if ( !( onlyLiving && !living ) && !( excludeLiving && living ) ) {
+
+                        watched.add( profile );
+
+                    }
+
+                }
+
+            }
+
+        }
+
+        String order = params.get( "order" );
+        if ( "user_name".equals( order ) ) {
+
+            watched.sort( Comparator.comparing( profile -> String.valueOf( profile.get( "Name" ) ) ) );
+
+        } else if ( "page_touched".equals( order ) ) {
+
+            watched.sort( Comparator.comparing( profile -> String.valueOf( profile.get( "Touched" ) ) ) );
+
+        } else {
+
+            watched.sort( Comparator.comparingLong( profile -> getLong( profile, "Id" ) ) );
+
+        }
+
+        int offset = Math.max( 0, parseInt( params.get( "offset" ), 0 ) );
+        int limit = Math.max( 0, parseInt( params.get( "limit" ), DEFAULT_WATCHLIST_LIMIT ) );
+        Set<String> fields = parseFields( params.get( "fields" ) );
+
+        JSONArray watchlist = new JSONArray();
+        for ( int i = offset; i < watched.size() && i < (long)offset + limit; i += 1 ) {
+
+            watchlist.add( visibleProfile( watched.get( i ), fields, account ) );
+
+        }
+
+        result.put( "watchlist", watchlist );
+        if ( _watchlistCountSent ) {
+
+            result.put( "watchlistCount", (long)watched.size() );
+
+        }
+
+        result.put( "status", 0L );
+
+        return single( result );
+
+    }
+
+    /**
+     Add the {@code Parents}, {@code Children}, {@code Spouses} and {@code Siblings} maps to a person's profile.
+
+     <p/>{@code getPerson} responses have an empty array for a kind of relative that the person doesn't have
+     whereas {@code getRelatives} responses leave the map out entirely.
+
+     @param person   the profile to add the maps to.
+     @param personId the person's Person.Id.
+     @param fields   the requested fields (a map which isn't in here is left out); {@code null} means all of them.
+     @param account  who's asking.
+     @param wanted   which of the {@code Parents}, {@code Children}, {@code Spouses} and {@code Siblings} maps are wanted (in that order).
+     @param omitEmpty {@code true} if empty maps are to be left out.
+     */
+
+    @SuppressWarnings("unchecked")
+    private void addRelativeMaps(
+            JSONObject person,
+            long personId,
+            @Nullable Set<String> fields,
+            @Nullable WikiTreeDataset.Account account,
+            boolean[] wanted,
+            boolean omitEmpty
+    ) {
+
+        JSONObject profile = _dataset.getPerson( personId );
+        long fatherId = getLong( profile, "Father" );
+        long motherId = getLong( profile, "Mother" );
+
+        for ( int i = 0; i < RELATIVE_MAPS.length; i += 1 ) {
+
+            String mapName = RELATIVE_MAPS[i];
+            if ( !wanted[i] || fields != null && !fields.contains( mapName ) ) {
+
+                continue;
+
+            }
+
+            Set<Long> relativeIds = new LinkedHashSet<>();
+            if ( "Parents".equals( mapName ) ) {
+
+                relativeIds.add( fatherId );
+                relativeIds.add( motherId );
+
+            } else if ( "Children".equals( mapName ) ) {
+
+                relativeIds.addAll( _dataset.getChildIds( personId ) );
+
+            } else if ( "Spouses".equals( mapName ) ) {
+
+                relativeIds.addAll( _dataset.getSpouseIds( personId ) );
+
+            } else {
+
+                for ( long parentId : new long[]{ fatherId, motherId } ) {
+
+                    if ( parentId != 0 ) {
+
+                        relativeIds.addAll( _dataset.getChildIds( parentId ) );
+
+                    }
+
+                }
+
+                relativeIds.remove( personId );
+
+            }
+
+            Map<String, JSONObject> relatives = new LinkedHashMap<>();
+            for ( long relativeId : relativeIds ) {
+
+                JSONObject relative = relativeId == 0 ? null : _dataset.getPerson( relativeId );
+                if ( relative != null ) {
+
+                    relatives.put( String.valueOf( relativeId ), visibleProfile( relative, null, account ) );
+
+                }
+
+            }
+
+            if ( relatives.isEmpty() ) {
+
+                if ( !omitEmpty ) {
+
+                    person.put( mapName, new JSONArray() );
+
+                }
+
+            } else {
+
+                person.put( mapName, new JSONObject( relatives ) );
+
+            }
+
+        }
+
+    }
+
+    /**
+     Get a copy of a profile with only the requested fields that the requester is allowed to see.
+     */
+
+    @SuppressWarnings("unchecked")
+    private static JSONObject visibleProfile( JSONObject profile, @Nullable Set<String> fields, @Nullable WikiTreeDataset.Account account ) {
+
+        boolean hidePrivate = account == null && getLong( profile, "Privacy" ) < PUBLIC_PRIVACY_LEVEL;
+
+        JSONObject visible = new JSONObject();
+        for ( Object entryObject : profile.entrySet() ) {
+
+            Map.Entry<String, Object> entry = (Map.Entry<String, Object>)entryObject;
+            String fieldName = entry.getKey();
+            if ( ( fields == null || fields.contains( fieldName ) ) && !( hidePrivate && PRIVATE_FIELDS.contains( fieldName ) ) ) {
+
+                visible.put( fieldName, entry.getValue() );
+
+            }
+
+        }
+
+        return visible;
+
+    }
+
+    /**
+     Turn a {@code fields} parameter into a set of field names.
+
+     @return the names with any {@code Derived.} prefixes removed or {@code null} if all fields were requested.
+     */
+
+    @Nullable
+    static Set<String> parseFields( @Nullable String fieldsParameter ) {
+
+        if ( fieldsParameter == null || fieldsParameter.trim().isEmpty() ) {
+
+            return null;
+
+        }
+
+        Set<String> fields = new HashSet<>();
+        for ( String rawField : fieldsParameter.split( "," ) ) {
+
+            String field = rawField.trim();
+            if ( "*".equals( field ) ) {
+
+                return null;
+
+            }
+
+            fields.add( field.startsWith( "Derived." ) ? field.substring( "Derived.".length() ) : field );
+
+        }
+
+        return fields;
+
+    }
+
+    @Nullable
+    private Long lookup( @Nullable String key ) {
+
+        if ( key == null || key.isEmpty() ) {
+
+            return null;
+
+        } else if ( isPersonId( key ) ) {
+
+            return Long.parseLong( key );
+
+        } else {
+
+            return _dataset.getPersonId( key );
+
+        }
+
+    }
+
+    private static boolean isPersonId( @Nullable String key ) {
+
+        if ( key == null || key.isEmpty() || key.length() > 18 ) {
+
+            return false;
+
+        }
+
+        for ( int i = 0; i < key.length(); i += 1 ) {
+
+            if ( !Character.isDigit( key.charAt( i ) ) ) {
+
+                return false;
+
+            }
+
+        }
+
+        return true;
+
+    }
+
+    private static int parseInt( @Nullable String value, int defaultValue ) {
+
+        if ( value == null ) {
+
+            return defaultValue;
+
+        }
+
+        try {
+
+            return Integer.parseInt( value.trim() );
+
+        } catch ( NumberFormatException e ) {
+
+            return defaultValue;
+
+        }
+
+    }
+
+    private static int clamp( int value, int min, int max ) {
+
+        return Math.max( min, Math.min( max, value ) );
+
+    }
+
+    private static long getLong( @Nullable JSONObject profile, String fieldName ) {
+
+        Object value = profile == null ? null : profile.get( fieldName );
+        if ( value instanceof Number ) {
+
+            return ( (Number)value ).longValue();
+
+        } else if ( value instanceof String && isPersonId( (String)value ) ) {
+
+            return Long.parseLong( (String)value );
+
+        } else {
+
+            return 0;
+
+        }
+
+    }
+
+    @SuppressWarnings("unchecked")
+    private static JSONObject status( String status ) {
+
+        JSONObject result = new JSONObject();
+        result.put( "status", status );
+
+        return result;
+
+    }
+
+    @SuppressWarnings("unchecked")
+    private static JSONArray single( JSONObject result ) {
+
+        JSONArray response = new JSONArray();
+        response.add( result );
+
+        return response;
+
+    }
+
+    public String toString() {
+
+        return "WikiTreeApiStandInServer( " + ( isRunning() ? getBaseUrlString() : "not running" ) + ", " + _dataset + " )";
+
+    }
+
+}
@@ -0,0 +1,168 @@
+/*
+ * Copyright © 2017 Daniel Boulet
+ */
+
+package com.matilda.wikitree.api.server;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.json.simple.JSONObject;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ The genealogical data that a {@link WikiTreeApiStandInServer} serves.
+ <p/>Person profiles are {@link JSONObject}s with the same fields as the {@code person} object in a {@code getPerson} response for
+ {@code fields=*} but without the {@code Parents}, {@code Children}, {@code Spouses} and {@code Siblings} maps
+ (the server builds those from {@link #getChildIds(long)}, {@link #getSpouseIds(long)} and each profile's {@code Father} and {@code Mother}).
+ <p/>Implementations must be safe to use from many threads at once. Nothing that they return is ever modified by the server.
+ See {@link InMemoryWikiTreeDataset} for the obvious implementation.
+ */
+
+public interface WikiTreeDataset {
+
+    /**
+     A WikiTree user account (for {@code login} and {@code getWatchlist} requests).
+     */
+
+    final class Account {
+
+        private final String _emailAddress;
+
+        private final String _password;
+
+        private final long _userId;
+
+        private final String _userName;
+
+        private final List<Long> _watchlist;
+
+        /**
+         Describe an account.
+
+         @param emailAddress the email address used to log in.
+         @param password     the password.
+         @param userId       the Person.Id of the user's own profile.
+         @param userName     the user's WikiTree ID.
+         @param watchlist    the Person.Ids of the profiles on the user's watchlist.
+         */
+
+        public Account( @NotNull String emailAddress, @NotNull String password, long userId, @NotNull String userName, @NotNull List<Long> watchlist ) {
+
+            super();
+
+            _emailAddress = emailAddress;
+            _password = password;
+            _userId = userId;
+            _userName = userName;
+            _watchlist = Collections.unmodifiableList( watchlist );
+
+        }
+
+        @NotNull
+        public String getEmailAddress() {
+
+            return _emailAddress;
+
+        }
+
+        @NotNull
+        public String getPassword() {
+
+            return _password;
+
+        }
+
+        public long getUserId() {
+
+            return _userId;
+
+        }
+
+        @NotNull
+        public String getUserName() {
+
+            return _userName;
+
+        }
+
+        @NotNull
+        public List<Long> getWatchlist() {
+
+            return _watchlist;
+
+        }
+
+        public String toString() {
+
+            return "Account( " + _userName + " (" + _userId + "), watchlist has " + _watchlist.size() + " profiles )";
+
+        }
+
+    }
+
+    /**
+     Get a person profile.
+
+     @param personId the person's Person.Id.
+     @return the profile or {@code null} if there is no such person.
+     */
+
+    @Nullable
+    JSONObject getPerson( long personId );
+
+    /**
+     Find a person by their WikiTree ID.
+
+     @param wikiTreeId the WikiTree ID (for example, {@code "Churchill-4"}).
+     @return the person's Person.Id or {@code null} if there is no such person.
+     */
+
+    @Nullable
+    Long getPersonId( @NotNull String wikiTreeId );
+
+    /**
+     Get the Person.Ids of someone's children.
+     */
+
+    @NotNull
+    List<Long> getChildIds( long personId );
+
+    /**
+     Get the Person.Ids of someone's spouses.
+     */
+
+    @NotNull
+    List<Long> getSpouseIds( long personId );
+
+    /**
+     Get a person's biography.
+
+     @return the biography (in WikiTree markup) or {@code null} if the person doesn't have one.
+     */
+
+    @Nullable
+    String getBio( long personId );
+
+    /**
+     Get a free-space profile.
+
+     @param pageName the page's name (for example, {@code "Space:Allied_POW_camps"}).
+     @return the profile or {@code null} if there is no such page.
+     */
+
+    @Nullable
+    JSONObject getSpace( @NotNull String pageName );
+
+    /**
+     Get an account.
+
+     @param emailAddress the email address used to log in to the account.
+     @return the account or {@code null} if there is no such account.
+     */
+
+    @Nullable
+    Account getAccount( @NotNull String emailAddress );
+
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright © 2017 Daniel Boulet
+ */
+
+package com.matilda.wikitree.api.sync;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.json.simple.JSONObject;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ A {@link WikiTreeProfileStore} which keeps everything in a map.
+ */
+
+public class InMemoryWikiTreeProfileStore implements WikiTreeProfileStore {
+
+    private final Map<Long, JSONObject> _profiles = new ConcurrentHashMap<>();
+
+    @Override
+    @Nullable
+    public String getTouched( long personId ) {
+
+        JSONObject profile = _profiles.get( personId );
+        Object touched = profile == null ? null : profile.get( "Touched" );
+
+        return touched instanceof String ? (String)touched : null;
+
+    }
+
+    @Override
+    public void putProfile( long personId, @NotNull JSONObject profile ) {
+
+        _profiles.put( personId, profile );
+
+    }
+
+    /**
+     Get the stored copy of a profile.
+
+     @param personId the profile's Person.Id.
+     @return the profile or {@code null} if there is no stored copy of it.
+     */
+
+    @Nullable
+    public JSONObject getProfile( long personId ) {
+
+        return _profiles.get( personId );
+
+    }
+
+    public int size() {
+
+        return _profiles.size();
+
+    }
+
+    public String toString() {
+
+        return "InMemoryWikiTreeProfileStore( " + _profiles.size() + " profiles )";
+
+    }
+
+}
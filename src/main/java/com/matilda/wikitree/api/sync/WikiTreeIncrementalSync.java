@@ -0,0 +1,519 @@
+/*
+ * Copyright © 2017 Daniel Boulet
+ */
+
+package com.matilda.wikitree.api.sync;
+
+import com.matilda.wikitree.api.exceptions.WikiTreeRequestFailedException;
+import com.matilda.wikitree.api.jsonclient.WikiTreeApiJsonSession;
+import com.matilda.wikitree.api.jsonclient.WikiTreeRequest;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.ParseException;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ Bring a {@link WikiTreeProfileStore} up to date by re-fetching only the profiles which have changed since they were stored.
+ <p/>A sync happens in two passes. The first asks for nothing but the {@code Id} and {@code Touched} fields of every profile
+ of interest, many profiles per request (using {@code getRelatives} for a list of keys or {@code getWatchlist} for the profiles
+ on the session's account's watchlist). Profiles whose {@code Touched} timestamp differs from the one in the store (or which aren't
+ in the store at all) are then fetched with all of the requested fields, again many per {@code getRelatives} request, and stored.
+ <p/>Profiles come back the way that {@code getRelatives} returns them which is to say without their {@code Parents},
+ {@code Children}, {@code Spouses} or {@code Siblings} maps.
+ <p/>The session must not have a response cache since a cached projection would hide changes
+ (a person cache is fine; the profiles which a sync fetches are just more profiles to seed it with).
+ */
+
+public class WikiTreeIncrementalSync {
+
+    /**
+     The default number of profiles asked for in each request.
+     */
+
+    public static final int DEFAULT_BATCH_SIZE = 100;
+
+    /**
+     The fields which the first pass asks for.
+     */
+
+    public static final String PROJECTION_FIELDS = "Id,Touched";
+
+    /**
+     What a sync found and did.
+     */
+
+    public static final class Result {
+
+        private final int _checked;
+
+        private final int _changed;
+
+        private final int _fetched;
+
+        private final List<String> _missingKeys;
+
+        private final int _requests;
+
+        private final long _elapsedNanos;
+
+        private Result( int checked, int changed, int fetched, @NotNull List<String> missingKeys, int requests, long elapsedNanos ) {
+
+            super();
+
+            _checked = checked;
+            _changed = changed;
+            _fetched = fetched;
+            _missingKeys = Collections.unmodifiableList( missingKeys );
+            _requests = requests;
+            _elapsedNanos = elapsedNanos;
+
+        }
+
+        /**
+         Get the number of profiles whose {@code Touched} timestamps were compared with the store.
+         */
+
+        public int getChecked() {
+
+            return _checked;
+
+        }
+
+        /**
+         Get the number of profiles which were new or had changed.
+         */
+
+        public int getChanged() {
+
+            return _changed;
+
+        }
+
+        /**
+         Get the number of profiles which were fetched and stored
+         (fewer than {@link #getChanged()} if some of the changed profiles vanished in between the two passes).
+         */
+
+        public int getFetched() {
+
+            return _fetched;
+
+        }
+
+        /**
+         Get the keys that the server didn't return a profile for (for example, because there is no such profile).
+         */
+
+        @NotNull
+        public List<String> getMissingKeys() {
+
+            return _missingKeys;
+
+        }
+
+        /**
+         Get the number of requests that the sync made.
+         */
+
+        public int getRequests() {
+
+            return _requests;
+
+        }
+
+        public long getElapsedNanos() {
+
+            return _elapsedNanos;
+
+        }
+
+        public String toString() {
+
+            return "WikiTreeIncrementalSync.Result( checked=" + _checked + ", changed=" + _changed + ", fetched=" + _fetched +
+                   ", missing=" + _missingKeys.size() + ", requests=" + _requests + ", elapsed=" + _elapsedNanos / 1_000_000 + "ms )";
+
+        }
+
+    }
+
+    private final WikiTreeApiJsonSession _session;
+
+    private final WikiTreeProfileStore _store;
+
+    private int _batchSize = DEFAULT_BATCH_SIZE;
+
+    private String _fields = "*";
+
+    private int _requests;
+
+    /**
+     Create a sync which brings a store up to date using a session.
+
+     @param session the session (logged in if private profiles or a watchlist are involved).
+     @param store   the store.
+     @throws IllegalArgumentException if the session has a response cache.
+     */
+
+    public WikiTreeIncrementalSync( @NotNull WikiTreeApiJsonSession session, @NotNull WikiTreeProfileStore store ) {
+
+        super();
+
+        if ( session.getResponseCache() != null ) {
+
+            throw new IllegalArgumentException( "WikiTreeIncrementalSync:  a session with a response cache would hide changes" );
+
+        }
+
+        _session = session;
+        _store = store;
+
+    }
+
+    @NotNull
+    public WikiTreeApiJsonSession getSession() {
+
+        return _session;
+
+    }
+
+    @NotNull
+    public WikiTreeProfileStore getStore() {
+
+        return _store;
+
+    }
+
+    public int getBatchSize() {
+
+        return _batchSize;
+
+    }
+
+    /**
+     Set the number of profiles asked for in each request.
+     <p/>Long lists of keys are fine since the session sends requests with very long URLs as POSTs.
+
+     @param batchSize the number of profiles (at least 1).
+     @return the previous batch size.
+     @throws IllegalArgumentException if {@code batchSize} is less than 1.
+     */
+
+    public int setBatchSize( int batchSize ) {
+
+        if ( batchSize < 1 ) {
+
+            throw new IllegalArgumentException( "WikiTreeIncrementalSync.setBatchSize:  batch size must be at least 1 (" + batchSize + ")" );
+
+        }
+
+        int rval = _batchSize;
+        _batchSize = batchSize;
+
+        return rval;
+
+    }
+
+    @NotNull
+    public String getFields() {
+
+        return _fields;
+
+    }
+
+    /**
+     Set the fields that changed profiles are fetched with.
+     <p/>The {@code Id} and {@code Touched} fields are always fetched (the store needs the timestamp to compare with next time).
+
+     @param fields a comma separated list of fields or {@code *} for all of them (the default).
+     @return the previous fields.
+     */
+
+    @NotNull
+    public String setFields( @NotNull String fields ) {
+
+        String rval = _fields;
+        _fields = fields;
+
+        return rval;
+
+    }
+
+    /**
+     Bring the stored copies of a list of profiles up to date.
+
+     @param keys the WikiTree IDs and/or Person.Ids of the profiles.
+     @return what the sync found and did.
+     @throws IOException    if an IOException is thrown by the networking facilities used to send and receive the requests.
+     @throws ParseException if the WikiTree API server's responses couldn't be parsed.
+     @throws WikiTreeRequestFailedException if the server didn't respond or refused a request
+     (for example, because the session's login has expired). The store keeps whatever was stored before the failure.
+     */
+
+    @NotNull
+    public Result syncPeople( @NotNull Collection<String> keys )
+            throws IOException, ParseException, WikiTreeRequestFailedException {
+
+        long startNanos = System.nanoTime();
+        _requests = 0;
+
+        List<String> uniqueKeys = new ArrayList<>( new LinkedHashSet<>( keys ) );
+        List<String> missingKeys = new ArrayList<>();
+        List<Long> changedIds = new ArrayList<>();
+        int checked = 0;
+        for ( int from = 0; from < uniqueKeys.size(); from += _batchSize ) {
+
+            List<String> batch = uniqueKeys.subList( from, Math.min( uniqueKeys.size(), from + _batchSize ) );
+            Set<String> unseen = new LinkedHashSet<>( batch );
+            for ( JSONObject item : getRelatives( batch, PROJECTION_FIELDS ) ) {
+
+                Object key = item.get( "key" );
+                Object person = item.get( "person" );
+                if ( person instanceof JSONObject && unseen.remove( key ) ) {
+
+                    checked += check( (JSONObject)person, changedIds );
+
+                }
+
+            }
+
+            missingKeys.addAll( unseen );
+
+        }
+
+        int fetched = fetch( changedIds );
+
+        return new Result( checked, changedIds.size(), fetched, missingKeys, _requests, System.nanoTime() - startNanos );
+
+    }
+
+    /**
+     Bring the stored copies of the profiles on the session's account's watchlist up to date.
+
+     @return what the sync found and did.
+     @throws IOException    if an IOException is thrown by the networking facilities used to send and receive the requests.
+     @throws ParseException if the WikiTree API server's responses couldn't be parsed.
+     @throws WikiTreeRequestFailedException if the server didn't respond or refused a request
+     (for example, because the session's login has expired). The store keeps whatever was stored before the failure.
+     */
+
+    @NotNull
+    public Result syncWatchlist()
+            throws IOException, ParseException, WikiTreeRequestFailedException {
+
+        long startNanos = System.nanoTime();
+        _requests = 0;
+
+        List<Long> changedIds = new ArrayList<>();
+        int checked = 0;
+        int offset = 0;
+        while ( true ) {
+
+            JSONObject response = request(
+                    new WikiTreeRequest.GetWatchlist( true, false, null, null, PROJECTION_FIELDS, _batchSize, offset, null )
+            );
+
+            Object watchlist = response.get( "watchlist" );
+            if ( !( watchlist instanceof JSONArray ) || ( (JSONArray)watchlist ).isEmpty() ) {
+
+                break;
+
+            }
+
+            for ( Object person : (JSONArray)watchlist ) {
+
+                if ( person instanceof JSONObject ) {
+
+                    checked += check( (JSONObject)person, changedIds );
+
+                }
+
+            }
+
+            // A short page is the last one (the response may not say how long the watchlist is).
+
+            offset += ( (JSONArray)watchlist ).size();
+            Object count = response.get( "watchlistCount" );
+            if ( ( (JSONArray)watchlist ).size() < _batchSize || count instanceof Number && offset >= ( (Number)count ).longValue() ) {
+
+                break;
+
+            }
+
+        }
+
+        int fetched = fetch( changedIds );
+
+        return new Result( checked, changedIds.size(), fetched, new ArrayList<>(), _requests, System.nanoTime() - startNanos );
+
+    }
+
+    /**
+     Compare a projected profile's {@code Touched} timestamp with the stored one.
+
+     @return 1 if the profile was checked, 0 if it didn't have an {@code Id}.
+     */
+
+    private int check( @NotNull JSONObject projection, @NotNull List<Long> changedIds ) {
+
+        Object id = projection.get( "Id" );
+        if ( !( id instanceof Number ) ) {
+
+            return 0;
+
+        }
+
+        long personId = ( (Number)id ).longValue();
+        Object touched = projection.get( "Touched" );
+        if ( touched == null || !touched.equals( _store.getTouched( personId ) ) ) {
+
+            changedIds.add( personId );
+
+        }
+
+        return 1;
+
+    }
+
+    /**
+     Fetch and store the profiles which have changed.
+
+     @return the number of profiles stored.
+     */
+
+    private int fetch( @NotNull List<Long> changedIds )
+            throws IOException, ParseException, WikiTreeRequestFailedException {
+
+        String fields = getFetchFields();
+        int fetched = 0;
+        for ( int from = 0; from < changedIds.size(); from += _batchSize ) {
+
+            List<String> batch = new ArrayList<>();
+            for ( long personId : changedIds.subList( from, Math.min( changedIds.size(), from + _batchSize ) ) ) {
+
+                batch.add( String.valueOf( personId ) );
+
+            }
+
+            for ( JSONObject item : getRelatives( batch, fields ) ) {
+
+                Object person = item.get( "person" );
+                Object id = person instanceof JSONObject ? ( (JSONObject)person ).get( "Id" ) : null;
+                if ( id instanceof Number ) {
+
+                    _store.putProfile( ( (Number)id ).longValue(), (JSONObject)person );
+                    fetched += 1;
+
+                }
+
+            }
+
+        }
+
+        return fetched;
+
+    }
+
+    @NotNull
+    private String getFetchFields() {
+
+        List<String> fields = new ArrayList<>( Arrays.asList( _fields.split( "," ) ) );
+        if ( !fields.contains( "*" ) ) {
+
+            for ( String required : PROJECTION_FIELDS.split( "," ) ) {
+
+                if ( !fields.contains( required ) ) {
+
+                    fields.add( required );
+
+                }
+
+            }
+
+        }
+
+        return String.join( ",", fields );
+
+    }
+
+    /**
+     Get the items in a {@code getRelatives} response which asks for no relatives at all.
+     */
+
+    @NotNull
+    private List<JSONObject> getRelatives( @NotNull List<String> keys, @Nullable String fields )
+            throws IOException, ParseException, WikiTreeRequestFailedException {
+
+        JSONObject response = request(
+                new WikiTreeRequest.GetRelatives( String.join( ",", keys ), fields, false, false, false, false )
+        );
+
+        List<JSONObject> rval = new ArrayList<>();
+        Object items = response.get( "items" );
+        if ( items instanceof JSONArray ) {
+
+            for ( Object item : (JSONArray)items ) {
+
+                if ( item instanceof JSONObject ) {
+
+                    rval.add( (JSONObject)item );
+
+                }
+
+            }
+
+        }
+
+        return rval;
+
+    }
+
+    /**
+     Make a request and insist on a successful response.
+     <p/>The API reports a failed request (an expired login, for example) with a response whose {@code status} is a string
+     rather than the number zero. Carrying on as if it were an empty response would look like the end of the data
+     (or like every key was missing) so it is an error instead.
+
+     @throws WikiTreeRequestFailedException if there was no response or the response's {@code status} is a string.
+     */
+
+    @NotNull
+    private JSONObject request( @NotNull WikiTreeRequest request )
+            throws IOException, ParseException, WikiTreeRequestFailedException {
+
+        _requests += 1;
+        Optional<JSONObject> response = _session.request( request );
+        if ( !response.isPresent() ) {
+
+            throw new WikiTreeRequestFailedException( "WikiTreeIncrementalSync:  no response to " + request, new JSONObject() );
+
+        }
+
+        Object status = response.get().get( "status" );
+        if ( status instanceof String ) {
+
+            throw new WikiTreeRequestFailedException( "WikiTreeIncrementalSync:  " + request + " failed - " + status, response.get() );
+
+        }
+
+        return response.get();
+
+    }
+
+    public String toString() {
+
+        return "WikiTreeIncrementalSync( store=" + _store + ", batch size=" + _batchSize + ", fields=" + _fields + " )";
+
+    }
+
+}
@@ -0,0 +1,39 @@
+/*
+ * Copyright © 2017 Daniel Boulet
+ */
+
+package com.matilda.wikitree.api.sync;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.json.simple.JSONObject;
+
+/**
+ Somewhere to keep local copies of person profiles between runs of a {@link WikiTreeIncrementalSync}.
+ <p/>The only thing that a sync needs to know about a stored profile is its {@code Touched} timestamp
+ (when the profile was last changed on WikiTree). Implementations are free to keep the profiles wherever they like.
+ */
+
+public interface WikiTreeProfileStore {
+
+    /**
+     Get the {@code Touched} timestamp of the stored copy of a profile.
+
+     @param personId the profile's Person.Id.
+     @return the timestamp (something like {@code 20170612143201}) or {@code null} if there is no stored copy of the profile
+     (or the stored copy doesn't have a timestamp).
+     */
+
+    @Nullable
+    String getTouched( long personId );
+
+    /**
+     Store (or replace) the local copy of a profile.
+
+     @param personId the profile's Person.Id.
+     @param profile  the profile (which includes its {@code Touched} timestamp).
+     */
+
+    void putProfile( long personId, @NotNull JSONObject profile );
+
+}
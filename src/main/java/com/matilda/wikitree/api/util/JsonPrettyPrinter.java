@@ -0,0 +1,260 @@
+/*
+ * Copyright © 2017 Daniel Boulet
+ */
+
+package com.matilda.wikitree.api.util;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ A pretty-printer which streams its output straight to a {@link Writer}.
+ <p/>The output is the same as what {@link WikiTreeApiUtilities#prettyFormatJsonThing(int, String, Object, WikiTreeApiUtilities.PrettyLineManager)}
+ produces but nothing is accumulated along the way. Each line goes out as it is generated through a fixed size buffer and nesting is
+ tracked on an explicit stack rather than by recursion so arbitrarily deep things (a depth 10 ancestors result, for example) are no problem.
+ <p/>The one difference is that map keys which are not {@link String}s are printed via {@code String.valueOf( key )}
+ rather than being quietly skipped (which left a dangling comma behind).
+ <p/>Instances are not thread safe.
+ */
+
+public class JsonPrettyPrinter {
+
+    private static final int BUFFER_SIZE = 8 * 1024;
+
+    private final Writer _writer;
+
+    /**
+     One frame per map or collection that we are in the middle of printing.
+     */
+
+    private static class Frame {
+
+        private final Iterator<?> _iterator;
+
+        private final boolean _isMap;
+
+        private final int _indent;
+
+        private Frame( Iterator<?> iterator, boolean isMap, int indent ) {
+
+            super();
+
+            _iterator = iterator;
+            _isMap = isMap;
+            _indent = indent;
+
+        }
+
+    }
+
+    private final ArrayDeque<Frame> _stack = new ArrayDeque<>();
+
+    /**
+     Create a pretty-printer which writes to a {@link Writer}.
+
+     @param writer where the output goes. It is wrapped in a {@link BufferedWriter} unless it already is one.
+     */
+
+    public JsonPrettyPrinter( @NotNull Writer writer ) {
+
+        super();
+
+        _writer = writer instanceof BufferedWriter ? writer : new BufferedWriter( writer, BUFFER_SIZE );
+
+    }
+
+    /**
+     Pretty-print anything which might appear in a {@link org.json.simple.JSONArray} or {@link org.json.simple.JSONObject}.
+     <p/>Everything printed is flushed to the underlying {@link Writer} before this method returns. The {@link Writer} is not closed.
+
+     @param name  the optional name of the thing.
+     @param thing the thing being pretty-printed ({@link Optional}s are peeled off).
+     @throws IOException if something goes wrong writing to the {@link Writer}.
+     */
+
+    public void print( @Nullable String name, @Nullable Object thing )
+            throws IOException {
+
+        try {
+
+            printValue( 0, name, thing );
+
+            while ( !_stack.isEmpty() ) {
+
+                Frame frame = _stack.peek();
+                if ( frame._iterator.hasNext() ) {
+
+                    Object next = frame._iterator.next();
+                    if ( frame._isMap ) {
+
+                        Map.Entry<?, ?> entry = (Map.Entry<?, ?>)next;
+                        printValue( frame._indent + 1, String.valueOf( entry.getKey() ), entry.getValue() );
+
+                    } else {
+
+                        printValue( frame._indent + 1, null, next );
+
+                    }
+
+                } else {
+
+                    _stack.pop();
+                    indent( frame._indent );
+                    _writer.write( frame._isMap ? '}' : ']' );
+                    endLine();
+
+                }
+
+            }
+
+        } finally {
+
+            _stack.clear();
+            _writer.flush();
+
+        }
+
+    }
+
+    /**
+     Print a thing. Maps and collections only get their opening bracket printed here. Their content is printed by {@link #print(String, Object)}.
+     */
+
+    private void printValue( int indent, String name, Object thing )
+            throws IOException {
+
+        Object iThing = thing;
+        while ( iThing instanceof Optional ) {
+
+            Optional optThing = (Optional)iThing;
+            iThing = optThing.isPresent() ? optThing.get() : null;
+
+        }
+
+        indent( indent );
+        if ( name != null ) {
+
+            writeQuoted( name );
+            _writer.write( " : " );
+
+        }
+
+        if ( iThing instanceof Map ) {
+
+            _writer.write( '{' );
+            _writer.write( WikiTreeApiUtilities.JAVA_NEWLINE );
+            _stack.push( new Frame( ( (Map<?, ?>)iThing ).entrySet().iterator(), true, indent ) );
+
+        } else if ( iThing instanceof Collection ) {
+
+            _writer.write( '[' );
+            _writer.write( WikiTreeApiUtilities.JAVA_NEWLINE );
+            _stack.push( new Frame( ( (Collection<?>)iThing ).iterator(), false, indent ) );
+
+        } else {
+
+            if ( iThing instanceof String ) {
+
+                writeQuoted( (String)iThing );
+
+            } else {
+
+                _writer.write( String.valueOf( iThing ) );
+
+            }
+
+            endLine();
+
+        }
+
+    }
+
+    /**
+     End the current line with a comma if whatever encloses it has more to come.
+     */
+
+    private void endLine()
+            throws IOException {
+
+        Frame enclosing = _stack.peek();
+        if ( enclosing != null && enclosing._iterator.hasNext() ) {
+
+            _writer.write( ',' );
+
+        }
+
+        _writer.write( WikiTreeApiUtilities.JAVA_NEWLINE );
+
+    }
+
+    private void indent( int indent )
+            throws IOException {
+
+        for ( int i = 0; i < indent; i += 1 ) {
+
+            _writer.write( WikiTreeApiUtilities.INDENT_STRING );
+
+        }
+
+    }
+
+    /**
+     Write a string the way that {@link WikiTreeApiUtilities#enquoteForJavaString(String)} would without creating the enquoted string.
+     */
+
+    private void writeQuoted( String string )
+            throws IOException {
+
+        _writer.write( '"' );
+
+        int length = string.length();
+        for ( int i = 0; i < length; i += 1 ) {
+
+            char c = string.charAt( i );
+            switch ( c ) {
+
+                case '\b':
+                    _writer.write( "\\b" );
+                    break;
+
+                case '\n':
+                    _writer.write( "\\n" );
+                    break;
+
+                case '\r':
+                    _writer.write( "\\r" );
+                    break;
+
+                case '\t':
+                    _writer.write( "\\t" );
+                    break;
+
+                case '\\':
+                    _writer.write( "\\\\" );
+                    break;
+
+                case '"':
+                    _writer.write( "\\\"" );
+                    break;
+
+                default:
+                    _writer.write( c );
+
+            }
+
+        }
+
+        _writer.write( '"' );
+
+    }
+
+}
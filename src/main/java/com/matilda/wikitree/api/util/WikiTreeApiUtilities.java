@@ -6,16 +6,25 @@ package com.matilda.wikitree.api.util;
 
 import com.matilda.wikitree.api.WikiTreeApiClient;
 import com.matilda.wikitree.api.exceptions.ReallyBadNewsError;
+import com.matilda.wikitree.api.jfr.WikiTreeFlightRecorder;
+import com.matilda.wikitree.api.json.FastJsonCodec;
+import com.matilda.wikitree.api.json.JsonSimpleCodec;
+import com.matilda.wikitree.api.json.WikiTreeJsonCodec;
+import com.matilda.wikitree.api.metrics.RequestPhase;
+import com.matilda.wikitree.api.metrics.RequestTimings;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import org.json.simple.JSONArray;
 import org.json.simple.JSONObject;
-import org.json.simple.parser.JSONParser;
 import org.json.simple.parser.ParseException;
 
 import java.io.*;
 import java.net.HttpURLConnection;
 import java.net.URLEncoder;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
 import java.text.SimpleDateFormat;
 import java.util.*;
 
@@ -81,12 +90,117 @@ public class WikiTreeApiUtilities {
 
     public static final String JAVA_NEWLINE = String.format( "%n" );
 
+    /**
+     The codec used to parse every response from the WikiTree API server (and anything else handed to
+     {@link #parseJsonArray(String)} or {@link #parseJsonObject(String)}).
+     */
+
+    private static volatile WikiTreeJsonCodec s_jsonCodec = new FastJsonCodec();
+
+    private static final int INITIAL_RESPONSE_BUFFER_SIZE = 16 * 1024;
+
+    private static final int MAX_RETAINED_RESPONSE_BUFFER_SIZE = 1024 * 1024;
+
+    /**
+     Each thread reads responses into its own reusable byte buffer (see {@link #readAllBytes(InputStream)}).
+     */
+
+    private static final ThreadLocal<byte[]> s_responseBuffers = ThreadLocal.withInitial( () -> new byte[INITIAL_RESPONSE_BUFFER_SIZE] );
+
+    /**
+     Get the codec that this API is currently using to parse JSON.
+
+     @return the current codec ({@link FastJsonCodec} unless someone has called {@link #setJsonCodec(WikiTreeJsonCodec)}).
+     */
+
+    @NotNull
+    public static WikiTreeJsonCodec getJsonCodec() {
+
+        return s_jsonCodec;
+
+    }
+
+    /**
+     Specify the codec that this API is to use to parse JSON from now on.
+     <p/>For example, to go back to parsing everything with json-simple's parser:
+     <blockquote>{@code WikiTreeApiUtilities.setJsonCodec( new JsonSimpleCodec() );}</blockquote>
+     See {@link JsonSimpleCodec} and {@link FastJsonCodec} for more information.
+
+     @param jsonCodec the codec to use.
+     @return the previously configured codec.
+     */
+
+    @NotNull
+    public static WikiTreeJsonCodec setJsonCodec( @NotNull WikiTreeJsonCodec jsonCodec ) {
+
+        WikiTreeJsonCodec oldJsonCodec = s_jsonCodec;
+
+        s_jsonCodec = jsonCodec;
+
+        return oldJsonCodec;
+
+    }
+
     @Nullable
     public static Object readResponse( HttpURLConnection connection, @SuppressWarnings("SameParameterValue") boolean expectSingleResult )
             throws IOException, ParseException {
 
-        StringBuilder sb = new StringBuilder();
+        return readResponse( connection, expectSingleResult, null );
+
+    }
+
+    /**
+     Read and parse the response to a request.
+
+     @param connection         the connection that the request was sent on.
+     @param expectSingleResult {@code true} if the response should be an array containing exactly one object (which is then returned on its own).
+     @param timings            where to record how long waiting for, downloading and parsing the response took and how big it was
+     ({@code null} if nobody cares). The wait for the response is not recorded if the caller has already recorded it.
+     @return the parsed response, the response as a string if it isn't JSON, or the HTTP response code (an {@link Integer}) if the request failed.
+     @throws IOException    if something goes wrong reading the response.
+     @throws ParseException if the response is not valid JSON.
+     */
+
+    @Nullable
+    public static Object readResponse(
+            HttpURLConnection connection,
+            @SuppressWarnings("SameParameterValue") boolean expectSingleResult,
+            @Nullable RequestTimings timings
+    )
+            throws IOException, ParseException {
+
+        WikiTreeFlightRecorder.Span span = WikiTreeFlightRecorder.begin(
+                WikiTreeFlightRecorder.Operation.READ_RESPONSE,
+                timings == null ? null : timings.getAction(),
+                timings == null ? null : timings.getKey()
+        );
+        Object rval = null;
+        try {
+
+            rval = readAndParseResponse( connection, expectSingleResult, timings );
+
+            return rval;
+
+        } finally {
+
+            span.end( timings == null ? -1 : timings.getResponseBytes(), span.isRecording() ? WikiTreeFlightRecorder.countProfiles( rval ) : -1 );
+
+        }
+
+    }
+
+    @Nullable
+    private static Object readAndParseResponse( HttpURLConnection connection, boolean expectSingleResult, @Nullable RequestTimings timings )
+            throws IOException, ParseException {
+
+        long phaseStart = System.nanoTime();
         int httpResponseCode = connection.getResponseCode();
+        if ( timings != null && timings.getPhaseNanos( RequestPhase.FIRST_BYTE ) < 0 ) {
+
+            phaseStart = timings.endPhase( RequestPhase.FIRST_BYTE, phaseStart );
+
+        }
+
         if (
                 httpResponseCode / 100 == 2
                 ||
@@ -94,28 +208,39 @@ public class WikiTreeApiUtilities {
 
                 ) {
 
-            BufferedReader reader = new BufferedReader(
-                    new InputStreamReader( connection.getInputStream(), "utf-8" )
-            );
+            // Read the raw bytes, peek at the first one to decide what we're dealing with and then hand the bytes
+            // straight to the codec (no charset decoder, no intermediate StringBuilder or String).
+
+            ByteBuffer response;
+            try ( InputStream inputStream = connection.getInputStream() ) {
+
+                response = readAllBytes( inputStream );
 
-            readFromConnection( false, sb, reader );
+            }
+
+            if ( timings != null ) {
 
-            String responseString = sb.toString();
-//	    System.out.println( "got response:  " + sb );
+                phaseStart = timings.endPhase( RequestPhase.DOWNLOAD, phaseStart );
+                timings.setResponseBytes( response.remaining() );
 
-            if ( responseString.isEmpty() ) {
+            }
+
+            if ( !response.hasRemaining() ) {
 
                 return null;
 
-            } else if ( responseString.startsWith( "[" ) ) {
+            }
 
-                JSONArray arrayResponse = parseJsonArray( responseString );
+            byte firstByte = response.get( response.position() );
+            if ( firstByte == '[' ) {
+
+                JSONArray arrayResponse = (JSONArray)parseResponse( response, timings, phaseStart );
 
                 if ( expectSingleResult ) {
 
                     if ( arrayResponse.size() == 1 ) {
 
-//			System.out.println( "one entity in response" );
+//			    System.out.println( "one entity in response" );
                         Object singleResult = arrayResponse.get( 0 );
                         if ( singleResult == null ) {
 
@@ -156,16 +281,16 @@ public class WikiTreeApiUtilities {
 
                 }
 
-            } else if ( responseString.startsWith( "{" ) ) {
+            } else if ( firstByte == '{' ) {
 
                 @SuppressWarnings("UnnecessaryLocalVariable")
-                JSONObject objectResponse = parseJsonObject( responseString );
+                JSONObject objectResponse = (JSONObject)parseResponse( response, timings, phaseStart );
 
                 return objectResponse;
 
             } else {
 
-                return responseString;
+                return StandardCharsets.UTF_8.decode( response ).toString();
 
             }
 
@@ -423,14 +548,18 @@ public class WikiTreeApiUtilities {
 
     /**
      Format a {@link JSONObject} describing a request into the form of a set of URL query parameters.
+     <p/>Nothing in this API uses this any more. Requests are {@link com.matilda.wikitree.api.jsonclient.WikiTreeRequest}s which work out
+     their query strings when they are created (see {@link com.matilda.wikitree.api.jsonclient.WikiTreeRequest#getQueryString()}).
 
      @param who              who is making the request (used for tracing and throwing exceptions).
      @param parametersObject the request as a {@link JSONObject}.
      @param requestSb        a {@link StringBuffer} to append the resulting URL query parameters into.
      This buffer is not changed if there happen to be no parameters.
      @throws UnsupportedEncodingException if one of the parameter values cannot be encoded by {@link URLEncoder#encode(String)}.
+     @deprecated use {@link com.matilda.wikitree.api.jsonclient.WikiTreeRequest#getQueryString()} instead.
      */
 
+    @Deprecated
     public static void formatRequestAsUrlQueryParameters( String who, JSONObject parametersObject, StringBuffer requestSb )
             throws UnsupportedEncodingException {
 
@@ -613,10 +742,36 @@ public class WikiTreeApiUtilities {
     public static void prettyPrintJsonThing( String name, @Nullable Object thing )
         /*throws IOException*/ {
 
-        StringWriter sw = prettyFormatJsonThing( name, thing );
+        try {
+
+            // Stream it rather than building the whole thing in memory first (see {@link JsonPrettyPrinter}).
 
-        System.out.print( sw.getBuffer() );
-        System.out.flush();
+            prettyPrintJsonThing( new OutputStreamWriter( System.out ), name, thing );
+
+        } catch ( IOException e ) {
+
+            throw new ReallyBadNewsError( "WikiTreeApiUtilities.prettyPrintJsonThing:  caught an IOException writing to System.out(!)", e );
+
+        }
+
+    }
+
+    /**
+     Pretty-print onto a {@link Writer} anything which might appear in a {@link JSONArray} or {@link JSONObject}.
+     <p/>The output is the same as what {@link #prettyFormatJsonThing(String, Object)} yields but it is streamed straight to the writer
+     with bounded buffering and without recursion (see {@link JsonPrettyPrinter}).
+     This is the one to use for debugging dumps of very large responses.
+
+     @param writer where the output goes (flushed but not closed when this method is done).
+     @param name   the optional name of the thing.
+     @param thing  the thing being pretty-printed.
+     @throws IOException if something goes wrong writing to the writer.
+     */
+
+    public static void prettyPrintJsonThing( @NotNull Writer writer, String name, @Nullable Object thing )
+            throws IOException {
+
+        new JsonPrettyPrinter( writer ).print( name, thing );
 
     }
 
@@ -649,17 +804,7 @@ public class WikiTreeApiUtilities {
         StringWriter sw = new StringWriter();
         try {
 
-            PrettyLineManager plm = new PrettyLineManager( sw );
-
-            try {
-
-                prettyFormatJsonThing( 0, name, thing, plm );
-
-            } finally {
-
-                plm.flush();
-
-            }
+            prettyPrintJsonThing( sw, name, thing );
 
             return sw;
 
@@ -811,16 +956,17 @@ public class WikiTreeApiUtilities {
 
         try {
 
+            char[] buffer = new char[4096];
             while ( true ) {
 
-                int ch = reader.read();
-                if ( ch == -1 ) {
+                int count = reader.read( buffer );
+                if ( count == -1 ) {
 
                     break;
 
                 }
 
-                sb.append( (char)ch );
+                sb.append( buffer, 0, count );
                 if ( server ) {
 
                     System.out.println( "server so far:  " + sb );
@@ -838,7 +984,105 @@ public class WikiTreeApiUtilities {
     }
 
     /**
-     Parse a string representing a Json array.
+     Parse a response with the current codec, recording how long it took.
+     */
+
+    private static Object parseResponse( ByteBuffer response, @Nullable RequestTimings timings, long phaseStart )
+            throws ParseException {
+
+        int byteCount = response.remaining();
+        WikiTreeFlightRecorder.Span span = WikiTreeFlightRecorder.begin(
+                WikiTreeFlightRecorder.Operation.PARSE,
+                timings == null ? null : timings.getAction(),
+                timings == null ? null : timings.getKey()
+        );
+
+        Object rval = null;
+        try {
+
+            rval = s_jsonCodec.parse( response );
+
+            if ( timings != null ) {
+
+                timings.endPhase( RequestPhase.PARSE, phaseStart );
+
+            }
+
+            return rval;
+
+        } finally {
+
+            span.end( byteCount, span.isRecording() ? WikiTreeFlightRecorder.countProfiles( rval ) : -1 );
+
+        }
+
+    }
+
+    /**
+     Read everything that an input stream has to offer into this thread's reusable response buffer.
+     <p/>The returned buffer is only valid until the next call to this method on the same thread.
+     Everything that our codecs produce is independent of the bytes that it was parsed from so that's not a problem for parsing.
+     A buffer that an unusually large response has made bigger than {@link #MAX_RETAINED_RESPONSE_BUFFER_SIZE} bytes is not kept.
+
+     @param inputStream where to get the bytes (not closed by this method).
+     @return a {@link ByteBuffer} whose position is zero and whose limit is the number of bytes read.
+     @throws IOException if something goes wrong reading from the input stream.
+     */
+
+    @NotNull
+    public static ByteBuffer readAllBytes( @NotNull InputStream inputStream )
+            throws IOException {
+
+        byte[] buffer = s_responseBuffers.get();
+        int length = 0;
+        while ( true ) {
+
+            if ( length == buffer.length ) {
+
+                buffer = Arrays.copyOf( buffer, buffer.length * 2 );
+
+            }
+
+            int count = inputStream.read( buffer, length, buffer.length - length );
+            if ( count == -1 ) {
+
+                break;
+
+            }
+
+            length += count;
+
+        }
+
+        s_responseBuffers.set( buffer.length > MAX_RETAINED_RESPONSE_BUFFER_SIZE ? new byte[INITIAL_RESPONSE_BUFFER_SIZE] : buffer );
+
+        return ByteBuffer.wrap( buffer, 0, length );
+
+    }
+
+    /**
+     Parse a file containing exactly one UTF-8 encoded JSON value (a saved API server response, for example) using the current codec.
+     <p/>The file is memory-mapped and handed to the codec as is (see {@link WikiTreeJsonCodec#parse(ByteBuffer)}).
+
+     @param file the file.
+     @return the parsed value.
+     @throws IOException    if something goes wrong opening or mapping the file.
+     @throws ParseException if the file's content is not valid JSON.
+     */
+
+    public static Object parseJsonFile( @NotNull File file )
+            throws IOException, ParseException {
+
+        try ( FileChannel channel = FileChannel.open( file.toPath(), StandardOpenOption.READ ) ) {
+
+            return s_jsonCodec.parse( channel.map( FileChannel.MapMode.READ_ONLY, 0, channel.size() ) );
+
+        }
+
+    }
+
+    /**
+     Parse a string representing a Json array using the current codec (see {@link #getJsonCodec()}).
      <p/>The string <b><u>must</u></b> start with an opening square bracket ('['). No leading white space is allowed.
 
      @param jsonArrayString the string representing the Json array.
@@ -849,9 +1093,7 @@ public class WikiTreeApiUtilities {
     public static JSONArray parseJsonArray( String jsonArrayString )
             throws ParseException {
 
-        JSONParser jp = new JSONParser();
-
-        Object parsedObject = jp.parse( jsonArrayString.trim() );
+        Object parsedObject = s_jsonCodec.parse( jsonArrayString.trim() );
         final JSONArray parsedArray = (JSONArray)parsedObject;
 
 //	System.out.println( "parse of array worked:  " + parsedArray );
@@ -861,7 +1103,7 @@ public class WikiTreeApiUtilities {
     }
 
     /**
-     Parse a string representing a Json object.
+     Parse a string representing a Json object using the current codec (see {@link #getJsonCodec()}).
      <p/>The string <b><u>must</u></b> start with an opening curly brace ('{'). No leading white space is allowed.
 
      @param jsonObjectString the string representing the Json object.
@@ -872,9 +1114,7 @@ public class WikiTreeApiUtilities {
     public static JSONObject parseJsonObject( String jsonObjectString )
             throws ParseException {
 
-        JSONParser jp = new JSONParser();
-
-        Object parsedObject = jp.parse( jsonObjectString );
+        Object parsedObject = s_jsonCodec.parse( jsonObjectString );
         final JSONObject jsonObject = (JSONObject)parsedObject;
 
 //	System.out.println( "parse of object worked:  " + jsonObject );
@@ -900,6 +1140,8 @@ public class WikiTreeApiUtilities {
      that you'd like to use to login to the API. The specified name of the {@code .wtu} will be interpreted relative to your
      home directory. In other words, {@code .myWikiTreeAPIInfo.wtu} would be interpreted as {@code ~/.myWikiTreeAPIInfo.wtu}
      if you're on a Unix or Mac OS X system and as {@code C:\Users\YourWindowsName} if you're on a Windows 10 system.
+     <p/>Callers who want the login to survive between runs should give their session a credential store before calling this
+     (see {@code WikiTreeApiJsonSession.setCredentialStore}); nothing is written to disk otherwise.
      */
 
     public static void maybeLoginToWikiTree( WikiTreeApiClient apiClient, String[] args ) {
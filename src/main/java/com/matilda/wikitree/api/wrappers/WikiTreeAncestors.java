@@ -6,6 +6,7 @@ package com.matilda.wikitree.api.wrappers;
 
 import com.matilda.wikitree.api.exceptions.ReallyBadNewsError;
 import com.matilda.wikitree.api.exceptions.WikiTreeRequestFailedException;
+import com.matilda.wikitree.api.jfr.WikiTreeFlightRecorder;
 import com.matilda.wikitree.api.jsonclient.WikiTreeApiJsonSession;
 import com.matilda.wikitree.api.util.WikiTreeApiUtilities;
 import org.jetbrains.annotations.NotNull;
@@ -23,17 +24,17 @@ import java.util.*;
 @SuppressWarnings({ "WeakerAccess", "unused" })
 public class WikiTreeAncestors extends WikiTreeWrapper {
 
-    private final WikiTreeId _resultWikiTreeID;
+    private WikiTreeId _resultWikiTreeID;
 
-    private final long _resultPersonId;
+    private long _resultPersonId;
 
-    private final String _resultKeyString;
+    private String _resultKeyString;
 
     private final WikiTreeId _requestKey;
 
     private final Integer _requestDepth;
 
-    private final Vector<WikiTreePersonProfile> _resultAncestors;
+    private Vector<WikiTreePersonProfile> _resultAncestors;
 
     private final SortedMap<Long, WikiTreePersonProfile> _profilesByPersonId = new TreeMap<>();
 
@@ -43,9 +44,9 @@ public class WikiTreeAncestors extends WikiTreeWrapper {
 
     private final SortedMap<Long, WikiTreePersonProfile> _mothersOf = new TreeMap<>();
 
-    private final WikiTreePersonProfile _basePersonProfile;
+    private WikiTreePersonProfile _basePersonProfile;
 
-    private final WikiTreePersonProfile _ancestralTree;
+    private WikiTreePersonProfile _ancestralTree;
 
     private static final int INDENT_PER_LEVEL = 4;
 
@@ -72,8 +73,41 @@ public class WikiTreeAncestors extends WikiTreeWrapper {
 
         super( resultObject );
 
+        WikiTreeFlightRecorder.Span span = WikiTreeFlightRecorder.begin(
+                WikiTreeFlightRecorder.Operation.BUILD_ANCESTORS,
+                "getAncestors",
+                key.getValueString()
+        );
+
         _requestKey = key;
         _requestDepth = depth;
+
+        // End the span whether or not the build works out (failed builds are worth seeing too).
+
+        int profileCount = -1;
+        try {
+
+            profileCount = build( resultObject );
+
+        } finally {
+
+            span.end( -1, profileCount );
+
+        }
+
+//	printAncestralTree( System.out );
+
+    }
+
+    /**
+     Turn the result of a {@code getAncestors} request into maps of everyone involved and an ancestral tree.
+
+     @return the number of profiles in the result.
+     */
+
+    private int build( @NotNull JSONObject resultObject )
+            throws WikiTreeRequestFailedException {
+
         boolean resultKeyIsId;
         if ( resultObject.containsKey( "user_name" ) ) {
 
@@ -169,7 +203,7 @@ public class WikiTreeAncestors extends WikiTreeWrapper {
 
         _ancestralTree = buildAncestralTree( _basePersonProfile, lineage );
 
-//	printAncestralTree( System.out );
+        return _resultAncestors.size();
 
     }
 
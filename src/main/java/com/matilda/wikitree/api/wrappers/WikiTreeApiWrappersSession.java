@@ -7,8 +7,9 @@ package com.matilda.wikitree.api.wrappers;
 import com.matilda.wikitree.api.WikiTreeApiClient;
 import com.matilda.wikitree.api.exceptions.WikiTreeRequestFailedException;
 import com.matilda.wikitree.api.jsonclient.WikiTreeApiJsonSession;
+import com.matilda.wikitree.api.metrics.RequestPhase;
+import com.matilda.wikitree.api.metrics.WikiTreeRequestMetrics;
 import com.matilda.wikitree.api.util.WikiTreeApiUtilities;
-import com.sun.corba.se.spi.monitoring.StatisticsAccumulator;
 import org.jetbrains.annotations.NotNull;
 import org.json.simple.JSONObject;
 import org.json.simple.parser.ParseException;
@@ -419,7 +420,11 @@ public class WikiTreeApiWrappersSession implements WikiTreeApiClient {
             // The instructor invoked here requires that the profile have a "Name" field.
             // This is why we forced it into the list of requested fields above.
 
-            return new WikiTreePersonProfile( null, optRval.get(), "person" );
+            long wrapStart = System.nanoTime();
+            WikiTreePersonProfile rval = new WikiTreePersonProfile( null, optRval.get(), "person" );
+            wrapped( wrapStart );
+
+            return rval;
 
         } else {
 
@@ -452,7 +457,9 @@ public class WikiTreeApiWrappersSession implements WikiTreeApiClient {
 
             WikiTreeProfile rval;
 
+            long wrapStart = System.nanoTime();
             rval = WikiTreeProfile.distinguish( optResultObject.get() );
+            wrapped( wrapStart );
 
             return rval;
 
@@ -473,7 +480,9 @@ public class WikiTreeApiWrappersSession implements WikiTreeApiClient {
 
             WikiTreeProfile rval;
 
+            long wrapStart = System.nanoTime();
             rval = WikiTreeProfile.distinguish( optResultObject.get() );
+            wrapped( wrapStart );
 
             return rval;
 
@@ -574,7 +583,19 @@ public class WikiTreeApiWrappersSession implements WikiTreeApiClient {
 
         Optional<JSONObject> optResultObject = _jsonClient.getBio( key );
 
-        return optResultObject.map( jsonObject -> new WikiTreeBiography( key, jsonObject ) ).orElse( null );
+        if ( optResultObject.isPresent() ) {
+
+            long wrapStart = System.nanoTime();
+            WikiTreeBiography rval = new WikiTreeBiography( key, optResultObject.get() );
+            wrapped( wrapStart );
+
+            return rval;
+
+        } else {
+
+            return null;
+
+        }
 
     }
 
@@ -595,7 +616,13 @@ public class WikiTreeApiWrappersSession implements WikiTreeApiClient {
 
         if ( optResultObject.isPresent() ) {
 
-            return new WikiTreeWatchlist( getPerson, getSpace, onlyLiving, excludeLiving, fields, limit, offset, order, optResultObject.get() );
+            long wrapStart = System.nanoTime();
+            WikiTreeWatchlist rval = new WikiTreeWatchlist(
+                    getPerson, getSpace, onlyLiving, excludeLiving, fields, limit, offset, order, optResultObject.get()
+            );
+            wrapped( wrapStart );
+
+            return rval;
 
         } else {
 
@@ -612,7 +639,11 @@ public class WikiTreeApiWrappersSession implements WikiTreeApiClient {
 
         if ( optRequestObject.isPresent() ) {
 
-            return new WikiTreeAncestors( key, depth, optRequestObject.get() );
+            long wrapStart = System.nanoTime();
+            WikiTreeAncestors rval = new WikiTreeAncestors( key, depth, optRequestObject.get() );
+            wrapped( wrapStart );
+
+            return rval;
 
         } else {
 
@@ -628,8 +659,9 @@ public class WikiTreeApiWrappersSession implements WikiTreeApiClient {
 
         if ( optRequestObject.isPresent() ) {
 
-            @SuppressWarnings("UnnecessaryLocalVariable")
+            long wrapStart = System.nanoTime();
             WikiTreeRelatives rval = new WikiTreeRelatives( keys, getParents, getChildren, getSpouses, getSiblings, optRequestObject.get() );
+            wrapped( wrapStart );
 //	    System.out.println( "relatives are " + rval );
 
             return rval;
@@ -642,7 +674,18 @@ public class WikiTreeApiWrappersSession implements WikiTreeApiClient {
 
     }
 
-    public static StatisticsAccumulator getTimingStats() {
+    /**
+     Record how long it took to wrap a response in this session's metrics.
+     */
+
+    private void wrapped( long wrapStart ) {
+
+        _jsonClient.getMetrics().recordPhase( RequestPhase.WRAP, System.nanoTime() - wrapStart );
+
+    }
+
+    @NotNull
+    public static WikiTreeRequestMetrics getTimingStats() {
 
         return WikiTreeApiJsonSession.getTimingStats();
 
@@ -0,0 +1,398 @@
+/*
+ * Copyright © 2017 Daniel Boulet
+ */
+
+package com.matilda.wikitree.api.wrappers;
+
+import com.matilda.wikitree.api.exceptions.WikiTreeRequestFailedException;
+import com.matilda.wikitree.api.jsonclient.WikiTreeApiJsonSession;
+import com.matilda.wikitree.api.jsonclient.WikiTreeResponseCache;
+import com.matilda.wikitree.api.jsonclient.WikiTreeTransport;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.json.simple.parser.ParseException;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ A pool of {@link WikiTreeApiWrappersSession}s, some anonymous and some logged in as one of several WikiTree accounts,
+ for bulk jobs that run on behalf of more than one account.
+ <p/>Each request names the account that it is being made for ({@code null} for anonymous requests) and goes to whichever of
+ that account's sessions has the fewest requests in flight. A request is never sent through another account's session
+ (or through a logged in session if it is anonymous) since that would let it see data that it isn't allowed to see.
+ <p/>All of the pool's sessions use the same {@link WikiTreeTransport} and the same {@link WikiTreeResponseCache}.
+ The cache keeps each account's responses separate (see {@link WikiTreeResponseCache#getScope}) so sharing it doesn't
+ leak anything between accounts. With the default transport, connections come from the JVM's HTTP keep-alive cache, which is
+ already shared by every session talking to the same server (its size per server is set by the {@code http.maxConnections}
+ system property).
+ */
+
+public class WikiTreeSessionPool {
+
+    private static final class Member {
+
+        private final WikiTreeApiWrappersSession _session;
+
+        private final AtomicInteger _inFlight = new AtomicInteger();
+
+        private Member( WikiTreeApiWrappersSession session ) {
+
+            super();
+
+            _session = session;
+
+        }
+
+    }
+
+    /**
+     Something to do with a session.
+     */
+
+    public interface Request<T> {
+
+        T perform( @NotNull WikiTreeApiWrappersSession session )
+                throws IOException, ParseException, WikiTreeRequestFailedException;
+
+    }
+
+    private static final String ANONYMOUS = "";
+
+    private final String _baseServerUrlString;
+
+    private final WikiTreeTransport _transport;
+
+    private final WikiTreeResponseCache _responseCache;
+
+    /**
+     Members by (lower case) account email address; copy-on-write so that picking a session takes no locks.
+     */
+
+    private final Map<String, Member[]> _members = new ConcurrentHashMap<>();
+
+    private final AtomicInteger _nextStart = new AtomicInteger();
+
+    /**
+     Create an empty pool of sessions which use the default transport and don't cache anything.
+
+     @param baseServerUrlString the WikiTree API server (see {@link WikiTreeApiJsonSession#WikiTreeApiJsonSession(String)}).
+     */
+
+    public WikiTreeSessionPool( @Nullable String baseServerUrlString ) {
+
+        this( baseServerUrlString, WikiTreeTransport.DEFAULT, null );
+
+    }
+
+    /**
+     Create an empty pool.
+
+     @param baseServerUrlString the WikiTree API server (see {@link WikiTreeApiJsonSession#WikiTreeApiJsonSession(String)}).
+     @param transport           the transport that every session uses.
+     @param responseCache       the cache that every session uses ({@code null} for no cache).
+     */
+
+    public WikiTreeSessionPool( @Nullable String baseServerUrlString, @NotNull WikiTreeTransport transport, @Nullable WikiTreeResponseCache responseCache ) {
+
+        super();
+
+        _baseServerUrlString = baseServerUrlString;
+        _transport = transport;
+        _responseCache = responseCache;
+
+    }
+
+    /**
+     Add some anonymous sessions.
+
+     @param count how many.
+     */
+
+    public void addAnonymousSessions( int count ) {
+
+        List<Member> added = new ArrayList<>();
+        for ( int i = 0; i < count; i += 1 ) {
+
+            added.add( new Member( new WikiTreeApiWrappersSession( createJsonSession() ) ) );
+
+        }
+
+        addMembers( ANONYMOUS, added );
+
+    }
+
+    /**
+     Add some sessions logged in as an account.
+
+     @param emailAddress the account's email address.
+     @param password     the account's password.
+     @param count        how many sessions to add.
+     @return {@code true} if they were added; {@code false} if the login was refused (in which case none are added).
+     @throws IOException    if a login request fails.
+     @throws ParseException if a login response can't be parsed.
+     */
+
+    public boolean addAccount( @NotNull String emailAddress, @NotNull String password, int count )
+            throws IOException, ParseException {
+
+        List<Member> added = new ArrayList<>();
+        for ( int i = 0; i < count; i += 1 ) {
+
+            WikiTreeApiWrappersSession session = new WikiTreeApiWrappersSession( createJsonSession() );
+            if ( !session.login( emailAddress, password ) ) {
+
+                return false;
+
+            }
+
+            added.add( new Member( session ) );
+
+        }
+
+        addMembers( accountKey( emailAddress ), added );
+
+        return true;
+
+    }
+
+    /**
+     Do something with the least loaded session which is allowed to see an account's data.
+
+     @param emailAddress the account's email address ({@code null} for anonymous requests).
+     @param request      what to do.
+     @return what {@code request} returns.
+     @throws IllegalArgumentException if the pool has no sessions for the account.
+     */
+
+    public <T> T execute( @Nullable String emailAddress, @NotNull Request<T> request )
+            throws IOException, ParseException, WikiTreeRequestFailedException {
+
+        Member member = acquire( emailAddress == null ? ANONYMOUS : accountKey( emailAddress ) );
+        try {
+
+            return request.perform( member._session );
+
+        } finally {
+
+            member._inFlight.decrementAndGet();
+
+        }
+
+    }
+
+    public WikiTreePersonProfile getPerson( @Nullable String emailAddress, @NotNull WikiTreeId key )
+            throws IOException, ParseException, WikiTreeRequestFailedException {
+
+        return execute( emailAddress, session -> session.getPerson( key ) );
+
+    }
+
+    public WikiTreeProfile getProfile( @Nullable String emailAddress, @NotNull WikiTreeId key )
+            throws IOException, ParseException, WikiTreeRequestFailedException {
+
+        return execute( emailAddress, session -> session.getProfile( key ) );
+
+    }
+
+    public WikiTreeBiography getBio( @Nullable String emailAddress, @NotNull WikiTreeId key )
+            throws IOException, ParseException, WikiTreeRequestFailedException {
+
+        return execute( emailAddress, session -> session.getBio( key ) );
+
+    }
+
+    public WikiTreeAncestors getAncestors( @Nullable String emailAddress, @NotNull WikiTreeId key, Integer depth )
+            throws IOException, ParseException, WikiTreeRequestFailedException {
+
+        return execute( emailAddress, session -> session.getAncestors( key, depth ) );
+
+    }
+
+    public WikiTreeRelatives getRelatives(
+            @Nullable String emailAddress,
+            String keys,
+            boolean getParents,
+            boolean getChildren,
+            boolean getSpouses,
+            boolean getSiblings
+    )
+            throws IOException, ParseException, WikiTreeRequestFailedException {
+
+        return execute( emailAddress, session -> session.getRelatives( keys, getParents, getChildren, getSpouses, getSiblings ) );
+
+    }
+
+    /**
+     Get an account's watchlist (see {@link WikiTreeApiWrappersSession#getWatchlist}).
+     */
+
+    public WikiTreeWatchlist getWatchlist(
+            @NotNull String emailAddress,
+            Boolean getPerson,
+            Boolean getSpace,
+            Boolean onlyLiving,
+            Boolean excludeLiving,
+            String fields,
+            Integer limit,
+            Integer offset,
+            String order
+    )
+            throws IOException, ParseException, WikiTreeRequestFailedException {
+
+        return execute(
+                emailAddress,
+                session -> session.getWatchlist( getPerson, getSpace, onlyLiving, excludeLiving, fields, limit, offset, order )
+        );
+
+    }
+
+    /**
+     Get the email addresses of the accounts that this pool has sessions for (in lower case).
+     */
+
+    @NotNull
+    public Set<String> getAccounts() {
+
+        Set<String> rval = new TreeSet<>( _members.keySet() );
+        rval.remove( ANONYMOUS );
+
+        return Collections.unmodifiableSet( rval );
+
+    }
+
+    /**
+     Get how many sessions the pool has for an account.
+
+     @param emailAddress the account's email address ({@code null} for anonymous sessions).
+     */
+
+    public int getSessionCount( @Nullable String emailAddress ) {
+
+        Member[] members = _members.get( emailAddress == null ? ANONYMOUS : accountKey( emailAddress ) );
+
+        return members == null ? 0 : members.length;
+
+    }
+
+    /**
+     Get how many requests are in flight across all of the pool's sessions.
+     */
+
+    public int getInFlightCount() {
+
+        int rval = 0;
+        for ( Member[] members : _members.values() ) {
+
+            for ( Member member : members ) {
+
+                rval += member._inFlight.get();
+
+            }
+
+        }
+
+        return rval;
+
+    }
+
+    @Nullable
+    public WikiTreeResponseCache getResponseCache() {
+
+        return _responseCache;
+
+    }
+
+    private WikiTreeApiJsonSession createJsonSession() {
+
+        WikiTreeApiJsonSession jsonSession = new WikiTreeApiJsonSession( _baseServerUrlString );
+        jsonSession.setTransport( _transport );
+        jsonSession.setResponseCache( _responseCache );
+
+        return jsonSession;
+
+    }
+
+    private void addMembers( String key, List<Member> added ) {
+
+        _members.merge(
+                key,
+                added.toArray( new Member[0] ),
+                ( existing, more ) -> {
+
+                    Member[] rval = new Member[existing.length + more.length];
+                    System.arraycopy( existing, 0, rval, 0, existing.length );
+                    System.arraycopy( more, 0, rval, existing.length, more.length );
+
+                    return rval;
+
+                }
+        );
+
+    }
+
+    /**
+     Pick the eligible session with the fewest requests in flight and count one more.
+     <p/>The search starts somewhere different each time so that idle sessions take turns.
+     */
+
+    private Member acquire( String key ) {
+
+        Member[] members = _members.get( key );
+        if ( members == null || members.length == 0 ) {
+
+            throw new IllegalArgumentException(
+                    "WikiTreeSessionPool:  no sessions for " + ( ANONYMOUS.equals( key ) ? "anonymous requests" : key )
+            );
+
+        }
+
+        int start = Math.floorMod( _nextStart.getAndIncrement(), members.length );
+        Member best = null;
+        int bestLoad = Integer.MAX_VALUE;
+        for ( int i = 0; i < members.length; i += 1 ) {
+
+            Member candidate = members[( start + i ) % members.length];
+            int load = candidate._inFlight.get();
+            if ( load < bestLoad ) {
+
+                best = candidate;
+                bestLoad = load;
+                if ( load == 0 ) {
+
+                    break;
+
+                }
+
+            }
+
+        }
+
+        best._inFlight.incrementAndGet();
+
+        return best;
+
+    }
+
+    private static String accountKey( String emailAddress ) {
+
+        return emailAddress.trim().toLowerCase( Locale.ROOT );
+
+    }
+
+    public String toString() {
+
+        return "WikiTreeSessionPool( url=" + _baseServerUrlString + ", accounts=" + getAccounts() +
+               ", anonymous sessions=" + getSessionCount( null ) + ", in flight=" + getInFlightCount() + " )";
+
+    }
+
+}
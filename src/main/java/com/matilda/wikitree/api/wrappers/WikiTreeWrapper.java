@@ -4,14 +4,17 @@
 
 package com.matilda.wikitree.api.wrappers;
 
+import com.matilda.wikitree.api.json.LazyJSONObject;
 import org.jetbrains.annotations.NotNull;
 import org.json.simple.JSONObject;
 
 /**
  %%% Something clever goes here.
+ <p/>Wrappers are {@link LazyJSONObject}s so that wrapping a lazily parsed response does not decode every field
+ (see {@link com.matilda.wikitree.api.json.FastJsonCodec#FastJsonCodec(boolean)}).
  */
 
-public class WikiTreeWrapper extends JSONObject {
+public class WikiTreeWrapper extends LazyJSONObject {
 
     private WikiTreeRequestType _requestType = WikiTreeRequestType.UNSPECIFIED;
 
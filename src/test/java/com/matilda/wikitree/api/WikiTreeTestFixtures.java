@@ -0,0 +1,123 @@
+/*
+ * Copyright © 2017 Daniel Boulet
+ */
+
+package com.matilda.wikitree.api;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+
+/**
+ Access to the recorded WikiTree API server responses in {@code src/test/resources/fixtures}.
+ */
+
+public class WikiTreeTestFixtures {
+
+    public static final String[] ALL_FIXTURES = {
+            "getPerson-Churchill-4.json",
+            "getPerson-5589.json",
+            "getPerson-nonexistent.json",
+            "getProfile-Churchill-4.json",
+            "getProfile-Space-Allied_POW_camps.json",
+            "getBio-Churchill-4.json",
+            "getAncestors-Churchill-4-depth-3.json",
+            "getRelatives-5589-Hozier-1.json",
+            "getWatchlist.json",
+            "login-success.json"
+    };
+
+    private WikiTreeTestFixtures() {
+
+        super();
+
+    }
+
+    public static byte[] loadBytes( String fixtureName )
+            throws IOException {
+
+        try ( InputStream is = WikiTreeTestFixtures.class.getResourceAsStream( "/fixtures/" + fixtureName ) ) {
+
+            if ( is == null ) {
+
+                throw new IllegalArgumentException( "WikiTreeTestFixtures.loadBytes:  no fixture named \"" + fixtureName + "\"" );
+
+            }
+
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int count;
+            while ( ( count = is.read( buffer ) ) >= 0 ) {
+
+                baos.write( buffer, 0, count );
+
+            }
+
+            return baos.toByteArray();
+
+        }
+
+    }
+
+    public static String load( String fixtureName )
+            throws IOException {
+
+        return new String( loadBytes( fixtureName ), StandardCharsets.UTF_8 );
+
+    }
+
+    /**
+     A connection which 'receives' a canned response without going anywhere near the network.
+     */
+
+    public static class CannedConnection extends HttpURLConnection {
+
+        private final byte[] _body;
+
+        public CannedConnection( byte[] body )
+                throws IOException {
+
+            super( new URL( "http://localhost/api.php" ) );
+
+            _body = body;
+
+        }
+
+        @Override
+        public int getResponseCode() {
+
+            return HTTP_OK;
+
+        }
+
+        @Override
+        public InputStream getInputStream() {
+
+            return new ByteArrayInputStream( _body );
+
+        }
+
+        @Override
+        public void connect() {
+
+        }
+
+        @Override
+        public void disconnect() {
+
+        }
+
+        @Override
+        public boolean usingProxy() {
+
+            return false;
+
+        }
+
+    }
+
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright © 2017 Daniel Boulet
+ */
+
+package com.matilda.wikitree.api.jfr;
+
+import com.matilda.wikitree.api.WikiTreeTestFixtures;
+import com.matilda.wikitree.api.exceptions.ReallyBadNewsError;
+import com.matilda.wikitree.api.metrics.RequestTimings;
+import com.matilda.wikitree.api.util.WikiTreeApiUtilities;
+import com.matilda.wikitree.api.wrappers.WikiTreeAncestors;
+import com.matilda.wikitree.api.wrappers.WikiTreeId;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.junit.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class WikiTreeFlightRecorderTests {
+
+    @Test
+    public void spansDoNothingWhenNobodyIsRecording() {
+
+        assertTrue( WikiTreeFlightRecorder.isAvailable() );
+
+        WikiTreeFlightRecorder.Span span = WikiTreeFlightRecorder.begin( WikiTreeFlightRecorder.Operation.PARSE, "getPerson", "Churchill-4" );
+        assertFalse( span.isRecording() );
+        span.end( 1, 1 );
+
+    }
+
+    @Test
+    public void recordsResponsesAndTreeBuilding() throws Exception {
+
+        byte[] body = WikiTreeTestFixtures.loadBytes( "getAncestors-Churchill-4-depth-3.json" );
+
+        Path file = Files.createTempFile( "wikitree", ".jfr" );
+        try {
+
+            try ( Recording recording = new Recording() ) {
+
+                for ( String eventName : new String[]{ "ReadResponse", "Parse", "BuildAncestors" } ) {
+
+                    recording.enable( "com.matilda.wikitree." + eventName ).withoutThreshold();
+
+                }
+
+                recording.start();
+
+                RequestTimings timings = new RequestTimings( "getAncestors", "Churchill-4" );
+                JSONObject response = (JSONObject)WikiTreeApiUtilities.readResponse( new WikiTreeTestFixtures.CannedConnection( body ), true, timings );
+                new WikiTreeAncestors( new WikiTreeId( "Churchill-4" ), 3, response );
+
+                recording.stop();
+                recording.dump( file );
+
+            }
+
+            List<RecordedEvent> events = RecordingFile.readAllEvents( file );
+            Map<String, RecordedEvent> byName = new HashMap<>();
+            for ( RecordedEvent event : events ) {
+
+                byName.put( event.getEventType().getName(), event );
+
+            }
+
+            assertEquals( byName.keySet().toString(), 3, byName.size() );
+
+            int ancestorCount = WikiTreeFlightRecorder.countProfiles( WikiTreeApiUtilities.parseJsonArray( new String( body, "UTF-8" ) ) );
+            assertTrue( ancestorCount > 1 );
+
+            for ( String eventName : new String[]{ "ReadResponse", "Parse" } ) {
+
+                RecordedEvent event = byName.get( "com.matilda.wikitree." + eventName );
+                assertEquals( eventName, "getAncestors", event.getString( "action" ) );
+                assertEquals( eventName, "Churchill-4", event.getString( "key" ) );
+                assertEquals( eventName, body.length, event.getLong( "bytes" ) );
+                assertEquals( eventName, ancestorCount, event.getInt( "profileCount" ) );
+
+            }
+
+            RecordedEvent build = byName.get( "com.matilda.wikitree.BuildAncestors" );
+            assertEquals( "Churchill-4", build.getString( "key" ) );
+            assertEquals( ancestorCount, build.getInt( "profileCount" ) );
+
+        } finally {
+
+            Files.deleteIfExists( file );
+
+        }
+
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void failedTreeBuildsAreRecordedToo() throws Exception {
+
+        // A response which says neither who the ancestors belong to nor whose they are.
+
+        JSONObject response = new JSONObject();
+        response.put( "status", 0L );
+        response.put( "ancestors", new JSONArray() );
+
+        Path file = Files.createTempFile( "wikitree", ".jfr" );
+        try {
+
+            try ( Recording recording = new Recording() ) {
+
+                recording.enable( "com.matilda.wikitree.BuildAncestors" ).withoutThreshold();
+                recording.start();
+
+                try {
+
+                    new WikiTreeAncestors( new WikiTreeId( "Churchill-4" ), 3, response );
+                    fail( "the response doesn't say whose ancestors they are" );
+
+                } catch ( ReallyBadNewsError e ) {
+
+                    // Expected.
+
+                }
+
+                recording.stop();
+                recording.dump( file );
+
+            }
+
+            List<RecordedEvent> events = RecordingFile.readAllEvents( file );
+            assertEquals( 1, events.size() );
+            assertEquals( "Churchill-4", events.get( 0 ).getString( "key" ) );
+            assertEquals( -1, events.get( 0 ).getInt( "profileCount" ) );
+
+        } finally {
+
+            Files.deleteIfExists( file );
+
+        }
+
+    }
+
+}
@@ -0,0 +1,385 @@
+/*
+ * Copyright © 2017 Daniel Boulet
+ */
+
+package com.matilda.wikitree.api.json;
+
+import com.matilda.wikitree.api.WikiTreeTestFixtures;
+import com.matilda.wikitree.api.util.WikiTreeApiUtilities;
+import com.matilda.wikitree.api.wrappers.WikiTreeAncestors;
+import com.matilda.wikitree.api.wrappers.WikiTreeId;
+import com.matilda.wikitree.api.wrappers.WikiTreePersonProfile;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.ParseException;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import static org.junit.Assert.*;
+
+public class WikiTreeJsonCodecTests {
+
+    private final WikiTreeJsonCodec _jsonSimple = new JsonSimpleCodec();
+
+    private final WikiTreeJsonCodec _fast = new FastJsonCodec();
+
+    private final WikiTreeJsonCodec _lazy = new FastJsonCodec( true );
+
+    @Test
+    public void fastCodecMatchesJsonSimpleOnFixtures() throws Exception {
+
+        for ( String fixtureName : WikiTreeTestFixtures.ALL_FIXTURES ) {
+
+            String text = WikiTreeTestFixtures.load( fixtureName );
+
+            Object expected = _jsonSimple.parse( text );
+            assertEquals( fixtureName, expected, _fast.parse( text ) );
+            assertEquals( fixtureName, expected, _fast.parse( new StringReader( text ) ) );
+            assertEquals( fixtureName, expected, _lazy.parse( text ) );
+            assertEquals( fixtureName, expected, _lazy.parse( new StringReader( text ) ) );
+            assertEquals( fixtureName, expected, _jsonSimple.parse( _lazy.parse( text ).toString() ) );
+
+        }
+
+    }
+
+    @Test
+    public void fastCodecMatchesJsonSimpleOnEdgeCases() throws Exception {
+
+        String[] cases = {
+                "{}",
+                "[]",
+                "  [ 1 , -2 , 0 , 007, 9223372036854775807, -9223372036854775808 ]  ",
+                "[1.5, -0.25, 1e3, 2E-2, 6.02e+23]",
+                "[true, false, null]",
+                "{\"a\":\"\\\"quoted\\\" \\\\ \\/ \\b\\f\\n\\r\\t\",\"b\":\"\\u00e9t\\u00E9 \\u2014 ok\"}",
+                "{\"nested\":{\"deeper\":[{\"x\":[[]]}]},\"dup\":1,\"dup\":2}",
+                "\"just a string\"",
+                "42"
+        };
+
+        for ( String text : cases ) {
+
+            assertEquals( text, _jsonSimple.parse( text ), _fast.parse( text ) );
+            assertEquals( text, _jsonSimple.parse( text ), _lazy.parse( text ) );
+
+        }
+
+    }
+
+    @Test
+    public void fastCodecRejectsMalformedJson() {
+
+        // Note that json-simple is rather more forgiving than this about missing commas and colons.
+
+        String[] cases = { "", "{", "[1,", "[1 2]", "{\"a\" 1}", "{1:2}", "{\"a\":}", "tru", "[-]", "[1.]", "\"unterminated", "[1] x" };
+
+        for ( String text : cases ) {
+
+            assertParseFails( _fast, text );
+            assertParseFails( _lazy, "{\"k\":" + text + "}" );
+
+        }
+
+        assertParseFails( _lazy, "{\"k\":\"bad \\q escape\"}" );
+        assertParseFails( _lazy, "{\"k\":99999999999999999999}" );
+
+    }
+
+    @Test
+    public void byteOrderMarksAreSkippedByEveryEntryPoint() throws Exception {
+
+        String text = "\uFEFF{\"a\":[1,\"two\"]}";
+        Object expected = new JsonSimpleCodec().parse( text.substring( 1 ) );
+        for ( WikiTreeJsonCodec codec : new WikiTreeJsonCodec[]{ _fast, _lazy } ) {
+
+            assertEquals( expected, codec.parse( text ) );
+            assertEquals( expected, codec.parse( new StringReader( text ) ) );
+            assertEquals( expected, codec.parse( ByteBuffer.wrap( text.getBytes( StandardCharsets.UTF_8 ) ) ) );
+
+            // Only at the very start.
+
+            assertParseFails( codec, " " + text );
+
+        }
+
+    }
+
+    @Test
+    public void deeplyNestedInputDoesNotOverflowTheStack() throws Exception {
+
+        // Deep enough to blow the stack of a recursive parser (json-simple's parser isn't recursive).
+
+        int depth = 20_000;
+        String arrays = WikiTreeApiUtilities.repl( "[", depth ) + WikiTreeApiUtilities.repl( "]", depth );
+        String objects = WikiTreeApiUtilities.repl( "{\"a\":", depth ) + "\"leaf\"" + WikiTreeApiUtilities.repl( "}", depth );
+
+        assertEquals( depth, getNestingDepth( _jsonSimple.parse( arrays ) ) );
+        assertEquals( depth, getNestingDepth( _fast.parse( arrays ) ) );
+        assertEquals( depth, getNestingDepth( _fast.parse( objects ) ) );
+        assertEquals( depth, getNestingDepth( _lazy.parse( objects ) ) );
+        assertEquals( depth, getNestingDepth( _fast.parse( ByteBuffer.wrap( arrays.getBytes( StandardCharsets.UTF_8 ) ) ) ) );
+        assertEquals( depth, getNestingDepth( _fast.parse( ByteBuffer.wrap( objects.getBytes( StandardCharsets.UTF_8 ) ) ) ) );
+
+        assertParseFails( _fast, WikiTreeApiUtilities.repl( "[", depth ) );
+        assertParseFails( _lazy, objects + "}" );
+
+        // The parser is still fine afterwards.
+
+        assertEquals( _jsonSimple.parse( "{\"a\":[1,{\"b\":[]}]}" ), _fast.parse( "{\"a\":[1,{\"b\":[]}]}" ) );
+
+    }
+
+    @Test
+    public void reusedPerThreadParsersDoNotLeakStateBetweenParses() throws Exception {
+
+        // Make something big enough to force the per-thread buffers to grow past what they're allowed to keep.
+
+        StringBuilder sb = new StringBuilder( "[" );
+        for ( int i = 0; i < 40000; i += 1 ) {
+
+            sb.append( i == 0 ? "" : "," ).append( "{\"Id\":" ).append( i ).append( ",\"Name\":\"Escaped\\\\Name-" ).append( i ).append( "\"}" );
+
+        }
+
+        String huge = sb.append( "]" ).toString();
+
+        for ( int round = 0; round < 3; round += 1 ) {
+
+            for ( String fixtureName : WikiTreeTestFixtures.ALL_FIXTURES ) {
+
+                String text = WikiTreeTestFixtures.load( fixtureName );
+                assertEquals( fixtureName, _jsonSimple.parse( text ), _fast.parse( text ) );
+
+            }
+
+            assertEquals( _jsonSimple.parse( huge ), _fast.parse( new StringReader( huge ) ) );
+
+            // A failed parse must not poison the next one.
+
+            assertParseFails( _fast, "{\"Id\":" );
+            assertParseFails( _jsonSimple, "{\"Id\":" );
+
+        }
+
+    }
+
+    @Test
+    public void byteBuffersParseLikeStrings() throws Exception {
+
+        for ( String fixtureName : WikiTreeTestFixtures.ALL_FIXTURES ) {
+
+            byte[] bytes = WikiTreeTestFixtures.loadBytes( fixtureName );
+            Object expected = _jsonSimple.parse( new String( bytes, StandardCharsets.UTF_8 ) );
+
+            // A heap buffer, a direct buffer and a buffer whose position isn't zero.
+
+            ByteBuffer direct = ByteBuffer.allocateDirect( bytes.length );
+            direct.put( bytes ).flip();
+            byte[] padded = new byte[bytes.length + 3];
+            System.arraycopy( bytes, 0, padded, 2, bytes.length );
+            ByteBuffer offset = ByteBuffer.wrap( padded, 2, bytes.length );
+
+            for ( WikiTreeJsonCodec codec : new WikiTreeJsonCodec[]{ _jsonSimple, _fast, _lazy } ) {
+
+                for ( ByteBuffer buffer : new ByteBuffer[]{ ByteBuffer.wrap( bytes ), direct, offset } ) {
+
+                    int position = buffer.position();
+                    assertEquals( fixtureName + " via " + codec.getName(), expected, codec.parse( buffer ) );
+                    assertEquals( position, buffer.position() );
+
+                }
+
+            }
+
+        }
+
+        String nonAscii = "{\"Name\":\"M\u00fcller-1\",\"Bio\":\"\u65e5\u672c \ud83d\ude00 caf\\u00e9\\n\",\"Id\":-7,\"x\":[1.5e3]}";
+        Object expected = _jsonSimple.parse( nonAscii );
+        byte[] utf8 = nonAscii.getBytes( StandardCharsets.UTF_8 );
+        assertEquals( expected, _fast.parse( ByteBuffer.wrap( utf8 ) ) );
+        assertEquals( expected, _lazy.parse( ByteBuffer.wrap( utf8 ) ) );
+
+        byte[] withBom = new byte[utf8.length + 3];
+        withBom[0] = (byte)0xEF;
+        withBom[1] = (byte)0xBB;
+        withBom[2] = (byte)0xBF;
+        System.arraycopy( utf8, 0, withBom, 3, utf8.length );
+        assertEquals( expected, _fast.parse( ByteBuffer.wrap( withBom ) ) );
+        assertEquals( expected, _lazy.parse( ByteBuffer.wrap( withBom ) ) );
+
+        // Malformed UTF-8 (bad continuation, overlong, encoded surrogate, truncated) is rejected rather than replaced.
+
+        byte[][] malformed = {
+                { '"', (byte)0xC3, '(', '"' },
+                { '"', (byte)0xC0, (byte)0x80, '"' },
+                { '"', (byte)0xED, (byte)0xA0, (byte)0x80, '"' },
+                { '"', (byte)0xE6, (byte)0x97 }
+        };
+
+        for ( byte[] bytes : malformed ) {
+
+            try {
+
+                Object result = _fast.parse( ByteBuffer.wrap( bytes ) );
+                fail( "accepted malformed UTF-8 as " + result );
+
+            } catch ( ParseException e ) {
+
+                // Just what we wanted.
+
+            }
+
+        }
+
+        File file = File.createTempFile( "WikiTreeJsonCodecTests", ".json" );
+        try {
+
+            Files.write( file.toPath(), WikiTreeTestFixtures.loadBytes( "getWatchlist.json" ) );
+            assertEquals( _jsonSimple.parse( WikiTreeTestFixtures.load( "getWatchlist.json" ) ), WikiTreeApiUtilities.parseJsonFile( file ) );
+
+        } finally {
+
+            //noinspection ResultOfMethodCallIgnored
+            file.delete();
+
+        }
+
+    }
+
+    @Test
+    public void knownKeysAreCanonicalInstances() throws Exception {
+
+        String text = WikiTreeTestFixtures.load( "getAncestors-Churchill-4-depth-3.json" );
+        String canonicalName = WikiTreeJsonKeys.canonical( "Name" );
+        assertTrue( WikiTreeJsonKeys.S_ALL_KEYS.contains( "ShortName" ) );
+
+        for ( WikiTreeJsonCodec codec : new WikiTreeJsonCodec[]{ _jsonSimple, _fast } ) {
+
+            JSONArray ancestors = (JSONArray)( (JSONObject)( (JSONArray)codec.parse( text ) ).get( 0 ) ).get( "ancestors" );
+            assertTrue( codec.getName(), ancestors.size() > 1 );
+            for ( Object ancestor : ancestors ) {
+
+                for ( Object key : ( (JSONObject)ancestor ).keySet() ) {
+
+                    if ( "Name".equals( key ) ) {
+
+                        assertSame( codec.getName(), canonicalName, key );
+
+                    }
+
+                }
+
+            }
+
+            // Escaped known keys and unknown keys come out right too.
+
+            JSONObject obj = (JSONObject)codec.parse( "{\"\\u004eame\":1,\"NotAWikiTreeKey\":2}" );
+            assertSame( codec.getName(), canonicalName, obj.keySet().stream().filter( "Name"::equals ).findFirst().orElse( null ) );
+            assertEquals( codec.getName(), 2L, obj.get( "NotAWikiTreeKey" ) );
+
+        }
+
+    }
+
+    @Test
+    public void lazyObjectsDecodeOnDemand() throws Exception {
+
+        JSONObject obj = (JSONObject)_lazy.parse( "{\"s\":\"tab\\there\",\"n\":-12,\"d\":2.5e1,\"b\":true,\"a\":[1,\"x\"]}" );
+        assertTrue( obj instanceof LazyJSONObject );
+
+        assertEquals( "tab\there", obj.get( "s" ) );
+        assertEquals( -12L, obj.get( "n" ) );
+        assertEquals( 25.0, obj.getOrDefault( "d", null ) );
+        assertEquals( Boolean.TRUE, obj.get( "b" ) );
+
+        // Nothing that comes out of a lazy object is ever undecoded.
+
+        assertEquals( -12L, obj.put( "n", 1L ) );
+        assertEquals( 25.0, obj.remove( "d" ) );
+        for ( Object value : obj.values() ) {
+
+            assertFalse( String.valueOf( value ), value instanceof LazyJsonValue );
+
+        }
+
+        // Copies (including wrappers) keep their values undecoded but decode them just the same.
+
+        JSONArray person = (JSONArray)_lazy.parse( WikiTreeTestFixtures.load( "getPerson-Churchill-4.json" ) );
+        JSONObject personObject = (JSONObject)( (JSONObject)person.get( 0 ) ).get( "person" );
+        LazyJSONObject copy = new LazyJSONObject( personObject );
+        assertEquals( personObject, copy );
+        assertEquals( 5589L, copy.get( "Id" ) );
+
+    }
+
+    @Test
+    public void wrappersWorkWithFastCodecOutput() throws Exception {
+
+        for ( WikiTreeJsonCodec codec : new WikiTreeJsonCodec[]{ _fast, _lazy } ) {
+
+            JSONArray person = (JSONArray)codec.parse( WikiTreeTestFixtures.load( "getPerson-Churchill-4.json" ) );
+            WikiTreePersonProfile churchill = new WikiTreePersonProfile( null, (JSONObject)person.get( 0 ), "person" );
+            assertEquals( codec.getName(), 5589L, churchill.getPersonId() );
+            assertEquals( codec.getName(), "Churchill-2", churchill.getBiologicalFather().getWikiTreeId().getValueString() );
+            assertEquals( codec.getName(), 5, churchill.getChildren().size() );
+
+        }
+
+        JSONArray ancestors = (JSONArray)_fast.parse( WikiTreeTestFixtures.load( "getAncestors-Churchill-4-depth-3.json" ) );
+        WikiTreeAncestors tree = new WikiTreeAncestors( new WikiTreeId( "Churchill-4" ), 3, (JSONObject)ancestors.get( 0 ) );
+        assertEquals(
+                "Spencer-Churchill-2",
+                tree.getBasePersonProfile().getBiologicalFather().getBiologicalFather().getBiologicalFather().getWikiTreeId().getValueString()
+        );
+
+    }
+
+    /**
+     Follow the first member of nested arrays or the {@code a} member of nested objects down to the bottom
+     (without recursing since {@code equals} and friends would overflow the stack on something this deep).
+     */
+
+    private static int getNestingDepth( Object value ) {
+
+        int depth = 0;
+        while ( value instanceof JSONArray || value instanceof JSONObject ) {
+
+            depth += 1;
+            if ( value instanceof JSONArray ) {
+
+                value = ( (JSONArray)value ).isEmpty() ? null : ( (JSONArray)value ).get( 0 );
+
+            } else {
+
+                value = ( (JSONObject)value ).get( "a" );
+
+            }
+
+        }
+
+        return depth;
+
+    }
+
+    private static void assertParseFails( WikiTreeJsonCodec codec, String text ) {
+
+        try {
+
+            Object result = codec.parse( text );
+            fail( codec.getName() + " accepted \"" + text + "\" as " + result );
+
+        } catch ( ParseException e ) {
+
+            // Just what we wanted.
+
+        }
+
+    }
+
+}
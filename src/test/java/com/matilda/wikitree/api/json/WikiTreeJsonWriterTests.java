@@ -0,0 +1,108 @@
+/*
+ * Copyright © 2017 Daniel Boulet
+ */
+
+package com.matilda.wikitree.api.json;
+
+import com.matilda.wikitree.api.WikiTreeTestFixtures;
+import com.matilda.wikitree.api.wrappers.WikiTreePersonProfile;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.json.simple.JSONValue;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.*;
+
+public class WikiTreeJsonWriterTests {
+
+    private final WikiTreeJsonCodec _jsonSimple = new JsonSimpleCodec();
+
+    private final WikiTreeJsonCodec _lazy = new FastJsonCodec( true );
+
+    @Test
+    public void matchesJsonSimpleOutputExactly() throws Exception {
+
+        for ( String fixtureName : WikiTreeTestFixtures.ALL_FIXTURES ) {
+
+            Object value = _jsonSimple.parse( WikiTreeTestFixtures.load( fixtureName ) );
+            assertEquals( fixtureName, JSONValue.toJSONString( value ), WikiTreeJsonWriter.toJsonString( value ) );
+            assertEquals( fixtureName, JSONValue.toJSONString( value ), viaOutputStream( value ) );
+
+        }
+
+        JSONArray awkward = new JSONArray();
+        awkward.add( "quote\" backslash\\ slash/ \b\f\n\r\t \u0000\u001f\u007f\u009f\u00a0 \u2028\u20ff\u2100 \ud83d\ude00 caf\u00e9 \u65e5" );
+        awkward.add( Long.MIN_VALUE );
+        awkward.add( Long.MAX_VALUE );
+        awkward.add( 0L );
+        awkward.add( -42 );
+        awkward.add( 1.5e300 );
+        awkward.add( Double.NaN );
+        awkward.add( Float.POSITIVE_INFINITY );
+        awkward.add( 2.5f );
+        awkward.add( null );
+        awkward.add( Boolean.FALSE );
+        awkward.add( new JSONObject() );
+        awkward.add( new JSONArray() );
+
+        assertEquals( JSONValue.toJSONString( awkward ), WikiTreeJsonWriter.toJsonString( awkward ) );
+        assertEquals( JSONValue.toJSONString( awkward ), viaOutputStream( awkward ) );
+
+    }
+
+    @Test
+    public void writesLazyObjectsAndWrappersWithoutDecodingThem() throws Exception {
+
+        for ( String fixtureName : WikiTreeTestFixtures.ALL_FIXTURES ) {
+
+            String text = WikiTreeTestFixtures.load( fixtureName );
+            Object expected = _jsonSimple.parse( text );
+
+            assertEquals( fixtureName, expected, _jsonSimple.parse( WikiTreeJsonWriter.toJsonString( _lazy.parse( text ) ) ) );
+            assertEquals( fixtureName, expected, _jsonSimple.parse( viaOutputStream( _lazy.parse( text ) ) ) );
+
+        }
+
+        JSONArray person = (JSONArray)_lazy.parse( WikiTreeTestFixtures.load( "getPerson-Churchill-4.json" ) );
+        WikiTreePersonProfile churchill = new WikiTreePersonProfile( null, (JSONObject)person.get( 0 ), "person" );
+        assertEquals( churchill, _jsonSimple.parse( WikiTreeJsonWriter.toJsonString( churchill ) ) );
+
+    }
+
+    @Test
+    public void handlesOutputBiggerThanTheBuffer() throws Exception {
+
+        // Lots of multi-byte characters so that some of them straddle buffer boundaries.
+
+        JSONArray people = new JSONArray();
+        for ( int i = 0; i < 20000; i += 1 ) {
+
+            JSONObject person = new JSONObject();
+            person.put( "Id", (long)i );
+            person.put( "Name", "M\u00fcller-" + i );
+            person.put( "Bio", "\ud83d\ude00 \u65e5\u672c \"" + i + "\"" );
+            people.add( person );
+
+        }
+
+        String expected = JSONValue.toJSONString( people );
+        assertEquals( expected, WikiTreeJsonWriter.toJsonString( people ) );
+        assertEquals( expected, viaOutputStream( people ) );
+
+    }
+
+    private static String viaOutputStream( Object value ) throws Exception {
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        WikiTreeJsonWriter jsonWriter = new WikiTreeJsonWriter( baos );
+        jsonWriter.write( value );
+        jsonWriter.flush();
+
+        return new String( baos.toByteArray(), StandardCharsets.UTF_8 );
+
+    }
+
+}
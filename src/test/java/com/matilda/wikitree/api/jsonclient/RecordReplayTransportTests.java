@@ -0,0 +1,187 @@
+/*
+ * Copyright © 2017 Daniel Boulet
+ */
+
+package com.matilda.wikitree.api.jsonclient;
+
+import com.matilda.wikitree.api.WikiTreeTestFixtures;
+import com.matilda.wikitree.api.exceptions.ReallyBadNewsError;
+import com.matilda.wikitree.api.server.InMemoryWikiTreeDataset;
+import com.matilda.wikitree.api.server.WikiTreeApiStandInServer;
+import com.matilda.wikitree.api.server.WikiTreeDataset;
+import com.matilda.wikitree.api.server.WikiTreeStandInServerRule;
+import com.matilda.wikitree.api.util.WikiTreeApiUtilities;
+import com.matilda.wikitree.api.wrappers.WikiTreeId;
+import org.json.simple.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.zip.ZipFile;
+
+import static org.junit.Assert.*;
+
+public class RecordReplayTransportTests {
+
+    @Rule
+    public final WikiTreeStandInServerRule<InMemoryWikiTreeDataset> _standIn = new WikiTreeStandInServerRule<>( RecordReplayTransportTests::createDataset );
+
+    private WikiTreeApiStandInServer _server;
+
+    private File _archive;
+
+    private static InMemoryWikiTreeDataset createDataset() throws Exception {
+
+        InMemoryWikiTreeDataset dataset = new InMemoryWikiTreeDataset();
+        JSONObject response = (JSONObject)WikiTreeApiUtilities.parseJsonArray(
+                new String( WikiTreeTestFixtures.loadBytes( "getPerson-Churchill-4.json" ), StandardCharsets.UTF_8 )
+        ).get( 0 );
+        dataset.addPersonAndRelatives( (JSONObject)response.get( "person" ) );
+        dataset.addAccount( new WikiTreeDataset.Account( "example@example.com", "s3cret-pw", 3636, "Example-1", Collections.singletonList( 5589L ) ) );
+
+        return dataset;
+
+    }
+
+    @Before
+    public void createArchive() throws Exception {
+
+        _server = _standIn.getServer();
+        _archive = File.createTempFile( "wikitree-traffic", ".zip" );
+
+    }
+
+    @After
+    public void deleteArchive() throws Exception {
+
+        Files.deleteIfExists( _archive.toPath() );
+
+    }
+
+    @Test
+    public void replaysWhatWasRecordedWithoutTheNetwork() throws Exception {
+
+        _server.setLatency( 40, 40 );
+
+        WikiTreeApiJsonSession recordingSession = new WikiTreeApiJsonSession( _server.getBaseUrlString() );
+        JSONObject churchill;
+        JSONObject watchlist;
+        try ( RecordReplayTransport recorder = new RecordReplayTransport( WikiTreeTransport.DEFAULT, _archive ) ) {
+
+            assertSame( WikiTreeTransport.DEFAULT, recordingSession.setTransport( recorder ) );
+            churchill = recordingSession.getPerson( new WikiTreeId( "Churchill-4" ) ).get();
+            assertTrue( recordingSession.login( "example@example.com", "s3cret-pw" ) );
+            watchlist = recordingSession.getWatchlist( null, null, null, null, null, null, null, null ).get();
+            assertEquals( 3, recorder.getExchangeCount() );
+
+        }
+
+        // Nothing secret made it into the archive.
+
+        try ( ZipFile zip = new ZipFile( _archive ) ) {
+
+            assertEquals( 6, zip.size() );
+
+        }
+
+        String archiveText = new String( Files.readAllBytes( _archive.toPath() ), StandardCharsets.ISO_8859_1 );
+        assertFalse( archiveText.contains( "s3cret" ) );
+        assertFalse( archiveText.contains( "example%40example.com" ) );
+
+        long requestsSoFar = _server.getRequestCount();
+        _server.stop();
+
+        // Replay it at memory speed (against a made up server).
+
+        WikiTreeApiJsonSession replayingSession = new WikiTreeApiJsonSession( "http://replay.invalid/api.php" );
+        RecordReplayTransport replayer = new RecordReplayTransport( _archive, false );
+        replayingSession.setTransport( replayer );
+        assertEquals( 3, replayer.getExchangeCount() );
+
+        long start = System.nanoTime();
+        assertEquals( churchill, replayingSession.getPerson( new WikiTreeId( "Churchill-4" ) ).get() );
+        assertTrue( System.nanoTime() - start < 40_000_000L );
+
+        assertTrue( replayingSession.login( "somebody@example.com", "whatever" ) );
+        assertEquals( "Example-1", replayingSession.getAuthenticatedWikiTreeId() );
+        assertEquals( watchlist, replayingSession.getWatchlist( null, null, null, null, null, null, null, null ).get() );
+
+        try {
+
+            replayingSession.getPerson( new WikiTreeId( "Hozier-1" ) );
+            fail( "nothing was recorded for Hozier-1" );
+
+        } catch ( IOException e ) {
+
+            assertTrue( e.getMessage(), e.getMessage().contains( "no response for GET /api.php?" ) );
+
+        }
+
+        // Replay it again with the recorded latency.
+
+        replayingSession.setTransport( new RecordReplayTransport( _archive, true ) );
+        start = System.nanoTime();
+        replayingSession.getPerson( new WikiTreeId( "Churchill-4" ) );
+        assertTrue( System.nanoTime() - start >= 40_000_000L );
+
+        assertEquals( requestsSoFar, _server.getRequestCount() );
+
+    }
+
+    @Test
+    public void postsAndErrorResponsesAreRecordedToo() throws Exception {
+
+        WikiTreeApiJsonSession recordingSession = new WikiTreeApiJsonSession( _server.getBaseUrlString() );
+        WikiTreeRequest posted = new WikiTreeRequest.GetPerson( "Churchill-4", "Id,Name,Gender" );
+        WikiTreeRequest refused = new WikiTreeRequest.GetPerson( "Churchill-4", WikiTreeApiUtilities.repl( "Name,", 40 ) + "Id" );
+        JSONObject churchill;
+        try ( RecordReplayTransport recorder = new RecordReplayTransport( WikiTreeTransport.DEFAULT, _archive ) ) {
+
+            recordingSession.setTransport( recorder );
+
+            // A POST (its body is part of what identifies the exchange).
+
+            recordingSession.setPostThreshold( 10 );
+            churchill = recordingSession.request( posted ).get();
+
+            // A URL which is too long for the server (the session doesn't read the body of an error response).
+
+            recordingSession.setPostThreshold( Integer.MAX_VALUE );
+            _server.setMaxUrlLength( 100 );
+            assertRefused( recordingSession, refused );
+
+            assertEquals( 2, recorder.getExchangeCount() );
+
+        }
+
+        WikiTreeApiJsonSession replayingSession = new WikiTreeApiJsonSession( "http://replay.invalid/api.php" );
+        replayingSession.setTransport( new RecordReplayTransport( _archive, false ) );
+        replayingSession.setPostThreshold( 10 );
+        assertEquals( churchill, replayingSession.request( posted ).get() );
+        replayingSession.setPostThreshold( Integer.MAX_VALUE );
+        assertRefused( replayingSession, refused );
+
+    }
+
+    private static void assertRefused( WikiTreeApiJsonSession session, WikiTreeRequest request ) throws Exception {
+
+        try {
+
+            session.request( request );
+            fail( "the server should have refused " + request );
+
+        } catch ( ReallyBadNewsError e ) {
+
+            assertTrue( e.getMessage(), e.getMessage().contains( "414" ) );
+
+        }
+
+    }
+
+}
@@ -0,0 +1,241 @@
+/*
+ * Copyright © 2017 Daniel Boulet
+ */
+
+package com.matilda.wikitree.api.jsonclient;
+
+import com.matilda.wikitree.api.server.SyntheticWikiTreeDataset;
+import com.matilda.wikitree.api.server.WikiTreeApiStandInServer;
+import com.matilda.wikitree.api.server.WikiTreeDataset;
+import com.matilda.wikitree.api.server.WikiTreeStandInServerRule;
+import org.json.simple.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.*;
+
+public class WikiTreeCredentialStoreTests {
+
+    private static final String EMAIL = "example@example.com";
+
+    private static final String PASSWORD = "s3cret-pw";
+
+    @Rule
+    public final WikiTreeStandInServerRule<SyntheticWikiTreeDataset> _standIn = WikiTreeStandInServerRule.synthetic( 1_000 );
+
+    private WikiTreeApiStandInServer _server;
+
+    private File _file;
+
+    @Before
+    public void setUp() throws Exception {
+
+        SyntheticWikiTreeDataset dataset = _standIn.getDataset();
+        dataset.addAccount( new WikiTreeDataset.Account( EMAIL, PASSWORD, 1, (String)dataset.getPerson( 1 ).get( "Name" ), Arrays.asList( 2L, 3L ) ) );
+        _server = _standIn.getServer();
+
+        _file = new File( Files.createTempDirectory( "wikitree-credentials" ).toFile(), "credentials" );
+
+    }
+
+    @After
+    public void deleteFile() throws Exception {
+
+        Files.deleteIfExists( _file.toPath() );
+        Files.deleteIfExists( _file.getParentFile().toPath() );
+
+    }
+
+    @Test
+    public void warmStartsSkipTheLoginRequest() throws Exception {
+
+        WikiTreeApiJsonSession cold = new WikiTreeApiJsonSession( _server.getBaseUrlString() );
+        cold.setCredentialStore( new WikiTreeCredentialStore( _file ) );
+        assertTrue( cold.login( EMAIL, PASSWORD ) );
+        assertEquals( 1, _server.getLoginCount() );
+        assertTrue( _file.isFile() );
+
+        // The cookies are in there but nobody can see them.
+
+        String cookie = cold.getCredentials().getCookies().get( 0 ).split( "[=;]" )[1];
+        assertFalse( new String( Files.readAllBytes( _file.toPath() ), StandardCharsets.ISO_8859_1 ).contains( cookie ) );
+
+        WikiTreeCredentialStore store = new WikiTreeCredentialStore( _file );
+        assertFalse( store.load( EMAIL, "wrong" ).isPresent() );
+        assertFalse( store.load( "somebody@example.com", PASSWORD ).isPresent() );
+
+        WikiTreeApiJsonSession warm = new WikiTreeApiJsonSession( _server.getBaseUrlString() );
+        warm.setCredentialStore( store );
+        assertTrue( warm.login( EMAIL, PASSWORD ) );
+        assertEquals( 1, _server.getLoginCount() );
+        assertEquals( cold.getCredentials().getCookieHeader(), warm.getCredentials().getCookieHeader() );
+        assertEquals( cold.getAuthenticatedWikiTreeId(), warm.getAuthenticatedWikiTreeId() );
+        assertEquals( 2, ( (List)warm.getWatchlist( null, null, null, null, null, null, null, null ).get().get( "watchlist" ) ).size() );
+
+        // A wrong password isn't vouched for by the store so it goes to the server (which refuses it).
+
+        WikiTreeApiJsonSession wrong = new WikiTreeApiJsonSession( _server.getBaseUrlString() );
+        wrong.setCredentialStore( store );
+        assertFalse( wrong.login( EMAIL, "wrong" ) );
+
+        assertTrue( store.delete() );
+        assertFalse( store.load( EMAIL, PASSWORD ).isPresent() );
+
+    }
+
+    @Test
+    public void savedLoginsHaveAFiniteLifetime() throws Exception {
+
+        WikiTreeApiJsonSession session = new WikiTreeApiJsonSession( _server.getBaseUrlString() );
+        assertNull( session.getCredentialStore() );
+        session.setCredentialStore( new WikiTreeCredentialStore( _file, 2_000 ) );
+        assertTrue( session.login( EMAIL, PASSWORD ) );
+
+        // The stand-in server's cookies last as long as the session does (the deletion cookie that comes with them doesn't count)
+        // but the saved copy doesn't last forever. Deriving the store's key takes a while so the lifetime leaves room for that.
+
+        assertEquals( Long.MAX_VALUE, session.getCredentials().getExpiresAtMillis() );
+        long now = System.currentTimeMillis();
+        WikiTreeCredentials saved = new WikiTreeCredentialStore( _file ).load( EMAIL, PASSWORD ).get();
+        assertTrue( saved.getExpiresAtMillis() <= now + 2_000 );
+
+        // A store with a shorter lifetime applies its own.
+
+        Thread.sleep( 10 );
+        assertFalse( new WikiTreeCredentialStore( _file, 5 ).load( EMAIL, PASSWORD ).isPresent() );
+
+        Thread.sleep( Math.max( 0, saved.getExpiresAtMillis() - System.currentTimeMillis() + 10 ) );
+        assertFalse( new WikiTreeCredentialStore( _file ).load( EMAIL, PASSWORD ).isPresent() );
+
+    }
+
+    @Test
+    public void privacyRefusalsAreNotExpiredLogins() throws Exception {
+
+        _server.setPrivateBiosRefused( true );
+        List<WikiTreeRequest> refused = new ArrayList<>();
+        SyntheticWikiTreeDataset dataset = _standIn.getDataset();
+        for ( long id = dataset.getPersonCount(); refused.size() < 5; id -= 1 ) {
+
+            JSONObject profile = dataset.getPerson( id );
+            if ( (Long)profile.get( "Privacy" ) < WikiTreeApiStandInServer.PUBLIC_PRIVACY_LEVEL ) {
+
+                refused.add( new WikiTreeRequest.GetBio( (String)profile.get( "Name" ) ) );
+
+            }
+
+        }
+
+        // A fresh login is trusted so the refusals are taken at their word (no logins, no checks and nothing saved).
+
+        WikiTreeApiJsonSession session = new WikiTreeApiJsonSession( _server.getBaseUrlString() );
+        session.setCredentialStore( new WikiTreeCredentialStore( _file ) );
+        assertTrue( session.login( EMAIL, PASSWORD ) );
+        long requestsSoFar = _server.getRequestCount();
+        long modified = _file.lastModified();
+        for ( WikiTreeRequest request : refused ) {
+
+            assertEquals( "Permission denied.", session.request( request ).get().get( "status" ) );
+
+        }
+
+        assertEquals( requestsSoFar + refused.size(), _server.getRequestCount() );
+        assertEquals( 0, session.getReLoginCount() );
+        assertEquals( 1, _server.getLoginCount() );
+        assertEquals( modified, _file.lastModified() );
+
+        // A login from the store hasn't been shown to work yet so the first refusal is checked (once).
+
+        WikiTreeApiJsonSession warm = new WikiTreeApiJsonSession( _server.getBaseUrlString() );
+        warm.setCredentialStore( new WikiTreeCredentialStore( _file ) );
+        assertTrue( warm.login( EMAIL, PASSWORD ) );
+        requestsSoFar = _server.getRequestCount();
+        for ( WikiTreeRequest request : refused ) {
+
+            assertEquals( "Permission denied.", warm.request( request ).get().get( "status" ) );
+
+        }
+
+        assertEquals( requestsSoFar + refused.size() + 1, _server.getRequestCount() );
+        assertEquals( 0, warm.getReLoginCount() );
+        assertEquals( 1, _server.getLoginCount() );
+
+    }
+
+    @Test
+    public void expiredLoginsAreRenewedOnce() throws Exception {
+
+        WikiTreeApiJsonSession session = new WikiTreeApiJsonSession( _server.getBaseUrlString() );
+        session.setCredentialStore( new WikiTreeCredentialStore( _file ) );
+        assertTrue( session.login( EMAIL, PASSWORD ) );
+        WikiTreeCredentials original = session.getCredentials();
+
+        _server.expireLogins();
+        _server.setLatency( 50, 50 );
+
+        int threadCount = 8;
+        ExecutorService executor = Executors.newFixedThreadPool( threadCount );
+        try {
+
+            CountDownLatch go = new CountDownLatch( 1 );
+            List<Future<JSONObject>> watchlists = new ArrayList<>();
+            for ( int i = 0; i < threadCount; i += 1 ) {
+
+                watchlists.add( executor.submit( () -> {
+
+                    go.await();
+
+                    return session.getWatchlist( null, null, null, null, null, null, null, null ).get();
+
+                } ) );
+
+            }
+
+            go.countDown();
+            for ( Future<JSONObject> watchlist : watchlists ) {
+
+                assertEquals( 0L, watchlist.get().get( "status" ) );
+
+            }
+
+        } finally {
+
+            executor.shutdownNow();
+
+        }
+
+        assertEquals( 1, session.getReLoginCount() );
+        assertEquals( 2, _server.getLoginCount() );
+        assertNotSame( original, session.getCredentials() );
+        assertTrue( session.isAuthenticated() );
+
+        // The renewed login was saved for next time.
+
+        assertEquals(
+                session.getCredentials().getCookieHeader(),
+                new WikiTreeCredentialStore( _file ).load( EMAIL, PASSWORD ).get().getCookieHeader()
+        );
+
+        // Without automatic re-login, an expired login just gets refused.
+
+        session.setAutomaticReLogin( false );
+        _server.expireLogins();
+        assertEquals( "Permission denied.", session.getWatchlist( null, null, null, null, null, null, null, null ).get().get( "status" ) );
+        assertEquals( 1, session.getReLoginCount() );
+
+    }
+
+}
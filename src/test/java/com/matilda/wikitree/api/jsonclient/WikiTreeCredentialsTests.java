@@ -0,0 +1,146 @@
+/*
+ * Copyright © 2017 Daniel Boulet
+ */
+
+package com.matilda.wikitree.api.jsonclient;
+
+import com.matilda.wikitree.api.exceptions.ReallyBadNewsError;
+import com.matilda.wikitree.api.server.SyntheticWikiTreeDataset;
+import com.matilda.wikitree.api.server.WikiTreeApiStandInServer;
+import com.matilda.wikitree.api.server.WikiTreeDataset;
+import com.matilda.wikitree.api.server.WikiTreeStandInServerRule;
+import com.matilda.wikitree.api.util.WikiTreeApiUtilities;
+import com.matilda.wikitree.api.wrappers.WikiTreeId;
+import org.json.simple.JSONObject;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class WikiTreeCredentialsTests {
+
+    @Rule
+    public final WikiTreeStandInServerRule<SyntheticWikiTreeDataset> _standIn = WikiTreeStandInServerRule.synthetic( 1_000 );
+
+    @Test
+    public void loginResultsBecomeSnapshots() throws Exception {
+
+        assertFalse( WikiTreeCredentials.ANONYMOUS.isAuthenticated() );
+        assertNull( WikiTreeCredentials.ANONYMOUS.getCookieHeader() );
+
+        JSONObject success = (JSONObject)WikiTreeApiUtilities.parseJsonArray(
+                "[{\"login\":{\"result\":\"Success\",\"userid\":3636,\"username\":\"Example-1\"}}]"
+        ).get( 0 );
+        WikiTreeCredentials credentials = WikiTreeCredentials.fromLoginResult(
+                "example@example.com",
+                success,
+                Arrays.asList( "a=1; path=/; HttpOnly", "b=2" )
+        );
+        assertTrue( credentials.isAuthenticated() );
+        assertEquals( "Example-1", credentials.getWikiTreeId() );
+        assertEquals( "example@example.com", credentials.getEmailAddress() );
+        assertEquals( "a=1; b=2", credentials.getCookieHeader() );
+        assertEquals( "Success", credentials.getLoginResultStatus() );
+        assertFalse( credentials.isExpired() );
+        assertEquals( Long.MAX_VALUE, credentials.getExpiresAtMillis() );
+
+        long before = System.currentTimeMillis();
+        WikiTreeCredentials shortLived = WikiTreeCredentials.fromLoginResult( "example@example.com", success, Arrays.asList( "a=1; Max-Age=3600", "b=2; Max-Age=7200" ) );
+        assertFalse( shortLived.isExpired() );
+        assertTrue( shortLived.getExpiresAtMillis() >= before + 3_600_000L );
+        assertTrue( shortLived.getExpiresAtMillis() <= System.currentTimeMillis() + 3_600_000L );
+
+        // Cookies that the server is deleting aren't part of the login so they don't make it expire right away.
+
+        WikiTreeCredentials withDeletions = WikiTreeCredentials.fromLoginResult(
+                "example@example.com",
+                success,
+                Arrays.asList( "a=1; path=/; HttpOnly", "x=deleted; expires=Thu, 01-Jan-1970 00:00:01 GMT; path=/", "y=gone; Max-Age=0" )
+        );
+        assertFalse( withDeletions.isExpired() );
+        assertEquals( Long.MAX_VALUE, withDeletions.getExpiresAtMillis() );
+
+        try {
+
+            credentials.getCookies().clear();
+            fail( "snapshots are immutable" );
+
+        } catch ( UnsupportedOperationException e ) {
+
+            // Expected.
+
+        }
+
+        try {
+
+            WikiTreeCredentials.fromLoginResult( "example@example.com", success, Collections.emptyList() );
+            fail( "a successful login without cookies makes no sense" );
+
+        } catch ( ReallyBadNewsError e ) {
+
+            // Expected.
+
+        }
+
+        JSONObject wrongPass = (JSONObject)WikiTreeApiUtilities.parseJsonArray( "[{\"login\":{\"result\":\"WrongPass\"}}]" ).get( 0 );
+        WikiTreeCredentials refused = WikiTreeCredentials.fromLoginResult( "example@example.com", wrongPass, Collections.singletonList( "a=1" ) );
+        assertFalse( refused.isAuthenticated() );
+        assertNull( refused.getEmailAddress() );
+        assertEquals( "WrongPass", refused.getLoginResultStatus() );
+
+    }
+
+    @Test
+    public void requestsDoNotWaitForLogins() throws Exception {
+
+        SyntheticWikiTreeDataset dataset = _standIn.getDataset();
+        dataset.addAccount( new WikiTreeDataset.Account( "example@example.com", "s3cret-pw", 1, (String)dataset.getPerson( 1 ).get( "Name" ), Collections.singletonList( 2L ) ) );
+        WikiTreeApiStandInServer server = _standIn.getServer();
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+
+            WikiTreeApiJsonSession session = new WikiTreeApiJsonSession( server.getBaseUrlString() );
+            assertSame( WikiTreeCredentials.ANONYMOUS, session.getCredentials() );
+
+            assertFalse( session.login( "example@example.com", "wrong" ) );
+            assertEquals( "WrongPass", session.getLoginResultStatus() );
+            assertFalse( session.isAuthenticated() );
+
+            assertTrue( session.login( "example@example.com", "s3cret-pw" ) );
+            WikiTreeCredentials credentials = session.getCredentials();
+            assertEquals( dataset.getPerson( 1 ).get( "Name" ), credentials.getWikiTreeId() );
+            assertEquals( credentials.getWikiTreeId(), session.getAuthenticatedWikiTreeId() );
+
+            // A slow login must not hold up a request made by another thread while it is in flight.
+
+            server.setLatency( 500, 500 );
+            Future<Boolean> slowLogin = executor.submit( () -> session.login( "example@example.com", "s3cret-pw" ) );
+            Thread.sleep( 100 );
+
+            server.setLatency( 0, 0 );
+            long start = System.nanoTime();
+            assertTrue( session.getPerson( new WikiTreeId( (String)dataset.getPerson( 2 ).get( "Name" ) ) ).isPresent() );
+            assertTrue( System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos( 300 ) );
+            assertSame( credentials, session.getCredentials() );
+
+            assertTrue( slowLogin.get() );
+            assertNotSame( credentials, session.getCredentials() );
+            assertTrue( session.isAuthenticated() );
+
+        } finally {
+
+            executor.shutdownNow();
+
+        }
+
+    }
+
+}
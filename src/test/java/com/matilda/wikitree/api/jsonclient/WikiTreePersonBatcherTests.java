@@ -0,0 +1,130 @@
+/*
+ * Copyright © 2017 Daniel Boulet
+ */
+
+package com.matilda.wikitree.api.jsonclient;
+
+import com.matilda.wikitree.api.server.SyntheticWikiTreeDataset;
+import com.matilda.wikitree.api.server.WikiTreeApiStandInServer;
+import com.matilda.wikitree.api.server.WikiTreeStandInServerRule;
+import org.json.simple.JSONObject;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.*;
+
+public class WikiTreePersonBatcherTests {
+
+    @Rule
+    public final WikiTreeStandInServerRule<SyntheticWikiTreeDataset> _standIn = WikiTreeStandInServerRule.synthetic( 1_000 );
+
+    @Test
+    public void concurrentLookupsShareRequests() throws Exception {
+
+        SyntheticWikiTreeDataset dataset = _standIn.getDataset();
+        WikiTreeApiStandInServer server = _standIn.getServer();
+
+        int lookups = 40;
+        ExecutorService executor = Executors.newFixedThreadPool( lookups );
+        try {
+
+            List<String> keys = new ArrayList<>();
+            for ( long id = 1; id < lookups; id += 1 ) {
+
+                keys.add( id % 2 == 0 ? String.valueOf( id ) : (String)dataset.getPerson( id ).get( "Name" ) );
+
+            }
+
+            keys.add( "Nobody-1" );
+
+            // What unbatched requests get back.
+
+            WikiTreeApiJsonSession plain = new WikiTreeApiJsonSession( server.getBaseUrlString() );
+            List<Optional<JSONObject>> expected = new ArrayList<>();
+            for ( String key : keys ) {
+
+                expected.add( plain.getPerson( key, "*" ) );
+
+            }
+
+            WikiTreeApiJsonSession batching = new WikiTreeApiJsonSession( server.getBaseUrlString() );
+            assertEquals( 0, batching.setBatchWindowMillis( 200 ) );
+            assertEquals( WikiTreeApiJsonSession.DEFAULT_MAX_BATCH_SIZE, batching.setMaxBatchSize( 25 ) );
+            assertEquals( 200, batching.getBatchWindowMillis() );
+
+            long requestsSoFar = server.getRequestCount();
+            CountDownLatch start = new CountDownLatch( 1 );
+            List<Future<Optional<JSONObject>>> futures = new ArrayList<>();
+            for ( String key : keys ) {
+
+                futures.add( executor.submit( () -> {
+
+                    start.await();
+
+                    return batching.getPerson( key, "*" );
+
+                } ) );
+
+            }
+
+            start.countDown();
+            for ( int i = 0; i < keys.size(); i += 1 ) {
+
+                assertEquals( keys.get( i ), expected.get( i ), futures.get( i ).get() );
+
+            }
+
+            // Two batches (25 lookups fill one up) plus the lookup for the profile that doesn't exist, done on its own.
+
+            assertEquals( 2, batching.getBatchCount() );
+            assertEquals( lookups, batching.getBatchedLookupCount() );
+            assertEquals( requestsSoFar + 3, server.getRequestCount() );
+
+            // Spaces in the fields parameter don't lose any relatives.
+
+            for ( String fields : new String[]{ "Name, Parents", " Id , Name ,Children, Spouses ", "Name, *" } ) {
+
+                List<Future<Optional<JSONObject>>> spaced = new ArrayList<>();
+                for ( int i = 0; i < 3; i += 1 ) {
+
+                    String key = keys.get( i );
+                    spaced.add( executor.submit( () -> batching.getPerson( key, fields ) ) );
+
+                }
+
+                for ( int i = 0; i < 3; i += 1 ) {
+
+                    assertEquals( fields, plain.getPerson( keys.get( i ), fields ), spaced.get( i ).get() );
+
+                }
+
+            }
+
+            assertTrue( batching.getBatchCount() > 2 );
+
+            // Lookups which can't be turned back into getPerson responses aren't batched.
+
+            long batchesSoFar = batching.getBatchCount();
+            assertEquals( plain.getPerson( keys.get( 0 ), "Id,Gender" ), batching.getPerson( keys.get( 0 ), "Id,Gender" ) );
+            assertEquals( batchesSoFar, batching.getBatchCount() );
+
+            assertEquals( 200, batching.setBatchWindowMillis( 0 ) );
+            assertEquals( 0, batching.getBatchCount() );
+
+        } finally {
+
+            executor.shutdownNow();
+
+        }
+
+    }
+
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright © 2017 Daniel Boulet
+ */
+
+package com.matilda.wikitree.api.jsonclient;
+
+import com.matilda.wikitree.api.server.SyntheticWikiTreeDataset;
+import com.matilda.wikitree.api.server.WikiTreeApiStandInServer;
+import com.matilda.wikitree.api.server.WikiTreeStandInServerRule;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class WikiTreePersonCacheTests {
+
+    private static final String BASIC_FIELDS = "Id,Name,Derived.ShortName,LastNameAtBirth,Gender,BirthDate,DeathDate,BirthDateDecade,DeathDateDecade";
+
+    @Rule
+    public final WikiTreeStandInServerRule<SyntheticWikiTreeDataset> _standIn = WikiTreeStandInServerRule.synthetic( 1_000 );
+
+    @Test
+    public void fieldSubsetsAreMerged() throws Exception {
+
+        SyntheticWikiTreeDataset dataset = _standIn.getDataset();
+        WikiTreeApiStandInServer server = _standIn.getServer();
+
+        WikiTreeApiJsonSession plain = new WikiTreeApiJsonSession( server.getBaseUrlString() );
+
+        WikiTreePersonCache cache = new WikiTreePersonCache( 1000, 60_000 );
+        WikiTreeApiJsonSession session = new WikiTreeApiJsonSession( server.getBaseUrlString() );
+        assertNull( session.setPersonCache( cache ) );
+        List<String> urls = new ArrayList<>();
+        session.setTransport( url -> {
+
+            urls.add( url.toString() );
+
+            return WikiTreeTransport.DEFAULT.openConnection( url );
+
+        } );
+
+        String name = (String)dataset.getPerson( 5 ).get( "Name" );
+
+        // A miss fetches what was asked for.
+
+        assertEquals( plain.getPerson( name, BASIC_FIELDS ), session.getPerson( name, BASIC_FIELDS ) );
+        assertEquals( 1, urls.size() );
+        assertEquals( 1, cache.getMissCount() );
+
+        // The same fields (or fewer) for the same person (found by the Person.Id this time) need no request.
+
+        assertEquals( plain.getPerson( "5", BASIC_FIELDS ), session.getPerson( "5", BASIC_FIELDS ) );
+        assertEquals( plain.getPerson( name, "Gender,Name" ), session.getPerson( name, "Gender,Name" ) );
+        assertEquals( 1, urls.size() );
+        assertEquals( 2, cache.getHitCount() );
+
+        // More fields fetch only the missing ones (plus the identity fields).
+
+        assertEquals(
+                plain.getPerson( name, "Id,Name,BirthLocation,Parents" ),
+                session.getPerson( name, "Id,Name,BirthLocation,Parents" )
+        );
+        assertEquals( 2, urls.size() );
+        assertEquals( new WikiTreeRequest.GetPerson( name, "BirthLocation,Id,Name,Parents" ).getQueryString(), urls.get( 1 ).substring( server.getBaseUrlString().length() ) );
+        assertEquals( 1, cache.getPartialHitCount() );
+
+        // Everything replaces the record, after which any subset is a hit.
+
+        assertEquals( plain.getPerson( name, "*" ), session.getPerson( name, "*" ) );
+        assertEquals( plain.getPerson( "5", "*" ), session.getPerson( "5", "*" ) );
+        assertEquals( plain.getPerson( name, "Spouses,Photo,Derived.LongNamePrivate" ), session.getPerson( name, "Spouses,Photo,Derived.LongNamePrivate" ) );
+        assertEquals( 3, urls.size() );
+
+        // Failures aren't remembered and unknown fields bypass the cache.
+
+        assertEquals( plain.getPerson( "Nobody-1", BASIC_FIELDS ), session.getPerson( "Nobody-1", BASIC_FIELDS ) );
+        assertEquals( plain.getPerson( "Nobody-1", BASIC_FIELDS ), session.getPerson( "Nobody-1", BASIC_FIELDS ) );
+        assertEquals( plain.getPerson( name, "Id,Touched" ), session.getPerson( name, "Id,Touched" ) );
+        assertEquals( 6, urls.size() );
+
+        cache.invalidate( WikiTreeResponseCache.ANONYMOUS_SCOPE );
+        assertEquals( 0, cache.size() );
+
+    }
+
+    @Test
+    public void embeddedProfilesAreRemembered() throws Exception {
+
+        SyntheticWikiTreeDataset dataset = _standIn.getDataset();
+        WikiTreeApiStandInServer server = _standIn.getServer();
+
+        WikiTreeApiJsonSession plain = new WikiTreeApiJsonSession( server.getBaseUrlString() );
+
+        WikiTreePersonCache cache = new WikiTreePersonCache( 1000, 60_000 );
+        WikiTreeApiJsonSession session = new WikiTreeApiJsonSession( server.getBaseUrlString() );
+        session.setPersonCache( cache );
+        List<String> urls = new ArrayList<>();
+        session.setTransport( url -> {
+
+            urls.add( url.toString() );
+
+            return WikiTreeTransport.DEFAULT.openConnection( url );
+
+        } );
+
+        // Find someone with a father and a grandfather whose profiles are public
+        // (the private fields in a private profile don't count as fetched so asking for them means a request).
+
+        long personId = dataset.getPersonCount();
+        while ( !hasPublicFatherAndGrandfather( dataset, personId ) ) {
+
+            personId -= 1;
+
+        }
+
+        String fatherId = String.valueOf( dataset.getPerson( personId ).get( "Father" ) );
+        String grandfatherId = String.valueOf( dataset.getPerson( Long.parseLong( fatherId ) ).get( "Father" ) );
+
+        // The relatives in a getPerson response are remembered with the fields that they came with.
+
+        assertTrue( session.getPerson( String.valueOf( personId ), "*" ).isPresent() );
+        assertTrue( cache.getSeededCount() > 1 );
+        assertEquals( plain.getPerson( fatherId, BASIC_FIELDS ), session.getPerson( fatherId, BASIC_FIELDS ) );
+        assertEquals( 1, urls.size() );
+
+        // They didn't come with their own relatives so those have to be fetched.
+
+        assertEquals( plain.getPerson( fatherId, "Id,Name,Parents" ), session.getPerson( fatherId, "Id,Name,Parents" ) );
+        assertEquals( 2, urls.size() );
+
+        // As are the profiles in other responses (that one brought the grandfather along too, so clear the cache first).
+
+        cache.clear();
+        assertTrue( session.request( new WikiTreeRequest.GetAncestors( String.valueOf( personId ), 2 ) ).isPresent() );
+        assertEquals( plain.getPerson( grandfatherId, BASIC_FIELDS ), session.getPerson( grandfatherId, BASIC_FIELDS ) );
+        assertEquals( 3, urls.size() );
+
+    }
+
+    private static boolean hasPublicFatherAndGrandfather( SyntheticWikiTreeDataset dataset, long personId ) {
+
+        long ancestorId = personId;
+        for ( int generation = 0; generation < 2; generation += 1 ) {
+
+            ancestorId = (Long)dataset.getPerson( ancestorId ).get( "Father" );
+            if ( ancestorId == 0 || (Long)dataset.getPerson( ancestorId ).get( "Privacy" ) < WikiTreeApiStandInServer.PUBLIC_PRIVACY_LEVEL ) {
+
+                return false;
+
+            }
+
+        }
+
+        return true;
+
+    }
+
+}
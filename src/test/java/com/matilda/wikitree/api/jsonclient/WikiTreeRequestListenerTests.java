@@ -0,0 +1,193 @@
+/*
+ * Copyright © 2017 Daniel Boulet
+ */
+
+package com.matilda.wikitree.api.jsonclient;
+
+import com.matilda.wikitree.api.WikiTreeTestFixtures;
+import com.matilda.wikitree.api.exceptions.ReallyBadNewsError;
+import com.matilda.wikitree.api.metrics.RequestPhase;
+import com.matilda.wikitree.api.metrics.RequestTimings;
+import com.matilda.wikitree.api.server.InMemoryWikiTreeDataset;
+import com.matilda.wikitree.api.server.WikiTreeStandInServerRule;
+import com.matilda.wikitree.api.util.WikiTreeApiUtilities;
+import com.matilda.wikitree.api.wrappers.WikiTreeId;
+import org.json.simple.JSONObject;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class WikiTreeRequestListenerTests {
+
+    @Rule
+    public final WikiTreeStandInServerRule<InMemoryWikiTreeDataset> _standIn = new WikiTreeStandInServerRule<>( WikiTreeRequestListenerTests::createDataset );
+
+    private final List<URL> _urls = new ArrayList<>();
+
+    private WikiTreeApiJsonSession _session;
+
+    private static InMemoryWikiTreeDataset createDataset() throws Exception {
+
+        InMemoryWikiTreeDataset dataset = new InMemoryWikiTreeDataset();
+        JSONObject response = (JSONObject)WikiTreeApiUtilities.parseJsonArray(
+                new String( WikiTreeTestFixtures.loadBytes( "getPerson-Churchill-4.json" ), StandardCharsets.UTF_8 )
+        ).get( 0 );
+        dataset.addPersonAndRelatives( (JSONObject)response.get( "person" ) );
+
+        return dataset;
+
+    }
+
+    @Before
+    public void createSession() {
+
+        _session = new WikiTreeApiJsonSession( _standIn.getBaseUrlString() );
+        _session.setTransport( url -> {
+
+            _urls.add( url );
+
+            return WikiTreeTransport.DEFAULT.openConnection( url );
+
+        } );
+
+    }
+
+    @Test
+    public void listenersHearAboutEachStep() throws Exception {
+
+        RecordingListener listener = new RecordingListener();
+        _session.addRequestListener( listener );
+        _session.addRequestListener( new WikiTreeRequestListener() {
+
+            @Override
+            public void onRequestStart( RequestTimings timings ) {
+
+                throw new IllegalStateException( "badly behaved listeners don't break requests" );
+
+            }
+
+        } );
+
+        assertTrue( _session.getPerson( new WikiTreeId( "Churchill-4" ) ).isPresent() );
+
+        assertEquals( "[start getPerson Churchill-4, headers 200, parsed, complete]", listener._events.toString() );
+        RequestTimings timings = listener._timings;
+        assertEquals( 1, _urls.size() );
+        assertEquals( getResponseLength( _urls.get( 0 ) ), timings.getResponseBytes() );
+        for ( RequestPhase phase : new RequestPhase[]{ RequestPhase.CONNECT, RequestPhase.FIRST_BYTE, RequestPhase.DOWNLOAD, RequestPhase.PARSE } ) {
+
+            assertTrue( phase.toString(), timings.getPhaseNanos( phase ) >= 0 );
+
+        }
+
+        assertTrue( timings.getTotalNanos() > 0 );
+        assertEquals( 1, _session.getMetrics().getRequestCount() );
+
+        assertTrue( _session.removeRequestListener( listener ) );
+        assertFalse( _session.removeRequestListener( listener ) );
+        _session.getPerson( new WikiTreeId( "Churchill-4" ) );
+        assertEquals( 4, listener._events.size() );
+
+    }
+
+    @Test
+    public void listenersHearAboutFailures() throws Exception {
+
+        _standIn.getServer().setMaxUrlLength( 20 );
+
+        RecordingListener listener = new RecordingListener();
+        _session.addRequestListener( listener );
+
+        try {
+
+            _session.getPerson( new WikiTreeId( "Churchill-4" ) );
+            fail( "the server should have refused the request" );
+
+        } catch ( ReallyBadNewsError e ) {
+
+            assertEquals( "[start getPerson Churchill-4, headers 414, parsed, error ReallyBadNewsError, complete]", listener._events.toString() );
+
+        }
+
+    }
+
+    /**
+     Find out how long the response to a request is without involving a session.
+     */
+
+    private static long getResponseLength( URL url ) throws Exception {
+
+        HttpURLConnection connection = WikiTreeTransport.DEFAULT.openConnection( url );
+        try ( InputStream in = connection.getInputStream() ) {
+
+            long rval = 0;
+            byte[] buffer = new byte[8192];
+            for ( int count = in.read( buffer ); count >= 0; count = in.read( buffer ) ) {
+
+                rval += count;
+
+            }
+
+            return rval;
+
+        }
+
+    }
+
+    private static class RecordingListener implements WikiTreeRequestListener {
+
+        private final List<String> _events = new ArrayList<>();
+
+        private RequestTimings _timings;
+
+        @Override
+        public void onRequestStart( RequestTimings timings ) {
+
+            _timings = timings;
+            _events.add( "start " + timings.getAction() + " " + timings.getKey() );
+
+        }
+
+        @Override
+        public void onResponseHeaders( RequestTimings timings, int httpResponseCode, Map<String, List<String>> headers ) {
+
+            assertSame( _timings, timings );
+            _events.add( "headers " + httpResponseCode );
+
+        }
+
+        @Override
+        public void onParsed( RequestTimings timings, Object response ) {
+
+            assertNotNull( response );
+            _events.add( "parsed" );
+
+        }
+
+        @Override
+        public void onError( RequestTimings timings, Exception e ) {
+
+            _events.add( "error " + e.getClass().getSimpleName() );
+
+        }
+
+        @Override
+        public void onComplete( RequestTimings timings ) {
+
+            _events.add( "complete" );
+
+        }
+
+    }
+
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright © 2017 Daniel Boulet
+ */
+
+package com.matilda.wikitree.api.jsonclient;
+
+import com.matilda.wikitree.api.exceptions.ReallyBadNewsError;
+import com.matilda.wikitree.api.server.SyntheticWikiTreeDataset;
+import com.matilda.wikitree.api.server.WikiTreeApiStandInServer;
+import com.matilda.wikitree.api.server.WikiTreeStandInServerRule;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.util.Optional;
+import java.util.StringJoiner;
+
+import static org.junit.Assert.*;
+
+public class WikiTreeRequestTests {
+
+    @Rule
+    public final WikiTreeStandInServerRule<SyntheticWikiTreeDataset> _standIn = WikiTreeStandInServerRule.synthetic( 1_000 );
+
+    @Test
+    public void identicalRequestsAreEqual() {
+
+        WikiTreeRequest a = new WikiTreeRequest.GetPerson( "Churchill-4", "Id,Name" );
+        WikiTreeRequest b = new WikiTreeRequest.GetPerson( "Churchill-4", "Id,Name" );
+        assertEquals( a, b );
+        assertEquals( a.hashCode(), b.hashCode() );
+        assertEquals( "?action=getPerson&fields=Id%2CName&format=json&key=Churchill-4", a.getQueryString() );
+        assertEquals( "getPerson", a.getAction() );
+        assertEquals( "Churchill-4", a.getKey() );
+        assertEquals( "Id,Name", a.getParameter( "fields" ) );
+
+        assertNotEquals( a, new WikiTreeRequest.GetPerson( "Churchill-4", "Id" ) );
+        assertNotEquals( a, new WikiTreeRequest.GetBio( "Churchill-4" ) );
+
+        // Parameters which aren't given are left out rather than sent empty.
+
+        assertEquals( "?action=getAncestors&format=json&key=5589", new WikiTreeRequest.GetAncestors( "5589", null ).getQueryString() );
+        assertEquals( "?action=getAncestors&depth=3&format=json&key=5589", new WikiTreeRequest.GetAncestors( "5589", 3 ).getQueryString() );
+        assertEquals(
+                "?action=getWatchlist&format=json&getPerson=1&getSpace=0&limit=10",
+                new WikiTreeRequest.GetWatchlist( true, false, false, null, null, 10, null, null ).getQueryString()
+        );
+        assertEquals(
+                "?action=getRelatives&format=json&getChildren=0&getParents=1&getSiblings=0&getSpouses=1&keys=5589%2CHozier-1",
+                new WikiTreeRequest.GetRelatives( "5589,Hozier-1", true, false, true, false ).getQueryString()
+        );
+
+    }
+
+    @Test
+    public void loginRequestsKeepTheirSecrets() {
+
+        WikiTreeRequest.Login login = new WikiTreeRequest.Login( "example@example.com", "s3cret pw" );
+        assertTrue( login.isSecret() );
+        assertTrue( login.getQueryString().contains( "password=s3cret+pw" ) );
+        assertFalse( login.toString().contains( "s3cret" ) );
+        assertFalse( login.toString().contains( "example@example.com" ) );
+        assertEquals( "email=REDACTED&format=json&password=REDACTED", WikiTreeRequest.redact( "email=a%40b.c&format=json&password=x" ) );
+
+        try {
+
+            new WikiTreeResponseCache( 10, 1000 ).put( WikiTreeResponseCache.ANONYMOUS_SCOPE, login, new JSONObject() );
+            fail( "login responses must never be cached" );
+
+        } catch ( IllegalArgumentException e ) {
+
+            // Expected.
+
+        }
+
+        try {
+
+            new WikiTreeApiJsonSession( "http://localhost:1/api.php" ).request( login );
+            fail( "logins have to go through login()" );
+
+        } catch ( IllegalArgumentException e ) {
+
+            // Expected.
+
+        } catch ( Exception e ) {
+
+            fail( "no request should have been sent - " + e );
+
+        }
+
+    }
+
+    @Test
+    public void longRequestsArePosted() throws Exception {
+
+        SyntheticWikiTreeDataset dataset = _standIn.getDataset();
+        WikiTreeApiStandInServer server = _standIn.getServer();
+
+        server.setMaxUrlLength( 2048 );
+
+        StringJoiner keys = new StringJoiner( "," );
+        for ( long id = 1; id <= 400; id += 1 ) {
+
+            keys.add( (String)dataset.getPerson( id ).get( "Name" ) );
+
+        }
+
+        WikiTreeRequest request = new WikiTreeRequest.GetRelatives( keys.toString(), true, false, false, false );
+        assertTrue( request.getQueryString().length() > 2048 );
+
+        WikiTreeApiJsonSession session = new WikiTreeApiJsonSession( server.getBaseUrlString() );
+        assertEquals( WikiTreeApiJsonSession.DEFAULT_POST_THRESHOLD, session.getPostThreshold() );
+        Optional<JSONObject> response = session.request( request );
+        assertTrue( response.isPresent() );
+        assertEquals( 400, ( (JSONArray)response.get().get( "items" ) ).size() );
+
+        // Short requests still go as GETs (the server would accept them either way so look at what the transport was asked to do).
+
+        session.setTransport( url -> {
+
+            assertEquals( server.getBaseUrlString() + "?action=getBio&format=json&key=" + dataset.getPerson( 1 ).get( "Name" ), url.toString() );
+
+            return WikiTreeTransport.DEFAULT.openConnection( url );
+
+        } );
+        assertTrue( session.request( new WikiTreeRequest.GetBio( (String)dataset.getPerson( 1 ).get( "Name" ) ) ).isPresent() );
+
+        // Without POSTs, the server refuses the long request.
+
+        session.setTransport( WikiTreeTransport.DEFAULT );
+        assertEquals( WikiTreeApiJsonSession.DEFAULT_POST_THRESHOLD, session.setPostThreshold( Integer.MAX_VALUE ) );
+        try {
+
+            session.request( request );
+            fail( "the URL is too long" );
+
+        } catch ( ReallyBadNewsError e ) {
+
+            // Expected.
+
+        }
+
+    }
+
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright © 2017 Daniel Boulet
+ */
+
+package com.matilda.wikitree.api.load;
+
+import com.matilda.wikitree.api.server.SyntheticWikiTreeDataset;
+import com.matilda.wikitree.api.server.WikiTreeApiStandInServer;
+import com.matilda.wikitree.api.server.WikiTreeStandInServerRule;
+import com.matilda.wikitree.api.wrappers.WikiTreeId;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class WikiTreeLoadGeneratorTests {
+
+    @Rule
+    public final WikiTreeStandInServerRule<SyntheticWikiTreeDataset> _standIn = WikiTreeStandInServerRule.synthetic( 2_000 );
+
+    @Test
+    public void stepsThroughThreadCountsAgainstTheStandInServer() throws Exception {
+
+        SyntheticWikiTreeDataset dataset = _standIn.getDataset();
+        WikiTreeApiStandInServer server = _standIn.getServer();
+
+        List<WikiTreeId> keys = new ArrayList<>();
+        for ( long id = 1; id <= dataset.getPersonCount(); id += 97 ) {
+
+            keys.add( new WikiTreeId( (String)dataset.getPerson( id ).get( "Name" ) ) );
+
+        }
+
+        WikiTreeLoadGenerator generator = new WikiTreeLoadGenerator( server.getBaseUrlString(), keys );
+        generator.setWeight( WikiTreeLoadGenerator.Action.GET_RELATIVES, 1 );
+        generator.setWeight( WikiTreeLoadGenerator.Action.GET_WATCHLIST, 1 );
+        generator.setThreadCounts( 1, 2 );
+        generator.setWarmupMillis( 100 );
+        generator.setMeasureMillis( 300 );
+
+        try {
+
+            generator.run();
+            fail( "getWatchlist without credentials should be refused" );
+
+        } catch ( IllegalStateException e ) {
+
+            // Expected.
+
+        }
+
+        assertEquals( 1, generator.setWeight( WikiTreeLoadGenerator.Action.GET_WATCHLIST, 0 ) );
+
+        List<WikiTreeLoadGenerator.Result> results = generator.run();
+        assertEquals( 2, results.size() );
+        for ( int i = 0; i < results.size(); i += 1 ) {
+
+            WikiTreeLoadGenerator.Result result = results.get( i );
+            assertEquals( i + 1, result.getThreadCount() );
+            assertTrue( result.toString(), result.getRequests() > 0 );
+            assertEquals( result.toString(), 0, result.getErrors() );
+            assertTrue( result.getThroughput() > 0 );
+            assertEquals( result.getRequests(), result.getLatencies().getCount() );
+            assertTrue( result.getLatencies().getP50Nanos() <= result.getLatencies().getMaxNanos() );
+
+        }
+
+        assertTrue( server.getRequestCount() > 0 );
+
+    }
+
+}
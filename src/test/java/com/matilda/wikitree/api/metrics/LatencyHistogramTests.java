@@ -0,0 +1,117 @@
+/*
+ * Copyright © 2017 Daniel Boulet
+ */
+
+package com.matilda.wikitree.api.metrics;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.*;
+
+public class LatencyHistogramTests {
+
+    @Test
+    public void bucketsCoverEveryValue() {
+
+        long[] values = { 0, 1, 31, 32, 33, 63, 64, 65, 1000, 999_999, 1_000_000_000L, Long.MAX_VALUE - 1, Long.MAX_VALUE };
+        for ( long value : values ) {
+
+            int index = LatencyHistogram.bucketIndex( value );
+            assertTrue( value + " above its bucket", value <= LatencyHistogram.bucketUpperBound( index ) );
+            assertTrue( value + " below its bucket", index == 0 || value > LatencyHistogram.bucketUpperBound( index - 1 ) );
+
+        }
+
+        // Adjacent buckets must not overlap or leave gaps.
+
+        for ( int index = 1; index < LatencyHistogram.bucketIndex( Long.MAX_VALUE ); index += 1 ) {
+
+            assertEquals( index, LatencyHistogram.bucketIndex( LatencyHistogram.bucketUpperBound( index - 1 ) + 1 ) );
+
+        }
+
+    }
+
+    @Test
+    public void percentilesAreWithinThePrecision() {
+
+        LatencyHistogram histogram = new LatencyHistogram();
+        for ( long ms = 1; ms <= 1000; ms += 1 ) {
+
+            histogram.record( ms * 1_000_000L );
+
+        }
+
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        assertEquals( 1000, snapshot.getCount() );
+        assertEquals( 500.5e6, snapshot.getMeanNanos(), 1 );
+        assertEquals( 1000_000_000L, snapshot.getMaxNanos() );
+        assertNear( 500e6, snapshot.getP50Nanos() );
+        assertNear( 990e6, snapshot.getP99Nanos() );
+        assertNear( 999e6, snapshot.getP999Nanos() );
+        assertEquals( 1000_000_000L, snapshot.getPercentileNanos( 100 ) );
+
+        assertEquals( 0, new LatencyHistogram().snapshot().getP99Nanos() );
+
+    }
+
+    @Test
+    public void concurrentRecordingLosesNothing() throws Exception {
+
+        WikiTreeRequestMetrics metrics = new WikiTreeRequestMetrics();
+        int threadCount = 8;
+        int perThread = 50_000;
+        CountDownLatch start = new CountDownLatch( 1 );
+        List<Thread> threads = new ArrayList<>();
+        for ( int t = 0; t < threadCount; t += 1 ) {
+
+            String action = t % 2 == 0 ? "getPerson" : "getAncestors";
+            Thread thread = new Thread( () -> {
+
+                try {
+
+                    start.await();
+
+                } catch ( InterruptedException e ) {
+
+                    return;
+
+                }
+
+                for ( int i = 0; i < perThread; i += 1 ) {
+
+                    metrics.record( action, i );
+
+                }
+
+            } );
+            thread.start();
+            threads.add( thread );
+
+        }
+
+        start.countDown();
+        for ( Thread thread : threads ) {
+
+            thread.join();
+
+        }
+
+        assertEquals( threadCount * perThread, metrics.getAllRequests().getCount() );
+        assertEquals( threadCount * perThread / 2, metrics.snapshotByAction().get( "getPerson" ).getCount() );
+        assertEquals( threadCount * perThread / 2, metrics.snapshotByAction().get( "getAncestors" ).getCount() );
+        assertEquals( perThread - 1, metrics.getAllRequests().snapshot().getMaxNanos() );
+
+    }
+
+    private static void assertNear( double expected, long actual ) {
+
+        assertTrue( "expected " + expected + " got " + actual, Math.abs( actual - expected ) <= expected / LatencyHistogram.SUB_BUCKETS );
+
+    }
+
+}
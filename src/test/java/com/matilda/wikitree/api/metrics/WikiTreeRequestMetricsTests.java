@@ -0,0 +1,85 @@
+/*
+ * Copyright © 2017 Daniel Boulet
+ */
+
+package com.matilda.wikitree.api.metrics;
+
+import com.matilda.wikitree.api.WikiTreeTestFixtures;
+import com.matilda.wikitree.api.jsonclient.WikiTreeApiJsonSession;
+import com.matilda.wikitree.api.util.WikiTreeApiUtilities;
+import org.json.simple.JSONObject;
+import org.junit.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+
+import static org.junit.Assert.*;
+
+public class WikiTreeRequestMetricsTests {
+
+    @Test
+    public void readResponseRecordsPhasesAndBytes() throws Exception {
+
+        byte[] body = WikiTreeTestFixtures.loadBytes( "getPerson-Churchill-4.json" );
+
+        RequestTimings timings = new RequestTimings( "getPerson" );
+        Object response = WikiTreeApiUtilities.readResponse( new WikiTreeTestFixtures.CannedConnection( body ), true, timings );
+        timings.complete();
+
+        assertTrue( response instanceof JSONObject );
+        assertEquals( body.length, timings.getResponseBytes() );
+        assertTrue( timings.getPhaseNanos( RequestPhase.FIRST_BYTE ) >= 0 );
+        assertTrue( timings.getPhaseNanos( RequestPhase.DOWNLOAD ) >= 0 );
+        assertTrue( timings.getPhaseNanos( RequestPhase.PARSE ) >= 0 );
+        assertEquals( -1, timings.getPhaseNanos( RequestPhase.CONNECT ) );
+        assertEquals( -1, timings.getPhaseNanos( RequestPhase.WRAP ) );
+        assertTrue( timings.getTotalNanos() >= timings.getPhaseNanos( RequestPhase.PARSE ) );
+
+        WikiTreeRequestMetrics parent = new WikiTreeRequestMetrics();
+        WikiTreeRequestMetrics child = new WikiTreeRequestMetrics( parent );
+        child.record( timings );
+        child.recordPhase( RequestPhase.WRAP, 1000 );
+
+        for ( WikiTreeRequestMetrics metrics : new WikiTreeRequestMetrics[]{ child, parent } ) {
+
+            assertEquals( 1, metrics.getRequestCount() );
+            assertEquals( body.length, metrics.getResponseBytes() );
+            assertEquals( 1, metrics.getHistogram( "getPerson" ).getCount() );
+            assertEquals( 1, metrics.getHistogram( RequestPhase.PARSE ).getCount() );
+            assertEquals( 0, metrics.getHistogram( RequestPhase.CONNECT ).getCount() );
+            assertEquals( 1, metrics.getHistogram( RequestPhase.WRAP ).getCount() );
+
+        }
+
+    }
+
+    @Test
+    public void sessionMetricsAreVisibleViaJmx() throws Exception {
+
+        WikiTreeApiJsonSession session = new WikiTreeApiJsonSession();
+        session.getMetrics().record( "getAncestors", 2_000_000L );
+
+        ObjectName name = session.registerMetricsMBean();
+        assertSame( name, session.registerMetricsMBean() );
+
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+
+            assertEquals( 1L, server.getAttribute( name, "RequestCount" ) );
+            assertEquals( 2.0, (Double)server.getAttribute( name, "P99Millis" ), 2.0 / LatencyHistogram.SUB_BUCKETS );
+            String[] summaries = (String[])server.getAttribute( name, "ActionSummaries" );
+            assertEquals( 1, summaries.length );
+            assertTrue( summaries[0], summaries[0].startsWith( "getAncestors:  count=1" ) );
+
+        } finally {
+
+            session.unregisterMetricsMBean();
+
+        }
+
+        assertFalse( server.isRegistered( name ) );
+
+    }
+
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright © 2017 Daniel Boulet
+ */
+
+package com.matilda.wikitree.api.server;
+
+import com.matilda.wikitree.api.jsonclient.WikiTreeApiJsonSession;
+import com.matilda.wikitree.api.wrappers.WikiTreeAncestors;
+import com.matilda.wikitree.api.wrappers.WikiTreeApiWrappersSession;
+import com.matilda.wikitree.api.wrappers.WikiTreeId;
+import com.matilda.wikitree.api.wrappers.WikiTreePersonProfile;
+import org.json.simple.JSONObject;
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class SyntheticWikiTreeDatasetTests {
+
+    private static SyntheticWikiTreeDataset generate( long seed ) {
+
+        SyntheticWikiTreeDataset.Parameters parameters = new SyntheticWikiTreeDataset.Parameters();
+        parameters.setSeed( seed );
+        parameters.setPersonCount( 20_000 );
+
+        return new SyntheticWikiTreeDataset( parameters );
+
+    }
+
+    @Test
+    public void populationsAreRepeatableAndConsistent() {
+
+        SyntheticWikiTreeDataset dataset = generate( 42 );
+        SyntheticWikiTreeDataset again = generate( 42 );
+        SyntheticWikiTreeDataset other = generate( 43 );
+
+        assertEquals( 20_000, dataset.getPersonCount() );
+        assertTrue( dataset.toString(), dataset.getCousinMarriageCount() > 0 );
+        assertTrue( dataset.toString(), dataset.getRemarriageCount() > 0 );
+
+        int living = 0;
+        int missingParents = 0;
+        boolean differs = false;
+        for ( long id = 1; id <= dataset.getPersonCount(); id += 7 ) {
+
+            JSONObject profile = dataset.getPerson( id );
+            assertEquals( profile, again.getPerson( id ) );
+            differs |= !profile.equals( other.getPerson( id ) );
+
+            assertEquals( Long.valueOf( id ), dataset.getPersonId( (String)profile.get( "Name" ) ) );
+
+            if ( (Long)profile.get( "IsLiving" ) == 1 ) {
+
+                living += 1;
+                assertTrue( (Long)profile.get( "Privacy" ) < WikiTreeApiStandInServer.PUBLIC_PRIVACY_LEVEL );
+
+            }
+
+            for ( String parent : new String[]{ "Father", "Mother" } ) {
+
+                long parentId = (Long)profile.get( parent );
+                if ( parentId == 0 ) {
+
+                    missingParents += 1;
+
+                } else {
+
+                    assertTrue( dataset.getChildIds( parentId ).contains( id ) );
+
+                }
+
+            }
+
+            for ( long spouseId : dataset.getSpouseIds( id ) ) {
+
+                assertTrue( dataset.getSpouseIds( spouseId ).contains( id ) );
+
+            }
+
+        }
+
+        assertTrue( differs );
+        assertTrue( living > 0 );
+        assertTrue( missingParents > 0 );
+        assertNull( dataset.getPerson( dataset.getPersonCount() + 1 ) );
+        assertNull( dataset.getPersonId( "Nobody-1" ) );
+
+    }
+
+    @Test
+    public void cousinMarriagesCollapsePedigrees() throws Exception {
+
+        SyntheticWikiTreeDataset dataset = generate( 42 );
+
+        // Find someone whose parents share a grandparent.
+
+        long collapsed = 0;
+        Set<Long> grandparents = new HashSet<>();
+        int youngest = dataset.getGenerationCount() - 1;
+        for ( long id = dataset.getFirstPersonId( youngest ); id <= dataset.getPersonCount() && collapsed == 0; id += 1 ) {
+
+            grandparents.clear();
+            int grandparentCount = 0;
+            for ( String parent : new String[]{ "Father", "Mother" } ) {
+
+                JSONObject parentProfile = dataset.getPerson( (Long)dataset.getPerson( id ).get( parent ) );
+                for ( String grandparent : new String[]{ "Father", "Mother" } ) {
+
+                    long grandparentId = parentProfile == null ? 0 : (Long)parentProfile.get( grandparent );
+                    if ( grandparentId != 0 ) {
+
+                        grandparents.add( grandparentId );
+                        grandparentCount += 1;
+
+                    }
+
+                }
+
+            }
+
+            if ( grandparentCount == 4 && grandparents.size() < 4 ) {
+
+                collapsed = id;
+
+            }
+
+        }
+
+        assertTrue( "no pedigree collapse in " + dataset, collapsed != 0 );
+
+        WikiTreeApiStandInServer server = new WikiTreeApiStandInServer( dataset );
+        server.start();
+        try {
+
+            WikiTreeApiWrappersSession session = new WikiTreeApiWrappersSession( new WikiTreeApiJsonSession( server.getBaseUrlString() ) );
+            WikiTreePersonProfile person = session.getPerson( new WikiTreeId( (String)dataset.getPerson( collapsed ).get( "Name" ) ) );
+            assertEquals( collapsed, person.getPersonId() );
+            assertEquals( 2, person.getParents().size() );
+
+            WikiTreeAncestors ancestors = session.getAncestors( new WikiTreeId( (String)dataset.getPerson( collapsed ).get( "Name" ) ), 2 );
+            assertEquals( 1 + 2 + grandparents.size(), ancestors.getResultAncestors().size() );
+
+        } finally {
+
+            server.stop();
+
+        }
+
+    }
+
+}
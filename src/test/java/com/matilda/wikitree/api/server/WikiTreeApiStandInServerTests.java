@@ -0,0 +1,191 @@
+/*
+ * Copyright © 2017 Daniel Boulet
+ */
+
+package com.matilda.wikitree.api.server;
+
+import com.matilda.wikitree.api.WikiTreeTestFixtures;
+import com.matilda.wikitree.api.jsonclient.WikiTreeApiJsonSession;
+import com.matilda.wikitree.api.util.WikiTreeApiUtilities;
+import com.matilda.wikitree.api.wrappers.WikiTreeAncestors;
+import com.matilda.wikitree.api.wrappers.WikiTreeApiWrappersSession;
+import com.matilda.wikitree.api.wrappers.WikiTreeBiography;
+import com.matilda.wikitree.api.wrappers.WikiTreeId;
+import com.matilda.wikitree.api.wrappers.WikiTreePersonProfile;
+import com.matilda.wikitree.api.wrappers.WikiTreeRelatives;
+import com.matilda.wikitree.api.wrappers.WikiTreeWatchlist;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.Optional;
+
+import static org.junit.Assert.*;
+
+public class WikiTreeApiStandInServerTests {
+
+    @Rule
+    public final WikiTreeStandInServerRule<InMemoryWikiTreeDataset> _standIn = new WikiTreeStandInServerRule<>( WikiTreeApiStandInServerTests::createDataset );
+
+    private InMemoryWikiTreeDataset _dataset;
+
+    private WikiTreeApiStandInServer _server;
+
+    private WikiTreeApiJsonSession _jsonSession;
+
+    private static InMemoryWikiTreeDataset createDataset() throws Exception {
+
+        InMemoryWikiTreeDataset dataset = new InMemoryWikiTreeDataset();
+
+        JSONObject churchill = (JSONObject)fixture( "getPerson-Churchill-4.json" ).get( "person" );
+        dataset.addPersonAndRelatives( churchill );
+        for ( Object ancestor : (JSONArray)fixture( "getAncestors-Churchill-4-depth-3.json" ).get( "ancestors" ) ) {
+
+            if ( dataset.getPerson( ( (Number)( (JSONObject)ancestor ).get( "Id" ) ).longValue() ) == null ) {
+
+                dataset.addPerson( (JSONObject)ancestor );
+
+            }
+
+        }
+
+        dataset.setBio( 5589, (String)fixture( "getBio-Churchill-4.json" ).get( "bio" ) );
+        dataset.addSpace( "Space:Allied_POW_camps", (JSONObject)fixture( "getProfile-Space-Allied_POW_camps.json" ).get( "profile" ) );
+        dataset.addAccount( new WikiTreeDataset.Account( "example@example.com", "secret", 3636, "Example-1", Collections.singletonList( 5589L ) ) );
+
+        return dataset;
+
+    }
+
+    @Before
+    public void createSession() {
+
+        _dataset = _standIn.getDataset();
+        _server = _standIn.getServer();
+        _jsonSession = new WikiTreeApiJsonSession( _server.getBaseUrlString() );
+
+    }
+
+    private static JSONObject fixture( String name ) throws Exception {
+
+        return (JSONObject)WikiTreeApiUtilities.parseJsonArray( new String( WikiTreeTestFixtures.loadBytes( name ), "UTF-8" ) ).get( 0 );
+
+    }
+
+    @Test
+    public void wrappersWorkAgainstTheStandIn() throws Exception {
+
+        WikiTreeApiWrappersSession session = new WikiTreeApiWrappersSession( _jsonSession );
+
+        WikiTreePersonProfile churchill = session.getPerson( new WikiTreeId( "Churchill-4" ) );
+        assertEquals( 5589, churchill.getPersonId() );
+        assertEquals( 2, churchill.getParents().size() );
+        assertEquals( 1, churchill.getSpouses().size() );
+        assertEquals( "Hozier-1", churchill.getSpouses().iterator().next().getWikiTreeId().getValueString() );
+        assertEquals( churchill.getChildren().size(), _dataset.getChildIds( 5589 ).size() );
+
+        JSONArray recordedAncestors = (JSONArray)fixture( "getAncestors-Churchill-4-depth-3.json" ).get( "ancestors" );
+        WikiTreeAncestors ancestors = session.getAncestors( new WikiTreeId( "Churchill-4" ), 3 );
+        assertEquals( recordedAncestors.size(), ancestors.getResultAncestors().size() );
+        assertEquals( 5589, ancestors.getBasePersonProfile().getPersonId() );
+
+        WikiTreeBiography bio = session.getBio( new WikiTreeId( "Churchill-4" ) );
+        assertEquals( fixture( "getBio-Churchill-4.json" ).get( "bio" ), bio.getBio() );
+
+        WikiTreeRelatives relatives = session.getRelatives( "5589,Hozier-1,Nobody-1", true, true, true, false );
+        assertEquals( 2, relatives.getBasePeopleByKey().size() );
+        assertEquals( 1, relatives.getBasePeopleByKey().get( "Hozier-1" ).getSpouses().size() );
+        assertTrue( relatives.getBasePeopleByKey().get( "5589" ).getSiblings().isEmpty() );
+
+        Optional<JSONObject> space = _jsonSession.getProfile( new WikiTreeId( "Space:Allied_POW_camps" ) );
+        assertEquals( "Allied POW camps", ( (JSONObject)space.get().get( "profile" ) ).get( "Title" ) );
+
+        Optional<JSONObject> nobody = _jsonSession.getPerson( new WikiTreeId( "Nobody-1" ) );
+        assertEquals( "Illegal WikiTree ID", nobody.get().get( "status" ) );
+
+        Optional<JSONObject> someFields = _jsonSession.getPerson( "5589", "Id,Name,Derived.ShortName,Parents" );
+        JSONObject person = (JSONObject)someFields.get().get( "person" );
+        assertEquals( 4, person.size() );
+        assertEquals( "Winston Churchill", person.get( "ShortName" ) );
+
+        assertEquals( 7, _server.getRequestCount() );
+
+    }
+
+    @Test
+    public void loginWatchlistAndPrivacy() throws Exception {
+
+        _dataset.addPerson( privateProfile() );
+
+        JSONObject anonymous = (JSONObject)_jsonSession.getPerson( new WikiTreeId( "Private-1" ) ).get().get( "person" );
+        assertFalse( anonymous.containsKey( "BirthDate" ) );
+        assertEquals( "Private-1", anonymous.get( "Name" ) );
+
+        Optional<JSONObject> refused = _jsonSession.getWatchlist( null, null, null, null, null, null, null, null );
+        assertEquals( "Permission denied.", refused.get().get( "status" ) );
+
+        assertFalse( _jsonSession.login( "example@example.com", "wrong" ) );
+        assertTrue( _jsonSession.login( "example@example.com", "secret" ) );
+        assertEquals( "Example-1", _jsonSession.getAuthenticatedWikiTreeId() );
+
+        JSONObject loggedIn = (JSONObject)_jsonSession.getPerson( new WikiTreeId( "Private-1" ) ).get().get( "person" );
+        assertEquals( "1990-01-01", loggedIn.get( "BirthDate" ) );
+
+        WikiTreeWatchlist watchlist = new WikiTreeApiWrappersSession( _jsonSession ).getWatchlist( null, null, null, null, null, null, null, null );
+        assertEquals( 1, watchlist.getWatchlistCount() );
+        assertEquals( 5589, watchlist.getWatchlist().iterator().next().getPersonId() );
+
+    }
+
+    @Test
+    public void stoppedServersAreNotRunning() {
+
+        assertTrue( _server.isRunning() );
+        _server.stop();
+        assertFalse( _server.isRunning() );
+
+    }
+
+    @Test
+    public void latencyIsSimulated() throws Exception {
+
+        _server.setLatency( 50, 50 );
+
+        long start = System.nanoTime();
+        _jsonSession.getPerson( new WikiTreeId( "Churchill-4" ) );
+        assertTrue( System.nanoTime() - start >= 50_000_000L );
+
+        try {
+
+            _server.setLatency( 10, 5 );
+            fail( "min > max should be rejected" );
+
+        } catch ( IllegalArgumentException e ) {
+
+            // expected
+
+        }
+
+    }
+
+    @SuppressWarnings("unchecked")
+    private static JSONObject privateProfile() {
+
+        JSONObject profile = new JSONObject();
+        profile.put( "Id", 9_000_001L );
+        profile.put( "Name", "Private-1" );
+        profile.put( "FirstName", "Pat" );
+        profile.put( "BirthDate", "1990-01-01" );
+        profile.put( "IsLiving", 1L );
+        profile.put( "Privacy", 20L );
+        profile.put( "Father", 0L );
+        profile.put( "Mother", 0L );
+
+        return profile;
+
+    }
+
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright © 2017 Daniel Boulet
+ */
+
+package com.matilda.wikitree.api.server;
+
+import org.jetbrains.annotations.NotNull;
+import org.junit.rules.ExternalResource;
+
+/**
+ Start a {@link WikiTreeApiStandInServer} before each test and stop it afterwards.
+ <p/>Use it as a {@code @Rule} field. The dataset is created afresh for each test (so tests can change it and the server's settings freely).
+ The rule's {@code before} runs ahead of the test class's {@code @Before} methods so they can use the server too.
+
+ @param <D> the kind of dataset that the server serves.
+ */
+
+public class WikiTreeStandInServerRule<D extends WikiTreeDataset> extends ExternalResource {
+
+    /**
+     Something which creates the dataset for a test.
+     */
+
+    public interface DatasetFactory<D extends WikiTreeDataset> {
+
+        @NotNull
+        D create()
+                throws Exception;
+
+    }
+
+    private final DatasetFactory<D> _datasetFactory;
+
+    private D _dataset;
+
+    private WikiTreeApiStandInServer _server;
+
+    /**
+     Create a rule which serves whatever a factory creates.
+
+     @param datasetFactory the factory (called once per test).
+     */
+
+    public WikiTreeStandInServerRule( @NotNull DatasetFactory<D> datasetFactory ) {
+
+        super();
+
+        _datasetFactory = datasetFactory;
+
+    }
+
+    /**
+     Create a rule which serves a synthetic dataset.
+
+     @param personCount the number of people in the dataset.
+     */
+
+    @NotNull
+    public static WikiTreeStandInServerRule<SyntheticWikiTreeDataset> synthetic( int personCount ) {
+
+        return new WikiTreeStandInServerRule<>( () -> createSyntheticDataset( personCount ) );
+
+    }
+
+    /**
+     Create a synthetic dataset with the default parameters apart from the number of people.
+
+     @param personCount the number of people in the dataset.
+     */
+
+    @NotNull
+    public static SyntheticWikiTreeDataset createSyntheticDataset( int personCount ) {
+
+        SyntheticWikiTreeDataset.Parameters parameters = new SyntheticWikiTreeDataset.Parameters();
+        parameters.setPersonCount( personCount );
+
+        return new SyntheticWikiTreeDataset( parameters );
+
+    }
+
+    @Override
+    protected void before()
+            throws Throwable {
+
+        WikiTreeApiStandInServer.enableNoDelay();
+
+        _dataset = _datasetFactory.create();
+        _server = new WikiTreeApiStandInServer( _dataset );
+        _server.start();
+
+    }
+
+    @Override
+    protected void after() {
+
+        // Stopping twice is fine (some tests stop the server themselves).
+
+        if ( _server != null ) {
+
+            _server.stop();
+
+        }
+
+    }
+
+    @NotNull
+    public D getDataset() {
+
+        return _dataset;
+
+    }
+
+    @NotNull
+    public WikiTreeApiStandInServer getServer() {
+
+        return _server;
+
+    }
+
+    @NotNull
+    public String getBaseUrlString() {
+
+        return _server.getBaseUrlString();
+
+    }
+
+    public String toString() {
+
+        return "WikiTreeStandInServerRule( server=" + _server + " )";
+
+    }
+
+}
@@ -0,0 +1,224 @@
+/*
+ * Copyright © 2017 Daniel Boulet
+ */
+
+package com.matilda.wikitree.api.sync;
+
+import com.matilda.wikitree.api.exceptions.WikiTreeRequestFailedException;
+import com.matilda.wikitree.api.jsonclient.WikiTreeApiJsonSession;
+import com.matilda.wikitree.api.jsonclient.WikiTreeResponseCache;
+import com.matilda.wikitree.api.jsonclient.WikiTreeTransport;
+import com.matilda.wikitree.api.server.InMemoryWikiTreeDataset;
+import com.matilda.wikitree.api.server.SyntheticWikiTreeDataset;
+import com.matilda.wikitree.api.server.WikiTreeDataset;
+import com.matilda.wikitree.api.server.WikiTreeStandInServerRule;
+import org.json.simple.JSONObject;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class WikiTreeIncrementalSyncTests {
+
+    private static final int PERSON_COUNT = 250;
+
+    private static final SyntheticWikiTreeDataset s_synthetic = WikiTreeStandInServerRule.createSyntheticDataset( 1_000 );
+
+    @Rule
+    public final WikiTreeStandInServerRule<InMemoryWikiTreeDataset> _standIn = new WikiTreeStandInServerRule<>( WikiTreeIncrementalSyncTests::createDataset );
+
+    /**
+     A dataset whose profiles can be changed (some of the synthetic ones, all on the account's watchlist).
+     */
+
+    private static InMemoryWikiTreeDataset createDataset() {
+
+        InMemoryWikiTreeDataset dataset = new InMemoryWikiTreeDataset();
+        List<Long> watchlist = new ArrayList<>();
+        for ( long id = 1; id <= PERSON_COUNT; id += 1 ) {
+
+            dataset.addPerson( s_synthetic.getPerson( id ) );
+            watchlist.add( id );
+
+        }
+
+        dataset.addAccount( new WikiTreeDataset.Account( "example@example.com", "secret", 3636, "Example-1", watchlist ) );
+
+        return dataset;
+
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void onlyChangedProfilesAreFetched() throws Exception {
+
+        InMemoryWikiTreeDataset dataset = _standIn.getDataset();
+        List<String> keys = new ArrayList<>();
+        for ( long id = 1; id <= PERSON_COUNT; id += 1 ) {
+
+            keys.add( id % 2 == 0 ? String.valueOf( id ) : (String)s_synthetic.getPerson( id ).get( "Name" ) );
+
+        }
+
+        keys.add( "Nobody-1" );
+
+        WikiTreeApiJsonSession session = new WikiTreeApiJsonSession( _standIn.getBaseUrlString() );
+        assertTrue( session.login( "example@example.com", "secret" ) );
+        InMemoryWikiTreeProfileStore store = new InMemoryWikiTreeProfileStore();
+        WikiTreeIncrementalSync sync = new WikiTreeIncrementalSync( session, store );
+
+        // The first sync fetches everything (three projection requests and three fetches of 100 or fewer profiles).
+
+        WikiTreeIncrementalSync.Result first = sync.syncPeople( keys );
+        assertEquals( PERSON_COUNT, first.getChecked() );
+        assertEquals( PERSON_COUNT, first.getChanged() );
+        assertEquals( PERSON_COUNT, first.getFetched() );
+        assertEquals( Arrays.asList( "Nobody-1" ), first.getMissingKeys() );
+        assertEquals( 6, first.getRequests() );
+        assertEquals( PERSON_COUNT, store.size() );
+        assertEquals( s_synthetic.getPerson( 7 ), store.getProfile( 7 ) );
+
+        // Nothing has changed so nothing is fetched.
+
+        WikiTreeIncrementalSync.Result second = sync.syncPeople( keys );
+        assertEquals( PERSON_COUNT, second.getChecked() );
+        assertEquals( 0, second.getChanged() );
+        assertEquals( 3, second.getRequests() );
+
+        // Change a few profiles.
+
+        for ( long id : new long[]{ 3, 111, 222 } ) {
+
+            JSONObject changed = new JSONObject( s_synthetic.getPerson( id ) );
+            changed.put( "Touched", "20270101000000" );
+            changed.put( "BirthLocation", "Somewhere Else" );
+            dataset.addPerson( changed );
+
+        }
+
+        WikiTreeIncrementalSync.Result third = sync.syncPeople( keys );
+        assertEquals( 3, third.getChanged() );
+        assertEquals( 3, third.getFetched() );
+        assertEquals( 4, third.getRequests() );
+        assertEquals( "Somewhere Else", store.getProfile( 111 ).get( "BirthLocation" ) );
+        assertEquals( "20270101000000", store.getTouched( 222 ) );
+
+        // The watchlist works the same way (a page at a time).
+
+        JSONObject changed = new JSONObject( s_synthetic.getPerson( 50 ) );
+        changed.put( "Touched", "20270202000000" );
+        dataset.addPerson( changed );
+
+        assertEquals( WikiTreeIncrementalSync.DEFAULT_BATCH_SIZE, sync.setBatchSize( 200 ) );
+        WikiTreeIncrementalSync.Result watched = sync.syncWatchlist();
+        assertEquals( PERSON_COUNT, watched.getChecked() );
+        assertEquals( 1, watched.getChanged() );
+        assertEquals( 3, watched.getRequests() );
+        assertEquals( "20270202000000", store.getTouched( 50 ) );
+
+        // Only some fields, but always the ones that the next sync needs.
+
+        InMemoryWikiTreeProfileStore narrowStore = new InMemoryWikiTreeProfileStore();
+        WikiTreeIncrementalSync narrow = new WikiTreeIncrementalSync( session, narrowStore );
+        narrow.setFields( "Name,Gender" );
+        narrow.syncPeople( keys.subList( 0, 5 ) );
+        assertEquals( 4, narrowStore.getProfile( 3 ).size() );
+        assertEquals( 0, narrow.syncPeople( keys.subList( 0, 5 ) ).getChanged() );
+
+    }
+
+    @Test
+    public void watchlistsEndWithAShortPage() throws Exception {
+
+        // Without a watchlistCount, the page that isn't full is the last one (250 people in pages of 100 is three requests).
+
+        _standIn.getServer().setWatchlistCountSent( false );
+        WikiTreeApiJsonSession session = new WikiTreeApiJsonSession( _standIn.getBaseUrlString() );
+        assertTrue( session.login( "example@example.com", "secret" ) );
+        InMemoryWikiTreeProfileStore store = new InMemoryWikiTreeProfileStore();
+        WikiTreeIncrementalSync sync = new WikiTreeIncrementalSync( session, store );
+        sync.setBatchSize( 100 );
+
+        WikiTreeIncrementalSync.Result first = sync.syncWatchlist();
+        assertEquals( PERSON_COUNT, first.getChecked() );
+        assertEquals( PERSON_COUNT, first.getFetched() );
+        assertEquals( 3 + 3, first.getRequests() );
+
+        // A watchlist that fills its last page exactly takes one more (empty) page to finish.
+
+        sync.setBatchSize( 125 );
+        WikiTreeIncrementalSync.Result second = sync.syncWatchlist();
+        assertEquals( PERSON_COUNT, second.getChecked() );
+        assertEquals( 0, second.getChanged() );
+        assertEquals( 3, second.getRequests() );
+
+        // A server which ignores the offset sends the same page every time so only a short page ends the loop.
+
+        session.setTransport( url -> WikiTreeTransport.DEFAULT.openConnection(
+                new URL( url.toString().replaceAll( "&offset=[0-9]+", "" ) )
+        ) );
+        sync.setBatchSize( 300 );
+        WikiTreeIncrementalSync.Result third = sync.syncWatchlist();
+        assertEquals( PERSON_COUNT, third.getChecked() );
+        assertEquals( 1, third.getRequests() );
+
+    }
+
+    @Test
+    public void failedRequestsAreErrors() throws Exception {
+
+        WikiTreeApiJsonSession session = new WikiTreeApiJsonSession( _standIn.getBaseUrlString() );
+        assertTrue( session.login( "example@example.com", "secret" ) );
+        session.setAutomaticReLogin( false );
+        InMemoryWikiTreeProfileStore store = new InMemoryWikiTreeProfileStore();
+        WikiTreeIncrementalSync sync = new WikiTreeIncrementalSync( session, store );
+
+        // An expired login isn't an empty watchlist.
+
+        _standIn.getServer().expireLogins();
+        try {
+
+            sync.syncWatchlist();
+            fail( "the login has expired" );
+
+        } catch ( WikiTreeRequestFailedException e ) {
+
+            assertEquals( "Permission denied.", e.getResultObject().get( "status" ) );
+
+        }
+
+        // A refused getRelatives request doesn't mean that every key is missing.
+
+        session.setTransport( url -> WikiTreeTransport.DEFAULT.openConnection(
+                new URL( url.toString().replace( "action=getRelatives", "action=getNothing" ) )
+        ) );
+        try {
+
+            sync.syncPeople( Arrays.asList( "1", "2" ) );
+            fail( "the server refused the request" );
+
+        } catch ( WikiTreeRequestFailedException e ) {
+
+            assertEquals( "Illegal action.", e.getResultObject().get( "status" ) );
+
+        }
+
+        assertEquals( 0, store.size() );
+
+    }
+
+    @Test( expected = IllegalArgumentException.class )
+    public void responseCachesHideChanges() {
+
+        WikiTreeApiJsonSession session = new WikiTreeApiJsonSession( "http://localhost:1/api.php" );
+        session.setResponseCache( new WikiTreeResponseCache( 10, 1000 ) );
+        new WikiTreeIncrementalSync( session, new InMemoryWikiTreeProfileStore() );
+
+    }
+
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright © 2017 Daniel Boulet
+ */
+
+package com.matilda.wikitree.api.util;
+
+import com.matilda.wikitree.api.WikiTreeTestFixtures;
+import com.matilda.wikitree.api.json.JsonSimpleCodec;
+import org.jetbrains.annotations.NotNull;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.junit.Test;
+
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.Optional;
+
+import static org.junit.Assert.*;
+
+public class JsonPrettyPrinterTests {
+
+    @Test
+    public void matchesThePrettyLineManagerOutput() throws Exception {
+
+        for ( String fixtureName : WikiTreeTestFixtures.ALL_FIXTURES ) {
+
+            Object thing = new JsonSimpleCodec().parse( WikiTreeTestFixtures.load( fixtureName ) );
+
+            for ( String name : new String[]{ null, fixtureName } ) {
+
+                StringWriter expected = new StringWriter();
+                WikiTreeApiUtilities.PrettyLineManager plm = new WikiTreeApiUtilities.PrettyLineManager( expected );
+                WikiTreeApiUtilities.prettyFormatJsonThing( 0, name, thing, plm );
+                plm.flush();
+
+                StringWriter actual = new StringWriter();
+                WikiTreeApiUtilities.prettyPrintJsonThing( actual, name, thing );
+
+                assertEquals( fixtureName, expected.toString(), actual.toString() );
+                assertEquals( fixtureName, expected.toString(), WikiTreeApiUtilities.prettyFormatJsonThing( name, thing ).toString() );
+
+            }
+
+        }
+
+        JSONArray odds = new JSONArray();
+        odds.add( Optional.of( Optional.of( "tab\there \"quoted\"" ) ) );
+        odds.add( Optional.empty() );
+        odds.add( new JSONObject() );
+        odds.add( new JSONArray() );
+        odds.add( 3.5 );
+
+        StringWriter actual = new StringWriter();
+        WikiTreeApiUtilities.prettyPrintJsonThing( actual, "odds", odds );
+        String nl = WikiTreeApiUtilities.JAVA_NEWLINE;
+        assertEquals(
+                "\"odds\" : [" + nl +
+                "    \"tab\\there \\\"quoted\\\"\"," + nl +
+                "    null," + nl +
+                "    {" + nl +
+                "    }," + nl +
+                "    [" + nl +
+                "    ]," + nl +
+                "    3.5" + nl +
+                "]" + nl,
+                actual.toString()
+        );
+
+    }
+
+    @Test
+    public void handlesVeryDeepNesting() throws Exception {
+
+        // Deeper than anything WikiTree will ever send us.
+
+        int depth = 5000;
+        JSONObject root = new JSONObject();
+        JSONObject current = root;
+        for ( int i = 0; i < depth; i += 1 ) {
+
+            JSONObject father = new JSONObject();
+            current.put( "Father", father );
+            current = father;
+
+        }
+
+        current.put( "Name", "Adam-1" );
+
+        // The indentation alone makes the output quadratic in the depth so just count lines rather than keeping them.
+
+        final int[] lineCount = { 0 };
+        final StringBuilder currentLine = new StringBuilder();
+        final String[] deepestLine = { null };
+        Writer countingWriter = new Writer() {
+
+            @Override
+            public void write( @NotNull char[] buf, int off, int len ) {
+
+                for ( int i = off; i < off + len; i += 1 ) {
+
+                    if ( buf[i] == '\n' ) {
+
+                        if ( lineCount[0] == depth + 1 ) {
+
+                            deepestLine[0] = currentLine.toString();
+
+                        }
+
+                        lineCount[0] += 1;
+
+                        currentLine.setLength( 0 );
+
+                    } else if ( buf[i] != '\r' ) {
+
+                        currentLine.append( buf[i] );
+
+                    }
+
+                }
+
+            }
+
+            @Override
+            public void flush() {
+
+            }
+
+            @Override
+            public void close() {
+
+            }
+
+        };
+
+        WikiTreeApiUtilities.prettyPrintJsonThing( countingWriter, null, root );
+
+        assertEquals( depth * 2 + 3, lineCount[0] );
+        assertEquals( WikiTreeApiUtilities.repl( WikiTreeApiUtilities.INDENT_STRING, depth + 1 ) + "\"Name\" : \"Adam-1\"", deepestLine[0] );
+        assertEquals( 0, currentLine.length() );
+
+    }
+
+}
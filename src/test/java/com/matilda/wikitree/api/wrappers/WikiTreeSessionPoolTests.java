@@ -0,0 +1,179 @@
+/*
+ * Copyright © 2017 Daniel Boulet
+ */
+
+package com.matilda.wikitree.api.wrappers;
+
+import com.matilda.wikitree.api.jsonclient.WikiTreeResponseCache;
+import com.matilda.wikitree.api.jsonclient.WikiTreeTransport;
+import com.matilda.wikitree.api.server.SyntheticWikiTreeDataset;
+import com.matilda.wikitree.api.server.WikiTreeApiStandInServer;
+import com.matilda.wikitree.api.server.WikiTreeDataset;
+import com.matilda.wikitree.api.server.WikiTreeStandInServerRule;
+import org.json.simple.JSONObject;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class WikiTreeSessionPoolTests {
+
+    @Rule
+    public final WikiTreeStandInServerRule<SyntheticWikiTreeDataset> _standIn = WikiTreeStandInServerRule.synthetic( 2_000 );
+
+    private SyntheticWikiTreeDataset _dataset;
+
+    private WikiTreeApiStandInServer _server;
+
+    private WikiTreeSessionPool _pool;
+
+    @Before
+    public void createPool() throws Exception {
+
+        _dataset = _standIn.getDataset();
+        _dataset.addAccount( new WikiTreeDataset.Account( "alice@example.com", "alice-pw", 1, name( 1 ), Arrays.asList( 2L, 3L ) ) );
+        _dataset.addAccount( new WikiTreeDataset.Account( "bob@example.com", "bob-pw", 4, name( 4 ), Collections.singletonList( 5L ) ) );
+
+        _server = _standIn.getServer();
+
+        _pool = new WikiTreeSessionPool( _server.getBaseUrlString(), WikiTreeTransport.DEFAULT, new WikiTreeResponseCache( 1000, 60_000 ) );
+        _pool.addAnonymousSessions( 2 );
+        assertTrue( _pool.addAccount( "alice@example.com", "alice-pw", 2 ) );
+        assertTrue( _pool.addAccount( "bob@example.com", "bob-pw", 1 ) );
+        assertFalse( _pool.addAccount( "bob@example.com", "wrong", 1 ) );
+
+    }
+
+    private String name( long personId ) {
+
+        return (String)_dataset.getPerson( personId ).get( "Name" );
+
+    }
+
+    @Test
+    public void accountsOnlySeeTheirOwnData() throws Exception {
+
+        assertEquals( new HashSet<>( Arrays.asList( "alice@example.com", "bob@example.com" ) ), _pool.getAccounts() );
+        assertEquals( 2, _pool.getSessionCount( "Alice@Example.com" ) );
+        assertEquals( 1, _pool.getSessionCount( "bob@example.com" ) );
+        assertEquals( 2, _pool.getSessionCount( null ) );
+
+        assertEquals( 2, _pool.getWatchlist( "alice@example.com", null, null, null, null, null, null, null, null ).getWatchlistCount() );
+        assertEquals( 1, _pool.getWatchlist( "bob@example.com", null, null, null, null, null, null, null, null ).getWatchlistCount() );
+
+        try {
+
+            _pool.getWatchlist( "carol@example.com", null, null, null, null, null, null, null, null );
+            fail( "there are no sessions for carol" );
+
+        } catch ( IllegalArgumentException e ) {
+
+            // Expected.
+
+        }
+
+        // Find a private profile with a birth date.
+
+        long privateId = 0;
+        for ( long id = _dataset.getPersonCount(); privateId == 0; id -= 1 ) {
+
+            JSONObject profile = _dataset.getPerson( id );
+            if ( (Long)profile.get( "Privacy" ) < WikiTreeApiStandInServer.PUBLIC_PRIVACY_LEVEL && profile.containsKey( "BirthDate" ) ) {
+
+                privateId = id;
+
+            }
+
+        }
+
+        WikiTreeId key = new WikiTreeId( name( privateId ) );
+        assertTrue( _pool.getPerson( "alice@example.com", key ).containsKey( "BirthDate" ) );
+
+        // What alice's session fetched (and cached) is not what an anonymous request gets back.
+
+        long requestsSoFar = _server.getRequestCount();
+        assertFalse( _pool.getPerson( null, key ).containsKey( "BirthDate" ) );
+        assertEquals( requestsSoFar + 1, _server.getRequestCount() );
+
+        // Both are cached now (alice has two sessions; either one finds her entry).
+
+        for ( int i = 0; i < 3; i += 1 ) {
+
+            assertTrue( _pool.getPerson( "alice@example.com", key ).containsKey( "BirthDate" ) );
+            assertFalse( _pool.getPerson( null, key ).containsKey( "BirthDate" ) );
+
+        }
+
+        assertEquals( requestsSoFar + 1, _server.getRequestCount() );
+        assertTrue( _pool.getResponseCache().getHitCount() >= 6 );
+
+    }
+
+    @Test
+    public void requestsGoToTheLeastLoadedSession() throws Exception {
+
+        ExecutorService executor = Executors.newFixedThreadPool( 2 );
+        try {
+
+            CountDownLatch bothStarted = new CountDownLatch( 2 );
+            CountDownLatch release = new CountDownLatch( 1 );
+            Set<WikiTreeApiWrappersSession> used = Collections.synchronizedSet( new HashSet<>() );
+            Future<?>[] futures = new Future<?>[2];
+            for ( int i = 0; i < 2; i += 1 ) {
+
+                futures[i] = executor.submit( () -> _pool.execute(
+                        "alice@example.com",
+                        session -> {
+
+                            used.add( session );
+                            bothStarted.countDown();
+                            try {
+
+                                release.await();
+
+                            } catch ( InterruptedException e ) {
+
+                                throw new IllegalStateException( e );
+
+                            }
+
+                            return session.getAuthenticatedWikiTreeId();
+
+                        }
+                ) );
+
+            }
+
+            assertTrue( bothStarted.await( 10, TimeUnit.SECONDS ) );
+            assertEquals( 2, _pool.getInFlightCount() );
+            assertEquals( 2, used.size() );
+
+            release.countDown();
+            for ( Future<?> future : futures ) {
+
+                assertEquals( name( 1 ), future.get() );
+
+            }
+
+            assertEquals( 0, _pool.getInFlightCount() );
+
+        } finally {
+
+            executor.shutdownNow();
+
+        }
+
+    }
+
+}